@@ -42,6 +42,10 @@ public class FileBuffersTestSuite {
 
 		suite.addTestSuite(TextFileManagerDocCreationTests.class);
 		suite.addTestSuite(ResourceTextFileManagerDocCreationTests.class);
+
+		suite.addTestSuite(GenericFileBufferOperationRunnerTest.class);
+		suite.addTestSuite(TextFileBufferOperationTest.class);
+		suite.addTestSuite(TextFileBufferDecodingTest.class);
 		//$JUnit-END$
 		return suite;
 	}
@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.filebuffers.tests;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.IFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.manipulation.GenericFileBufferOperationRunner;
+import org.eclipse.core.filebuffers.manipulation.IFileBufferOperation;
+import org.eclipse.core.filebuffers.manipulation.RemoveTrailingWhitespaceOperation;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
+
+/**
+ * Tests the parallel execution of the {@link GenericFileBufferOperationRunner}.
+ *
+ * @since 3.6
+ */
+public class GenericFileBufferOperationRunnerTest extends TestCase {
+
+	private static final int FILES= 20;
+
+	private static final int PARALLELISM= 4;
+
+	/**
+	 * Operation which appends a line to the file buffers and records the threads it runs in.
+	 */
+	private static class RecordingOperation implements IFileBufferOperation {
+
+		final Set fThreads= new HashSet();
+		int fRuns;
+		int fRunning;
+
+		public String getOperationName() {
+			return "Recording"; //$NON-NLS-1$
+		}
+
+		public void run(IFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException, OperationCanceledException {
+			synchronized (this) {
+				fThreads.add(Thread.currentThread());
+				fRuns++;
+				fRunning++;
+			}
+			try {
+				perform((ITextFileBuffer) fileBuffer, progressMonitor);
+			} finally {
+				synchronized (this) {
+					fRunning--;
+				}
+			}
+		}
+
+		protected void perform(ITextFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException {
+			IDocument document= fileBuffer.getDocument();
+			try {
+				document.replace(document.getLength(), 0, "appended\n"); //$NON-NLS-1$
+			} catch (BadLocationException x) {
+				fail();
+			}
+		}
+	}
+
+	/**
+	 * Rule which contains all rules, which allows to begin any rule inside of it.
+	 */
+	private static final ISchedulingRule RULE= new ISchedulingRule() {
+		public boolean contains(ISchedulingRule rule) {
+			return true;
+		}
+		public boolean isConflicting(ISchedulingRule rule) {
+			return rule == this;
+		}
+	};
+
+	private File fDirectory;
+
+	protected void setUp() {
+		fDirectory= FileTool.createTempFileInPlugin(FileBuffersTestPlugin.getDefault(), new Path("runnerResources")); //$NON-NLS-1$
+		fDirectory.mkdirs();
+	}
+
+	protected void tearDown() {
+		File[] files= fDirectory.listFiles();
+		for (int i= 0; i < files.length; i++)
+			FileTool.delete(files[i]);
+		FileTool.delete(fDirectory);
+	}
+
+	private IPath[] createFiles(String prefix) throws Exception {
+		IPath[] locations= new IPath[FILES];
+		for (int i= 0; i < FILES; i++) {
+			StringBuffer content= new StringBuffer();
+			for (int line= 0; line < 50 + i; line++)
+				content.append("line ").append(line).append(line % 3 == 0 ? " \t \n" : "\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			File file= new File(fDirectory, prefix + i + ".txt"); //$NON-NLS-1$
+			FileTool.write(file.getAbsolutePath(), content);
+			locations[i]= new Path(file.getAbsolutePath());
+		}
+		return locations;
+	}
+
+	private String read(IPath location) throws Exception {
+		return FileTool.read(location.toOSString()).toString();
+	}
+
+	private GenericFileBufferOperationRunner createRunner(int maxParallelism) {
+		GenericFileBufferOperationRunner runner= new GenericFileBufferOperationRunner(FileBuffers.getTextFileBufferManager(), null);
+		runner.setMaxParallelism(maxParallelism);
+		return runner;
+	}
+
+	public void testParallelEqualsSequential() throws Exception {
+		IPath[] sequential= createFiles("sequential"); //$NON-NLS-1$
+		IPath[] parallel= createFiles("parallel"); //$NON-NLS-1$
+		String original= read(sequential[0]);
+
+		createRunner(1).execute(sequential, new RemoveTrailingWhitespaceOperation(), null);
+		createRunner(PARALLELISM).execute(parallel, new RemoveTrailingWhitespaceOperation(), null);
+		assertFalse(original.equals(read(sequential[0])));
+		for (int i= 0; i < FILES; i++)
+			assertEquals(read(sequential[i]), read(parallel[i]));
+
+		RecordingOperation operation= new RecordingOperation();
+		createRunner(PARALLELISM).execute(parallel, operation, null);
+		assertEquals(FILES, operation.fRuns);
+		assertFalse(operation.fThreads.contains(Thread.currentThread()));
+		for (int i= 0; i < FILES; i++)
+			assertEquals(read(sequential[i]) + "appended\n", read(parallel[i])); //$NON-NLS-1$
+	}
+
+	public void testCancellation() throws Exception {
+		IPath[] locations= createFiles("file"); //$NON-NLS-1$
+		String[] contents= new String[FILES];
+		for (int i= 0; i < FILES; i++)
+			contents[i]= read(locations[i]);
+
+		final IProgressMonitor monitor= new NullProgressMonitor();
+		RecordingOperation operation= new RecordingOperation() {
+			protected void perform(ITextFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException {
+				monitor.setCanceled(true);
+				super.perform(fileBuffer, progressMonitor);
+			}
+		};
+		try {
+			createRunner(PARALLELISM).execute(locations, operation, monitor);
+			fail();
+		} catch (OperationCanceledException x) {
+			// expected
+		}
+
+		// each job stops after the current file buffer
+		assertTrue(operation.fRuns <= PARALLELISM);
+		assertEquals(0, operation.fRunning);
+		for (int i= 0; i < FILES; i++)
+			assertEquals(contents[i], read(locations[i]));
+	}
+
+	public void testFailure() throws Exception {
+		final IPath[] locations= createFiles("file"); //$NON-NLS-1$
+		final CoreException failure= new CoreException(new Status(IStatus.ERROR, "org.eclipse.core.filebuffers.tests", "failure")); //$NON-NLS-1$ //$NON-NLS-2$
+		RecordingOperation operation= new RecordingOperation() {
+			protected void perform(ITextFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException {
+				if (fileBuffer.getLocation().equals(locations[FILES / 2]))
+					throw failure;
+				try {
+					Thread.sleep(20);
+				} catch (InterruptedException x) {
+					// continue
+				}
+				super.perform(fileBuffer, progressMonitor);
+			}
+		};
+		try {
+			createRunner(PARALLELISM).execute(locations, operation, null);
+			fail();
+		} catch (CoreException x) {
+			assertSame(failure, x);
+		}
+
+		// the other jobs are done when the failure is rethrown
+		assertEquals(0, operation.fRunning);
+		assertTrue(operation.fRuns < FILES);
+		for (int i= 0; i < FILES; i++)
+			assertFalse(read(locations[i]).endsWith("appended\n")); //$NON-NLS-1$
+	}
+
+	public void testSequentialWhenRuleIsHeld() throws Exception {
+		IPath[] locations= createFiles("file"); //$NON-NLS-1$
+		RecordingOperation operation= new RecordingOperation();
+		Job.getJobManager().beginRule(RULE, null);
+		try {
+			createRunner(PARALLELISM).execute(locations, operation, null);
+		} finally {
+			Job.getJobManager().endRule(RULE);
+		}
+
+		assertEquals(FILES, operation.fRuns);
+		assertEquals(1, operation.fThreads.size());
+		assertTrue(operation.fThreads.contains(Thread.currentThread()));
+		for (int i= 0; i < FILES; i++)
+			assertTrue(read(locations[i]).endsWith("\nappended\n")); //$NON-NLS-1$
+	}
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.filebuffers.tests;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.filesystem.provider.FileInfo;
+import org.eclipse.core.filesystem.provider.FileStore;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.content.IContentDescription;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+
+
+/**
+ * Tests that the content of text file buffers is decoded like a reader of the file would
+ * decode it, for local file stores and for file stores which report a wrong length.
+ *
+ * @since 3.6
+ */
+public class TextFileBufferDecodingTest extends TestCase {
+
+	private static final String UTF_8= "UTF-8"; //$NON-NLS-1$
+
+	/** The size of the chunks in which a file buffer reads the content. */
+	private static final int CHUNK_SIZE= 16 * 1024;
+
+	/**
+	 * File store which reads another store through a buffered stream and reports a
+	 * different length than that of the other store.
+	 */
+	private static class WrongLengthFileStore extends FileStore {
+
+		private final IFileStore fStore;
+		private final long fLength;
+
+		WrongLengthFileStore(IFileStore store, long length) {
+			fStore= store;
+			fLength= length;
+		}
+
+		public String[] childNames(int options, IProgressMonitor monitor) throws CoreException {
+			return fStore.childNames(options, monitor);
+		}
+
+		public IFileInfo fetchInfo(int options, IProgressMonitor monitor) throws CoreException {
+			FileInfo info= (FileInfo) ((FileInfo) fStore.fetchInfo(options, monitor)).clone();
+			info.setLength(fLength);
+			return info;
+		}
+
+		public IFileStore getChild(String name) {
+			return fStore.getChild(name);
+		}
+
+		public String getName() {
+			return fStore.getName();
+		}
+
+		public IFileStore getParent() {
+			return fStore.getParent();
+		}
+
+		public InputStream openInputStream(int options, IProgressMonitor monitor) throws CoreException {
+			return new BufferedInputStream(fStore.openInputStream(options, monitor));
+		}
+
+		public URI toURI() {
+			return fStore.toURI();
+		}
+	}
+
+	private ITextFileBufferManager fManager;
+	private File fFile;
+
+	protected void setUp() {
+		fManager= FileBuffers.getTextFileBufferManager();
+		fFile= FileTool.createTempFileInPlugin(FileBuffersTestPlugin.getDefault(), new Path("decodingResources/DecodingFile.txt")); //$NON-NLS-1$
+		fFile.getParentFile().mkdirs();
+	}
+
+	protected void tearDown() {
+		FileTool.delete(fFile);
+		FileTool.delete(fFile.getParentFile());
+	}
+
+	private String decode(byte[] bytes, IFileStore fileStore) throws Exception {
+		OutputStream out= new FileOutputStream(fFile);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+
+		fManager.connectFileStore(fileStore, null);
+		try {
+			ITextFileBuffer buffer= fManager.getFileStoreTextFileBuffer(fileStore);
+			buffer.setEncoding(UTF_8);
+			buffer.revert(null);
+			assertTrue(buffer.getStatus().isOK());
+			return buffer.getDocument().get();
+		} finally {
+			fManager.disconnectFileStore(fileStore, null);
+		}
+	}
+
+	/**
+	 * Checks that the given bytes are decoded to the given content from a local file store,
+	 * and from file stores reporting too small and too large lengths.
+	 */
+	private void assertDecoded(String expected, byte[] bytes) throws Exception {
+		IFileStore fileStore= EFS.getLocalFileSystem().getStore(new Path(fFile.getAbsolutePath()));
+		assertEquals(expected, decode(bytes, fileStore));
+		assertEquals(expected, decode(bytes, new WrongLengthFileStore(fileStore, bytes.length)));
+		assertEquals(expected, decode(bytes, new WrongLengthFileStore(fileStore, 0)));
+		assertEquals(expected, decode(bytes, new WrongLengthFileStore(fileStore, bytes.length / 3)));
+		assertEquals(expected, decode(bytes, new WrongLengthFileStore(fileStore, 4 * bytes.length + 100)));
+	}
+
+	private void assertDecoded(byte[] bytes) throws Exception {
+		assertDecoded(new String(bytes, UTF_8), bytes);
+	}
+
+	private static String repeat(char ch, int count) {
+		StringBuffer buffer= new StringBuffer(count);
+		for (int i= 0; i < count; i++)
+			buffer.append(ch);
+		return buffer.toString();
+	}
+
+	public void testEmpty() throws Exception {
+		assertDecoded("", new byte[0]); //$NON-NLS-1$
+	}
+
+	public void testMultiByteSequenceAcrossChunks() throws Exception {
+		String[] characters= { "\u00e9", "\u20ac", "\ud834\udd1e" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		for (int i= 0; i < characters.length; i++) {
+			for (int j= 3; j >= 0; j--) {
+				String content= repeat('a', CHUNK_SIZE - j) + characters[i] + repeat('b', CHUNK_SIZE) + characters[i];
+				assertDecoded(content, content.getBytes(UTF_8));
+			}
+		}
+	}
+
+	public void testOnlyMultiByteSequences() throws Exception {
+		String content= repeat('\u20ac', 3 * CHUNK_SIZE + 1);
+		assertDecoded(content, content.getBytes(UTF_8));
+	}
+
+	public void testMalformedInput() throws Exception {
+		byte[] bytes= { 'a', (byte) 0xc3, 'b', (byte) 0xff, 'c', (byte) 0xe2, (byte) 0x82 };
+		String content= new String(bytes, UTF_8);
+		assertTrue(content.indexOf('\ufffd') != -1);
+		assertDecoded(content, bytes);
+	}
+
+	public void testMalformedInputAcrossChunks() throws Exception {
+		byte[] bytes= (repeat('a', CHUNK_SIZE - 1) + "\u20ac" + repeat('b', CHUNK_SIZE)).getBytes(UTF_8); //$NON-NLS-1$
+		bytes[CHUNK_SIZE]= 'x';
+		assertDecoded(bytes);
+	}
+
+	public void testByteOrderMark() throws Exception {
+		byte[] content= ("text\n\u20ac" + repeat('c', CHUNK_SIZE)).getBytes(UTF_8); //$NON-NLS-1$
+		byte[] bytes= new byte[IContentDescription.BOM_UTF_8.length + content.length];
+		System.arraycopy(IContentDescription.BOM_UTF_8, 0, bytes, 0, IContentDescription.BOM_UTF_8.length);
+		System.arraycopy(content, 0, bytes, IContentDescription.BOM_UTF_8.length, content.length);
+		assertDecoded(new String(content, UTF_8), bytes);
+	}
+}
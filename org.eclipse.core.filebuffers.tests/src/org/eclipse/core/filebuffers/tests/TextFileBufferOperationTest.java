@@ -0,0 +1,378 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.core.filebuffers.tests;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.ITextFileBufferManager;
+import org.eclipse.core.filebuffers.LocationKind;
+import org.eclipse.core.filebuffers.manipulation.ConvertLineDelimitersOperation;
+import org.eclipse.core.filebuffers.manipulation.MultiTextEditWithProgress;
+import org.eclipse.core.filebuffers.manipulation.RemoveTrailingWhitespaceOperation;
+import org.eclipse.core.filebuffers.manipulation.TextFileBufferOperation;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
+import org.eclipse.jface.text.DefaultPositionUpdater;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IDocumentPartitionerExtension2;
+import org.eclipse.jface.text.IPositionUpdater;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.TypedRegion;
+
+
+/**
+ * Tests that the {@link ConvertLineDelimitersOperation} and the
+ * {@link RemoveTrailingWhitespaceOperation} change the content and the positions of a
+ * document in one pass like they do line by line.
+ *
+ * @since 3.6
+ */
+public class TextFileBufferOperationTest extends TestCase {
+
+	private static final String CATEGORY= "org.eclipse.core.filebuffers.tests.positions"; //$NON-NLS-1$
+	private static final String PARTITIONING= "org.eclipse.core.filebuffers.tests.partitioning"; //$NON-NLS-1$
+
+	private static final String[] CONTENTS= {
+		"", //$NON-NLS-1$
+		"no delimiter", //$NON-NLS-1$
+		"no delimiter \t ", //$NON-NLS-1$
+		"keep\na \nb\t\nc\nkeep", //$NON-NLS-1$
+		"keep\ra \rb\t\rc\rkeep", //$NON-NLS-1$
+		"keep\r\na \r\nb\t\r\nc\r\nkeep", //$NON-NLS-1$
+		"keep\na \rb\t\r\nc \n\r\r\n  \n\t\rkeep", //$NON-NLS-1$
+		"keep\r\n\r\r\n\n\n\r  ", //$NON-NLS-1$
+		"\n\n\r\r\n", //$NON-NLS-1$
+		" \r\n\t", //$NON-NLS-1$
+	};
+
+	private static final String[] DELIMITERS= { "\n", "\r", "\r\n" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	/**
+	 * Remove trailing whitespace operation which records the number of edits it computes.
+	 */
+	private static class TrimOperation extends RemoveTrailingWhitespaceOperation {
+
+		int fEdits;
+
+		protected MultiTextEditWithProgress computeTextEdit(ITextFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException {
+			MultiTextEditWithProgress edit= super.computeTextEdit(fileBuffer, progressMonitor);
+			fEdits= edit == null ? 0 : edit.getChildrenSize();
+			return edit;
+		}
+	}
+
+	/**
+	 * Line delimiter conversion which records the number of edits it computes.
+	 */
+	private static class ConvertOperation extends ConvertLineDelimitersOperation {
+
+		int fEdits;
+
+		ConvertOperation(String lineDelimiter) {
+			super(lineDelimiter);
+		}
+
+		protected MultiTextEditWithProgress computeTextEdit(ITextFileBuffer fileBuffer, IProgressMonitor progressMonitor) throws CoreException {
+			MultiTextEditWithProgress edit= super.computeTextEdit(fileBuffer, progressMonitor);
+			fEdits= edit == null ? 0 : edit.getChildrenSize();
+			return edit;
+		}
+	}
+
+	/**
+	 * Partitioner with a single partition covering the document, which is managed in its
+	 * own position category.
+	 */
+	private static class SinglePartitioner implements IDocumentPartitioner, IDocumentPartitionerExtension2 {
+
+		private static final String PARTITION_CATEGORY= "org.eclipse.core.filebuffers.tests.partitions"; //$NON-NLS-1$
+
+		private IDocument fDocument;
+		private Position fPartition;
+
+		public void connect(IDocument document) {
+			fDocument= document;
+			fPartition= new Position(0, document.getLength());
+			document.addPositionCategory(PARTITION_CATEGORY);
+			try {
+				document.addPosition(PARTITION_CATEGORY, fPartition);
+			} catch (BadLocationException x) {
+				fail();
+			} catch (BadPositionCategoryException x) {
+				fail();
+			}
+		}
+
+		public void disconnect() {
+			try {
+				fDocument.removePositionCategory(PARTITION_CATEGORY);
+			} catch (BadPositionCategoryException x) {
+				fail();
+			}
+			fDocument= null;
+		}
+
+		public void documentAboutToBeChanged(DocumentEvent event) {
+		}
+
+		public boolean documentChanged(DocumentEvent event) {
+			fPartition.setOffset(0);
+			fPartition.setLength(fDocument.getLength());
+			return false;
+		}
+
+		public String[] getLegalContentTypes() {
+			return new String[] { IDocument.DEFAULT_CONTENT_TYPE };
+		}
+
+		public String getContentType(int offset) {
+			return IDocument.DEFAULT_CONTENT_TYPE;
+		}
+
+		public ITypedRegion[] computePartitioning(int offset, int length) {
+			return new ITypedRegion[] { getPartition(offset) };
+		}
+
+		public ITypedRegion getPartition(int offset) {
+			return new TypedRegion(0, fDocument.getLength(), IDocument.DEFAULT_CONTENT_TYPE);
+		}
+
+		public String[] getManagingPositionCategories() {
+			return new String[] { PARTITION_CATEGORY };
+		}
+
+		public String getContentType(int offset, boolean preferOpenPartitions) {
+			return getContentType(offset);
+		}
+
+		public ITypedRegion getPartition(int offset, boolean preferOpenPartitions) {
+			return getPartition(offset);
+		}
+
+		public ITypedRegion[] computePartitioning(int offset, int length, boolean includeZeroLengthPartitions) {
+			return computePartitioning(offset, length);
+		}
+	}
+
+	private ITextFileBufferManager fManager;
+	private IPath fPath;
+	private IPath fPerLinePath;
+	private ITextFileBuffer fBuffer;
+	/** Buffer which requests a synchronization context and is therefore changed line by line. */
+	private ITextFileBuffer fPerLineBuffer;
+	private final IPositionUpdater fUpdater= new DefaultPositionUpdater(CATEGORY);
+
+	protected void setUp() throws Exception {
+		fManager= FileBuffers.getTextFileBufferManager();
+		fPath= createFile("OperationFile"); //$NON-NLS-1$
+		fPerLinePath= createFile("PerLineOperationFile"); //$NON-NLS-1$
+		fBuffer= connect(fPath);
+		fPerLineBuffer= connect(fPerLinePath);
+		fPerLineBuffer.requestSynchronizationContext();
+	}
+
+	protected void tearDown() throws Exception {
+		fPerLineBuffer.releaseSynchronizationContext();
+		fManager.disconnect(fPath, LocationKind.NORMALIZE, null);
+		fManager.disconnect(fPerLinePath, LocationKind.NORMALIZE, null);
+		FileTool.delete(fPath.toFile());
+		FileTool.delete(fPerLinePath.toFile());
+		FileTool.delete(fPath.toFile().getParentFile());
+	}
+
+	private IPath createFile(String name) throws IOException {
+		File file= FileTool.createTempFileInPlugin(FileBuffersTestPlugin.getDefault(), new Path("operationResources/" + name)); //$NON-NLS-1$
+		file.getParentFile().mkdirs();
+		FileTool.write(file.getAbsolutePath(), new StringBuffer());
+		return new Path(file.getAbsolutePath());
+	}
+
+	private ITextFileBuffer connect(IPath path) throws CoreException {
+		fManager.connect(path, LocationKind.NORMALIZE, null);
+		ITextFileBuffer buffer= fManager.getTextFileBuffer(path, LocationKind.NORMALIZE);
+		buffer.getDocument().addPositionCategory(CATEGORY);
+		buffer.getDocument().addPositionUpdater(fUpdater);
+		return buffer;
+	}
+
+	/**
+	 * Sets the content of the document and adds positions of the given lengths at the given
+	 * offsets to it.
+	 */
+	private Position[] setContent(IDocument document, String content, int[] offsets, int[] lengths) throws Exception {
+		document.removePositionCategory(CATEGORY);
+		document.set(content);
+		document.addPositionCategory(CATEGORY);
+		Position[] positions= new Position[offsets.length];
+		for (int i= 0; i < offsets.length; i++) {
+			positions[i]= new Position(offsets[i], lengths[i]);
+			document.addPosition(CATEGORY, positions[i]);
+		}
+		return positions;
+	}
+
+	/**
+	 * Runs the operation on both file buffers and compares their contents and positions.
+	 *
+	 * @return the content after the operation
+	 */
+	private String assertSameResult(TextFileBufferOperation operation, String content, int[] offsets, int[] lengths) throws Exception {
+		IDocument document= fBuffer.getDocument();
+		IDocument perLineDocument= fPerLineBuffer.getDocument();
+		Position[] positions= setContent(document, content, offsets, lengths);
+		Position[] perLinePositions= setContent(perLineDocument, content, offsets, lengths);
+
+		// the operation records the edits of the last run
+		operation.run(fPerLineBuffer, null);
+		operation.run(fBuffer, null);
+
+		assertEquals(perLineDocument.get(), document.get());
+		for (int i= 0; i < positions.length; i++) {
+			assertEquals(perLinePositions[i].getOffset(), positions[i].getOffset());
+			assertEquals(perLinePositions[i].getLength(), positions[i].getLength());
+			assertEquals(perLinePositions[i].isDeleted(), positions[i].isDeleted());
+		}
+		return document.get();
+	}
+
+	private String assertSameResult(TextFileBufferOperation operation, String content) throws Exception {
+		return assertSameResult(operation, content, new int[0], new int[0]);
+	}
+
+	/**
+	 * Runs the operation with positions of length <code>0</code> and <code>1</code> at each
+	 * offset of the content.
+	 */
+	private void assertSameResultWithPositions(TextFileBufferOperation operation, String content) throws Exception {
+		int length= content.length();
+		int[] offsets= new int[2 * length + 1];
+		int[] lengths= new int[offsets.length];
+		for (int i= 0; i <= length; i++) {
+			offsets[i]= i;
+			if (i < length) {
+				offsets[length + 1 + i]= i;
+				lengths[length + 1 + i]= 1;
+			}
+		}
+		assertSameResult(operation, content, offsets, lengths);
+	}
+
+	/**
+	 * Runs the operation with positions in the <code>keep</code> words at the start and the
+	 * end of the content, which do not touch the changed range.
+	 *
+	 * @return the content after the operation
+	 */
+	private String assertSameResultWithOuterPositions(TextFileBufferOperation operation, String content) throws Exception {
+		return assertSameResult(operation, content, new int[] { 1, content.length() - 3 }, new int[] { 2, 2 });
+	}
+
+	private static String trim(String content) {
+		StringBuffer buffer= new StringBuffer();
+		int lineStart= 0;
+		for (int i= 0; i <= content.length(); i++) {
+			if (i == content.length() || content.charAt(i) == '\r' || content.charAt(i) == '\n') {
+				int lineEnd= i;
+				while (lineEnd > lineStart && Character.isWhitespace(content.charAt(lineEnd - 1)))
+					lineEnd--;
+				buffer.append(content.substring(lineStart, lineEnd));
+				if (i < content.length())
+					buffer.append(content.charAt(i));
+				lineStart= i + 1;
+			}
+		}
+		return buffer.toString();
+	}
+
+	private static String convert(String content, String delimiter) {
+		return content.replaceAll("\r\n|\r|\n", delimiter); //$NON-NLS-1$
+	}
+
+	public void testRemoveTrailingWhitespace() throws Exception {
+		for (int i= 0; i < CONTENTS.length; i++) {
+			TrimOperation operation= new TrimOperation();
+			assertEquals(trim(CONTENTS[i]), assertSameResult(operation, CONTENTS[i]));
+			assertTrue(operation.fEdits <= 1);
+		}
+	}
+
+	public void testRemoveTrailingWhitespaceWithPositions() throws Exception {
+		for (int i= 0; i < CONTENTS.length; i++)
+			assertSameResultWithPositions(new RemoveTrailingWhitespaceOperation(), CONTENTS[i]);
+	}
+
+	public void testRemoveTrailingWhitespaceWithOuterPositions() throws Exception {
+		for (int i= 3; i < 7; i++) {
+			TrimOperation operation= new TrimOperation();
+			assertSameResultWithOuterPositions(operation, CONTENTS[i]);
+			assertEquals(1, operation.fEdits);
+		}
+	}
+
+	public void testConvertLineDelimiters() throws Exception {
+		for (int i= 0; i < CONTENTS.length; i++) {
+			for (int j= 0; j < DELIMITERS.length; j++) {
+				ConvertOperation operation= new ConvertOperation(DELIMITERS[j]);
+				assertEquals(convert(CONTENTS[i], DELIMITERS[j]), assertSameResult(operation, CONTENTS[i]));
+				assertTrue(operation.fEdits <= 1);
+			}
+		}
+	}
+
+	public void testConvertLineDelimitersWithPositions() throws Exception {
+		for (int i= 0; i < CONTENTS.length; i++) {
+			for (int j= 0; j < DELIMITERS.length; j++)
+				assertSameResultWithPositions(new ConvertLineDelimitersOperation(DELIMITERS[j]), CONTENTS[i]);
+		}
+	}
+
+	public void testConvertLineDelimitersWithOuterPositions() throws Exception {
+		for (int i= 3; i < 7; i++) {
+			for (int j= 0; j < DELIMITERS.length; j++)
+				assertSameResultWithOuterPositions(new ConvertLineDelimitersOperation(DELIMITERS[j]), CONTENTS[i]);
+		}
+	}
+
+	public void testPartitionPositionsDoNotPreventSinglePass() throws Exception {
+		IDocumentExtension3 extension= (IDocumentExtension3) fBuffer.getDocument();
+		SinglePartitioner partitioner= new SinglePartitioner();
+		partitioner.connect(fBuffer.getDocument());
+		extension.setDocumentPartitioner(PARTITIONING, partitioner);
+		try {
+			String content= CONTENTS[6];
+			TrimOperation trim= new TrimOperation();
+			assertEquals(trim(content), assertSameResultWithOuterPositions(trim, content));
+			assertEquals(1, trim.fEdits);
+
+			ConvertOperation convert= new ConvertOperation("\r\n"); //$NON-NLS-1$
+			assertEquals(convert(content, "\r\n"), assertSameResultWithOuterPositions(convert, content)); //$NON-NLS-1$
+			assertEquals(1, convert.fEdits);
+		} finally {
+			extension.setDocumentPartitioner(PARTITIONING, null);
+			partitioner.disconnect();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -61,6 +61,13 @@ public class ConvertLineDelimitersOperation extends TextFileBufferOperation {
 		progressMonitor.beginTask(FileBuffersMessages.ConvertLineDelimitersOperation_task_generatingChanges, lineCount);
 		try {
 
+			if (canScanContent(fileBuffer)) {
+				MultiTextEditWithProgress edit= computeContentEdit(document, progressMonitor);
+				if (edit != null)
+					return edit.getChildrenSize() <= 0 ? null : edit;
+				// positions overlap the changed range, use the edits of the individual lines
+			}
+
 			MultiTextEditWithProgress multiEdit= new MultiTextEditWithProgress(FileBuffersMessages.ConvertLineDelimitersOperation_task_applyingChanges);
 
 			for (int i= 0; i < lineCount; i++) {
@@ -84,6 +91,57 @@ public class ConvertLineDelimitersOperation extends TextFileBufferOperation {
 		}
 	}
 
+	/**
+	 * Computes the changed line delimiters in one pass over the content of the document.
+	 *
+	 * @param document the document
+	 * @param progressMonitor the progress monitor, one unit of work per line
+	 * @return an edit replacing the range from the first to the last changed line delimiter,
+	 *         an empty edit if no line delimiter is changed, or <code>null</code> if positions
+	 *         of the document overlap the changed range
+	 * @since 3.6
+	 */
+	private MultiTextEditWithProgress computeContentEdit(IDocument document, IProgressMonitor progressMonitor) {
+		String text= document.get();
+		int length= text.length();
+		StringBuffer buffer= null;
+		int first= -1;
+		int last= -1;
+		int bufferEnd= 0;
+		int lines= 0;
+		for (int i= 0; i < length; i++) {
+			char ch= text.charAt(i);
+			if (ch == '\r' || ch == '\n') {
+				int end= ch == '\r' && i + 1 < length && text.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+				if (end - i != fLineDelimiter.length() || !text.startsWith(fLineDelimiter, i)) {
+					if (buffer == null) {
+						buffer= new StringBuffer(length - i + fLineDelimiter.length());
+						first= i;
+					}
+					buffer.append(fLineDelimiter);
+					last= end;
+					bufferEnd= buffer.length();
+				} else if (buffer != null) {
+					buffer.append(fLineDelimiter);
+				}
+				i= end - 1;
+
+				if (++lines % PROGRESS_LINES == 0) {
+					if (progressMonitor.isCanceled())
+						throw new OperationCanceledException();
+					progressMonitor.worked(PROGRESS_LINES);
+				}
+			} else if (buffer != null) {
+				buffer.append(ch);
+			}
+		}
+
+		if (buffer == null)
+			return new MultiTextEditWithProgress(FileBuffersMessages.ConvertLineDelimitersOperation_task_applyingChanges);
+		buffer.setLength(bufferEnd);
+		return createReplaceEdit(document, first, last - first, buffer.toString(), FileBuffersMessages.ConvertLineDelimitersOperation_task_applyingChanges);
+	}
+
 	/*
 	 * @see org.eclipse.core.filebuffers.manipulation.TextFileBufferOperation#getDocumentRewriteSessionType()
 	 */
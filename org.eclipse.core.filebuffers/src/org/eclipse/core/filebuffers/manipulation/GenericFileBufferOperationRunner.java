@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2009 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,7 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.ISafeRunnable;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.Status;
@@ -42,6 +43,12 @@ import org.eclipse.core.filebuffers.LocationKind;
  * {@link org.eclipse.core.filebuffers.manipulation.IFileBufferOperation}.
  * The runner takes care of all aspects that are not operation specific.
  * <p>
+ * By default the file buffers are processed and committed one after the other. If
+ * a {@link #setMaxParallelism(int) maximal parallelism} is set, the operation is run
+ * on the file buffers which do not request a synchronization context by a number of
+ * jobs in parallel, and the file buffers are committed by the jobs in batches.
+ * </p>
+ * <p>
  * This class is not intended to be subclassed. Clients instantiate this class.
  * </p>
  *
@@ -51,6 +58,202 @@ import org.eclipse.core.filebuffers.LocationKind;
  */
 public class GenericFileBufferOperationRunner {
 
+	/**
+	 * The progress monitor passed to the jobs, canceled when the execution is canceled.
+	 *
+	 * @since 3.6
+	 */
+	private static class WorkerMonitor extends NullProgressMonitor {
+
+		/** The monitor of the executing thread, can be <code>null</code>. */
+		private final IProgressMonitor fParent;
+		/** The cancel state, written by the executing thread and read by the jobs. */
+		private volatile boolean fCanceled;
+
+		/**
+		 * Creates a new worker monitor.
+		 *
+		 * @param parent the monitor of the executing thread, or <code>null</code> if the
+		 *            jobs are not canceled with it
+		 */
+		public WorkerMonitor(IProgressMonitor parent) {
+			fParent= parent;
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.NullProgressMonitor#isCanceled()
+		 */
+		public boolean isCanceled() {
+			return fCanceled || fParent != null && fParent.isCanceled();
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.NullProgressMonitor#setCanceled(boolean)
+		 */
+		public void setCanceled(boolean canceled) {
+			fCanceled= canceled;
+		}
+	}
+
+	/**
+	 * Runs a task for a number of items by a number of jobs. Each job takes the next item
+	 * until all items are done, a task has failed, or the execution has been canceled.
+	 * The executing thread reports the progress and waits until all jobs are done.
+	 *
+	 * @since 3.6
+	 */
+	private static abstract class ParallelExecution {
+
+		/** The number of items. */
+		private final int fCount;
+		/** The monitor passed to the tasks. */
+		private WorkerMonitor fMonitor;
+		/** The lock guarding the state of the execution. */
+		private final Object fLock= new Object();
+		/** The index of the next item. */
+		private int fNextItem;
+		/** The work done by the tasks, not yet reported. */
+		private int fWorked;
+		/** The number of running jobs. */
+		private int fRunningJobs;
+		/** The first failure of a task, or <code>null</code>. */
+		private Throwable fThrowable;
+
+		/**
+		 * Creates a new parallel execution.
+		 *
+		 * @param count the number of items
+		 */
+		public ParallelExecution(int count) {
+			fCount= count;
+		}
+
+		/**
+		 * Runs the task for the item with the given index.
+		 *
+		 * @param index the index of the item
+		 * @param monitor the progress monitor, canceled when the execution is canceled
+		 * @return the amount of work done, reported to the monitor of the execution
+		 * @throws CoreException in case the task fails
+		 * @throws OperationCanceledException in case the task has been canceled
+		 */
+		protected abstract int run(int index, IProgressMonitor monitor) throws CoreException, OperationCanceledException;
+
+		/**
+		 * Runs the task for all items by the given number of jobs and waits until they
+		 * are done.
+		 *
+		 * @param name the name of the jobs
+		 * @param jobs the number of jobs
+		 * @param progressMonitor the progress monitor
+		 * @param cancelable <code>true</code> if the execution stops when the progress
+		 *            monitor is canceled, <code>false</code> if only a failure stops it
+		 * @throws CoreException if a task failed
+		 * @throws OperationCanceledException if the execution has been canceled
+		 */
+		public void execute(String name, int jobs, IProgressMonitor progressMonitor, boolean cancelable) throws CoreException, OperationCanceledException {
+			fMonitor= new WorkerMonitor(cancelable ? progressMonitor : null);
+			fRunningJobs= jobs;
+			for (int i= 0; i < jobs; i++)
+				schedule(name);
+
+			// wait for the jobs even if canceled, they may still hold scheduling rules
+			boolean interrupted= false;
+			boolean running= true;
+			while (running) {
+				int worked;
+				synchronized (fLock) {
+					if (fRunningJobs > 0) {
+						try {
+							fLock.wait(POLL_INTERVAL);
+						} catch (InterruptedException x) {
+							fMonitor.setCanceled(true);
+							interrupted= true;
+						}
+					}
+					running= fRunningJobs > 0;
+					worked= fWorked;
+					fWorked= 0;
+				}
+				if (worked > 0)
+					progressMonitor.worked(worked);
+			}
+			if (interrupted)
+				Thread.currentThread().interrupt();
+
+			if (fThrowable instanceof CoreException)
+				throw (CoreException) fThrowable;
+			if (fThrowable instanceof RuntimeException)
+				throw (RuntimeException) fThrowable;
+			if (fThrowable instanceof Error)
+				throw (Error) fThrowable;
+			if (fMonitor.isCanceled())
+				throw new OperationCanceledException();
+		}
+
+		private void schedule(String name) {
+			Job job= new Job(name) {
+				protected IStatus run(IProgressMonitor jobMonitor) {
+					try {
+						int index;
+						while ((index= nextItem()) != -1) {
+							int worked;
+							try {
+								worked= ParallelExecution.this.run(index, fMonitor);
+							} catch (Throwable x) {
+								synchronized (fLock) {
+									if (fThrowable == null)
+										fThrowable= x;
+								}
+								fMonitor.setCanceled(true);
+								break;
+							}
+							synchronized (fLock) {
+								fWorked+= worked;
+							}
+						}
+					} finally {
+						synchronized (fLock) {
+							fRunningJobs--;
+							fLock.notifyAll();
+						}
+					}
+					return Status.OK_STATUS;
+				}
+			};
+			job.setSystem(true);
+			job.schedule();
+		}
+
+		/**
+		 * Returns the index of the next item.
+		 *
+		 * @return the index of the next item, or <code>-1</code> if all items are taken or
+		 *         the execution has been canceled
+		 */
+		private int nextItem() {
+			synchronized (fLock) {
+				if (fNextItem == fCount || fMonitor.isCanceled())
+					return -1;
+				return fNextItem++;
+			}
+		}
+	}
+
+	/**
+	 * The maximal number of file buffers committed in one batch in parallel mode.
+	 *
+	 * @since 3.6
+	 */
+	private static final int MAX_BATCH_SIZE= 64;
+
+	/**
+	 * The interval in milliseconds in which the executing thread polls for cancellation.
+	 *
+	 * @since 3.6
+	 */
+	private static final long POLL_INTERVAL= 100;
+
 	/** The validation context */
 	private final Object fValidationContext;
 	/** The file buffer manager */
@@ -62,6 +265,13 @@ public class GenericFileBufferOperationRunner {
 	private transient boolean fIsCompleted;
 	/** The exception thrown during the computation in the UI thread. */
 	private transient Throwable fThrowable;
+	/**
+	 * The maximal number of jobs processing file buffers in parallel, <code>1</code>
+	 * if the file buffers are processed sequentially.
+	 *
+	 * @since 3.6
+	 */
+	private int fMaxParallelism= 1;
 
 
 	/**
@@ -75,6 +285,31 @@ public class GenericFileBufferOperationRunner {
 		fValidationContext= validationContext;
 	}
 
+	/**
+	 * Sets the maximal number of jobs which process file buffers in parallel. The default is
+	 * <code>1</code>, that is the file buffers are processed sequentially.
+	 * <p>
+	 * If more than one job is allowed, the operation is run in parallel on the file buffers
+	 * which do not request a synchronization context, and the file buffers are committed
+	 * in batches in parallel, each batch under its own commit rule. The operation must
+	 * therefore support being run on several file buffers concurrently. The file buffers
+	 * are still processed sequentially if the executing thread owns a scheduling rule.
+	 * </p>
+	 * <p>
+	 * <strong>Note:</strong> In parallel mode {@link #commit(IFileBuffer[], IProgressMonitor)},
+	 * {@link #computeCommitRule(IFileBuffer[])} and {@link #doCommit(IFileBuffer[], IProgressMonitor)}
+	 * are called from several jobs at the same time. Subclasses which override these methods
+	 * must not set a maximal parallelism unless their implementations are thread safe.
+	 * </p>
+	 *
+	 * @param maxParallelism the maximal number of jobs, a value less than <code>2</code>
+	 *            disables parallel processing
+	 * @since 3.6
+	 */
+	public void setMaxParallelism(int maxParallelism) {
+		fMaxParallelism= Math.max(1, maxParallelism);
+	}
+
 	/**
 	 * Executes the given operation for all file buffers specified by the given locations.
 	 *
@@ -103,7 +338,10 @@ public class GenericFileBufferOperationRunner {
 				throw new OperationCanceledException();
 
 			IFileBuffer[] unsynchronizedFileBuffers= findUnsynchronizedFileBuffers(fileBuffers);
-			performOperation(unsynchronizedFileBuffers, operation, progressMonitor) ;
+			if (getParallelism(unsynchronizedFileBuffers.length) > 1)
+				performOperationInParallel(unsynchronizedFileBuffers, operation, progressMonitor);
+			else
+				performOperation(unsynchronizedFileBuffers, operation, progressMonitor) ;
 
 			final IFileBuffer[] synchronizedFileBuffers= findSynchronizedFileBuffers(fileBuffers);
 			fIsCompleted= false;
@@ -145,7 +383,10 @@ public class GenericFileBufferOperationRunner {
 			}
 
 			subMonitor= Progress.getSubMonitor(progressMonitor, size * 80);
-			commit(fileBuffers2Save, subMonitor);
+			if (getParallelism(fileBuffers2Save.length) > 1)
+				commitInParallel(fileBuffers2Save, subMonitor);
+			else
+				commit(fileBuffers2Save, subMonitor);
 			subMonitor.done();
 
 		} finally {
@@ -191,6 +432,68 @@ public class GenericFileBufferOperationRunner {
 		}
 	}
 
+	/**
+	 * Returns the number of jobs to process the given number of items with.
+	 *
+	 * @param count the number of items
+	 * @return the number of jobs, <code>1</code> if the items are to be processed sequentially
+	 * @since 3.6
+	 */
+	private int getParallelism(int count) {
+		if (fMaxParallelism < 2 || count < 2 || Job.getJobManager().currentRule() != null)
+			return 1;
+		return Math.min(fMaxParallelism, count);
+	}
+
+	private void performOperationInParallel(final IFileBuffer[] fileBuffers, final IFileBufferOperation operation, IProgressMonitor progressMonitor) throws CoreException, OperationCanceledException {
+		ParallelExecution execution= new ParallelExecution(fileBuffers.length) {
+			protected int run(int index, IProgressMonitor monitor) throws CoreException, OperationCanceledException {
+				if (monitor.isCanceled())
+					throw new OperationCanceledException();
+				performOperation(fileBuffers[index], operation, monitor);
+				return 100;
+			}
+		};
+		execution.execute(operation.getOperationName(), getParallelism(fileBuffers.length), progressMonitor, true);
+	}
+
+	/**
+	 * Commits the given file buffers in batches by a number of jobs. Each batch is
+	 * committed with {@link #commit(IFileBuffer[], IProgressMonitor)}, that is under the
+	 * commit rule of the batch.
+	 *
+	 * @param fileBuffers the file buffers to commit
+	 * @param progressMonitor the progress monitor
+	 * @throws CoreException if committing a file buffer fails
+	 * @since 3.6
+	 */
+	private void commitInParallel(IFileBuffer[] fileBuffers, IProgressMonitor progressMonitor) throws CoreException {
+		int jobs= getParallelism(fileBuffers.length);
+		// use batches which are small enough to keep all jobs busy
+		int batchSize= Math.min(MAX_BATCH_SIZE, (fileBuffers.length + jobs * 4 - 1) / (jobs * 4));
+		final IFileBuffer[][] batches= new IFileBuffer[(fileBuffers.length + batchSize - 1) / batchSize][];
+		for (int i= 0; i < batches.length; i++) {
+			int offset= i * batchSize;
+			batches[i]= new IFileBuffer[Math.min(batchSize, fileBuffers.length - offset)];
+			System.arraycopy(fileBuffers, offset, batches[i], 0, batches[i].length);
+		}
+
+		IProgressMonitor monitor= Progress.getMonitor(progressMonitor);
+		monitor.beginTask(FileBuffersMessages.FileBufferOperationRunner_task_committing, fileBuffers.length);
+		try {
+			ParallelExecution execution= new ParallelExecution(batches.length) {
+				protected int run(int index, IProgressMonitor batchMonitor) throws CoreException {
+					commit(batches[index], batchMonitor);
+					return batches[index].length;
+				}
+			};
+			// like the sequential commit, the parallel commit is not canceled once started
+			execution.execute(FileBuffersMessages.FileBufferOperationRunner_task_committing, Math.min(jobs, batches.length), monitor, false);
+		} finally {
+			monitor.done();
+		}
+	}
+
 	private void executeInContext(Runnable runnable) {
 		ITextFileBufferManager fileBufferManager= FileBuffers.getTextFileBufferManager();
 		fileBufferManager.execute(runnable);
@@ -281,6 +584,18 @@ public class GenericFileBufferOperationRunner {
 		return new MultiRule(rules);
 	}
 
+	/**
+	 * Commits the given file buffers under their commit rule.
+	 * <p>
+	 * <strong>Note:</strong> If a {@link #setMaxParallelism(int) maximal parallelism} is set,
+	 * this method is called from several threads at the same time, each time with a
+	 * different batch of file buffers.
+	 * </p>
+	 *
+	 * @param fileBuffers the file buffers to commit
+	 * @param progressMonitor the progress monitor
+	 * @throws CoreException if committing a file buffer fails
+	 */
 	protected void commit(final IFileBuffer[] fileBuffers, final IProgressMonitor progressMonitor) throws CoreException {
 		IProgressMonitor monitor= Progress.getMonitor(progressMonitor);
 		ISchedulingRule rule= computeCommitRule(fileBuffers);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -54,6 +54,13 @@ public class RemoveTrailingWhitespaceOperation extends TextFileBufferOperation {
 		progressMonitor.beginTask(FileBuffersMessages.RemoveTrailingWhitespaceOperation_task_generatingChanges, lineCount);
 		try {
 
+			if (canScanContent(fileBuffer)) {
+				MultiTextEditWithProgress edit= computeContentEdit(document, progressMonitor);
+				if (edit != null)
+					return edit.getChildrenSize() <= 0 ? null : edit;
+				// positions overlap the changed range, use the edits of the individual lines
+			}
+
 			MultiTextEditWithProgress multiEdit= new MultiTextEditWithProgress(FileBuffersMessages.RemoveTrailingWhitespaceOperation_task_applyingChanges);
 
 			for (int i= 0; i < lineCount; i++) {
@@ -83,6 +90,74 @@ public class RemoveTrailingWhitespaceOperation extends TextFileBufferOperation {
 		}
 	}
 
+	/**
+	 * Computes the content without trailing whitespace in one pass over the content of the
+	 * document.
+	 *
+	 * @param document the document
+	 * @param progressMonitor the progress monitor, one unit of work per line
+	 * @return an edit replacing the range from the first to the last removed whitespace, an
+	 *         empty edit if there is no trailing whitespace, or <code>null</code> if positions
+	 *         of the document overlap the changed range
+	 * @since 3.6
+	 */
+	private MultiTextEditWithProgress computeContentEdit(IDocument document, IProgressMonitor progressMonitor) {
+		String text= document.get();
+		int length= text.length();
+		StringBuffer buffer= null;
+		int first= -1;
+		int last= -1;
+		int bufferEnd= 0;
+		// the start of the trailing whitespace of the current line and the buffer length there
+		int whitespace= -1;
+		int bufferWhitespace= 0;
+		int lines= 0;
+		for (int i= 0; i <= length; i++) {
+			char ch= i < length ? text.charAt(i) : '\n';
+			if (ch == '\r' || ch == '\n') {
+				if (whitespace != -1) {
+					if (buffer == null) {
+						buffer= new StringBuffer(length - whitespace);
+						first= whitespace;
+					}
+					buffer.setLength(bufferWhitespace);
+					last= i;
+					bufferEnd= buffer.length();
+					whitespace= -1;
+				}
+				if (i == length)
+					break;
+
+				int end= ch == '\r' && i + 1 < length && text.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+				if (buffer != null) {
+					for (int j= i; j < end; j++)
+						buffer.append(text.charAt(j));
+				}
+				i= end - 1;
+
+				if (++lines % PROGRESS_LINES == 0) {
+					if (progressMonitor.isCanceled())
+						throw new OperationCanceledException();
+					progressMonitor.worked(PROGRESS_LINES);
+				}
+			} else {
+				if (!Character.isWhitespace(ch)) {
+					whitespace= -1;
+				} else if (whitespace == -1) {
+					whitespace= i;
+					bufferWhitespace= buffer == null ? 0 : buffer.length();
+				}
+				if (buffer != null)
+					buffer.append(ch);
+			}
+		}
+
+		if (buffer == null)
+			return new MultiTextEditWithProgress(FileBuffersMessages.RemoveTrailingWhitespaceOperation_task_applyingChanges);
+		buffer.setLength(bufferEnd);
+		return createReplaceEdit(document, first, last - first, buffer.toString(), FileBuffersMessages.RemoveTrailingWhitespaceOperation_task_applyingChanges);
+	}
+
 	/*
 	 * @see org.eclipse.core.filebuffers.manipulation.TextFileBufferOperation#getDocumentRewriteSessionType()
 	 */
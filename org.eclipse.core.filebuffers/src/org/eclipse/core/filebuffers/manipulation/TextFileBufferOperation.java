@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,11 @@
  *******************************************************************************/
 package org.eclipse.core.filebuffers.manipulation;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.internal.filebuffers.FileBuffersPlugin;
 import org.eclipse.core.internal.filebuffers.Progress;
@@ -26,13 +30,16 @@ import org.eclipse.core.filebuffers.IFileBuffer;
 import org.eclipse.core.filebuffers.IFileBufferStatusCodes;
 import org.eclipse.core.filebuffers.ITextFileBuffer;
 
+import org.eclipse.text.edits.ReplaceEdit;
 import org.eclipse.text.edits.TextEdit;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DocumentRewriteSession;
 import org.eclipse.jface.text.DocumentRewriteSessionType;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.TextUtilities;
 
 /**
@@ -45,6 +52,20 @@ import org.eclipse.jface.text.TextUtilities;
  */
 public abstract class TextFileBufferOperation implements IFileBufferOperation {
 
+	/**
+	 * The line delimiters for which the lines can be found by scanning the text, sorted.
+	 *
+	 * @since 3.6
+	 */
+	private static final String[] DEFAULT_LINE_DELIMITERS= { "\n", "\r", "\r\n" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	/**
+	 * The number of lines after which a scan of the content reports progress.
+	 *
+	 * @since 3.6
+	 */
+	static final int PROGRESS_LINES= 1024;
+
 
 	/**
 	 * Computes and returns a text edit. Subclasses have to provide that method.
@@ -66,7 +87,6 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 
 
 	private String fOperationName;
-	private DocumentRewriteSession fDocumentRewriteSession;
 
 	/**
 	 * Creates a new operation with the given name.
@@ -115,13 +135,83 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 		}
 	}
 
+	/**
+	 * Tells whether the changes of the given text file buffer can be computed in one pass over
+	 * its content, and be applied as one replacement of the changed range. This is not the case
+	 * if the file buffer requests a synchronization context, that is it is shared with an editor
+	 * which needs the changes of the individual lines, or if its document does not use the
+	 * default line delimiters.
+	 *
+	 * @param fileBuffer the text file buffer
+	 * @return <code>true</code> if the content can be scanned, <code>false</code> otherwise
+	 * @since 3.6
+	 */
+	static boolean canScanContent(ITextFileBuffer fileBuffer) {
+		if (fileBuffer.isSynchronizationContextRequested())
+			return false;
+		String[] delimiters= (String[]) fileBuffer.getDocument().getLegalLineDelimiters().clone();
+		Arrays.sort(delimiters);
+		return Arrays.equals(delimiters, DEFAULT_LINE_DELIMITERS);
+	}
+
+	/**
+	 * Creates an edit which replaces the given range with the given text. The replacement
+	 * updates the positions of the document like the edits of the individual lines do, unless
+	 * a position overlaps or touches the range. The positions managed by the partitioners of
+	 * the document are not considered, the partitioners compute them from the changed content.
+	 *
+	 * @param document the document
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @param text the new text of the range
+	 * @param taskName the name of the task applying the edit
+	 * @return the edit, or <code>null</code> if a position of the document overlaps or touches
+	 *         the range
+	 * @since 3.6
+	 */
+	static MultiTextEditWithProgress createReplaceEdit(IDocument document, int offset, int length, String text, String taskName) {
+		int end= offset + length;
+		String[] categories= document.getPositionCategories();
+		String[] partitionCategories= TextUtilities.computePartitionManagingCategories(document);
+		Set ignoredCategories= partitionCategories == null ? Collections.EMPTY_SET : new HashSet(Arrays.asList(partitionCategories));
+		for (int i= 0; i < categories.length; i++) {
+			if (ignoredCategories.contains(categories[i]))
+				continue;
+
+			Position[] positions;
+			try {
+				positions= document.getPositions(categories[i]);
+			} catch (BadPositionCategoryException x) {
+				// the category has been removed concurrently
+				return null;
+			}
+			for (int j= 0; j < positions.length; j++) {
+				Position position= positions[j];
+				if (position.isDeleted())
+					continue;
+				// positions which do not touch the range are updated alike
+				int positionOffset= position.getOffset();
+				if (positionOffset <= end && positionOffset + position.getLength() >= offset)
+					return null;
+			}
+		}
+
+		MultiTextEditWithProgress edit= new MultiTextEditWithProgress(taskName);
+		edit.addChild(new ReplaceEdit(offset, length, text));
+		return edit;
+	}
+
+	/*
+	 * The state data is the rewrite session or the removed partitioners, it is not kept
+	 * in a field so that the operation can be run on several file buffers concurrently.
+	 */
 	private Object startRewriteSession(ITextFileBuffer fileBuffer) {
 		Object stateData= null;
 
 		IDocument document= fileBuffer.getDocument();
 		if (document instanceof IDocumentExtension4) {
 			IDocumentExtension4 extension= (IDocumentExtension4) document;
-			fDocumentRewriteSession= extension.startRewriteSession(getDocumentRewriteSessionType());
+			stateData= extension.startRewriteSession(getDocumentRewriteSessionType());
 		} else
 			stateData= TextUtilities.removeDocumentPartitioners(document);
 
@@ -132,8 +222,7 @@ public abstract class TextFileBufferOperation implements IFileBufferOperation {
 		IDocument document= fileBuffer.getDocument();
 		if (document instanceof IDocumentExtension4) {
 			IDocumentExtension4 extension= (IDocumentExtension4) document;
-			extension.stopRewriteSession(fDocumentRewriteSession);
-			fDocumentRewriteSession= null;
+			extension.stopRewriteSession((DocumentRewriteSession) stateData);
 		} else if (stateData instanceof Map)
 			TextUtilities.addDocumentPartitioners(document, (Map) stateData);
 	}
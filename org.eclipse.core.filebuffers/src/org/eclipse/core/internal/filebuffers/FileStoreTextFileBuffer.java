@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,18 +11,22 @@
  *******************************************************************************/
 package org.eclipse.core.internal.filebuffers;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
 import java.io.SequenceInputStream;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.IllegalCharsetNameException;
@@ -82,13 +86,15 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 	}
 
 	/**
-	 * Reader chunk size.
+	 * Size of the byte buffer used to read the content.
+	 * @since 3.6
 	 */
-	private static final int READER_CHUNK_SIZE= 2048;
+	private static final int BYTE_BUFFER_SIZE= 16 * 1024;
 	/**
-	 * Buffer size.
+	 * Minimum size of the character buffer into which the content is decoded.
+	 * @since 3.6
 	 */
-	private static final int BUFFER_SIZE= 8 * READER_CHUNK_SIZE;
+	private static final int MIN_CHAR_BUFFER_SIZE= 1024;
 	/**
 	 * Constant for representing the error status. This is considered a value object.
 	 */
@@ -565,11 +571,13 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 	 * @exception CoreException if the given stream can not be read
 	 */
 	private void setDocumentContent(IDocument document, IFileStore file, String encoding, boolean hasBOM, IProgressMonitor monitor) throws CoreException {
-		InputStream contentStream= getFileContents(file);
-		if (contentStream == null)
+		IFileInfo info= file.fetchInfo();
+		if (!info.exists())
 			return;
 
-		Reader in= null;
+		InputStream contentStream= file.openInputStream(EFS.NONE, null);
+		long length= info.getLength();
+
 		try {
 
 			if (encoding == null)
@@ -588,18 +596,33 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 						throw new IOException();
 					n += bytes;
 				} while (n < IContentDescription.BOM_UTF_8.length);
+				length -= n;
 			}
 
-			in= new BufferedReader(new InputStreamReader(contentStream, encoding), BUFFER_SIZE);
-			StringBuffer buffer= new StringBuffer(BUFFER_SIZE);
-			char[] readBuffer= new char[READER_CHUNK_SIZE];
-			int n= in.read(readBuffer);
-			while (n > 0) {
-				buffer.append(readBuffer, 0, n);
-				n= in.read(readBuffer);
+			Charset charset;
+			try {
+				charset= Charset.forName(encoding);
+			} catch (UnsupportedCharsetException ex) {
+				throw new UnsupportedEncodingException(encoding);
+			} catch (IllegalCharsetNameException ex) {
+				throw new UnsupportedEncodingException(encoding);
 			}
 
-			document.set(buffer.toString());
+			// Replace malformed input the same way as java.io.InputStreamReader
+			CharsetDecoder decoder= charset.newDecoder();
+			decoder.onMalformedInput(CodingErrorAction.REPLACE);
+			decoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+			ReadableByteChannel channel;
+			if (contentStream instanceof FileInputStream) {
+				FileChannel fileChannel= ((FileInputStream)contentStream).getChannel();
+				length= fileChannel.size() - fileChannel.position();
+				channel= fileChannel;
+			} else
+				channel= Channels.newChannel(contentStream);
+
+			CharBuffer content= decode(channel, decoder, length);
+			document.set(new String(content.array(), 0, content.position()));
 
 		} catch (IOException x) {
 			String msg= x.getMessage() == null ? "" : x.getMessage(); //$NON-NLS-1$
@@ -607,15 +630,53 @@ public class FileStoreTextFileBuffer extends FileStoreFileBuffer implements ITex
 			throw new CoreException(s);
 		} finally {
 			try {
-				if (in != null)
-					in.close();
-				else
-					contentStream.close();
+				contentStream.close();
 			} catch (IOException x) {
 			}
 		}
 	}
 
+	/**
+	 * Decodes the remaining bytes of the given channel into a single character buffer. The buffer
+	 * is sized from the expected number of bytes so that it usually does not need to grow.
+	 *
+	 * @param channel the channel to read from
+	 * @param decoder the decoder to use
+	 * @param length the expected number of bytes, may be inaccurate
+	 * @return the character buffer, positioned after the last decoded character
+	 * @exception IOException if the channel can not be read
+	 * @since 3.6
+	 */
+	private static CharBuffer decode(ReadableByteChannel channel, CharsetDecoder decoder, long length) throws IOException {
+		long capacity= (long)Math.ceil(Math.max(length, 0) * (double)decoder.maxCharsPerByte());
+		CharBuffer chars= CharBuffer.allocate((int)Math.min(Math.max(capacity, MIN_CHAR_BUFFER_SIZE), Integer.MAX_VALUE - 1));
+		ByteBuffer bytes= ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+		boolean endOfInput= false;
+		while (!endOfInput) {
+			endOfInput= channel.read(bytes) == -1;
+			bytes.flip();
+			while (decoder.decode(bytes, chars, endOfInput).isOverflow())
+				chars= grow(chars);
+			bytes.compact();
+		}
+		while (decoder.flush(chars).isOverflow())
+			chars= grow(chars);
+		return chars;
+	}
+
+	/**
+	 * Returns a character buffer with twice the capacity of the given buffer that contains the
+	 * characters written to the given buffer so far.
+	 *
+	 * @param chars the character buffer to grow
+	 * @return the new character buffer
+	 * @since 3.6
+	 */
+	private static CharBuffer grow(CharBuffer chars) {
+		chars.flip();
+		return CharBuffer.allocate(Math.max(2 * chars.capacity(), MIN_CHAR_BUFFER_SIZE)).put(chars);
+	}
+
 	/**
 	 * Checks whether the given file is synchronized with the local file system.
 	 * If the file has been changed, a <code>CoreException</code> is thrown.
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -40,8 +40,18 @@ public abstract class AbstractPairMatcherTest extends TestCase {
 
 	private final boolean fCaretEitherSideOfBracket;
 
+	private final boolean fUseIndex;
+
 	public AbstractPairMatcherTest(boolean caretEitherSideOfBracket) {
+		this(caretEitherSideOfBracket, false);
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public AbstractPairMatcherTest(boolean caretEitherSideOfBracket, boolean useIndex) {
 		fCaretEitherSideOfBracket= caretEitherSideOfBracket;
+		fUseIndex= useIndex;
 	}
 
 	/**
@@ -51,7 +61,7 @@ public abstract class AbstractPairMatcherTest extends TestCase {
 	 * @return the character pair matcher
 	 */
 	protected ICharacterPairMatcher createMatcher(final String chars) {
-		return new DefaultCharacterPairMatcher(chars.toCharArray(), getDocumentPartitioning(), fCaretEitherSideOfBracket);
+		return new DefaultCharacterPairMatcher(chars.toCharArray(), getDocumentPartitioning(), fCaretEitherSideOfBracket, fUseIndex);
 	}
 
 	/**
@@ -512,7 +522,7 @@ public abstract class AbstractPairMatcherTest extends TestCase {
 
 	private static String DEFAULT_PARTITION= IDocument.DEFAULT_CONTENT_TYPE;
 
-	private static IDocumentPartitioner createPartitioner() {
+	protected static IDocumentPartitioner createPartitioner() {
 		final RuleBasedPartitionScanner scan= new RuleBasedPartitionScanner();
 		final List/*<IPredicateRule>*/ rules= new ArrayList/*<IPredicateRule>*/();
 		rules.add(new SingleLineRule("|a", "a|", new Token("a")));
@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IPainter;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModel;
+import org.eclipse.jface.text.source.AnnotationPainter;
+import org.eclipse.jface.text.source.IAnnotationAccess;
+import org.eclipse.jface.text.source.SourceViewer;
+
+
+/**
+ * Tests that the {@link AnnotationPainter} applies annotation model events incrementally.
+ *
+ * @since 3.9
+ */
+public class AnnotationPainterTest extends TestCase {
+
+	private static final String TYPE= "org.eclipse.jface.text.tests.highlight"; //$NON-NLS-1$
+	private static final String STRATEGY= "highlight"; //$NON-NLS-1$
+	private static final int LINES= 200;
+
+	/**
+	 * Annotation model which counts the position queries done to compute the decorations.
+	 */
+	private static class CountingModel extends AnnotationModel {
+
+		private int fCount;
+
+		public Position getPosition(Annotation annotation) {
+			fCount++;
+			return super.getPosition(annotation);
+		}
+
+		int getAndResetCount() {
+			int count= fCount;
+			fCount= 0;
+			return count;
+		}
+	}
+
+	private Shell fShell;
+	private SourceViewer fViewer;
+	private AnnotationPainter fPainter;
+	private Document fDocument;
+	private CountingModel fModel;
+	private Color fColor;
+
+	public static Test suite() {
+		return new TestSuite(AnnotationPainterTest.class);
+	}
+
+	protected void setUp() throws BadLocationException {
+		fShell= new Shell();
+		fShell.setLayout(new FillLayout());
+		fShell.setSize(400, 400);
+		fColor= fShell.getDisplay().getSystemColor(SWT.COLOR_RED);
+
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < LINES; i++)
+			buffer.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		fDocument= new Document(buffer.toString());
+
+		fModel= new CountingModel();
+		for (int i= 0; i < LINES; i += 2)
+			fModel.addAnnotation(new Annotation(TYPE, false, null), new Position(fDocument.getLineOffset(i), 4));
+
+		fViewer= new SourceViewer(fShell, null, SWT.NONE);
+		fViewer.setDocument(fDocument, fModel);
+		fShell.layout();
+
+		IAnnotationAccess access= new IAnnotationAccess() {
+			public Object getType(Annotation annotation) {
+				return annotation.getType();
+			}
+			public boolean isMultiLine(Annotation annotation) {
+				return true;
+			}
+			public boolean isTemporary(Annotation annotation) {
+				return !annotation.isPersistent();
+			}
+		};
+		fPainter= new AnnotationPainter(fViewer, access);
+		fPainter.addTextStyleStrategy(STRATEGY, new AnnotationPainter.HighlightingStrategy());
+		fPainter.addAnnotationType(TYPE, STRATEGY);
+		fPainter.setAnnotationTypeColor(TYPE, fColor);
+		fViewer.addPainter(fPainter);
+		fViewer.addTextPresentationListener(fPainter);
+		fPainter.paint(IPainter.CONFIGURATION);
+		runEventLoop();
+		fModel.getAndResetCount();
+	}
+
+	protected void tearDown() {
+		fShell.dispose();
+	}
+
+	private void runEventLoop() {
+		Display display= fShell.getDisplay();
+		while (display.readAndDispatch()) {
+			// process all pending events
+		}
+	}
+
+	private boolean isHighlighted(int line) throws BadLocationException {
+		StyleRange range= fViewer.getTextWidget().getStyleRangeAtOffset(fDocument.getLineOffset(line) + 1);
+		return range != null && fColor.equals(range.background);
+	}
+
+	public void testInitialHighlighting() throws BadLocationException {
+		assertTrue(isHighlighted(0));
+		assertFalse(isHighlighted(1));
+		assertTrue(isHighlighted(LINES - 2));
+	}
+
+	public void testAddAnnotation() throws BadLocationException {
+		fModel.addAnnotation(new Annotation(TYPE, false, null), new Position(fDocument.getLineOffset(1), 4));
+		runEventLoop();
+		assertTrue(fModel.getAndResetCount() < 10);
+		assertTrue(isHighlighted(1));
+		assertTrue(isHighlighted(0));
+		assertTrue(isHighlighted(2));
+	}
+
+	public void testOutdatedEvents() throws BadLocationException {
+		Annotation added= new Annotation(TYPE, false, null);
+		Annotation removed= new Annotation(TYPE, false, null);
+
+		// the events of these changes are outdated by the later changes when they are processed
+		fModel.addAnnotation(added, new Position(fDocument.getLineOffset(1), 4));
+		fModel.addAnnotation(removed, new Position(fDocument.getLineOffset(3), 4));
+		fModel.removeAnnotation(removed);
+		fModel.addAnnotation(new Annotation(TYPE, false, null), new Position(fDocument.getLineOffset(5), 4));
+		runEventLoop();
+
+		assertTrue(fModel.getAndResetCount() < 20);
+		assertTrue(isHighlighted(1));
+		assertFalse(isHighlighted(3));
+		assertTrue(isHighlighted(5));
+		assertTrue(isHighlighted(0));
+	}
+
+	public void testRemoveAnnotationAfterEdit() throws BadLocationException {
+		Annotation annotation= new Annotation(TYPE, false, null);
+		fModel.addAnnotation(annotation, new Position(fDocument.getLineOffset(7), 4));
+		runEventLoop();
+		assertTrue(isHighlighted(7));
+
+		fDocument.replace(0, 0, "new line\n"); //$NON-NLS-1$
+		runEventLoop();
+		assertTrue(isHighlighted(8));
+
+		fModel.removeAnnotation(annotation);
+		runEventLoop();
+		assertFalse(isHighlighted(8));
+		assertTrue(isHighlighted(1));
+	}
+}
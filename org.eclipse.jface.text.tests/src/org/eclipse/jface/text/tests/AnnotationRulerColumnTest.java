@@ -0,0 +1,290 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.JFaceTextUtil;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModel;
+import org.eclipse.jface.text.source.AnnotationRulerColumn;
+import org.eclipse.jface.text.source.CompositeRuler;
+import org.eclipse.jface.text.source.IAnnotationAccess;
+import org.eclipse.jface.text.source.IAnnotationAccessExtension;
+import org.eclipse.jface.text.source.SourceViewer;
+
+
+/**
+ * Tests that the {@link AnnotationRulerColumn} paints the annotations on the right lines
+ * after text changes and annotation model changes, although it caches the annotations
+ * per line.
+ *
+ * @since 3.9
+ */
+public class AnnotationRulerColumnTest extends TestCase {
+
+	private static final String TYPE= "org.eclipse.jface.text.tests.column"; //$NON-NLS-1$
+	private static final int LINES= 100;
+
+	/**
+	 * Annotation access which records the lines on which the annotations are painted.
+	 */
+	private class Access implements IAnnotationAccess, IAnnotationAccessExtension {
+
+		public Object getType(Annotation annotation) {
+			return annotation.getType();
+		}
+
+		public boolean isMultiLine(Annotation annotation) {
+			return true;
+		}
+
+		public boolean isTemporary(Annotation annotation) {
+			return !annotation.isPersistent();
+		}
+
+		public String getTypeLabel(Annotation annotation) {
+			return null;
+		}
+
+		public int getLayer(Annotation annotation) {
+			return 0;
+		}
+
+		public void paint(Annotation annotation, GC gc, Canvas canvas, Rectangle bounds) {
+			int lineHeight= fViewer.getTextWidget().getLineHeight();
+			int startLine= (bounds.y + fViewer.getTextWidget().getTopPixel()) / lineHeight;
+			int endLine= startLine + bounds.height / lineHeight - 1;
+			assertNull(fPainted.put(annotation, new Region(startLine, endLine - startLine)));
+		}
+
+		public boolean isPaintable(Annotation annotation) {
+			return true;
+		}
+
+		public boolean isSubtype(Object annotationType, Object potentialSupertype) {
+			return annotationType.equals(potentialSupertype);
+		}
+
+		public Object[] getSupertypes(Object annotationType) {
+			return new Object[] { annotationType };
+		}
+	}
+
+	/**
+	 * Annotation model which records the lines for which annotations are queried.
+	 */
+	private class RecordingModel extends AnnotationModel {
+
+		public Iterator getAnnotationIterator(int offset, int length, boolean canStartBefore, boolean canEndAfter) {
+			try {
+				// the queried range ends one character after the last line
+				int startLine= fDocument.getLineOfOffset(offset);
+				int endLine= fDocument.getLineOfOffset(offset + length - 2);
+				fQueriedLines.add(new Region(startLine, endLine - startLine));
+			} catch (BadLocationException x) {
+				fail();
+			}
+			return super.getAnnotationIterator(offset, length, canStartBefore, canEndAfter);
+		}
+	}
+
+	private Shell fShell;
+	private SourceViewer fViewer;
+	private AnnotationRulerColumn fColumn;
+	private Document fDocument;
+	private AnnotationModel fModel;
+	private final Map fPainted= new HashMap();
+	private final List fQueriedLines= new ArrayList();
+
+	public static Test suite() {
+		return new TestSuite(AnnotationRulerColumnTest.class);
+	}
+
+	protected void setUp() throws BadLocationException {
+		fShell= new Shell();
+		fShell.setLayout(new FillLayout());
+		fShell.setSize(400, 800);
+
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < LINES; i++)
+			buffer.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		fDocument= new Document(buffer.toString());
+
+		fModel= new RecordingModel();
+		fModel.connect(fDocument);
+		addAnnotation(2, 0);
+		addAnnotation(4, 0);
+		addAnnotation(4, 0);
+		addAnnotation(6, 3);
+		addAnnotation(12, 0);
+
+		CompositeRuler ruler= new CompositeRuler();
+		fColumn= new AnnotationRulerColumn(fModel, 12, new Access());
+		fColumn.addAnnotationType(TYPE);
+		ruler.addDecorator(0, fColumn);
+		fViewer= new SourceViewer(fShell, ruler, SWT.V_SCROLL);
+		fViewer.setDocument(fDocument);
+		fShell.layout();
+		assertTrue(JFaceTextUtil.getPartialBottomIndex(fViewer) > 20);
+
+		paint();
+	}
+
+	protected void tearDown() {
+		fModel.disconnect(fDocument);
+		fShell.dispose();
+	}
+
+	private Annotation addAnnotation(int line, int lines) throws BadLocationException {
+		Annotation annotation= new Annotation(TYPE, false, null);
+		int offset= fDocument.getLineOffset(line);
+		fModel.addAnnotation(annotation, new Position(offset, fDocument.getLineOffset(line + lines) + 4 - offset));
+		return annotation;
+	}
+
+	/**
+	 * Paints the column, after the pending redraw requests. Records the queried lines
+	 * of all these paints, but only the annotations painted by the last one.
+	 */
+	private void paint() {
+		fQueriedLines.clear();
+		Display display= fShell.getDisplay();
+		while (display.readAndDispatch()) {
+			// process all pending events
+		}
+		fPainted.clear();
+		fColumn.redraw();
+	}
+
+	/**
+	 * Checks that all annotations of the model are painted on the lines they cover.
+	 *
+	 * @throws BadLocationException if a position is invalid
+	 */
+	private void assertPainted() throws BadLocationException {
+		Map expected= new HashMap();
+		for (Iterator e= fModel.getAnnotationIterator(); e.hasNext();) {
+			Annotation annotation= (Annotation) e.next();
+			Position position= fModel.getPosition(annotation);
+			int startLine= fDocument.getLineOfOffset(position.getOffset());
+			int endLine= fDocument.getLineOfOffset(position.getOffset() + Math.max(position.getLength() - 1, 0));
+			expected.put(annotation, new Region(startLine, endLine - startLine));
+		}
+		assertEquals(expected, fPainted);
+	}
+
+	private void assertQueried(int startLine, int endLine) {
+		assertEquals(1, fQueriedLines.size());
+		assertEquals(new Region(startLine, endLine - startLine), fQueriedLines.get(0));
+	}
+
+	public void testInitialPaint() throws BadLocationException {
+		assertEquals(5, fPainted.size());
+		assertPainted();
+	}
+
+	public void testEditWithinLine() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(4) + 2, 0, "xx"); //$NON-NLS-1$
+		paint();
+		assertPainted();
+		assertQueried(4, 4);
+	}
+
+	public void testInsertLine() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(3), 0, "new\n"); //$NON-NLS-1$
+		paint();
+		assertPainted();
+		assertQueried(3, 4);
+	}
+
+	public void testInsertLineInMultiLineAnnotation() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(7), 0, "new\nnew\n"); //$NON-NLS-1$
+		paint();
+		assertPainted();
+		assertQueried(6, 11);
+	}
+
+	public void testRemoveLines() throws BadLocationException {
+		int offset= fDocument.getLineOffset(3);
+		fDocument.replace(offset, fDocument.getLineOffset(5) - offset, ""); //$NON-NLS-1$
+		paint();
+		assertPainted();
+	}
+
+	public void testReplaceLines() throws BadLocationException {
+		int offset= fDocument.getLineOffset(1);
+		fDocument.replace(offset, fDocument.getLineOffset(4) - offset, "a\nb\nc\nd\ne\n"); //$NON-NLS-1$
+		paint();
+		assertPainted();
+	}
+
+	public void testJoinLines() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(5) - 1, 1, ""); //$NON-NLS-1$
+		paint();
+		assertPainted();
+	}
+
+	public void testAddAnnotation() throws BadLocationException {
+		addAnnotation(10, 1);
+		paint();
+		assertEquals(6, fPainted.size());
+		assertPainted();
+		assertQueried(10, 11);
+	}
+
+	public void testRemoveAnnotation() throws BadLocationException {
+		Annotation annotation= addAnnotation(10, 0);
+		paint();
+		fModel.removeAnnotation(annotation);
+		paint();
+		assertEquals(5, fPainted.size());
+		assertPainted();
+	}
+
+	public void testMoveAnnotation() throws BadLocationException {
+		Annotation annotation= addAnnotation(10, 0);
+		paint();
+		fModel.modifyAnnotationPosition(annotation, new Position(fDocument.getLineOffset(15), 2));
+		paint();
+		assertPainted();
+	}
+
+	public void testEditAndMoveAnnotation() throws BadLocationException {
+		Annotation annotation= addAnnotation(10, 0);
+		paint();
+		fDocument.replace(fDocument.getLineOffset(1), 0, "new\n"); //$NON-NLS-1$
+		fModel.modifyAnnotationPosition(annotation, new Position(fDocument.getLineOffset(3), 2));
+		fDocument.replace(fDocument.getLineOffset(8), 0, "new\nnew\n"); //$NON-NLS-1$
+		paint();
+		assertPainted();
+	}
+}
@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.TextAttribute;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TextViewer;
+import org.eclipse.jface.text.presentation.PresentationReconciler;
+import org.eclipse.jface.text.rules.BackgroundDamagerRepairer;
+import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
+import org.eclipse.jface.text.rules.IRule;
+import org.eclipse.jface.text.rules.IToken;
+import org.eclipse.jface.text.rules.ITokenScanner;
+import org.eclipse.jface.text.rules.RuleBasedScanner;
+import org.eclipse.jface.text.rules.SingleLineRule;
+import org.eclipse.jface.text.rules.Token;
+
+
+/**
+ * Tests the background repair mode of the {@link PresentationReconciler}.
+ *
+ * @since 3.9
+ */
+public class BackgroundRepairTest extends TestCase {
+
+	private static final long TIMEOUT= 5000;
+
+	/**
+	 * Scanner which counts the scanned ranges and can be told to block until released.
+	 */
+	private static class GatedScanner implements ITokenScanner {
+
+		private final ITokenScanner fScanner;
+		private boolean fOpen= true;
+		private int fRangeCount;
+
+		GatedScanner(ITokenScanner scanner) {
+			fScanner= scanner;
+		}
+
+		synchronized void close() {
+			fOpen= false;
+		}
+
+		synchronized void open() {
+			fOpen= true;
+			notifyAll();
+		}
+
+		synchronized int getRangeCount() {
+			return fRangeCount;
+		}
+
+		synchronized void waitForRangeCount(int count) throws InterruptedException {
+			long end= System.currentTimeMillis() + TIMEOUT;
+			while (fRangeCount < count && System.currentTimeMillis() < end)
+				wait(50);
+			assertTrue("scanner has not been called", fRangeCount >= count);
+		}
+
+		public void setRange(IDocument document, int offset, int length) {
+			synchronized (this) {
+				++fRangeCount;
+				notifyAll();
+				long end= System.currentTimeMillis() + TIMEOUT;
+				while (!fOpen && System.currentTimeMillis() < end) {
+					try {
+						wait(50);
+					} catch (InterruptedException e) {
+						break;
+					}
+				}
+			}
+			fScanner.setRange(document, offset, length);
+		}
+
+		public IToken nextToken() {
+			return fScanner.nextToken();
+		}
+
+		public int getTokenOffset() {
+			return fScanner.getTokenOffset();
+		}
+
+		public int getTokenLength() {
+			return fScanner.getTokenLength();
+		}
+	}
+
+	private Shell fShell;
+	private TextViewer fViewer;
+	private IDocument fDocument;
+	private PresentationReconciler fReconciler;
+	private GatedScanner fScanner;
+	private GatedScanner fBackgroundScanner;
+	private List fAppliedExtents;
+
+	public static Test suite() {
+		return new TestSuite(BackgroundRepairTest.class);
+	}
+
+	protected void setUp() {
+		fShell= new Shell();
+		fAppliedExtents= new ArrayList();
+		fViewer= new TextViewer(fShell, SWT.NONE) {
+			public void changeTextPresentation(TextPresentation presentation, boolean controlRedraw) {
+				fAppliedExtents.add(presentation.getExtent());
+				super.changeTextPresentation(presentation, controlRedraw);
+			}
+		};
+		fScanner= new GatedScanner(createScanner());
+		fBackgroundScanner= new GatedScanner(createScanner());
+		fDocument= new Document("a 'b' c\nd e f\n");
+	}
+
+	protected void tearDown() {
+		fScanner.open();
+		fBackgroundScanner.open();
+		if (fReconciler != null)
+			fReconciler.uninstall();
+		fShell.dispose();
+	}
+
+	private RuleBasedScanner createScanner() {
+		RuleBasedScanner scanner= new RuleBasedScanner();
+		scanner.setRules(new IRule[] { new SingleLineRule("'", "'", new Token(new TextAttribute(null, null, SWT.BOLD))) });
+		scanner.setDefaultReturnToken(new Token(new TextAttribute(null)));
+		return scanner;
+	}
+
+	private void install(DefaultDamagerRepairer damagerRepairer) {
+		fReconciler= new PresentationReconciler();
+		fReconciler.setBackgroundRepairEnabled(true);
+		fReconciler.setDamager(damagerRepairer, IDocument.DEFAULT_CONTENT_TYPE);
+		fReconciler.setRepairer(damagerRepairer, IDocument.DEFAULT_CONTENT_TYPE);
+		fReconciler.install(fViewer);
+		fViewer.setDocument(fDocument);
+	}
+
+	private int getFontStyle(int offset) {
+		StyleRange range= fViewer.getTextWidget().getStyleRangeAtOffset(offset);
+		return range == null ? SWT.NORMAL : range.fontStyle;
+	}
+
+	private void runEventLoop() {
+		Display display= fShell.getDisplay();
+		while (display.readAndDispatch()) {
+			// process all pending events
+		}
+	}
+
+	private void waitForFontStyle(int offset, int fontStyle) throws InterruptedException {
+		long end= System.currentTimeMillis() + TIMEOUT;
+		while (System.currentTimeMillis() < end) {
+			runEventLoop();
+			if (getFontStyle(offset) == fontStyle)
+				return;
+			Thread.sleep(10);
+		}
+		fail("presentation has not been repaired at " + offset);
+	}
+
+	public void testBackgroundRepair() throws Exception {
+		install(new BackgroundDamagerRepairer(fScanner, fBackgroundScanner));
+		waitForFontStyle(3, SWT.BOLD);
+		int scannerCount= fScanner.getRangeCount();
+
+		fDocument.replace(10, 1, "'e'");
+		assertEquals(SWT.NORMAL, getFontStyle(11));
+
+		waitForFontStyle(11, SWT.BOLD);
+		assertEquals(scannerCount, fScanner.getRangeCount());
+		assertEquals(SWT.BOLD, getFontStyle(3));
+		assertEquals(SWT.NORMAL, getFontStyle(14));
+	}
+
+	public void testNewEditDiscardsOutdatedRepair() throws Exception {
+		install(new BackgroundDamagerRepairer(fScanner, fBackgroundScanner));
+		waitForFontStyle(3, SWT.BOLD);
+		int backgroundCount= fBackgroundScanner.getRangeCount();
+
+		fBackgroundScanner.close();
+		fDocument.replace(10, 1, "'e'");
+		fBackgroundScanner.waitForRangeCount(backgroundCount + 1);
+
+		// the repair being computed is outdated by this change
+		fDocument.replace(0, 0, "zz");
+		fAppliedExtents.clear();
+		fBackgroundScanner.open();
+
+		waitForFontStyle(13, SWT.BOLD);
+		runEventLoop();
+		assertEquals(1, fAppliedExtents.size());
+		IRegion extent= (IRegion) fAppliedExtents.get(0);
+		assertTrue(extent.getOffset() <= 5 && extent.getOffset() + extent.getLength() >= 14);
+		assertEquals(SWT.BOLD, getFontStyle(5));
+		assertEquals(SWT.NORMAL, getFontStyle(11));
+	}
+
+	public void testSynchronousFallback() throws Exception {
+		install(new DefaultDamagerRepairer(fScanner));
+		assertEquals(SWT.BOLD, getFontStyle(3));
+		int backgroundCount= fBackgroundScanner.getRangeCount();
+
+		fDocument.replace(10, 1, "'e'");
+		assertEquals(SWT.BOLD, getFontStyle(11));
+		assertEquals(backgroundCount, fBackgroundScanner.getRangeCount());
+	}
+
+	public void testDisablingRepairsPendingDamage() throws Exception {
+		install(new BackgroundDamagerRepairer(fScanner, fBackgroundScanner));
+		waitForFontStyle(3, SWT.BOLD);
+		int backgroundCount= fBackgroundScanner.getRangeCount();
+
+		fBackgroundScanner.close();
+		fDocument.replace(10, 1, "'e'");
+		fBackgroundScanner.waitForRangeCount(backgroundCount + 1);
+
+		fReconciler.setBackgroundRepairEnabled(false);
+		assertEquals(SWT.BOLD, getFontStyle(11));
+
+		fBackgroundScanner.open();
+		fDocument.replace(0, 1, "x");
+		assertEquals(SWT.BOLD, getFontStyle(3));
+		assertEquals(SWT.BOLD, getFontStyle(11));
+	}
+
+	public void testPartialSnapshot() throws BadLocationException, InterruptedException {
+		install(new BackgroundDamagerRepairer(fScanner, fBackgroundScanner));
+		waitForFontStyle(3, SWT.BOLD);
+
+		// the snapshot only contains the last line
+		fDocument.replace(14, 0, "g 'h' i");
+		waitForFontStyle(17, SWT.BOLD);
+		assertEquals(SWT.NORMAL, getFontStyle(14));
+		assertEquals(SWT.BOLD, getFontStyle(3));
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+import org.eclipse.jface.text.CompactTextPresentation;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextPresentation;
+
+
+/**
+ * Compares {@link CompactTextPresentation} with {@link TextPresentation}.
+ *
+ * @since 3.9
+ */
+public class CompactTextPresentationTest extends TestCase {
+
+	public static Test suite() {
+		return new TestSuite(CompactTextPresentationTest.class);
+	}
+
+	private StyleRange createStyleRange(int start, int length, int style, boolean strikeout, boolean underline) {
+		StyleRange range= new StyleRange(start, length, null, null, style);
+		range.strikeout= strikeout;
+		range.underline= underline;
+		return range;
+	}
+
+	private StyleRange createRandomStyleRange(Random random, int start, int length) {
+		int style= random.nextBoolean() ? SWT.BOLD : random.nextBoolean() ? SWT.ITALIC : SWT.NORMAL;
+		return createStyleRange(start, length, style, random.nextInt(4) == 0, random.nextInt(4) == 0);
+	}
+
+	private StyleRange[] createRandomStyleRanges(Random random, int limit) {
+		List ranges= new ArrayList();
+		int offset= random.nextInt(20);
+		while (offset < limit) {
+			int length= random.nextInt(15);
+			ranges.add(createRandomStyleRange(random, offset, length));
+			offset += length + random.nextInt(10);
+		}
+		return (StyleRange[]) ranges.toArray(new StyleRange[ranges.size()]);
+	}
+
+	private StyleRange[] copy(StyleRange[] ranges) {
+		StyleRange[] copy= new StyleRange[ranges.length];
+		for (int i= 0; i < ranges.length; i++)
+			copy[i]= (StyleRange) ranges[i].clone();
+		return copy;
+	}
+
+	private void assertSameRanges(Iterator expected, Iterator actual) {
+		while (expected.hasNext()) {
+			assertTrue(actual.hasNext());
+			assertEquals(expected.next(), actual.next());
+		}
+		assertFalse(actual.hasNext());
+	}
+
+	private void assertSamePresentation(TextPresentation expected, TextPresentation actual) {
+		assertEquals(expected.getDenumerableRanges(), actual.getDenumerableRanges());
+		assertSameRanges(expected.getAllStyleRangeIterator(), actual.getAllStyleRangeIterator());
+		assertSameRanges(expected.getNonDefaultStyleRangeIterator(), actual.getNonDefaultStyleRangeIterator());
+		assertEquals(expected.getFirstStyleRange(), actual.getFirstStyleRange());
+		assertEquals(expected.getLastStyleRange(), actual.getLastStyleRange());
+		assertEquals(expected.getCoverage(), actual.getCoverage());
+		assertEquals(expected.isEmpty(), actual.isEmpty());
+	}
+
+	private void runRandomTest(long seed, boolean withDefaultRange) {
+		Random random= new Random(seed);
+		TextPresentation expected= new TextPresentation();
+		TextPresentation actual= new CompactTextPresentation();
+		if (withDefaultRange) {
+			StyleRange defaultRange= createStyleRange(0, 400, SWT.NORMAL, false, false);
+			expected.setDefaultStyleRange(defaultRange);
+			actual.setDefaultStyleRange((StyleRange) defaultRange.clone());
+		}
+
+		for (int i= 0; i < 300; i++) {
+			switch (random.nextInt(5)) {
+				case 0: {
+					StyleRange range= createRandomStyleRange(random, random.nextInt(400), random.nextInt(40));
+					expected.mergeStyleRange((StyleRange) range.clone());
+					actual.mergeStyleRange(range);
+					break;
+				}
+				case 1: {
+					StyleRange range= createRandomStyleRange(random, random.nextInt(400), random.nextInt(40));
+					expected.replaceStyleRange((StyleRange) range.clone());
+					actual.replaceStyleRange(range);
+					break;
+				}
+				case 2: {
+					StyleRange[] ranges= createRandomStyleRanges(random, 400);
+					expected.mergeStyleRanges(copy(ranges));
+					actual.mergeStyleRanges(ranges);
+					break;
+				}
+				case 3: {
+					StyleRange[] ranges= createRandomStyleRanges(random, 400);
+					expected.replaceStyleRanges(copy(ranges));
+					actual.replaceStyleRanges(ranges);
+					break;
+				}
+				default: {
+					Region window= new Region(random.nextInt(300), random.nextInt(200));
+					expected.setResultWindow(window);
+					actual.setResultWindow(window);
+					assertSamePresentation(expected, actual);
+					expected.setResultWindow(null);
+					actual.setResultWindow(null);
+				}
+			}
+			assertSamePresentation(expected, actual);
+		}
+	}
+
+	public void testRandomChanges() {
+		for (int seed= 0; seed < 20; seed++)
+			runRandomTest(seed, false);
+	}
+
+	public void testRandomChangesWithDefaultRange() {
+		for (int seed= 0; seed < 20; seed++)
+			runRandomTest(seed, true);
+	}
+
+	public void testAddStyleRange() {
+		TextPresentation presentation= new CompactTextPresentation();
+		presentation.setDefaultStyleRange(createStyleRange(0, 100, SWT.NORMAL, false, false));
+		StyleRange range= createStyleRange(10, 20, SWT.BOLD, false, false);
+		presentation.addStyleRange(range);
+		presentation.addStyleRange(createStyleRange(30, 10, SWT.NORMAL, false, false));
+
+		assertEquals(10, range.start);
+		assertEquals(20, range.length);
+		assertEquals(2, presentation.getDenumerableRanges());
+		Iterator e= presentation.getNonDefaultStyleRangeIterator();
+		assertEquals(range, e.next());
+		assertFalse(e.hasNext());
+	}
+
+	public void testStylesAreShared() {
+		CompactTextPresentation presentation= new CompactTextPresentation();
+		for (int i= 0; i < 1000; i++)
+			presentation.addStyleRange(createStyleRange(i * 10, 5, i % 2 == 0 ? SWT.BOLD : SWT.ITALIC, false, false));
+
+		StyleRange[] ranges= new StyleRange[1000];
+		for (int i= 0; i < ranges.length; i++)
+			ranges[i]= createStyleRange(i * 10 + 3, 4, SWT.NORMAL, false, true);
+		presentation.mergeStyleRanges(ranges);
+
+		assertEquals(3000, presentation.getDenumerableRanges());
+		assertEquals(5, presentation.getStyleCount());
+	}
+
+	public void testClear() {
+		TextPresentation presentation= new CompactTextPresentation();
+		presentation.addStyleRange(createStyleRange(10, 20, SWT.BOLD, false, false));
+		presentation.clear();
+		assertTrue(presentation.isEmpty());
+		assertNull(presentation.getFirstStyleRange());
+		assertFalse(presentation.getAllStyleRangeIterator().hasNext());
+	}
+}
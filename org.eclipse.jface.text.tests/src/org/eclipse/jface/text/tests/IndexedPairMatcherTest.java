@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.DocumentRewriteSessionType;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.source.DefaultCharacterPairMatcher;
+
+
+/**
+ * Tests for the default pair matcher with an index of the document.
+ *
+ * @since 3.9
+ */
+public class IndexedPairMatcherTest extends AbstractPairMatcherTest {
+
+	private static final String[] TOKENS= { "(", ")", "[", "]", "{", "}", " ", "x", "\n", "|a", "a|", "|b", "b|" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$ //$NON-NLS-10$ //$NON-NLS-11$ //$NON-NLS-12$ //$NON-NLS-13$
+
+	private static final char[] PAIRS= "()[]{}".toCharArray(); //$NON-NLS-1$
+
+	private Random fRandom;
+
+	private Document fDocument;
+
+	private DefaultCharacterPairMatcher fIndexed;
+
+	private DefaultCharacterPairMatcher fScanning;
+
+	public IndexedPairMatcherTest() {
+		super(true, true);
+	}
+
+	public static Test suite() {
+		return new TestSuite(IndexedPairMatcherTest.class);
+	}
+
+	protected void setUp() {
+		fRandom= new Random(42);
+		fDocument= new Document(createText(300));
+		IDocumentPartitioner partitioner= createPartitioner();
+		fDocument.setDocumentPartitioner(getDocumentPartitioning(), partitioner);
+		partitioner.connect(fDocument);
+		fIndexed= new DefaultCharacterPairMatcher(PAIRS, getDocumentPartitioning(), true, true);
+		fScanning= new DefaultCharacterPairMatcher(PAIRS, getDocumentPartitioning(), true, false);
+	}
+
+	protected void tearDown() {
+		fIndexed.dispose();
+		fScanning.dispose();
+		fDocument= null;
+	}
+
+	private String createText(int tokens) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < tokens; i++)
+			buffer.append(TOKENS[fRandom.nextInt(TOKENS.length)]);
+		return buffer.toString();
+	}
+
+	private void edit() throws BadLocationException {
+		int offset= fRandom.nextInt(fDocument.getLength() + 1);
+		int length= fRandom.nextInt(Math.min(8, fDocument.getLength() - offset) + 1);
+		fDocument.replace(offset, length, createText(fRandom.nextInt(4)));
+	}
+
+	/**
+	 * Compares the answers of the indexed matcher with the ones of the scanning matcher for
+	 * all offsets.
+	 */
+	private void assertSameMatches() {
+		int length= fDocument.getLength();
+		for (int offset= 0; offset <= length; offset++) {
+			assertEquals(fScanning.match(fDocument, offset), fIndexed.match(fDocument, offset));
+			assertEquals(fScanning.getAnchor(), fIndexed.getAnchor());
+			for (int selection= -1; selection <= 1; selection+= 2) {
+				if (offset + selection >= 0 && offset + selection <= length) {
+					assertEquals(fScanning.match(fDocument, offset, selection), fIndexed.match(fDocument, offset, selection));
+					assertEquals(fScanning.getAnchor(), fIndexed.getAnchor());
+				}
+			}
+			for (int selection= 0; selection <= 8 && offset + selection <= length; selection+= 4) {
+				assertEquals(fScanning.findEnclosingPeerCharacters(fDocument, offset, selection), fIndexed.findEnclosingPeerCharacters(fDocument, offset, selection));
+				assertEquals(fScanning.getAnchor(), fIndexed.getAnchor());
+			}
+		}
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public void testEdits() throws Exception {
+		assertSameMatches();
+		for (int i= 0; i < 100; i++) {
+			edit();
+			assertSameMatches();
+		}
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public void testStoppedListenerNotification() throws Exception {
+		assertSameMatches();
+		for (int i= 0; i < 10; i++) {
+			fDocument.stopListenerNotification();
+			edit();
+			edit();
+			fDocument.resumeListenerNotification();
+			assertSameMatches();
+		}
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public void testRewriteSession() throws Exception {
+		assertSameMatches();
+		DocumentRewriteSession session= fDocument.startRewriteSession(DocumentRewriteSessionType.UNRESTRICTED);
+		for (int i= 0; i < 10; i++)
+			edit();
+		fDocument.stopRewriteSession(session);
+		assertSameMatches();
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public void testPartitionerChange() throws Exception {
+		assertSameMatches();
+		fDocument.setDocumentPartitioner(getDocumentPartitioning(), null);
+		assertSameMatches();
+		IDocumentPartitioner partitioner= createPartitioner();
+		partitioner.connect(fDocument);
+		fDocument.setDocumentPartitioner(getDocumentPartitioning(), partitioner);
+		assertSameMatches();
+	}
+
+	/*
+	 * @since 3.9
+	 */
+	public void testDocumentChange() throws Exception {
+		IRegion region= fIndexed.match(fDocument, 0);
+		assertEquals(fScanning.match(fDocument, 0), region);
+		Document other= new Document("(x)"); //$NON-NLS-1$
+		assertEquals(fScanning.match(other, 1), fIndexed.match(other, 1));
+		assertSameMatches();
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,12 +29,21 @@ public class JFaceTextTestSuite extends TestSuite {
 		suite.addTest(HTML2TextReaderTest.suite());
 		suite.addTest(TextHoverPopupTest.suite());
 		suite.addTest(TextPresentationTest.suite());
+		suite.addTest(CompactTextPresentationTest.suite());
+		suite.addTest(BackgroundRepairTest.suite());
+		suite.addTest(OverviewRulerTest.suite());
+		suite.addTest(AnnotationRulerColumnTest.suite());
+		suite.addTest(AnnotationPainterTest.suite());
 		suite.addTest(DefaultUndoManagerTest.suite());
 		suite.addTest(TextViewerUndoManagerTest.suite());
 		suite.addTest(RulesTestSuite.suite());
 		suite.addTest(ReconcilerTestSuite.suite());
 		suite.addTest(DefaultPairMatcherTest.suite());
 		suite.addTest(DefaultPairMatcherTest2.suite());
+		suite.addTest(IndexedPairMatcherTest.suite());
+		suite.addTest(MatchIndexTest.suite());
+		suite.addTest(TemplateStoreTest.suite());
+		suite.addTest(TemplateReaderWriterTest.suite());
 
 		return suite;
 	}
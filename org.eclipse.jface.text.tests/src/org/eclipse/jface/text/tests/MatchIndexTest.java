@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jface.internal.text.MatchIndex;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.FindReplaceDocumentAdapter;
+import org.eclipse.jface.text.IRegion;
+
+
+/**
+ * Tests that the {@link MatchIndex} answers find queries like the
+ * {@link FindReplaceDocumentAdapter}, also after document changes.
+ *
+ * @since 3.9
+ */
+public class MatchIndexTest extends TestCase {
+
+	/** The maximum time to wait for the index to be computed. */
+	private static final long TIMEOUT= 10000;
+
+	private static final String[] WORDS= { "for", "fork", "or", "for(", " ", "\n", "x", "oo", "Fo" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+
+	private Document fDocument;
+	private MatchIndex fIndex;
+	private Random fRandom;
+
+	public static Test suite() {
+		return new TestSuite(MatchIndexTest.class);
+	}
+
+	protected void setUp() {
+		fRandom= new Random(42);
+		fDocument= new Document(createText(500));
+		fIndex= new MatchIndex(fDocument);
+	}
+
+	protected void tearDown() {
+		fIndex.dispose();
+		fIndex= null;
+		fDocument= null;
+	}
+
+	private String createText(int words) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < words; i++)
+			buffer.append(WORDS[fRandom.nextInt(WORDS.length)]);
+		return buffer.toString();
+	}
+
+	/**
+	 * Searches until the index has been computed.
+	 */
+	private void waitForIndex(String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) throws InterruptedException {
+		long end= System.currentTimeMillis() + TIMEOUT;
+		while (fIndex.find(0, findString, true, caseSensitive, wholeWord, regExSearch) == null) {
+			assertTrue("index not computed", System.currentTimeMillis() < end); //$NON-NLS-1$
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Compares the answers of the index with the ones of the adapter for all offsets. The
+	 * index does not answer backward searches for regular expressions.
+	 *
+	 * @return the number of queries answered by the index
+	 */
+	private int assertSameMatches(String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) throws BadLocationException {
+		FindReplaceDocumentAdapter adapter= new FindReplaceDocumentAdapter(fDocument);
+		int answered= 0;
+		for (int offset= 0; offset <= fDocument.getLength(); offset++) {
+			for (int direction= 0; direction < (regExSearch ? 1 : 2); direction++) {
+				boolean forward= direction == 0;
+				IRegion expected= adapter.find(offset, findString, forward, caseSensitive, wholeWord, regExSearch);
+				IRegion actual= fIndex.find(offset, findString, forward, caseSensitive, wholeWord, regExSearch);
+				if (actual == null)
+					continue;
+				answered++;
+				if (actual == MatchIndex.NO_MATCH)
+					actual= null;
+				assertEquals("offset " + offset + ", forward " + forward, expected, actual); //$NON-NLS-1$ //$NON-NLS-2$
+			}
+		}
+		return answered;
+	}
+
+	private void edit() throws BadLocationException {
+		int offset= fRandom.nextInt(fDocument.getLength() + 1);
+		int length= fRandom.nextInt(Math.min(8, fDocument.getLength() - offset) + 1);
+		fDocument.replace(offset, length, createText(fRandom.nextInt(3)));
+	}
+
+	private void performTest(String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch, boolean updated) throws Exception {
+		waitForIndex(findString, caseSensitive, wholeWord, regExSearch);
+		assertTrue(assertSameMatches(findString, caseSensitive, wholeWord, regExSearch) > 0);
+		for (int i= 0; i < 50; i++) {
+			edit();
+			if (updated)
+				assertTrue(assertSameMatches(findString, caseSensitive, wholeWord, regExSearch) > 0);
+			else
+				assertNull(fIndex.find(0, findString, true, caseSensitive, wholeWord, regExSearch));
+		}
+		waitForIndex(findString, caseSensitive, wholeWord, regExSearch);
+		assertSameMatches(findString, caseSensitive, wholeWord, regExSearch);
+	}
+
+	public void testString() throws Exception {
+		performTest("for", true, false, false, true); //$NON-NLS-1$
+	}
+
+	public void testCaseInsensitiveString() throws Exception {
+		performTest("FOR", false, false, false, true); //$NON-NLS-1$
+	}
+
+	public void testWholeWord() throws Exception {
+		performTest("for", true, true, false, true); //$NON-NLS-1$
+	}
+
+	public void testOverlappingString() throws Exception {
+		performTest("oo", true, false, false, false); //$NON-NLS-1$
+	}
+
+	public void testRegEx() throws Exception {
+		performTest("f[a-z]+", true, false, true, false); //$NON-NLS-1$
+	}
+
+	public void testEmptyRegExMatch() throws Exception {
+		performTest("x*", true, false, true, false); //$NON-NLS-1$
+	}
+
+	public void testStoppedListenerNotification() throws Exception {
+		waitForIndex("for", true, false, false); //$NON-NLS-1$
+		fDocument.stopListenerNotification();
+		fDocument.replace(0, 0, "for "); //$NON-NLS-1$
+		fDocument.replace(fDocument.getLength(), 0, " for"); //$NON-NLS-1$
+		fDocument.resumeListenerNotification();
+		assertNull(fIndex.find(0, "for", true, true, false, false)); //$NON-NLS-1$
+		waitForIndex("for", true, false, false); //$NON-NLS-1$
+		assertSameMatches("for", true, false, false); //$NON-NLS-1$
+	}
+
+	public void testLargeDocument() throws Exception {
+		fDocument.set(createText(10000));
+		assertNull(fIndex.find(0, "for", true, true, false, false)); //$NON-NLS-1$
+		assertNull(fIndex.find(0, "for", true, true, false, false)); //$NON-NLS-1$
+		// changes while the index is computed
+		for (int i= 0; i < 10; i++)
+			edit();
+		waitForIndex("for", true, false, false); //$NON-NLS-1$
+		assertTrue(assertSameMatches("for", true, false, false) > 0); //$NON-NLS-1$
+	}
+
+	public void testQueryChange() throws Exception {
+		waitForIndex("for", true, false, false); //$NON-NLS-1$
+		assertNull(fIndex.find(0, "fork", true, true, false, false)); //$NON-NLS-1$
+		assertNull(fIndex.find(0, "for", true, true, false, false)); //$NON-NLS-1$
+		waitForIndex("for", true, false, false); //$NON-NLS-1$
+		assertSameMatches("for", true, false, false); //$NON-NLS-1$
+	}
+}
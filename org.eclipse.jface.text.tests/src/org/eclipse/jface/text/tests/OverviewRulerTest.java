@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.GC;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.FillLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Event;
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.text.tests.Accessor;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationAccess;
+import org.eclipse.jface.text.source.IAnnotationAccessExtension;
+import org.eclipse.jface.text.source.ISharedTextColors;
+import org.eclipse.jface.text.source.OverviewRuler;
+import org.eclipse.jface.text.source.SourceViewer;
+
+
+/**
+ * Tests that the {@link OverviewRuler} only recomputes the rectangles of the annotations
+ * affected by a text change, and that its rasters and header reflect the annotation model.
+ *
+ * @since 3.9
+ */
+public class OverviewRulerTest extends TestCase {
+
+	private static final String TYPE= "org.eclipse.jface.text.tests.overview"; //$NON-NLS-1$
+	private static final String LABEL= "Overview"; //$NON-NLS-1$
+	private static final int LINES= 500;
+
+	/**
+	 * Annotation access which does not know any sub types.
+	 */
+	private static class Access implements IAnnotationAccess, IAnnotationAccessExtension {
+
+		public Object getType(Annotation annotation) {
+			return annotation.getType();
+		}
+
+		public boolean isMultiLine(Annotation annotation) {
+			return true;
+		}
+
+		public boolean isTemporary(Annotation annotation) {
+			return !annotation.isPersistent();
+		}
+
+		public String getTypeLabel(Annotation annotation) {
+			return LABEL;
+		}
+
+		public int getLayer(Annotation annotation) {
+			return 0;
+		}
+
+		public void paint(Annotation annotation, GC gc, Canvas canvas, Rectangle bounds) {
+		}
+
+		public boolean isPaintable(Annotation annotation) {
+			return false;
+		}
+
+		public boolean isSubtype(Object annotationType, Object potentialSupertype) {
+			return annotationType.equals(potentialSupertype);
+		}
+
+		public Object[] getSupertypes(Object annotationType) {
+			return new Object[] { annotationType };
+		}
+	}
+
+	/**
+	 * Annotation model which counts the position queries done to compute the rectangles.
+	 */
+	private static class CountingModel extends AnnotationModel {
+
+		private int fCount;
+
+		public Position getPosition(Annotation annotation) {
+			fCount++;
+			return super.getPosition(annotation);
+		}
+
+		int getAndResetCount() {
+			int count= fCount;
+			fCount= 0;
+			return count;
+		}
+	}
+
+	private Shell fShell;
+	private SourceViewer fViewer;
+	private OverviewRuler fRuler;
+	private Document fDocument;
+	private CountingModel fModel;
+	private final List fAnnotations= new ArrayList();
+
+	public static Test suite() {
+		return new TestSuite(OverviewRulerTest.class);
+	}
+
+	protected void setUp() throws BadLocationException {
+		fShell= new Shell();
+		fShell.setLayout(new FillLayout());
+		fShell.setSize(400, 400);
+
+		IAnnotationAccess access= new Access();
+		ISharedTextColors colors= new ISharedTextColors() {
+			public Color getColor(RGB rgb) {
+				return fShell.getDisplay().getSystemColor(SWT.COLOR_RED);
+			}
+			public void dispose() {
+			}
+		};
+		fRuler= new OverviewRuler(access, 12, colors);
+		fRuler.addAnnotationType(TYPE);
+		fRuler.setAnnotationTypeLayer(TYPE, 0);
+		fRuler.setAnnotationTypeColor(TYPE, colors.getColor(null));
+		fRuler.addHeaderAnnotationType(TYPE);
+		fViewer= new SourceViewer(fShell, null, fRuler, true, SWT.V_SCROLL);
+
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < LINES; i++)
+			buffer.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		fDocument= new Document(buffer.toString());
+		fViewer.setDocument(fDocument);
+		fShell.layout();
+
+		fModel= new CountingModel();
+		fModel.connect(fDocument);
+		for (int i= 0; i < LINES; i++) {
+			Annotation annotation= new Annotation(TYPE, true, null);
+			fModel.addAnnotation(annotation, new Position(fDocument.getLineOffset(i), 4));
+			fAnnotations.add(annotation);
+		}
+		fRuler.setModel(fModel);
+		paint();
+		fModel.getAndResetCount();
+	}
+
+	protected void tearDown() {
+		fModel.disconnect(fDocument);
+		fShell.dispose();
+	}
+
+	private void paint() {
+		fRuler.update();
+		Display display= fShell.getDisplay();
+		while (display.readAndDispatch()) {
+			// process all pending events
+		}
+	}
+
+	/**
+	 * Returns the rectangles of the annotations in the rasters of the ruler.
+	 *
+	 * @return the map from the annotations in the rasters to their packed rectangles,
+	 *         <code>-1</code> if the annotation is not shown
+	 */
+	private Map getRasterContents() {
+		Map rasters= (Map) new Accessor(fRuler, OverviewRuler.class).get("fRasters"); //$NON-NLS-1$
+		Object[] typeRasters= (Object[]) rasters.get(TYPE);
+		Map contents= new HashMap();
+		for (int i= 0; i < typeRasters.length; i++) {
+			Accessor raster= new Accessor(typeRasters[i], OverviewRuler.class.getName() + "$Raster", getClass().getClassLoader()); //$NON-NLS-1$
+			contents.putAll((Map) raster.get("fAnnotations")); //$NON-NLS-1$
+		}
+		return contents;
+	}
+
+	/**
+	 * Returns the annotations which are painted in the ruler.
+	 *
+	 * @return the painted annotations
+	 */
+	private Set getPaintedAnnotations() {
+		Set painted= new HashSet();
+		for (Iterator e= getRasterContents().entrySet().iterator(); e.hasNext();) {
+			Map.Entry entry= (Map.Entry) e.next();
+			if (((Integer) entry.getValue()).intValue() != -1)
+				painted.add(entry.getKey());
+		}
+		return painted;
+	}
+
+	/**
+	 * Returns the number of annotations reported by the tool tip of the ruler header.
+	 *
+	 * @return the number of annotations in the header
+	 */
+	private int getHeaderCount() {
+		fRuler.getHeaderControl().notifyListeners(SWT.MouseEnter, new Event());
+		String toolTip= fRuler.getHeaderControl().getToolTipText();
+		if (toolTip == null)
+			return 0;
+		assertTrue(toolTip.startsWith(LABEL + ": ")); //$NON-NLS-1$
+		return Integer.parseInt(toolTip.substring(LABEL.length() + 2));
+	}
+
+	private void assertPainted(int count) {
+		Set painted= getPaintedAnnotations();
+		assertEquals(count, painted.size());
+		for (Iterator e= painted.iterator(); e.hasNext();) {
+			Annotation annotation= (Annotation) e.next();
+			assertFalse(annotation.isMarkedDeleted());
+			assertNotNull(fModel.getPosition(annotation));
+		}
+	}
+
+	public void testInitialContents() {
+		assertPainted(LINES);
+		assertEquals(LINES, getRasterContents().size());
+		assertEquals(LINES, getHeaderCount());
+	}
+
+	public void testAddAnnotation() throws BadLocationException {
+		Annotation annotation= new Annotation(TYPE, false, null);
+		fModel.addAnnotation(annotation, new Position(fDocument.getLineOffset(20), 4));
+		paint();
+		assertTrue(getPaintedAnnotations().contains(annotation));
+		assertPainted(LINES + 1);
+		assertEquals(LINES + 1, getHeaderCount());
+	}
+
+	public void testRemoveAnnotation() {
+		Annotation annotation= (Annotation) fAnnotations.get(20);
+		fModel.removeAnnotation(annotation);
+		paint();
+		assertFalse(getRasterContents().containsKey(annotation));
+		assertPainted(LINES - 1);
+		assertEquals(LINES - 1, getHeaderCount());
+	}
+
+	public void testChangeAnnotation() throws BadLocationException {
+		Annotation annotation= (Annotation) fAnnotations.get(20);
+		Object rectangle= getRasterContents().get(annotation);
+		fModel.modifyAnnotationPosition(annotation, new Position(fDocument.getLineOffset(LINES / 2), 4));
+		paint();
+		Object moved= getRasterContents().get(annotation);
+		assertFalse(rectangle.equals(moved));
+		assertEquals(getRasterContents().get(fAnnotations.get(LINES / 2)), moved);
+		assertPainted(LINES);
+		assertEquals(LINES, getHeaderCount());
+	}
+
+	public void testMarkDeletedAnnotation() {
+		Annotation annotation= (Annotation) fAnnotations.get(20);
+		annotation.markDeleted(true);
+		fModel.modifyAnnotationPosition(annotation, fModel.getPosition(annotation));
+		paint();
+		assertFalse(getPaintedAnnotations().contains(annotation));
+		assertPainted(LINES - 1);
+		assertEquals(LINES - 1, getHeaderCount());
+
+		annotation.markDeleted(false);
+		fModel.modifyAnnotationPosition(annotation, fModel.getPosition(annotation));
+		paint();
+		assertPainted(LINES);
+		assertEquals(LINES, getHeaderCount());
+	}
+
+	public void testMarkDeletedAnnotationInHeader() {
+		((Annotation) fAnnotations.get(20)).markDeleted(true);
+		((Annotation) fAnnotations.get(21)).markDeleted(true);
+		paint();
+		assertEquals(LINES - 2, getHeaderCount());
+	}
+
+	public void testEditWithinLine() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(10) + 2, 0, "xx"); //$NON-NLS-1$
+		paint();
+		int count= fModel.getAndResetCount();
+		assertTrue(count > 0);
+		assertTrue(count < 5);
+	}
+
+	public void testEditWithSameNumberOfLines() throws BadLocationException {
+		int offset= fDocument.getLineOffset(10);
+		fDocument.replace(offset, fDocument.getLineOffset(13) - offset, "a\nb\nc\n"); //$NON-NLS-1$
+		paint();
+		int count= fModel.getAndResetCount();
+		assertTrue(count > 0);
+		assertTrue(count < 10);
+	}
+
+	public void testEditChangingNumberOfLines() throws BadLocationException {
+		fDocument.replace(fDocument.getLineOffset(10), 0, "\n"); //$NON-NLS-1$
+		paint();
+		assertTrue(fModel.getAndResetCount() >= LINES);
+	}
+
+	public void testMarkedDeletedAnnotations() throws BadLocationException {
+		for (int i= 0; i < fAnnotations.size(); i++)
+			((Annotation) fAnnotations.get(i)).markDeleted(true);
+
+		fDocument.replace(fDocument.getLineOffset(10), 0, "\n"); //$NON-NLS-1$
+		paint();
+		assertEquals(0, fModel.getAndResetCount());
+		assertPainted(0);
+		assertEquals(0, getHeaderCount());
+	}
+}
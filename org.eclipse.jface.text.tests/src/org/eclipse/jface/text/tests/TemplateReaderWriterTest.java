@@ -0,0 +1,196 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ListResourceBundle;
+import java.util.Random;
+import java.util.ResourceBundle;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jface.text.templates.Template;
+import org.eclipse.jface.text.templates.persistence.TemplatePersistenceData;
+import org.eclipse.jface.text.templates.persistence.TemplateReaderWriter;
+
+
+/**
+ * Tests reading and writing templates with the {@link TemplateReaderWriter}.
+ *
+ * @since 3.9
+ */
+public class TemplateReaderWriterTest extends TestCase {
+
+	private static final String HEADER= "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>"; //$NON-NLS-1$
+
+	private static final String CHARACTERS= "ab <>&\"'\t\r\n]]>%$\u00e9\u007f\u0085\u2028"; //$NON-NLS-1$
+
+	private static class Bundle extends ListResourceBundle {
+		protected Object[][] getContents() {
+			return new Object[][] { { "name", "Name" }, { "pattern", "for (;;)" } }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(TemplateReaderWriterTest.class);
+	}
+
+	private TemplatePersistenceData[] read(String xml) throws IOException {
+		return new TemplateReaderWriter().read(new StringReader(xml));
+	}
+
+	private String save(TemplatePersistenceData[] datas) throws IOException {
+		StringWriter writer= new StringWriter();
+		new TemplateReaderWriter().save(datas, writer);
+		return writer.toString();
+	}
+
+	private void assertEquals(TemplatePersistenceData expected, TemplatePersistenceData actual) {
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.isEnabled(), actual.isEnabled());
+		assertEquals(expected.isDeleted(), actual.isDeleted());
+		Template template= expected.getTemplate();
+		assertEquals(template.getName(), actual.getTemplate().getName());
+		assertEquals(template.getDescription(), actual.getTemplate().getDescription());
+		assertEquals(template.getContextTypeId(), actual.getTemplate().getContextTypeId());
+		assertEquals(template.getPattern(), actual.getTemplate().getPattern());
+		assertEquals(template.isAutoInsertable(), actual.getTemplate().isAutoInsertable());
+	}
+
+	private void assertReadFails(String xml) {
+		try {
+			read(xml);
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private String createString(Random random) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= random.nextInt(10); i > 0; i--)
+			buffer.append(CHARACTERS.charAt(random.nextInt(CHARACTERS.length())));
+		if (random.nextBoolean())
+			buffer.append("\uD83D\uDE00"); //$NON-NLS-1$
+		return buffer.toString();
+	}
+
+	public void testRoundTrip() throws Exception {
+		Random random= new Random(42);
+		TemplatePersistenceData[] datas= new TemplatePersistenceData[200];
+		for (int i= 0; i < datas.length; i++) {
+			Template template= new Template(createString(random), createString(random), "c" + createString(random), createString(random), random.nextBoolean()); //$NON-NLS-1$
+			datas[i]= new TemplatePersistenceData(template, random.nextBoolean(), random.nextBoolean() ? null : "id" + i); //$NON-NLS-1$
+			datas[i].setDeleted(random.nextBoolean());
+		}
+
+		TemplatePersistenceData[] read= read(save(datas));
+		assertEquals(datas.length, read.length);
+		for (int i= 0; i < datas.length; i++)
+			assertEquals(datas[i], read[i]);
+
+		ByteArrayOutputStream stream= new ByteArrayOutputStream();
+		new TemplateReaderWriter().save(datas, stream);
+		assertEquals(save(datas), new String(stream.toByteArray(), "UTF-8")); //$NON-NLS-1$
+		read= new TemplateReaderWriter().read(new ByteArrayInputStream(stream.toByteArray()), null);
+		assertEquals(datas.length, read.length);
+		for (int i= 0; i < datas.length; i++)
+			assertEquals(datas[i], read[i]);
+	}
+
+	public void testSaveFormat() throws Exception {
+		TemplatePersistenceData[] datas= {
+				new TemplatePersistenceData(new Template("n<&>\"'\t\r\n\u0085\uD83D\uDE00", "d", "ctx", "p<&>\"'\t\r\n\u0085\u00e9\uD83D\uDE00", false), false, "my.id"), //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+				new TemplatePersistenceData(new Template("a", "", "c", "", true), true) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		};
+		datas[1].setDeleted(true);
+		String expected= HEADER + "<templates>" //$NON-NLS-1$
+				+ "<template autoinsert=\"false\" context=\"ctx\" deleted=\"false\" description=\"d\" enabled=\"false\" id=\"my.id\" name=\"n&lt;&amp;&gt;&quot;'&#9;&#13;&#10;\u0085&#128512;\">" //$NON-NLS-1$
+				+ "p&lt;&amp;&gt;\"'\t&#13;\n&#133;\u00e9&#128512;</template>" //$NON-NLS-1$
+				+ "<template autoinsert=\"true\" context=\"c\" deleted=\"true\" description=\"\" enabled=\"true\" name=\"a\"/>" //$NON-NLS-1$
+				+ "</templates>"; //$NON-NLS-1$
+		assertEquals(expected, save(datas));
+		assertEquals(HEADER + "<templates/>", save(new TemplatePersistenceData[0])); //$NON-NLS-1$
+	}
+
+	public void testInvalidCharacter() throws Exception {
+		TemplatePersistenceData[] datas= { new TemplatePersistenceData(new Template("a", "", "c", "\u0001", true), true) }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		StringWriter writer= new StringWriter();
+		try {
+			new TemplateReaderWriter().save(datas, writer);
+			fail();
+		} catch (IOException e) {
+			assertEquals("", writer.toString()); //$NON-NLS-1$
+		}
+		datas[0].setTemplate(new Template("a", "", "c", "\uD800", true)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		try {
+			new TemplateReaderWriter().save(datas, writer);
+			fail();
+		} catch (IOException e) {
+			assertEquals("", writer.toString()); //$NON-NLS-1$
+		}
+	}
+
+	public void testReadMarkup() throws Exception {
+		String xml= "<?xml version=\"1.0\"?><!DOCTYPE templates [<!ENTITY e \"entity\"><!-- dtd -->]>" //$NON-NLS-1$
+				+ "<templates>\n" //$NON-NLS-1$
+				+ "<template name=\"a\" context=\"c\">x<!--comment-->&lt;<![CDATA[<cdata>]]>&e;<?pi data?><b>bold</b>y" //$NON-NLS-1$
+				+ "<template name=\"nested\" context=\"c\" enabled=\"false\" deleted=\"true\" autoinsert=\"false\" description=\"&quot;d&quot;\">inner</template>z</template>\n" //$NON-NLS-1$
+				+ "<other><template name=\"b\" context=\"c\"/></other>" //$NON-NLS-1$
+				+ "</templates>"; //$NON-NLS-1$
+		TemplatePersistenceData[] datas= read(xml);
+		assertEquals(3, datas.length);
+		assertEquals(new TemplatePersistenceData(new Template("a", "", "c", "xcomment<<cdata>entitydatayz", true), true), datas[0]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		TemplatePersistenceData nested= new TemplatePersistenceData(new Template("nested", "\"d\"", "c", "inner", false), false); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		nested.setDeleted(true);
+		assertEquals(nested, datas[1]);
+		assertEquals(new TemplatePersistenceData(new Template("b", "", "c", "", true), true), datas[2]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	public void testTranslation() throws Exception {
+		String xml= "<templates><template name=\"%name\" description=\"%missing text\" context=\"%name\">%pattern {}</template></templates>"; //$NON-NLS-1$
+		ResourceBundle bundle= new Bundle();
+		TemplatePersistenceData[] datas= new TemplateReaderWriter().read(new StringReader(xml), bundle);
+		assertEquals(1, datas.length);
+		assertEquals(new TemplatePersistenceData(new Template("Name", "!missing! text", "%name", "for (;;) {}", true), true), datas[0]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+		datas= new TemplateReaderWriter().read(new ByteArrayInputStream(xml.getBytes("UTF-8")), bundle); //$NON-NLS-1$
+		assertEquals(new TemplatePersistenceData(new Template("Name", "!missing! text", "%name", "for (;;) {}", true), true), datas[0]); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	public void testInvalidTemplates() throws Exception {
+		assertReadFails("<templates><template context=\"c\"/></templates>"); //$NON-NLS-1$
+		assertReadFails("<templates><template name=\"a\"/></templates>"); //$NON-NLS-1$
+		assertReadFails("<templates><template name=\"a\" context=\"c\" enabled=\"yes\"/></templates>"); //$NON-NLS-1$
+		assertReadFails("<templates><template name=\"a\" context=\"c\"/>"); //$NON-NLS-1$
+		assertReadFails(""); //$NON-NLS-1$
+		assertEquals(0, read("<root/>").length); //$NON-NLS-1$
+	}
+
+	public void testReadSingle() throws Exception {
+		String xml= "<templates><template id=\"1\" context=\"c\"/><template id=\"2\" name=\"a\" context=\"c\">p</template><template id=\"2\" name=\"b\" context=\"c\"/><template/></templates>"; //$NON-NLS-1$
+		TemplateReaderWriter reader= new TemplateReaderWriter();
+		assertEquals(new TemplatePersistenceData(new Template("a", "", "c", "p", true), true, "2"), reader.readSingle(new StringReader(xml), "2")); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		assertNull(reader.readSingle(new StringReader(xml), "3")); //$NON-NLS-1$
+		try {
+			reader.readSingle(new StringReader(xml + "<"), "2"); //$NON-NLS-1$ //$NON-NLS-2$
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jface.preference.PreferenceStore;
+
+import org.eclipse.jface.text.templates.Template;
+import org.eclipse.jface.text.templates.persistence.TemplatePersistenceData;
+import org.eclipse.jface.text.templates.persistence.TemplateStore;
+
+
+/**
+ * Tests the lookup of templates by name prefix in the {@link TemplateStore}.
+ *
+ * @since 3.9
+ */
+public class TemplateStoreTest extends TestCase {
+
+	private static final String[] SYLLABLES= { "a", "B", "ab", "c", "Ca", "for", "For" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$
+
+	private static final String[] CONTEXT_TYPES= { "x", "y" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	private static final String[] PREFIXES= { "", "a", "A", "ab", "b", "ca", "fo", "FORA", "z" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$ //$NON-NLS-9$
+
+	private Random fRandom;
+
+	private TemplateStore fStore;
+
+	public static Test suite() {
+		return new TestSuite(TemplateStoreTest.class);
+	}
+
+	protected void setUp() {
+		fRandom= new Random(42);
+		fStore= new TemplateStore(new PreferenceStore(), "templates"); //$NON-NLS-1$
+		for (int i= 0; i < 200; i++)
+			fStore.add(new TemplatePersistenceData(createTemplate(), fRandom.nextInt(4) != 0));
+	}
+
+	private Template createTemplate() {
+		StringBuffer name= new StringBuffer();
+		for (int i= fRandom.nextInt(4); i >= 0; i--)
+			name.append(SYLLABLES[fRandom.nextInt(SYLLABLES.length)]);
+		return new Template(name.toString(), "", CONTEXT_TYPES[fRandom.nextInt(CONTEXT_TYPES.length)], "${cursor}", true); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private void assertSameTemplates() {
+		for (int i= 0; i < PREFIXES.length; i++) {
+			String prefix= PREFIXES[i];
+			for (int j= 0; j <= CONTEXT_TYPES.length; j++) {
+				String contextTypeId= j < CONTEXT_TYPES.length ? CONTEXT_TYPES[j] : null;
+				Template[] templates= fStore.getTemplates(contextTypeId);
+				List expected= new ArrayList();
+				for (int k= 0; k < templates.length; k++) {
+					if (templates[k].getName().toLowerCase().startsWith(prefix.toLowerCase()))
+						expected.add(templates[k]);
+				}
+				assertEquals(prefix + ", " + contextTypeId, expected, Arrays.asList(fStore.getTemplates(contextTypeId, prefix))); //$NON-NLS-1$
+			}
+		}
+	}
+
+	public void testPrefixLookup() {
+		assertSameTemplates();
+	}
+
+	public void testModifiedTemplates() {
+		assertSameTemplates();
+		TemplatePersistenceData[] datas= fStore.getTemplateData(false);
+		for (int i= 0; i < 20; i++) {
+			TemplatePersistenceData data= datas[fRandom.nextInt(datas.length)];
+			switch (fRandom.nextInt(4)) {
+				case 0:
+					data.setTemplate(createTemplate());
+					break;
+				case 1:
+					data.setEnabled(!data.isEnabled());
+					break;
+				case 2:
+					fStore.delete(data);
+					break;
+				default:
+					fStore.add(new TemplatePersistenceData(createTemplate(), true));
+			}
+			assertSameTemplates();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests.rules;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.StyleRange;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.TextAttribute;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TypedRegion;
+import org.eclipse.jface.text.rules.CachingDamagerRepairer;
+import org.eclipse.jface.text.rules.DefaultDamagerRepairer;
+import org.eclipse.jface.text.rules.IRule;
+import org.eclipse.jface.text.rules.RuleBasedScanner;
+import org.eclipse.jface.text.rules.SingleLineRule;
+import org.eclipse.jface.text.rules.Token;
+
+
+/**
+ * @since 3.9
+ */
+public class CachingDamagerRepairerTest extends TestCase {
+
+	private Document fDocument;
+	private CachingDamagerRepairer fRepairer;
+	private DefaultDamagerRepairer fReference;
+
+	protected void setUp() throws Exception {
+		fDocument= new Document("a 'b' c\nd e 'f'\n'g' h\nlast 'line'");
+		fRepairer= new CachingDamagerRepairer(createScanner());
+		fRepairer.setDocument(fDocument);
+		fReference= new DefaultDamagerRepairer(createScanner());
+		fReference.setDocument(fDocument);
+	}
+
+	protected void tearDown() throws Exception {
+		fRepairer.setDocument(null);
+	}
+
+	private RuleBasedScanner createScanner() {
+		RuleBasedScanner scanner= new RuleBasedScanner();
+		scanner.setRules(new IRule[] { new SingleLineRule("'", "'", new Token(new TextAttribute(null, null, SWT.BOLD))) });
+		scanner.setDefaultReturnToken(new Token(new TextAttribute(null)));
+		return scanner;
+	}
+
+	public void testCacheHits() {
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(0, fRepairer.getCacheHitCount());
+		assertEquals(4, fRepairer.getCacheMissCount());
+
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(4, fRepairer.getCacheHitCount());
+		assertEquals(4, fRepairer.getCacheMissCount());
+	}
+
+	public void testDocumentChangeInvalidatesLine() throws BadLocationException {
+		assertSamePresentation(0, fDocument.getLength());
+		fRepairer.resetCacheStatistics();
+
+		fDocument.replace(9, 0, "'x'");
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(3, fRepairer.getCacheHitCount());
+		assertEquals(1, fRepairer.getCacheMissCount());
+	}
+
+	public void testInsertedLinesShiftCache() throws BadLocationException {
+		assertSamePresentation(0, fDocument.getLength());
+		fRepairer.resetCacheStatistics();
+
+		fDocument.replace(0, 0, "new\nlines\n");
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(3, fRepairer.getCacheHitCount());
+		assertEquals(3, fRepairer.getCacheMissCount());
+
+		fDocument.replace(0, 10, "");
+		fRepairer.resetCacheStatistics();
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(3, fRepairer.getCacheHitCount());
+		assertEquals(1, fRepairer.getCacheMissCount());
+	}
+
+	public void testDeferredNotification() throws BadLocationException {
+		assertSamePresentation(0, fDocument.getLength());
+		fRepairer.resetCacheStatistics();
+
+		fDocument.stopListenerNotification();
+		fDocument.replace(0, 0, "'new'\n");
+		fDocument.replace(fDocument.getLineOffset(3), 0, "x\ny\n");
+		fDocument.resumeListenerNotification();
+
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(0, fRepairer.getCacheHitCount());
+	}
+
+	public void testDifferentSegmentIsMiss() {
+		assertSamePresentation(0, fDocument.getLength());
+		fRepairer.resetCacheStatistics();
+
+		assertSamePresentation(2, 10);
+		assertEquals(0, fRepairer.getCacheHitCount());
+		assertEquals(2, fRepairer.getCacheMissCount());
+	}
+
+	public void testClearCache() {
+		assertSamePresentation(0, fDocument.getLength());
+		fRepairer.clearCache();
+		fRepairer.resetCacheStatistics();
+
+		assertSamePresentation(0, fDocument.getLength());
+		assertEquals(0, fRepairer.getCacheHitCount());
+		assertEquals(4, fRepairer.getCacheMissCount());
+	}
+
+	private void assertSamePresentation(int offset, int length) {
+		TypedRegion region= new TypedRegion(offset, length, IDocument.DEFAULT_CONTENT_TYPE);
+
+		TextPresentation expected= new TextPresentation();
+		fReference.createPresentation(expected, region);
+		TextPresentation actual= new TextPresentation();
+		fRepairer.createPresentation(actual, region);
+
+		Iterator e= expected.getAllStyleRangeIterator();
+		Iterator a= actual.getAllStyleRangeIterator();
+		int expectedEnd= offset, actualEnd= offset;
+		StyleRange expectedRange= null, actualRange= null;
+		// compare style per character, as the cache may split ranges at line boundaries
+		for (int i= offset; i < offset + length; i++) {
+			while (i >= expectedEnd) {
+				expectedRange= (StyleRange) e.next();
+				expectedEnd= expectedRange.start + expectedRange.length;
+			}
+			while (i >= actualEnd) {
+				actualRange= (StyleRange) a.next();
+				actualEnd= actualRange.start + actualRange.length;
+			}
+			assertTrue(expectedRange.start <= i && actualRange.start <= i);
+			assertEquals(expectedRange.fontStyle, actualRange.fontStyle);
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.tests.rules;
+
+import java.util.Random;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.rules.CompactPartitioner;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPartitionTokenScanner;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.MultiLineRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.eclipse.jface.text.rules.SingleLineRule;
+import org.eclipse.jface.text.rules.Token;
+
+
+/**
+ * @since 3.9
+ */
+public class CompactPartitionerTest extends FastPartitionerTest {
+
+	private static final String STRING= "string";
+
+	private static final String[] FRAGMENTS= { "/*", "*/", "\"", "x", " ", "\n", "ab\ncd", "/* c */", "\"s\"" };
+
+	protected IDocumentPartitioner createPartitioner(IPartitionTokenScanner scanner) {
+		return new CompactPartitioner(scanner, new String[] { DEFAULT, COMMENT });
+	}
+
+	public void testRandomEditsMatchFastPartitioner() throws BadLocationException {
+		IDocument expectedDocument= new Document();
+		IDocumentPartitioner expected= new FastPartitioner(createScanner(), new String[] { DEFAULT, COMMENT, STRING });
+		expectedDocument.setDocumentPartitioner(expected);
+		expected.connect(expectedDocument);
+
+		IDocument actualDocument= new Document();
+		IDocumentPartitioner actual= new CompactPartitioner(createScanner(), new String[] { DEFAULT, COMMENT, STRING });
+		actualDocument.setDocumentPartitioner(actual);
+		actual.connect(actualDocument);
+
+		String initial= "a /* b */ \"c\" d\n/* e\n f */ g \"h\"\n";
+		expectedDocument.set(initial);
+		actualDocument.set(initial);
+		assertSamePartitioning(expected, actual, expectedDocument.getLength());
+
+		Random random= new Random(4711);
+		for (int i= 0; i < 2000; i++) {
+			int length= expectedDocument.getLength();
+			int offset= random.nextInt(length + 1);
+			int replaced= random.nextInt(4) == 0 ? random.nextInt(Math.min(10, length - offset) + 1) : 0;
+			String text= random.nextInt(5) == 0 ? "" : FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+
+			expectedDocument.replace(offset, replaced, text);
+			actualDocument.replace(offset, replaced, text);
+
+			assertSamePartitioning(expected, actual, expectedDocument.getLength());
+		}
+	}
+
+	public void testManyPartitions() throws BadLocationException {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 1000; i++)
+			buffer.append("/* c */ x\n");
+
+		IDocument document= new Document(buffer.toString());
+		IDocumentPartitioner partitioner= createPartitioner(createScanner());
+		document.setDocumentPartitioner(partitioner);
+		partitioner.connect(document);
+
+		assertEquals(2000, partitioner.computePartitioning(0, document.getLength()).length);
+
+		document.replace(5008, 0, "/*");
+		assertEquals(2000, partitioner.computePartitioning(0, document.getLength()).length);
+		ITypedRegion partition= partitioner.getPartition(5010);
+		assertEquals(5008, partition.getOffset());
+		assertEquals(11, partition.getLength());
+		assertEquals(COMMENT, partition.getType());
+
+		document.replace(5008, 2, "");
+		assertEquals(2000, partitioner.computePartitioning(0, document.getLength()).length);
+		assertEquals(DEFAULT, partitioner.getContentType(9998));
+		assertEquals(COMMENT, partitioner.getContentType(9990));
+	}
+
+	private IPartitionTokenScanner createScanner() {
+		return new RuleBasedPartitionScanner() {
+			{
+				IPredicateRule[] rules= new IPredicateRule[] {
+						new MultiLineRule("/*", "*/", new Token(COMMENT)),
+						new SingleLineRule("\"", "\"", new Token(STRING), '\\')
+				};
+				setPredicateRules(rules);
+			}
+		};
+	}
+
+	private void assertSamePartitioning(IDocumentPartitioner expected, IDocumentPartitioner actual, int length) {
+		ITypedRegion[] expectedRegions= expected.computePartitioning(0, length);
+		ITypedRegion[] actualRegions= actual.computePartitioning(0, length);
+		assertEquals(expectedRegions.length, actualRegions.length);
+		for (int i= 0; i < expectedRegions.length; i++)
+			assertEquals(expectedRegions[i], actualRegions[i]);
+
+		for (int offset= 0; offset <= length; offset++) {
+			assertEquals(expected.getPartition(offset), actual.getPartition(offset));
+			assertEquals(expected.getContentType(offset), actual.getContentType(offset));
+		}
+	}
+}
@@ -25,9 +25,11 @@ public class RulesTestSuite {
 		// $JUnit-BEGIN$
 		suite.addTestSuite(FastPartitionerTest.class);
 		suite.addTestSuite(DefaultPartitionerTest.class);
+		suite.addTestSuite(CompactPartitionerTest.class);
 		suite.addTestSuite(DefaultPartitionerZeroLengthTest.class);
 		suite.addTestSuite(WordRuleTest.class);
 		suite.addTestSuite(ScannerColumnTest.class);
+		suite.addTestSuite(CachingDamagerRepairerTest.class);
 		// $JUnit-END$
 		return suite;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -1730,7 +1730,7 @@ public class ProjectionViewer extends SourceViewer implements ITextViewerExtensi
 
 		try {
 
-			IRegion matchRegion= getFindReplaceDocumentAdapter().find(startPosition, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+			IRegion matchRegion= findMatch(getDocument(), startPosition, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
 			if (matchRegion != null) {
 				exposeModelRange(matchRegion);
 				revealRange(matchRegion.getOffset(), matchRegion.getLength());
@@ -1744,6 +1744,31 @@ public class ProjectionViewer extends SourceViewer implements ITextViewerExtensi
 		return -1;
 	}
 
+	/*
+	 * @see org.eclipse.jface.text.TextViewer#replaceAll(java.lang.String, java.lang.String, boolean, boolean, boolean, org.eclipse.jface.text.IRegion)
+	 * @since 3.9
+	 */
+	protected int replaceAll(String findString, String replaceString, boolean caseSensitive, boolean wholeWord, boolean regExSearch, IRegion range) {
+
+		if (!isProjectionMode())
+			return super.replaceAll(findString, replaceString, caseSensitive, wholeWord, regExSearch, range);
+
+		if (getTextWidget() == null)
+			return 0;
+
+		try {
+
+			FindReplaceDocumentAdapter adapter= getFindReplaceDocumentAdapter();
+			if (range == null)
+				range= new Region(0, adapter.length());
+			return adapter.replaceAll(range.getOffset(), range.getLength(), findString, replaceString, caseSensitive, wholeWord, regExSearch);
+
+		} catch (BadLocationException x) {
+		}
+
+		return 0;
+	}
+
 	/*
 	 * @see org.eclipse.jface.text.TextViewer#findAndSelectInRange(int, java.lang.String, boolean, boolean, boolean, int, int, boolean)
 	 */
@@ -1765,7 +1790,7 @@ public class ProjectionViewer extends SourceViewer implements ITextViewerExtensi
 				modelOffset= rangeOffset + rangeLength;
 			}
 
-			IRegion matchRegion= getFindReplaceDocumentAdapter().find(modelOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+			IRegion matchRegion= findMatch(getDocument(), modelOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
 			if (matchRegion != null) {
 				int offset= matchRegion.getOffset();
 				int length= matchRegion.getLength();
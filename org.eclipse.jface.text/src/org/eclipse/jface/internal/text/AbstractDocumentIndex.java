@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.internal.text;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.Region;
+
+
+/**
+ * Index of a document which is computed by a background job and updated in place by small
+ * document changes.
+ * <p>
+ * The job copies the document in chunks, each of which is read while no change of the
+ * document is in progress, and discards the copy as soon as a change has been announced. The
+ * index is then computed from the copy outside of any lock and installed unless the document
+ * has been changed in the meantime. Subclasses apply single changes of at most
+ * {@link #MAX_UPDATE_LENGTH} characters to a valid index, all other changes invalidate it.
+ * </p>
+ * <p>
+ * Subclasses synchronize their queries on the index. The index listens to its document until
+ * it is disposed.
+ * </p>
+ *
+ * @since 3.9
+ */
+public abstract class AbstractDocumentIndex implements IDocumentListener {
+
+	/** The region returned by queries of an index if there is no match. */
+	public static final IRegion NO_MATCH= new Region(-1, 0);
+
+	/** The maximum length of a change which is applied to the index in place. */
+	protected static final int MAX_UPDATE_LENGTH= 64 * 1024;
+
+	/** The number of characters the index job reads from the document at once. */
+	private static final int CHUNK_LENGTH= 16 * 1024;
+
+	/**
+	 * Computation of the index from a copy of the document. A computation captures the state
+	 * of the index it depends on when it is created.
+	 */
+	protected static abstract class Computation {
+
+		/**
+		 * Computes the index from the given text. This method is called by the index job
+		 * without holding any lock.
+		 *
+		 * @param text the text of the document
+		 * @param monitor the progress monitor
+		 * @return <code>false</code> if the index could not be computed
+		 */
+		protected abstract boolean compute(String text, IProgressMonitor monitor);
+
+		/**
+		 * Installs the computed index. This method is called while holding the lock of the
+		 * index, if the document has not been changed since the computation was created.
+		 */
+		protected abstract void install();
+	}
+
+	/**
+	 * Job which copies the document and runs a computation against the copy.
+	 */
+	private final class IndexJob extends Job {
+
+		/** The computation. */
+		private final Computation fComputation;
+
+		IndexJob(Computation computation) {
+			super(AbstractDocumentIndex.this.getClass().getName());
+			fComputation= computation;
+			setSystem(true);
+			setPriority(Job.SHORT);
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		protected IStatus run(IProgressMonitor monitor) {
+			String text;
+			try {
+				text= readDocument(monitor);
+			} catch (BadLocationException x) {
+				text= null;
+			}
+			if (text == null || !fComputation.compute(text, monitor))
+				return Status.CANCEL_STATUS;
+
+			synchronized (AbstractDocumentIndex.this) {
+				if (fJob == this) {
+					fJob= null;
+					fComputation.install();
+				}
+			}
+			return Status.OK_STATUS;
+		}
+
+		/**
+		 * Copies the document in chunks. The copy is discarded as soon as the document has
+		 * been changed since the job was scheduled.
+		 *
+		 * @param monitor the progress monitor
+		 * @return the text of the document, or <code>null</code> if the document has been
+		 *         changed or the job has been canceled
+		 * @throws BadLocationException if the document has been changed concurrently
+		 */
+		private String readDocument(IProgressMonitor monitor) throws BadLocationException {
+			// the document lock is acquired before the lock of the index, like when the document notifies its listeners
+			Object lock= fDocument instanceof ISynchronizable ? ((ISynchronizable) fDocument).getLockObject() : null;
+			StringBuffer buffer= new StringBuffer();
+			while (!monitor.isCanceled()) {
+				int read;
+				if (lock == null) {
+					read= readChunk(buffer);
+				} else {
+					synchronized (lock) {
+						read= readChunk(buffer);
+					}
+				}
+				if (read == -1)
+					return null;
+				if (read == 0)
+					return buffer.toString();
+			}
+			return null;
+		}
+
+		/**
+		 * Appends the next chunk of the document to the given buffer. The chunk is read while
+		 * holding the lock of the index, which prevents a change of the document from starting
+		 * while it is read.
+		 *
+		 * @param buffer the buffer holding the text read so far
+		 * @return the number of characters read, <code>0</code> at the end of the document, or
+		 *         <code>-1</code> if the document has been changed since the job was scheduled
+		 * @throws BadLocationException if the document has been changed concurrently
+		 */
+		private int readChunk(StringBuffer buffer) throws BadLocationException {
+			synchronized (AbstractDocumentIndex.this) {
+				if (fJob != this || fAnnouncedChanges > 0)
+					return -1;
+				int offset= buffer.length();
+				int length= Math.min(CHUNK_LENGTH, fDocument.getLength() - offset);
+				if (offset == 0)
+					buffer.ensureCapacity(fDocument.getLength());
+				buffer.append(fDocument.get(offset, length));
+				return length;
+			}
+		}
+	}
+
+
+	/** The indexed document. */
+	private final IDocument fDocument;
+	/** The job computing the index, <code>null</code> if none. */
+	private IndexJob fJob;
+	/**
+	 * The number of document changes announced since the last change notification. A document
+	 * whose listener notification is stopped only sends the last of several changes.
+	 */
+	private int fAnnouncedChanges;
+	/** Whether this index has been disposed. */
+	private boolean fDisposed;
+
+
+	/**
+	 * Creates a new index for the given document and starts listening to it.
+	 *
+	 * @param document the document
+	 */
+	protected AbstractDocumentIndex(IDocument document) {
+		fDocument= document;
+		fDocument.addDocumentListener(this);
+	}
+
+	/**
+	 * Returns the indexed document.
+	 *
+	 * @return the indexed document
+	 */
+	public IDocument getDocument() {
+		return fDocument;
+	}
+
+	/**
+	 * Disposes this index. The index stops listening to its document and is not computed
+	 * any more.
+	 */
+	public synchronized void dispose() {
+		fDocument.removeDocumentListener(this);
+		invalidate();
+		fDisposed= true;
+	}
+
+	/**
+	 * Starts the computation of the index unless it is already running or this index has
+	 * been disposed. Must be called while holding the lock of the index.
+	 */
+	protected final void startComputation() {
+		if (fJob == null && !fDisposed) {
+			fJob= new IndexJob(createComputation());
+			fJob.schedule();
+		}
+	}
+
+	/**
+	 * Discards the index and cancels its computation. Must be called while holding the lock
+	 * of the index.
+	 */
+	protected final void invalidate() {
+		discardIndex();
+		if (fJob != null) {
+			fJob.cancel();
+			fJob= null;
+		}
+	}
+
+	/**
+	 * Creates the computation of the index from the current state of this index. Called
+	 * while holding the lock of the index.
+	 *
+	 * @return the computation
+	 */
+	protected abstract Computation createComputation();
+
+	/**
+	 * Tells whether the index is valid, i.e. has been computed and is up to date. Called
+	 * while holding the lock of the index.
+	 *
+	 * @return <code>true</code> if the index is valid
+	 */
+	protected abstract boolean isValid();
+
+	/**
+	 * Discards the index. Called while holding the lock of the index.
+	 */
+	protected abstract void discardIndex();
+
+	/**
+	 * Updates the valid index after a change of the document. Called while holding the lock
+	 * of the index.
+	 *
+	 * @param offset the offset of the change
+	 * @param length the length of the replaced text
+	 * @param textLength the length of the inserted text
+	 * @return <code>false</code> if the index could not be updated
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	protected abstract boolean update(int offset, int length, int textLength) throws BadLocationException;
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+		fAnnouncedChanges++;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentChanged(DocumentEvent event) {
+		int announced= fAnnouncedChanges;
+		fAnnouncedChanges= 0;
+
+		String text= event.getText();
+		int textLength= text == null ? 0 : text.length();
+		if (!isValid() || announced != 1 || event.getLength() > MAX_UPDATE_LENGTH || textLength > MAX_UPDATE_LENGTH) {
+			invalidate();
+			return;
+		}
+
+		try {
+			if (!update(event.getOffset(), event.getLength(), textLength))
+				invalidate();
+		} catch (BadLocationException x) {
+			invalidate();
+		}
+	}
+}
@@ -0,0 +1,625 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.internal.text;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension2;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextUtilities;
+
+
+/**
+ * Index of the occurrences of the characters of a set of character pairs in a document,
+ * which allows to find matching peer characters in logarithmic time.
+ * <p>
+ * The index records the offset, the character and the content type of each occurrence. For
+ * each pair and content type, the nesting depths in front of its characters are kept in a
+ * tree of minimums, so that the peer of a character is the first character in search
+ * direction in front of or behind which the depth is lower. The index is computed on the
+ * first query and updated by document and partitioning changes. Changes which add or
+ * remove occurrences or change their content types discard the depths, which are
+ * recomputed on the next query.
+ * </p>
+ * <p>
+ * The answers are the same as the ones of a scan which only considers the characters of the
+ * given content type. The characters of the pairs must be distinct. This class must be used
+ * in the UI thread.
+ * </p>
+ *
+ * @since 3.9
+ */
+public final class CharacterPairIndex implements IDocumentListener, IDocumentPartitioningListener, IDocumentPartitioningListenerExtension2 {
+
+	/**
+	 * The nesting depths of the characters of one pair in one content type.
+	 */
+	private static final class Depths {
+
+		/** The indices of the characters in the index, in ascending order. */
+		private final int[] fIndices;
+		/** The number of characters. */
+		private final int fCount;
+		/** The number of leaves of the tree, a power of two greater than the number of characters. */
+		private final int fLeaves;
+		/**
+		 * The tree of minimums, rooted at index 1. Leaf <code>k</code> holds the nesting depth
+		 * in front of the <code>k</code>-th character, i.e. the number of opening minus the
+		 * number of closing characters before it.
+		 */
+		private final int[] fTree;
+
+		Depths(int[] indices, int count, boolean[] opening) {
+			fIndices= indices;
+			fCount= count;
+			int leaves= 1;
+			while (leaves <= count)
+				leaves*= 2;
+			fLeaves= leaves;
+			fTree= new int[2 * leaves];
+			int depth= 0;
+			for (int k= 0; k < leaves; k++) {
+				fTree[leaves + k]= k <= count ? depth : Integer.MAX_VALUE;
+				if (k < count)
+					depth+= opening[k] ? 1 : -1;
+			}
+			for (int node= leaves - 1; node > 0; node--)
+				fTree[node]= Math.min(fTree[2 * node], fTree[2 * node + 1]);
+		}
+
+		/**
+		 * Returns the nesting depth in front of the given character.
+		 *
+		 * @param k the number of the character, at most the number of characters
+		 * @return the nesting depth in front of the character
+		 */
+		int getDepth(int k) {
+			return fTree[fLeaves + k];
+		}
+
+		/**
+		 * Returns the number of characters whose index is lower than the given one.
+		 *
+		 * @param index an index of the index
+		 * @return the number of characters in front of <code>index</code>
+		 */
+		int getRank(int index) {
+			int low= 0, high= fCount;
+			while (low < high) {
+				int mid= (low + high) >>> 1;
+				if (fIndices[mid] < index)
+					low= mid + 1;
+				else
+					high= mid;
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the index of the given character in the index.
+		 *
+		 * @param k the number of the character
+		 * @return the index of the character in the index
+		 */
+		int getIndex(int k) {
+			return fIndices[k];
+		}
+
+		/**
+		 * Returns the first leaf at or after <code>from</code> whose depth is lower than the
+		 * given one.
+		 *
+		 * @param from the first leaf to consider
+		 * @param depth the depth
+		 * @return the leaf, or <code>-1</code> if there is none
+		 */
+		int firstBelow(int from, int depth) {
+			return firstBelow(1, 0, fLeaves - 1, from, depth);
+		}
+
+		private int firstBelow(int node, int low, int high, int from, int depth) {
+			if (high < from || fTree[node] >= depth)
+				return -1;
+			if (low == high)
+				return low;
+			int mid= (low + high) >>> 1;
+			int leaf= firstBelow(2 * node, low, mid, from, depth);
+			if (leaf == -1)
+				leaf= firstBelow(2 * node + 1, mid + 1, high, from, depth);
+			return leaf;
+		}
+
+		/**
+		 * Returns the last leaf at or before <code>to</code> whose depth is lower than the
+		 * given one.
+		 *
+		 * @param to the last leaf to consider
+		 * @param depth the depth
+		 * @return the leaf, or <code>-1</code> if there is none
+		 */
+		int lastBelow(int to, int depth) {
+			return lastBelow(1, 0, fLeaves - 1, to, depth);
+		}
+
+		private int lastBelow(int node, int low, int high, int to, int depth) {
+			if (low > to || fTree[node] >= depth)
+				return -1;
+			if (low == high)
+				return low;
+			int mid= (low + high) >>> 1;
+			int leaf= lastBelow(2 * node + 1, mid + 1, high, to, depth);
+			if (leaf == -1)
+				leaf= lastBelow(2 * node, low, mid, to, depth);
+			return leaf;
+		}
+	}
+
+
+	/** The indexed document. */
+	private final IDocument fDocument;
+	/** The partitioning of the content types. */
+	private final String fPartitioning;
+	/** The characters of the pairs, in the form <code>{ start, end, start, end, ... }</code>. */
+	private final char[] fPairs;
+	/** The offsets of the occurrences, <code>null</code> if the index is not valid. */
+	private int[] fOffsets;
+	/** The positions of the characters of the occurrences in {@link #fPairs}. */
+	private int[] fCharacters;
+	/** The content types of the occurrences. */
+	private String[] fTypes;
+	/** The number of occurrences. */
+	private int fCount;
+	/**
+	 * The nesting depths computed since the last change of the occurrences, for each pair a
+	 * map from content types to {@link Depths}.
+	 */
+	private final Map[] fDepths;
+	/**
+	 * The number of document changes announced since the last change notification. A document
+	 * whose listener notification is stopped only sends the last of several changes.
+	 */
+	private int fAnnouncedChanges;
+	/** The start of the region whose partitioning has changed, <code>-1</code> if none. */
+	private int fPendingStart= -1;
+	/** The end of the region whose partitioning has changed. */
+	private int fPendingEnd= -1;
+	/** Whether the index is being updated. */
+	private boolean fUpdating;
+
+
+	/**
+	 * Creates a new index of the given character pairs in the given document.
+	 *
+	 * @param document the document
+	 * @param partitioning the partitioning of the content types
+	 * @param pairs the distinct characters of the pairs, in the form
+	 *            <code>{ start, end, start, end, ... }</code>
+	 */
+	public CharacterPairIndex(IDocument document, String partitioning, char[] pairs) {
+		fDocument= document;
+		fPartitioning= partitioning;
+		fPairs= pairs;
+		fDepths= new Map[pairs.length / 2];
+		fDocument.addDocumentListener(this);
+		fDocument.addDocumentPartitioningListener(this);
+	}
+
+	/**
+	 * Returns the indexed document.
+	 *
+	 * @return the indexed document
+	 */
+	public IDocument getDocument() {
+		return fDocument;
+	}
+
+	/**
+	 * Disposes this index.
+	 */
+	public synchronized void dispose() {
+		fDocument.removeDocumentListener(this);
+		fDocument.removeDocumentPartitioningListener(this);
+		invalidate();
+	}
+
+	/**
+	 * Tells whether the index can answer queries and computes it if necessary. The index
+	 * cannot answer queries while the document is being changed.
+	 *
+	 * @return <code>true</code> if the index can answer queries
+	 */
+	public synchronized boolean isAvailable() {
+		if (fAnnouncedChanges != 0 || fUpdating)
+			return false;
+		if (fOffsets == null) {
+			try {
+				compute();
+			} catch (BadLocationException x) {
+				invalidate();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the offset of the closing peer of the given opening character, searching
+	 * forward from the given offset. Only characters of the given content type are
+	 * considered.
+	 *
+	 * @param opening the opening character of a pair
+	 * @param offset the offset at which the search starts
+	 * @param type the content type
+	 * @return the offset of the closing peer, or <code>-1</code> if there is none
+	 */
+	public synchronized int findClosingPeer(char opening, int offset, String type) {
+		Depths depths= getDepths(indexOf(opening) / 2, type);
+		int first= depths.getRank(firstAt(offset));
+		int leaf= depths.firstBelow(first + 1, depths.getDepth(first));
+		if (leaf == -1)
+			return -1;
+		return fOffsets[depths.getIndex(leaf - 1)];
+	}
+
+	/**
+	 * Returns the offset of the opening peer of the given closing character, searching
+	 * backward from the given offset. Only characters of the given content type are
+	 * considered.
+	 *
+	 * @param closing the closing character of a pair
+	 * @param offset the offset at which the search starts
+	 * @param type the content type
+	 * @return the offset of the opening peer, or <code>-1</code> if there is none
+	 */
+	public synchronized int findOpeningPeer(char closing, int offset, String type) {
+		Depths depths= getDepths(indexOf(closing) / 2, type);
+		int last= depths.getRank(firstAt(offset + 1)) - 1;
+		if (last < 0)
+			return -1;
+		int leaf= depths.lastBelow(last, depths.getDepth(last + 1));
+		if (leaf == -1)
+			return -1;
+		return fOffsets[depths.getIndex(leaf)];
+	}
+
+	/**
+	 * Returns the nesting depths of the given pair in the given content type, computes
+	 * them if necessary.
+	 *
+	 * @param pair the number of the pair
+	 * @param type the content type
+	 * @return the nesting depths
+	 */
+	private Depths getDepths(int pair, String type) {
+		Map map= fDepths[pair];
+		if (map == null) {
+			map= new HashMap();
+			fDepths[pair]= map;
+		}
+		Depths depths= (Depths) map.get(type);
+		if (depths == null) {
+			int count= 0;
+			for (int i= 0; i < fCount; i++) {
+				if (fCharacters[i] / 2 == pair && type.equals(fTypes[i]))
+					count++;
+			}
+			int[] indices= new int[count];
+			boolean[] opening= new boolean[count];
+			int k= 0;
+			for (int i= 0; i < fCount; i++) {
+				if (fCharacters[i] / 2 == pair && type.equals(fTypes[i])) {
+					indices[k]= i;
+					opening[k]= fCharacters[i] % 2 == 0;
+					k++;
+				}
+			}
+			depths= new Depths(indices, count, opening);
+			map.put(type, depths);
+		}
+		return depths;
+	}
+
+	/**
+	 * Returns the index of the first occurrence at or after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first occurrence at or after <code>offset</code>
+	 */
+	private int firstAt(int offset) {
+		int low= 0, high= fCount;
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (fOffsets[mid] < offset)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Computes the index from the document.
+	 *
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	private void compute() throws BadLocationException {
+		String text= fDocument.get();
+		int[] offsets= new int[16];
+		int[] characters= new int[16];
+		int count= 0;
+		for (int offset= 0, length= text.length(); offset < length; offset++) {
+			int position= indexOf(text.charAt(offset));
+			if (position != -1) {
+				if (count == offsets.length) {
+					offsets= grow(offsets, count, 2 * count);
+					characters= grow(characters, count, 2 * count);
+				}
+				offsets[count]= offset;
+				characters[count]= position;
+				count++;
+			}
+		}
+		fOffsets= offsets;
+		fCharacters= characters;
+		fTypes= new String[offsets.length];
+		fCount= count;
+		fUpdating= true;
+		try {
+			if (count > 0)
+				classify(0, count);
+		} finally {
+			fUpdating= false;
+		}
+		applyPartitioningChange();
+	}
+
+	/**
+	 * Determines the content types of the given occurrences.
+	 *
+	 * @param first the index of the first occurrence
+	 * @param last the index after the last occurrence
+	 * @return <code>true</code> if a content type has changed
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	private boolean classify(int first, int last) throws BadLocationException {
+		int start= fOffsets[first];
+		ITypedRegion[] partitions= TextUtilities.computePartitioning(fDocument, fPartitioning, start, fOffsets[last - 1] + 1 - start, false);
+		boolean changed= false;
+		int p= 0;
+		for (int i= first; i < last; i++) {
+			int offset= fOffsets[i];
+			while (p < partitions.length && partitions[p].getOffset() + partitions[p].getLength() <= offset)
+				p++;
+			// the partitioning is empty if the document does not know it
+			String type= p < partitions.length && partitions[p].getOffset() <= offset ? partitions[p].getType() : IDocument.DEFAULT_CONTENT_TYPE;
+			if (!type.equals(fTypes[i])) {
+				fTypes[i]= type;
+				changed= true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Determines the content types of the occurrences in the region whose partitioning has
+	 * changed since the last call.
+	 *
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	private void applyPartitioningChange() throws BadLocationException {
+		fUpdating= true;
+		try {
+			// determining the content types may end a rewrite session, which changes the partitioning again
+			while (fPendingStart != -1) {
+				int first= firstAt(fPendingStart);
+				int last= firstAt(fPendingEnd);
+				fPendingStart= -1;
+				fPendingEnd= -1;
+				if (first < last && classify(first, last))
+					discardDepths();
+			}
+		} finally {
+			fUpdating= false;
+		}
+	}
+
+	/**
+	 * Returns the position of the given character in the pairs.
+	 *
+	 * @param ch a character
+	 * @return the position of the character in {@link #fPairs}, or <code>-1</code>
+	 */
+	private int indexOf(char ch) {
+		for (int i= 0; i < fPairs.length; i++) {
+			if (fPairs[i] == ch)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Discards the nesting depths.
+	 */
+	private void discardDepths() {
+		for (int i= 0; i < fDepths.length; i++)
+			fDepths[i]= null;
+	}
+
+	/**
+	 * Discards the index.
+	 */
+	private void invalidate() {
+		fOffsets= null;
+		fCharacters= null;
+		fTypes= null;
+		fCount= 0;
+		fPendingStart= -1;
+		fPendingEnd= -1;
+		discardDepths();
+	}
+
+	/**
+	 * Returns a copy of the first elements of the given array with a larger capacity.
+	 *
+	 * @param array the array
+	 * @param count the number of elements to copy
+	 * @param capacity the capacity of the copy
+	 * @return the copy
+	 */
+	private static int[] grow(int[] array, int count, int capacity) {
+		int[] copy= new int[capacity];
+		System.arraycopy(array, 0, copy, 0, count);
+		return copy;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+		fAnnouncedChanges++;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentChanged(DocumentEvent event) {
+		int announced= fAnnouncedChanges;
+		fAnnouncedChanges= 0;
+
+		if (fOffsets == null)
+			return;
+
+		if (announced != 1) {
+			invalidate();
+			return;
+		}
+
+		try {
+			update(event.getOffset(), event.getLength(), event.getText());
+			applyPartitioningChange();
+		} catch (BadLocationException x) {
+			invalidate();
+		}
+	}
+
+	/**
+	 * Updates the occurrences after the given change.
+	 *
+	 * @param offset the offset of the change
+	 * @param length the length of the replaced text
+	 * @param text the inserted text, may be <code>null</code>
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	private void update(int offset, int length, String text) throws BadLocationException {
+		int textLength= text == null ? 0 : text.length();
+		int delta= textLength - length;
+
+		int added= 0;
+		for (int i= 0; i < textLength; i++) {
+			if (indexOf(text.charAt(i)) != -1)
+				added++;
+		}
+		int[] addedOffsets= new int[added];
+		int[] addedCharacters= new int[added];
+		String[] addedTypes= new String[added];
+		fUpdating= true;
+		try {
+			for (int i= 0, k= 0; k < added; i++) {
+				int position= indexOf(text.charAt(i));
+				if (position != -1) {
+					addedOffsets[k]= offset + i;
+					addedCharacters[k]= position;
+					addedTypes[k]= TextUtilities.getContentType(fDocument, fPartitioning, offset + i, false);
+					k++;
+				}
+			}
+		} finally {
+			fUpdating= false;
+		}
+
+		int first= firstAt(offset);
+		int last= firstAt(offset + length);
+		int count= fCount - (last - first) + added;
+		int[] offsets= fOffsets;
+		int[] characters= fCharacters;
+		String[] types= fTypes;
+		if (count > offsets.length) {
+			int capacity= Math.max(count, 2 * offsets.length);
+			offsets= grow(fOffsets, first, capacity);
+			characters= grow(fCharacters, first, capacity);
+			types= new String[capacity];
+			System.arraycopy(fTypes, 0, types, 0, first);
+		}
+		System.arraycopy(fOffsets, last, offsets, first + added, fCount - last);
+		System.arraycopy(fCharacters, last, characters, first + added, fCount - last);
+		System.arraycopy(fTypes, last, types, first + added, fCount - last);
+		System.arraycopy(addedOffsets, 0, offsets, first, added);
+		System.arraycopy(addedCharacters, 0, characters, first, added);
+		System.arraycopy(addedTypes, 0, types, first, added);
+		for (int i= count; i < fCount; i++)
+			types[i]= null;
+		for (int i= first + added; i < count; i++)
+			offsets[i]+= delta;
+
+		fOffsets= offsets;
+		fCharacters= characters;
+		fTypes= types;
+		if (last > first || added > 0)
+			discardDepths();
+		fCount= count;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitioningListener#documentPartitioningChanged(org.eclipse.jface.text.IDocument)
+	 */
+	public synchronized void documentPartitioningChanged(IDocument document) {
+		invalidate();
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitioningListenerExtension2#documentPartitioningChanged(org.eclipse.jface.text.DocumentPartitioningChangedEvent)
+	 */
+	public synchronized void documentPartitioningChanged(DocumentPartitioningChangedEvent event) {
+		if (fOffsets == null)
+			return;
+
+		IRegion region= event.getChangedRegion(fPartitioning);
+		if (region == null)
+			return;
+
+		// the region refers to the changed document, a change in progress is applied first
+		int start= region.getOffset();
+		int end= start + region.getLength();
+		if (fPendingStart == -1) {
+			fPendingStart= start;
+			fPendingEnd= end;
+		} else {
+			fPendingStart= Math.min(fPendingStart, start);
+			fPendingEnd= Math.max(fPendingEnd, end);
+		}
+
+		if (fAnnouncedChanges == 0 && !fUpdating) {
+			try {
+				applyPartitioningChange();
+			} catch (BadLocationException x) {
+				invalidate();
+			}
+		}
+	}
+}
@@ -0,0 +1,393 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.internal.text;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.FindReplaceDocumentAdapter;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+
+/**
+ * Index of all matches of a find query in a document, which allows to answer find
+ * operations by a binary search.
+ * <p>
+ * The index is computed by a background job once the same query has been searched for
+ * twice. Document changes update the index in place if the query is a string whose
+ * occurrences cannot overlap, by searching the changed region and its surroundings. Other
+ * changes invalidate the index, which is then recomputed on the next search.
+ * </p>
+ * <p>
+ * The answers are the same as those of {@link FindReplaceDocumentAdapter#find(int, String, boolean, boolean, boolean, boolean)},
+ * queries for which this cannot be guaranteed are not answered. This class must be used
+ * in the UI thread.
+ * </p>
+ *
+ * @since 3.9
+ */
+public final class MatchIndex extends AbstractDocumentIndex {
+
+	/**
+	 * Computation of the matches of the current query.
+	 */
+	private final class MatchComputation extends Computation {
+
+		/** The string to find. */
+		private final String fQueryString;
+		/** Whether the query is case sensitive. */
+		private final boolean fQueryCaseSensitive;
+		/** Whether the query matches whole words. */
+		private final boolean fQueryWholeWord;
+		/** Whether the query is a regular expression. */
+		private final boolean fQueryRegExSearch;
+		/** The computed matches. */
+		private int[] fResult;
+
+		MatchComputation() {
+			fQueryString= fFindString;
+			fQueryCaseSensitive= fCaseSensitive;
+			fQueryWholeWord= fWholeWord;
+			fQueryRegExSearch= fRegExSearch;
+		}
+
+		/*
+		 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex.Computation#compute(java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		protected boolean compute(String text, IProgressMonitor monitor) {
+			try {
+				Pattern pattern= FindReplaceDocumentAdapter.createPattern(fQueryString, fQueryCaseSensitive, fQueryWholeWord, fQueryRegExSearch);
+				fResult= findAll(pattern, text, monitor);
+			} catch (PatternSyntaxException x) {
+				fResult= null;
+			} catch (StackOverflowError x) {
+				fResult= null;
+			}
+			return fResult != null;
+		}
+
+		/*
+		 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex.Computation#install()
+		 */
+		protected void install() {
+			fMatches= fResult;
+			fCount= fResult.length / 2;
+		}
+	}
+
+
+	/** The string to find. */
+	private String fFindString;
+	/** Whether the query is case sensitive. */
+	private boolean fCaseSensitive;
+	/** Whether the query matches whole words. */
+	private boolean fWholeWord;
+	/** Whether the query is a regular expression. */
+	private boolean fRegExSearch;
+	/** Whether the query is a string whose occurrences cannot overlap. */
+	private boolean fDisjoint;
+	/** The pattern of a query whose occurrences cannot overlap, <code>null</code> if not yet compiled. */
+	private Pattern fDisjointPattern;
+	/**
+	 * The offsets and lengths of the matches as consecutive pairs, <code>null</code> if
+	 * the index is not valid. The last match is empty if an empty match ended the search.
+	 */
+	private int[] fMatches;
+	/** The number of matches in {@link #fMatches}. */
+	private int fCount;
+
+
+	/**
+	 * Creates a new match index for the given document.
+	 *
+	 * @param document the document
+	 */
+	public MatchIndex(IDocument document) {
+		super(document);
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#dispose()
+	 */
+	public synchronized void dispose() {
+		super.dispose();
+		fFindString= null;
+		fDisjointPattern= null;
+	}
+
+	/**
+	 * Returns the location of a given string in the document if the index can answer the
+	 * query. The parameters are the same as the ones of
+	 * {@link FindReplaceDocumentAdapter#find(int, String, boolean, boolean, boolean, boolean)}.
+	 * <p>
+	 * If the query is not the one of the index, the index is reset to the new query and
+	 * will be computed if the query is searched for again.
+	 * </p>
+	 *
+	 * @param startOffset document offset at which search starts
+	 * @param findString the string to find
+	 * @param forwardSearch the search direction
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param wholeWord indicates whether the findString should be limited by white spaces
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * @return the region of the match, {@link #NO_MATCH} if there is no match, or
+	 *         <code>null</code> if the index cannot answer the query
+	 */
+	public synchronized IRegion find(int startOffset, String findString, boolean forwardSearch, boolean caseSensitive, boolean wholeWord, boolean regExSearch) {
+		if (findString == null || findString.length() == 0)
+			return null;
+
+		if (!findString.equals(fFindString) || caseSensitive != fCaseSensitive || wholeWord != fWholeWord || regExSearch != fRegExSearch) {
+			invalidate();
+			fFindString= findString;
+			fCaseSensitive= caseSensitive;
+			fWholeWord= wholeWord;
+			fRegExSearch= regExSearch;
+			fDisjoint= !regExSearch && !hasBorder(findString, caseSensitive);
+			fDisjointPattern= null;
+			return null;
+		}
+
+		if (fMatches == null) {
+			startComputation();
+			return null;
+		}
+
+		int length= getDocument().getLength();
+		if (startOffset == -1)
+			startOffset= forwardSearch ? 0 : length - 1;
+		if (startOffset < 0 || startOffset > length)
+			return null;
+
+		if (forwardSearch)
+			return findForward(startOffset);
+		if (fDisjoint)
+			return findBackward(startOffset);
+		// the matches of a backward search may overlap
+		return null;
+	}
+
+	/**
+	 * Returns the first match starting at or after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the match, {@link #NO_MATCH} or <code>null</code> if the index cannot answer
+	 */
+	private IRegion findForward(int offset) {
+		int index= firstStartingAt(offset);
+		// a search starting inside a match can find matches which overlap it
+		if (index > 0 && getEnd(index - 1) > offset)
+			return null;
+
+		if (fCount > 0 && fMatches[2 * fCount - 1] == 0 && offset > fMatches[2 * fCount - 2])
+			return null; // not covered by the search which ended at an empty match
+
+		if (index == fCount || fMatches[2 * index + 1] == 0)
+			return NO_MATCH;
+		return new Region(fMatches[2 * index], fMatches[2 * index + 1]);
+	}
+
+	/**
+	 * Returns the last match ending at or before the given offset plus one.
+	 *
+	 * @param offset the offset
+	 * @return the match or {@link #NO_MATCH}
+	 */
+	private IRegion findBackward(int offset) {
+		int low= 0, high= fCount;
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (getEnd(mid) <= offset + 1)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+		if (low == 0)
+			return NO_MATCH;
+		return new Region(fMatches[2 * (low - 1)], fMatches[2 * (low - 1) + 1]);
+	}
+
+	/**
+	 * Returns the index of the first match starting at or after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first match starting at or after <code>offset</code>
+	 */
+	private int firstStartingAt(int offset) {
+		int low= 0, high= fCount;
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (fMatches[2 * mid] < offset)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the end offset of the match with the given index.
+	 *
+	 * @param index the index of the match
+	 * @return the end offset of the match
+	 */
+	private int getEnd(int index) {
+		return fMatches[2 * index] + fMatches[2 * index + 1];
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#createComputation()
+	 */
+	protected Computation createComputation() {
+		return new MatchComputation();
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#isValid()
+	 */
+	protected boolean isValid() {
+		return fMatches != null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#discardIndex()
+	 */
+	protected void discardIndex() {
+		fMatches= null;
+		fCount= 0;
+	}
+
+	/**
+	 * Returns the offsets and lengths of all matches of the given pattern in the given text.
+	 * The matches are the same as the ones of
+	 * {@link FindReplaceDocumentAdapter#findAll(int, int, String, boolean, boolean, boolean, IProgressMonitor)}
+	 * on a document with this text.
+	 *
+	 * @param pattern the pattern of the query
+	 * @param text the text to search
+	 * @param monitor the progress monitor used to cancel the search, can be <code>null</code>
+	 * @return the offsets and lengths of the matches as consecutive pairs, or <code>null</code>
+	 *         if the search has been canceled
+	 */
+	private static int[] findAll(Pattern pattern, String text, IProgressMonitor monitor) {
+		Matcher matcher= pattern.matcher(text);
+		int count= 0;
+		int[] matches= new int[32];
+		while (matcher.find()) {
+			if (monitor != null && (count & 0xff) == 0xff && monitor.isCanceled())
+				return null;
+
+			if (2 * count + 1 >= matches.length) {
+				int[] newMatches= new int[2 * matches.length];
+				System.arraycopy(matches, 0, newMatches, 0, matches.length);
+				matches= newMatches;
+			}
+			matches[2 * count]= matcher.start();
+			matches[2 * count + 1]= matcher.end() - matcher.start();
+			count++;
+
+			// an empty match ends the search
+			if (matcher.end() == matcher.start())
+				break;
+		}
+
+		if (monitor != null && monitor.isCanceled())
+			return null;
+
+		int[] result= new int[2 * count];
+		System.arraycopy(matches, 0, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Tells whether a proper prefix of the given string equals a suffix of it, which
+	 * allows occurrences of the string to overlap.
+	 *
+	 * @param string the string
+	 * @param caseSensitive whether the comparison is case sensitive
+	 * @return <code>true</code> if occurrences of the string can overlap
+	 */
+	private static boolean hasBorder(String string, boolean caseSensitive) {
+		int length= string.length();
+		for (int border= 1; border < length; border++) {
+			if (string.regionMatches(!caseSensitive, 0, string, length - border, border))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Updates the matches after the given change by searching the changed region and
+	 * its surroundings. Matches touching the changed region are searched again, as they
+	 * may not be whole words any more.
+	 *
+	 * @param offset the offset of the change
+	 * @param length the length of the replaced text
+	 * @param textLength the length of the inserted text
+	 * @return <code>false</code> if the matches of the query cannot be updated in place
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	protected boolean update(int offset, int length, int textLength) throws BadLocationException {
+		if (!fDisjoint)
+			return false;
+
+		int delta= textLength - length;
+		int findLength= fFindString.length();
+
+		// first match touching the change and first match after it, all matches have the same length
+		int first= firstStartingAt(offset - findLength);
+		int last= firstStartingAt(offset + length + 1);
+
+		// search the changed region and its surroundings
+		IDocument document= getDocument();
+		int documentLength= document.getLength();
+		int start= Math.max(0, offset - findLength - 1);
+		int end= Math.min(documentLength, offset + textLength + findLength + 1);
+		String window= document.get(start, end - start);
+		if (fDisjointPattern == null)
+			fDisjointPattern= FindReplaceDocumentAdapter.createPattern(fFindString, fCaseSensitive, fWholeWord, false);
+		int[] found= findAll(fDisjointPattern, window, null);
+
+		int added= 0;
+		for (int i= 0; i < found.length; i+= 2) {
+			int matchOffset= start + found[i];
+			int matchEnd= matchOffset + found[i + 1];
+			// keep the matches whose surroundings are inside the window and which touch the change
+			boolean inside= (start == 0 || found[i] > 0) && (end == documentLength || matchEnd < end);
+			if (inside && matchEnd >= offset && matchOffset <= offset + textLength) {
+				found[2 * added]= matchOffset;
+				found[2 * added + 1]= found[i + 1];
+				added++;
+			}
+		}
+
+		int count= fCount - (last - first) + added;
+		int[] matches= fMatches;
+		if (2 * count > matches.length) {
+			matches= new int[Math.max(2 * count, 2 * matches.length)];
+			System.arraycopy(fMatches, 0, matches, 0, 2 * first);
+		}
+		System.arraycopy(fMatches, 2 * last, matches, 2 * (first + added), 2 * (fCount - last));
+		System.arraycopy(found, 0, matches, 2 * first, 2 * added);
+		for (int i= first + added; i < count; i++)
+			matches[2 * i]+= delta;
+
+		fMatches= matches;
+		fCount= count;
+		return true;
+	}
+}
@@ -0,0 +1,558 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.swt.custom.StyleRange;
+
+
+/**
+ * A text presentation which stores its style ranges in packed form: the offsets
+ * and lengths of the ranges are kept in <code>int</code> arrays and each range
+ * refers to an entry of a table of distinct styles. Merging or replacing style
+ * ranges only creates new styles if the resulting style is not yet in the table.
+ * <code>StyleRange</code> objects for individual ranges are only created when the
+ * presentation is enumerated, i.e. when it is applied to a widget.
+ * <p>
+ * Unlike {@link TextPresentation}, this presentation does not keep the style
+ * ranges passed to it. The style ranges returned by its iterators are new
+ * objects, modifying them does not change the presentation.
+ * </p>
+ *
+ * @since 3.9
+ */
+public class CompactTextPresentation extends TextPresentation {
+
+	/**
+	 * Enumerates the ranges of this presentation as new <code>StyleRange</code>s.
+	 */
+	private class RangeIterator implements Iterator {
+
+		/** The index of the next range to be enumerated */
+		private int fIndex;
+		/** The upper bound of the indices of ranges to be enumerated */
+		private final int fEnd;
+		/** Indicates whether ranges similar to the default range should be skipped */
+		private final boolean fSkipDefaults;
+		/** The result window */
+		private final IRegion fWindow;
+
+		/**
+		 * Creates a new iterator.
+		 *
+		 * @param skipDefaults <code>true</code> if ranges similar to the default range should be skipped
+		 */
+		RangeIterator(boolean skipDefaults) {
+			fSkipDefaults= skipDefaults;
+			fWindow= fResultWindow;
+			fIndex= getFirstIndexInWindow(fWindow);
+			fEnd= getFirstIndexAfterWindow(fWindow);
+			if (fSkipDefaults)
+				computeIndex();
+		}
+
+		/*
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return fIndex < fEnd;
+		}
+
+		/*
+		 * @see java.util.Iterator#next()
+		 */
+		public Object next() {
+			if (fIndex >= fEnd)
+				throw new NoSuchElementException();
+			StyleRange range= createRange(fWindow, fIndex++);
+			if (fSkipDefaults)
+				computeIndex();
+			return range;
+		}
+
+		/*
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Computes the index of the range that is the next to be enumerated.
+		 */
+		private void computeIndex() {
+			while (fIndex < fEnd && getStyle(fIndex).similarTo(fDefaultRange))
+				++ fIndex;
+		}
+	}
+
+	/** The style information for the range covered by the whole presentation */
+	private StyleRange fDefaultRange;
+	/** A clipping region against which the presentation can be clipped when asked for results */
+	private IRegion fResultWindow;
+	/** The start offsets of the ranges */
+	private int[] fStarts;
+	/** The lengths of the ranges */
+	private int[] fLengths;
+	/** The indices of the ranges' styles in the style table */
+	private int[] fStyleIndices;
+	/** The number of ranges */
+	private int fCount;
+	/** The range arrays of the previous state, reused by the next merge or replace */
+	private int[] fSpareStarts, fSpareLengths, fSpareStyleIndices;
+	/** The distinct styles, <code>StyleRange</code>s with start and length set to 0 */
+	private final ArrayList fStyles= new ArrayList();
+	/** Maps the styles to their indices in the style table */
+	private final HashMap fStyleTable= new HashMap();
+
+
+	/**
+	 * Creates a new empty compact text presentation.
+	 */
+	public CompactTextPresentation() {
+		this(50);
+	}
+
+	/**
+	 * Creates a new empty compact text presentation. <code>sizeHint</code> tells the
+	 * expected number of ranges of this presentation.
+	 *
+	 * @param sizeHint the expected size of this presentation, must be positive
+	 */
+	public CompactTextPresentation(int sizeHint) {
+		super(1);
+		allocate(sizeHint);
+	}
+
+	/**
+	 * Creates a new empty compact text presentation with the given extent.
+	 * <code>sizeHint</code> tells the expected number of ranges of this presentation.
+	 *
+	 * @param extent the extent of the created presentation
+	 * @param sizeHint the expected size of this presentation, must be positive
+	 */
+	public CompactTextPresentation(IRegion extent, int sizeHint) {
+		super(extent, 1);
+		allocate(sizeHint);
+	}
+
+	/**
+	 * Allocates the range arrays.
+	 *
+	 * @param sizeHint the expected number of ranges
+	 */
+	private void allocate(int sizeHint) {
+		fStarts= new int[sizeHint];
+		fLengths= new int[sizeHint];
+		fStyleIndices= new int[sizeHint];
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#setResultWindow(org.eclipse.jface.text.IRegion)
+	 */
+	public void setResultWindow(IRegion resultWindow) {
+		super.setResultWindow(resultWindow);
+		fResultWindow= resultWindow;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#setDefaultStyleRange(org.eclipse.swt.custom.StyleRange)
+	 */
+	public void setDefaultStyleRange(StyleRange range) {
+		super.setDefaultStyleRange(range);
+		fDefaultRange= range;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#addStyleRange(org.eclipse.swt.custom.StyleRange)
+	 */
+	public void addStyleRange(StyleRange range) {
+		checkConsistency(range);
+		ensureCapacity(fCount + 1);
+		fStarts[fCount]= range.start;
+		fLengths[fCount]= range.length;
+		fStyleIndices[fCount]= getStyleIndex(range, false);
+		++ fCount;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#replaceStyleRange(org.eclipse.swt.custom.StyleRange)
+	 */
+	public void replaceStyleRange(StyleRange range) {
+		applyStyleRanges(new StyleRange[] { range }, false);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#mergeStyleRange(org.eclipse.swt.custom.StyleRange)
+	 */
+	public void mergeStyleRange(StyleRange range) {
+		applyStyleRanges(new StyleRange[] { range }, true);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#replaceStyleRanges(org.eclipse.swt.custom.StyleRange[])
+	 */
+	public void replaceStyleRanges(StyleRange[] ranges) {
+		applyStyleRanges(ranges, false);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#mergeStyleRanges(org.eclipse.swt.custom.StyleRange[])
+	 */
+	public void mergeStyleRanges(StyleRange[] ranges) {
+		applyStyleRanges(ranges, true);
+	}
+
+	/**
+	 * Applies the given ranges to this presentation in a single pass over the
+	 * existing ranges. Each range must be a subrange of the presentation's default
+	 * range. The ranges must be ordered by increasing offset and must not overlap
+	 * (but may be adjacent).
+	 *
+	 * @param ranges the ranges to be added
+	 * @param merge <code>true</code> if the style should be merged instead of replaced
+	 */
+	private void applyStyleRanges(StyleRange[] ranges, boolean merge) {
+		int[] oldStarts= fStarts;
+		int[] oldLengths= fLengths;
+		int[] oldStyles= fStyleIndices;
+		int oldCount= fCount;
+
+		int capacity= Math.max(oldCount + 2 * ranges.length, 1);
+		if (fSpareStarts != null && fSpareStarts.length >= capacity) {
+			fStarts= fSpareStarts;
+			fLengths= fSpareLengths;
+			fStyleIndices= fSpareStyleIndices;
+		} else
+			allocate(capacity);
+		fCount= 0;
+
+		int j= 0;
+		// the not yet copied rest of the existing range at index j
+		int headStart= j < oldCount ? oldStarts[j] : 0;
+		int headEnd= j < oldCount ? oldStarts[j] + oldLengths[j] : 0;
+
+		for (int i= 0; i < ranges.length; i++) {
+			StyleRange range= ranges[i];
+			if (range.length == 0)
+				continue;
+
+			checkConsistency(range);
+			int start= range.start;
+			int end= start + range.length;
+
+			// copy the existing ranges in front of the range
+			while (j < oldCount && headEnd <= start) {
+				append(headStart, headEnd - headStart, oldStyles[j]);
+				if (++j < oldCount) {
+					headStart= oldStarts[j];
+					headEnd= headStart + oldLengths[j];
+				}
+			}
+
+			int position= start;
+			while (position < end) {
+				if (j < oldCount && headStart < end) {
+					if (headStart > position) {
+						// gap in front of an existing range
+						append(position, headStart - position, getGapStyleIndex(range, merge, true));
+						position= headStart;
+					} else {
+						if (headStart < position)
+							append(headStart, position - headStart, oldStyles[j]);
+
+						int pieceEnd= Math.min(headEnd, end);
+						append(position, pieceEnd - position, getAppliedStyleIndex(range, (StyleRange) fStyles.get(oldStyles[j]), merge));
+						position= pieceEnd;
+
+						if (headEnd > end) {
+							headStart= end;
+						} else if (++j < oldCount) {
+							headStart= oldStarts[j];
+							headEnd= headStart + oldLengths[j];
+						}
+					}
+				} else {
+					// gap behind the last affected range
+					append(position, end - position, getGapStyleIndex(range, merge, false));
+					position= end;
+				}
+			}
+		}
+
+		while (j < oldCount) {
+			append(headStart, headEnd - headStart, oldStyles[j]);
+			if (++j < oldCount) {
+				headStart= oldStarts[j];
+				headEnd= headStart + oldLengths[j];
+			}
+		}
+
+		fSpareStarts= oldStarts;
+		fSpareLengths= oldLengths;
+		fSpareStyleIndices= oldStyles;
+	}
+
+	/**
+	 * Returns the index of the style for a part of the given range which is not
+	 * covered by an existing range.
+	 *
+	 * @param range the range being applied
+	 * @param merge <code>true</code> if the style should be merged instead of replaced
+	 * @param inner <code>true</code> if the part is followed by an existing range
+	 * @return the index of the resulting style
+	 */
+	private int getGapStyleIndex(StyleRange range, boolean merge, boolean inner) {
+		if (fDefaultRange != null)
+			return getAppliedStyleIndex(range, fDefaultRange, merge);
+		// same as TextPresentation: an inner gap starts from an empty style, a trailing gap uses the range itself
+		if (inner)
+			return getAppliedStyleIndex(range, new StyleRange(), merge);
+		return getStyleIndex(range, false);
+	}
+
+	/**
+	 * Returns the index of the style that results from applying the style of the
+	 * given range to the given style.
+	 *
+	 * @param range the range whose style to apply
+	 * @param style the style to which the range's style is applied, not modified
+	 * @param merge <code>true</code> if the style should be merged instead of replaced
+	 * @return the index of the resulting style
+	 */
+	private int getAppliedStyleIndex(StyleRange range, StyleRange style, boolean merge) {
+		StyleRange target= (StyleRange) style.clone();
+		applyStyle(range, target, merge);
+		return getStyleIndex(target, true);
+	}
+
+	/**
+	 * Returns the index of the given range's style in the style table. Adds the
+	 * style to the table if it is not yet contained.
+	 *
+	 * @param range the range whose style to look up
+	 * @param owned <code>true</code> if the given range may be stored in the style table
+	 * @return the index of the style
+	 */
+	private int getStyleIndex(StyleRange range, boolean owned) {
+		StyleRange style= owned ? range : (StyleRange) range.clone();
+		style.start= 0;
+		style.length= 0;
+		Integer index= (Integer) fStyleTable.get(style);
+		if (index != null)
+			return index.intValue();
+
+		int newIndex= fStyles.size();
+		fStyles.add(style);
+		fStyleTable.put(style, new Integer(newIndex));
+		return newIndex;
+	}
+
+	/**
+	 * Appends a range to the range arrays.
+	 *
+	 * @param start the start of the range
+	 * @param length the length of the range
+	 * @param styleIndex the index of the range's style
+	 */
+	private void append(int start, int length, int styleIndex) {
+		ensureCapacity(fCount + 1);
+		fStarts[fCount]= start;
+		fLengths[fCount]= length;
+		fStyleIndices[fCount]= styleIndex;
+		++ fCount;
+	}
+
+	/**
+	 * Makes sure the range arrays can hold the given number of ranges.
+	 *
+	 * @param capacity the required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (capacity <= fStarts.length)
+			return;
+
+		int newCapacity= Math.max(capacity, fStarts.length * 2);
+		int[] starts= new int[newCapacity];
+		int[] lengths= new int[newCapacity];
+		int[] styles= new int[newCapacity];
+		System.arraycopy(fStarts, 0, starts, 0, fCount);
+		System.arraycopy(fLengths, 0, lengths, 0, fCount);
+		System.arraycopy(fStyleIndices, 0, styles, 0, fCount);
+		fStarts= starts;
+		fLengths= lengths;
+		fStyleIndices= styles;
+	}
+
+	/**
+	 * Returns the style of the range with the given index.
+	 *
+	 * @param index the index of the range
+	 * @return the style of the range, must not be modified
+	 */
+	private StyleRange getStyle(int index) {
+		return (StyleRange) fStyles.get(fStyleIndices[index]);
+	}
+
+	/**
+	 * Creates the style range for the range with the given index, relative to and
+	 * clipped by the given window.
+	 *
+	 * @param window the reference window or <code>null</code>
+	 * @param index the index of the range
+	 * @return a new style range
+	 */
+	private StyleRange createRange(IRegion window, int index) {
+		StyleRange range= (StyleRange) getStyle(index).clone();
+		int start= fStarts[index];
+		int end= start + fLengths[index];
+		if (window != null) {
+			start= Math.max(start - window.getOffset(), 0);
+			end= Math.min(end, window.getOffset() + window.getLength()) - window.getOffset();
+		}
+		range.start= start;
+		range.length= end - start;
+		return range;
+	}
+
+	/**
+	 * Clips the given range to the presentation's default style range.
+	 *
+	 * @param range the range to be checked
+	 * @exception IllegalArgumentException if range is <code>null</code>
+	 */
+	private void checkConsistency(StyleRange range) {
+		if (range == null)
+			throw new IllegalArgumentException();
+
+		if (fDefaultRange != null) {
+			if (range.start < fDefaultRange.start)
+				range.start= fDefaultRange.start;
+
+			int defaultEnd= fDefaultRange.start + fDefaultRange.length;
+			int end= range.start + range.length;
+			if (end > defaultEnd)
+				range.length -= (end - defaultEnd);
+		}
+	}
+
+	/**
+	 * Returns the index of the first range which overlaps with the specified window.
+	 *
+	 * @param window the window to be used for searching
+	 * @return the index of the first range overlapping with the window
+	 */
+	private int getFirstIndexInWindow(IRegion window) {
+		if (window != null) {
+			int start= window.getOffset();
+			int i= -1, j= fCount;
+			while (j - i > 1) {
+				int k= (i + j) >> 1;
+				if (fStarts[k] + fLengths[k] > start)
+					j= k;
+				else
+					i= k;
+			}
+			return j;
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns the index of the first range which comes after the specified window and does
+	 * not overlap with this window.
+	 *
+	 * @param window the window to be used for searching
+	 * @return the index of the first range behind the window and not overlapping with the window
+	 */
+	private int getFirstIndexAfterWindow(IRegion window) {
+		if (window != null) {
+			int end= window.getOffset() + window.getLength();
+			int i= -1, j= fCount;
+			while (j - i > 1) {
+				int k= (i + j) >> 1;
+				if (fStarts[k] < end)
+					i= k;
+				else
+					j= k;
+			}
+			return j;
+		}
+		return fCount;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#getNonDefaultStyleRangeIterator()
+	 */
+	public Iterator getNonDefaultStyleRangeIterator() {
+		return new RangeIterator(fDefaultRange != null);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#getAllStyleRangeIterator()
+	 */
+	public Iterator getAllStyleRangeIterator() {
+		return new RangeIterator(false);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#getDenumerableRanges()
+	 */
+	public int getDenumerableRanges() {
+		int size= getFirstIndexAfterWindow(fResultWindow) - getFirstIndexInWindow(fResultWindow);
+		return (size < 0 ? 0 : size);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#getFirstStyleRange()
+	 */
+	public StyleRange getFirstStyleRange() {
+		int index= getFirstIndexInWindow(fResultWindow);
+		if (index < 0 || index >= fCount)
+			return null;
+		return createRange(fResultWindow, index);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#getLastStyleRange()
+	 */
+	public StyleRange getLastStyleRange() {
+		int index= getFirstIndexAfterWindow(fResultWindow) - 1;
+		if (index < 0 || index >= fCount)
+			return null;
+		return createRange(fResultWindow, index);
+	}
+
+	/**
+	 * Returns the number of distinct styles used by the ranges of this presentation.
+	 *
+	 * @return the number of distinct styles
+	 */
+	public int getStyleCount() {
+		return fStyles.size();
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.TextPresentation#clear()
+	 */
+	public void clear() {
+		super.clear();
+		fDefaultRange= null;
+		fResultWindow= null;
+		fCount= 0;
+		fStyles.clear();
+		fStyleTable.clear();
+	}
+}
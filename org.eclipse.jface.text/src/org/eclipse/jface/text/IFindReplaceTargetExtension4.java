@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jface.text;
+
+/**
+ * Extension interface for {@link org.eclipse.jface.text.IFindReplaceTarget}.
+ * <p>
+ * Allows to replace all occurrences of a string in one operation. Unlike a sequence of
+ * <code>findAndSelect</code> and <code>replaceSelection</code> calls, the target does
+ * not select each occurrence and can apply all replacements as a single change.
+ *
+ * @since 3.9
+ */
+public interface IFindReplaceTargetExtension4 {
+
+	/**
+	 * Replaces all occurrences of the given string inside the target's scope, or the whole
+	 * target if no scope is set, with the given text. If regExSearch is <code>true</code>
+	 * the findString is interpreted as a regular expression and the replaceString as a
+	 * regular expression replace pattern.
+	 * <p>
+	 * This target must be editable. Otherwise nothing happens.
+	 *
+	 * @param findString the specification of what should be found
+	 * @param replaceString the specification of the substitution text
+	 * @param caseSensitive <code>true</code> performs a case sensitive search, <code>false</code> an insensitive search
+	 * @param wholeWord if <code>true</code> only occurrences are reported in which the findString stands as a word by itself.
+	 * 				Must not be used in combination with <code>regExSearch</code>.
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * 				Must not be used in combination with <code>wholeWord</code>.
+	 * @return the number of replaced occurrences
+	 * @throws java.util.regex.PatternSyntaxException if regExSearch is <code>true</code> and findString or
+	 *             replaceString is an invalid regular expression
+	 */
+	int replaceAll(String findString, String replaceString, boolean caseSensitive, boolean wholeWord, boolean regExSearch);
+}
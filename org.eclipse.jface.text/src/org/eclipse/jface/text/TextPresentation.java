@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -434,7 +434,7 @@ public class TextPresentation {
 	 * @param merge <code>true</code> if the style should be merged instead of replaced
 	 * @since 3.0
 	 */
-	private void applyStyle(StyleRange template, StyleRange target, boolean merge) {
+	static void applyStyle(StyleRange template, StyleRange target, boolean merge) {
 		if (merge) {
 			if (template.font != null)
 				target.font= template.font;
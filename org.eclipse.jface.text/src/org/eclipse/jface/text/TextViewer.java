@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -70,6 +70,7 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.text.edits.TextEdit;
 
 import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.internal.text.MatchIndex;
 import org.eclipse.jface.internal.text.NonDeletingPositionUpdater;
 import org.eclipse.jface.internal.text.SelectionProcessor;
 import org.eclipse.jface.internal.text.StickyHoverManager;
@@ -785,7 +786,7 @@ public class TextViewer extends Viewer implements
 	/**
 	 * This viewer's find/replace target.
 	 */
-	class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension, IFindReplaceTargetExtension3 {
+	class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension, IFindReplaceTargetExtension3, IFindReplaceTargetExtension4 {
 
 		/** The range for this target. */
 		private FindReplaceRange fRange;
@@ -885,6 +886,23 @@ public class TextViewer extends Viewer implements
 			return widgetOffset;
 		}
 
+		/*
+		 * @see IFindReplaceTargetExtension4#replaceAll(String, String, boolean, boolean, boolean)
+		 * @since 3.9
+		 */
+		public int replaceAll(String findString, String replaceString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) {
+			if (!isEditable())
+				return 0;
+
+			IRegion range= fRange != null ? fRange.getRange() : null;
+			setReplaceAllMode(true);
+			try {
+				return TextViewer.this.replaceAll(findString, replaceString, caseSensitive, wholeWord, regExSearch, range);
+			} finally {
+				setReplaceAllMode(false);
+			}
+		}
+
 		/*
 		 * @see IFindReplaceTarget#canPerformFind()
 		 */
@@ -1724,6 +1742,12 @@ public class TextViewer extends Viewer implements
 	 * @since 3.8
 	 */
 	private Control fDisposedControl;
+	/**
+	 * The index of the matches of the last find query, <code>null</code> if none.
+	 *
+	 * @since 3.9
+	 */
+	private MatchIndex fMatchIndex;
 
 
 	//---- Construction and disposal ------------------
@@ -3564,6 +3588,10 @@ public class TextViewer extends Viewer implements
 		initializeWidgetContents();
 
 		fFindReplaceDocumentAdapter= null;
+		if (fMatchIndex != null && fMatchIndex.getDocument() != fVisibleDocument && fMatchIndex.getDocument() != fDocument) {
+			fMatchIndex.dispose();
+			fMatchIndex= null;
+		}
 		if (fVisibleDocument != null && fVisibleDocumentListener != null)
 			fVisibleDocument.addDocumentListener(fVisibleDocumentListener);
 	}
@@ -4652,7 +4680,7 @@ public class TextViewer extends Viewer implements
 
 			int widgetOffset= (startPosition == -1 ? startPosition : modelOffset2WidgetOffset(startPosition));
 			FindReplaceDocumentAdapter adapter= getFindReplaceDocumentAdapter();
-			IRegion matchRegion= adapter.find(widgetOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+			IRegion matchRegion= findMatch(getVisibleDocument(), widgetOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
 			if (matchRegion != null) {
 				int widgetPos= matchRegion.getOffset();
 				int length= matchRegion.getLength();
@@ -4720,7 +4748,7 @@ public class TextViewer extends Viewer implements
 				return -1;
 
 			FindReplaceDocumentAdapter adapter= getFindReplaceDocumentAdapter();
-			IRegion matchRegion= adapter.find(widgetOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+			IRegion matchRegion= findMatch(getVisibleDocument(), widgetOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
 			int widgetPos= -1;
 			int length= 0;
 			if (matchRegion != null) {
@@ -4764,6 +4792,85 @@ public class TextViewer extends Viewer implements
 		return -1;
 	}
 
+	/**
+	 * Returns the location of the given string in the document of the
+	 * {@link #getFindReplaceDocumentAdapter() find/replace document adapter}, like
+	 * {@link FindReplaceDocumentAdapter#find(int, String, boolean, boolean, boolean, boolean)}
+	 * does, and leaves the adapter ready to replace the match.
+	 * <p>
+	 * When the same string is searched for repeatedly, all its matches are located in the
+	 * background and subsequent searches look up the index of the matches.
+	 * </p>
+	 *
+	 * @param document the document of the find/replace document adapter
+	 * @param startOffset document offset at which search starts
+	 * @param findString the find string specification
+	 * @param forwardSearch the search direction
+	 * @param caseSensitive <code>true</code> if case sensitive, <code>false</code> otherwise
+	 * @param wholeWord <code>true</code> if matches must be whole words, <code>false</code> otherwise
+	 * @param regExSearch <code>true</code> if <code>findString</code> is a regular expression, <code>false</code> otherwise
+	 * @return the region of the match or <code>null</code> if there was no match
+	 * @throws BadLocationException if startOffset is an invalid document offset
+	 * @since 3.9
+	 */
+	protected IRegion findMatch(IDocument document, int startOffset, String findString, boolean forwardSearch, boolean caseSensitive, boolean wholeWord, boolean regExSearch) throws BadLocationException {
+		FindReplaceDocumentAdapter adapter= getFindReplaceDocumentAdapter();
+		if (fMatchIndex == null || fMatchIndex.getDocument() != document) {
+			if (fMatchIndex != null)
+				fMatchIndex.dispose();
+			fMatchIndex= new MatchIndex(document);
+		}
+
+		IRegion match= fMatchIndex.find(startOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+		if (match == MatchIndex.NO_MATCH) {
+			// a failing search leaves the adapter in the same state as a search for the indexed match
+			adapter.find(adapter.length(), findString, true, caseSensitive, wholeWord, regExSearch);
+			return null;
+		}
+		if (match != null) {
+			IRegion found= adapter.find(match.getOffset(), findString, true, caseSensitive, wholeWord, regExSearch);
+			if (match.equals(found))
+				return found;
+		}
+		return adapter.find(startOffset, findString, forwardSearch, caseSensitive, wholeWord, regExSearch);
+	}
+
+	/**
+	 * Adheres to the contract of
+	 * {@link org.eclipse.jface.text.IFindReplaceTargetExtension4#replaceAll(String, String, boolean, boolean, boolean)}.
+	 * All occurrences are located in one scan of the document and replaced without
+	 * changing the selection.
+	 *
+	 * @param findString the find string specification
+	 * @param replaceString the replace string specification
+	 * @param caseSensitive <code>true</code> if case sensitive, <code>false</code> otherwise
+	 * @param wholeWord <code>true</code> if matches must be whole words, <code>false</code> otherwise
+	 * @param regExSearch <code>true</code> if <code>findString</code> is a regular expression, <code>false</code> otherwise
+	 * @param range the model range in which to replace, or <code>null</code> for the whole visible document
+	 * @return the number of replaced occurrences
+	 * @since 3.9
+	 */
+	protected int replaceAll(String findString, String replaceString, boolean caseSensitive, boolean wholeWord, boolean regExSearch, IRegion range) {
+		if (fTextWidget == null)
+			return 0;
+
+		try {
+
+			FindReplaceDocumentAdapter adapter= getFindReplaceDocumentAdapter();
+			IRegion widgetRange= range == null ? new Region(0, adapter.length()) : modelRange2WidgetRange(range);
+			if (widgetRange == null)
+				return 0;
+
+			return adapter.replaceAll(widgetRange.getOffset(), widgetRange.getLength(), findString, replaceString, caseSensitive, wholeWord, regExSearch);
+
+		} catch (BadLocationException x) {
+			if (TRACE_ERRORS)
+				System.out.println(JFaceTextMessages.getString("TextViewer.error.bad_location.findAndSelect")); //$NON-NLS-1$
+		}
+
+		return 0;
+	}
+
 	//---------- text presentation support
 
 	/*
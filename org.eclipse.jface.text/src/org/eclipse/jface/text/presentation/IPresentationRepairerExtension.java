@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.presentation;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextPresentation;
+
+
+/**
+ * Extension interface for {@link IPresentationRepairer}.
+ * <p>
+ * Allows a presentation repairer to create the presentation for a document
+ * other than the one it has been told about in
+ * {@link IPresentationRepairer#setDocument(IDocument)}, e.g. for a snapshot of
+ * that document. A {@link PresentationReconciler} in background repair mode
+ * calls this method outside the UI thread, however never concurrently for the
+ * same repairer. The snapshot it passes only contains the lines covered by the
+ * damage, starting with the first of these lines.
+ * </p>
+ * <p>
+ * Implementing this interface is an explicit opt-in to background repairs,
+ * see {@link org.eclipse.jface.text.rules.BackgroundDamagerRepairer}.
+ * </p>
+ *
+ * @see PresentationReconciler#setBackgroundRepairEnabled(boolean)
+ * @since 3.9
+ */
+public interface IPresentationRepairerExtension {
+
+	/**
+	 * Fills the given presentation with the style ranges which repair the
+	 * presentation damage described by the given region of the given document.
+	 * <p>
+	 * Implementers must not access the document set by
+	 * {@link IPresentationRepairer#setDocument(IDocument)} nor any other state
+	 * that is shared with the UI thread.
+	 * </p>
+	 *
+	 * @param presentation the text presentation to be filled by this repairer
+	 * @param damage the damage to be repaired, relative to the given document
+	 * @param document the document whose content is used to repair the damage
+	 */
+	void createPresentation(TextPresentation presentation, ITypedRegion damage, IDocument document);
+}
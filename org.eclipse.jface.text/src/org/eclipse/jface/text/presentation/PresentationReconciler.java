@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,16 +16,24 @@ import java.util.Iterator;
 import java.util.Map;
 
 import org.eclipse.swt.custom.StyleRange;
+import org.eclipse.swt.custom.StyledText;
+import org.eclipse.swt.widgets.Display;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DefaultPositionUpdater;
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IDocumentPartitioningListener;
 import org.eclipse.jface.text.IDocumentPartitioningListenerExtension;
@@ -37,11 +45,13 @@ import org.eclipse.jface.text.ITextListener;
 import org.eclipse.jface.text.ITextViewer;
 import org.eclipse.jface.text.ITextViewerExtension5;
 import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
 import org.eclipse.jface.text.TextEvent;
 import org.eclipse.jface.text.TextPresentation;
 import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.text.TypedPosition;
+import org.eclipse.jface.text.TypedRegion;
 
 
 
@@ -53,6 +63,13 @@ import org.eclipse.jface.text.TypedPosition;
  * document change rather than just the portion overlapping with the viewer's
  * viewport.
  * <p>
+ * For expensive repairers, the reconciler can be put into a
+ * {@link #setBackgroundRepairEnabled(boolean) background repair mode} in which
+ * the text presentation is computed in a background job against a snapshot of
+ * the damaged lines and only applied in the UI thread if the document has not been
+ * modified in the meantime.
+ * </p>
+ * <p>
  * Usually, clients instantiate this class and configure it before using it.
  * </p>
  */
@@ -62,6 +79,117 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	protected final static String TRACKED_PARTITION= "__reconciler_tracked_partition"; //$NON-NLS-1$
 
 
+	/**
+	 * A request to repair damage in the background. Captures the document's modification
+	 * stamp and partitioning, and the content of the damaged lines at the time the request
+	 * has been issued.
+	 *
+	 * @since 3.9
+	 */
+	private static final class RepairRequest {
+		/** The document whose presentation is repaired. */
+		final IDocument fDocument;
+		/** The modification stamp of the document when the request has been issued. */
+		final long fModificationStamp;
+		/** The offset of the first damaged line, i.e. the document offset of the snapshot. */
+		final int fContentOffset;
+		/** The content of the damaged lines when the request has been issued. */
+		final String fContent;
+		/** The damage to be repaired. */
+		final IRegion fDamage;
+		/** The partitioning of the damage, relative to the snapshot. */
+		final ITypedRegion[] fPartitioning;
+		/** The repairers for the partitions, entries may be <code>null</code>. */
+		final IPresentationRepairerExtension[] fRepairers;
+		/** The sequence number of this request. */
+		final int fSequence;
+		/** The display used to apply the repair. */
+		final Display fDisplay;
+
+		RepairRequest(IDocument document, long modificationStamp, IRegion damage, ITypedRegion[] partitioning, IPresentationRepairerExtension[] repairers, int sequence, Display display) throws BadLocationException {
+			int damageEnd= damage.getOffset() + damage.getLength();
+			fDocument= document;
+			fModificationStamp= modificationStamp;
+			fContentOffset= document.getLineInformationOfOffset(damage.getOffset()).getOffset();
+			fContent= document.get(fContentOffset, damageEnd - fContentOffset);
+			fDamage= damage;
+			fPartitioning= new ITypedRegion[partitioning.length];
+			for (int i= 0; i < partitioning.length; i++) {
+				ITypedRegion partition= partitioning[i];
+				int start= Math.max(partition.getOffset(), damage.getOffset());
+				int end= Math.min(partition.getOffset() + partition.getLength(), damageEnd);
+				fPartitioning[i]= new TypedRegion(start - fContentOffset, Math.max(end - start, 0), partition.getType());
+			}
+			fRepairers= repairers;
+			fSequence= sequence;
+			fDisplay= display;
+		}
+	}
+
+	/**
+	 * Job which computes text presentations for repair requests in the background
+	 * and posts them to the UI thread.
+	 *
+	 * @since 3.9
+	 */
+	private class RepairJob extends Job {
+
+		/** The next request to be processed, <code>null</code> if none. */
+		private RepairRequest fRequest;
+
+		RepairJob() {
+			super(PresentationReconciler.this.getClass().getName());
+			setSystem(true);
+			setPriority(Job.INTERACTIVE);
+		}
+
+		/**
+		 * Replaces any request not yet being processed by the given one and schedules this job.
+		 *
+		 * @param request the repair request
+		 */
+		synchronized void request(RepairRequest request) {
+			fRequest= request;
+			schedule();
+		}
+
+		/**
+		 * Discards the request not yet being processed and cancels this job.
+		 */
+		synchronized void discard() {
+			fRequest= null;
+			cancel();
+		}
+
+		private synchronized RepairRequest takeRequest() {
+			RepairRequest request= fRequest;
+			fRequest= null;
+			return request;
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		protected IStatus run(IProgressMonitor monitor) {
+			final RepairRequest request= takeRequest();
+			if (request == null)
+				return Status.OK_STATUS;
+
+			final TextPresentation presentation= createPresentation(request, monitor);
+			if (presentation == null || monitor.isCanceled())
+				return Status.CANCEL_STATUS;
+
+			if (!request.fDisplay.isDisposed()) {
+				request.fDisplay.asyncExec(new Runnable() {
+					public void run() {
+						applyRepair(request, presentation);
+					}
+				});
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
 	/**
 	 * Internal listener class.
 	 */
@@ -82,6 +210,7 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 		 */
 		public void inputDocumentAboutToBeChanged(IDocument oldDocument, IDocument newDocument) {
 			if (oldDocument != null) {
+				cancelBackgroundRepair();
 				try {
 
 					fViewer.removeTextListener(this);
@@ -277,6 +406,27 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	 * @since 3.0
 	 */
 	private String fPartitioning;
+	/**
+	 * Tells whether damage is repaired in the background.
+	 * @since 3.9
+	 */
+	private boolean fIsBackgroundRepairEnabled= false;
+	/**
+	 * The job used to repair damage in the background, <code>null</code> if not yet created.
+	 * @since 3.9
+	 */
+	private RepairJob fRepairJob;
+	/**
+	 * The damage of the last background repair request which has not yet been applied, or
+	 * <code>null</code> if none. Tracked in the damage regions' position category.
+	 * @since 3.9
+	 */
+	private Position fPendingDamage;
+	/**
+	 * The number of background repair requests issued so far.
+	 * @since 3.9
+	 */
+	private int fRepairRequestCount= 0;
 
 	/**
 	 * Creates a new presentation reconciler. There are no damagers or repairers
@@ -301,6 +451,52 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 		fPartitioning= partitioning;
 	}
 
+	/**
+	 * Enables or disables the background repair mode.
+	 * <p>
+	 * In background repair mode the text presentation for damaged regions is
+	 * computed by a background job against a snapshot of the damaged lines. The
+	 * result is applied in the UI thread only if the document has not been
+	 * modified in the meantime; otherwise the damage is merged into the
+	 * damage caused by the newer modification and repaired again. Background
+	 * repair is only used if all repairers involved in repairing the damage
+	 * implement {@link IPresentationRepairerExtension} and if the document
+	 * implements {@link IDocumentExtension4}; in all other cases the damage is
+	 * repaired synchronously.
+	 * </p>
+	 * <p>
+	 * Must be called in the UI thread. Disabling the background repair mode
+	 * synchronously repairs any pending damage.
+	 * </p>
+	 *
+	 * @param enabled <code>true</code> to repair damage in the background
+	 * @since 3.9
+	 */
+	public void setBackgroundRepairEnabled(boolean enabled) {
+		if (fIsBackgroundRepairEnabled == enabled)
+			return;
+
+		fIsBackgroundRepairEnabled= enabled;
+		if (!enabled && fViewer != null) {
+			IDocument document= fViewer.getDocument();
+			Position pending= fPendingDamage;
+			cancelBackgroundRepair();
+			if (document != null && pending != null && !pending.isDeleted())
+				processDamage(new Region(pending.getOffset(), pending.getLength()), document);
+		}
+	}
+
+	/**
+	 * Tells whether the background repair mode is enabled.
+	 *
+	 * @return <code>true</code> if damage is repaired in the background
+	 * @see #setBackgroundRepairEnabled(boolean)
+	 * @since 3.9
+	 */
+	public boolean isBackgroundRepairEnabled() {
+		return fIsBackgroundRepairEnabled;
+	}
+
 	/*
 	 * @see org.eclipse.jface.text.presentation.IPresentationReconcilerExtension#geDocumenttPartitioning()
 	 * @since 3.0
@@ -566,12 +762,183 @@ public class PresentationReconciler implements IPresentationReconciler, IPresent
 	 */
 	private void processDamage(IRegion damage, IDocument document) {
 		if (damage != null && damage.getLength() > 0) {
+			damage= consumePendingDamage(damage, document);
+			if (fIsBackgroundRepairEnabled && repairInBackground(damage, document))
+				return;
+
 			TextPresentation p= createPresentation(damage, document);
 			if (p != null)
 				applyTextRegionCollection(p);
 		}
 	}
 
+	/**
+	 * Returns the smallest region covering the given damage and the damage of a
+	 * background repair request that has not yet been applied, and forgets about
+	 * the latter.
+	 *
+	 * @param damage the damage
+	 * @param document the document whose presentation must be repaired
+	 * @return the damage including the pending damage
+	 * @since 3.9
+	 */
+	private IRegion consumePendingDamage(IRegion damage, IDocument document) {
+		if (fPendingDamage == null)
+			return damage;
+
+		Position pending= fPendingDamage;
+		fPendingDamage= null;
+		try {
+			document.removePosition(fPositionCategory, pending);
+		} catch (BadPositionCategoryException x) {
+			// should not happen on input documents
+		}
+
+		if (pending.isDeleted())
+			return damage;
+
+		int offset= Math.min(damage.getOffset(), pending.getOffset());
+		int end= Math.max(damage.getOffset() + damage.getLength(), pending.getOffset() + pending.getLength());
+		end= Math.min(end, document.getLength());
+		return new Region(offset, end - offset);
+	}
+
+	/**
+	 * Issues a request to repair the given damage in the background. The damage
+	 * is remembered as pending until the repair has been applied.
+	 *
+	 * @param damage the damage to be repaired
+	 * @param document the document whose presentation must be repaired
+	 * @return <code>true</code> if the damage is repaired in the background,
+	 *         <code>false</code> if it must be repaired synchronously
+	 * @since 3.9
+	 */
+	private boolean repairInBackground(IRegion damage, IDocument document) {
+		if (fRepairers == null || fRepairers.isEmpty() || !(document instanceof IDocumentExtension4))
+			return false;
+
+		long modificationStamp= ((IDocumentExtension4) document).getModificationStamp();
+		if (modificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP)
+			return false;
+
+		StyledText widget= fViewer.getTextWidget();
+		if (widget == null || widget.isDisposed())
+			return false;
+
+		try {
+			ITypedRegion[] partitioning= TextUtilities.computePartitioning(document, getDocumentPartitioning(), damage.getOffset(), damage.getLength(), false);
+			IPresentationRepairerExtension[] repairers= new IPresentationRepairerExtension[partitioning.length];
+			for (int i= 0; i < partitioning.length; i++) {
+				IPresentationRepairer repairer= getRepairer(partitioning[i].getType());
+				if (repairer instanceof IPresentationRepairerExtension)
+					repairers[i]= (IPresentationRepairerExtension) repairer;
+				else if (repairer != null)
+					return false;
+			}
+
+			Position pending= new Position(damage.getOffset(), damage.getLength());
+			document.addPosition(fPositionCategory, pending);
+			fPendingDamage= pending;
+
+			if (fRepairJob == null)
+				fRepairJob= new RepairJob();
+			fRepairJob.request(new RepairRequest(document, modificationStamp, damage, partitioning, repairers, ++fRepairRequestCount, widget.getDisplay()));
+			return true;
+
+		} catch (BadLocationException x) {
+			return false;
+		} catch (BadPositionCategoryException x) {
+			// should not happen on input documents
+			return false;
+		}
+	}
+
+	/**
+	 * Creates the text presentation for the given background repair request. Called
+	 * by the background repair job.
+	 *
+	 * @param request the repair request
+	 * @param monitor the progress monitor
+	 * @return the text presentation or <code>null</code> if canceled
+	 * @since 3.9
+	 */
+	private TextPresentation createPresentation(RepairRequest request, IProgressMonitor monitor) {
+		IDocument snapshot= new Document(request.fContent);
+		int offset= request.fContentOffset;
+		TextPresentation snapshotPresentation= new TextPresentation(new Region(request.fDamage.getOffset() - offset, request.fDamage.getLength()), 1000);
+		for (int i= 0; i < request.fPartitioning.length; i++) {
+			if (monitor.isCanceled())
+				return null;
+			if (request.fRepairers[i] != null)
+				request.fRepairers[i].createPresentation(snapshotPresentation, request.fPartitioning[i], snapshot);
+		}
+
+		TextPresentation presentation= new TextPresentation(request.fDamage, 1000);
+		Iterator e= snapshotPresentation.getAllStyleRangeIterator();
+		while (e.hasNext()) {
+			StyleRange range= (StyleRange) e.next();
+			range.start += offset;
+			presentation.addStyleRange(range);
+		}
+		return presentation;
+	}
+
+	/**
+	 * Applies the result of a background repair request if the document has not been
+	 * modified since the request has been issued and no newer request exists. Called
+	 * in the UI thread.
+	 *
+	 * @param request the repair request
+	 * @param presentation the text presentation computed for the request
+	 * @since 3.9
+	 */
+	private void applyRepair(RepairRequest request, TextPresentation presentation) {
+		if (!fIsBackgroundRepairEnabled || request.fSequence != fRepairRequestCount)
+			return;
+
+		StyledText widget= fViewer.getTextWidget();
+		if (widget == null || widget.isDisposed())
+			return;
+
+		IDocument document= fViewer.getDocument();
+		if (document != request.fDocument || ((IDocumentExtension4) document).getModificationStamp() != request.fModificationStamp)
+			return;
+
+		if (fPendingDamage != null) {
+			try {
+				document.removePosition(fPositionCategory, fPendingDamage);
+			} catch (BadPositionCategoryException x) {
+				// should not happen on input documents
+			}
+			fPendingDamage= null;
+		}
+
+		applyTextRegionCollection(presentation);
+	}
+
+	/**
+	 * Cancels background repairing and forgets about pending damage.
+	 *
+	 * @since 3.9
+	 */
+	private void cancelBackgroundRepair() {
+		++fRepairRequestCount;
+		if (fRepairJob != null)
+			fRepairJob.discard();
+
+		if (fPendingDamage != null) {
+			IDocument document= fViewer.getDocument();
+			if (document != null) {
+				try {
+					document.removePosition(fPositionCategory, fPendingDamage);
+				} catch (BadPositionCategoryException x) {
+					// should not happen on input documents
+				}
+			}
+			fPendingDamage= null;
+		}
+	}
+
 	/**
 	 * Applies the given text presentation to the text viewer the presentation
 	 * reconciler is installed on.
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.rules;
+
+import org.eclipse.core.runtime.Assert;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.presentation.IPresentationRepairerExtension;
+import org.eclipse.jface.text.presentation.PresentationReconciler;
+
+
+/**
+ * A {@link DefaultDamagerRepairer} which can also repair presentation damage
+ * outside the UI thread, as done by a {@link PresentationReconciler} in
+ * {@link PresentationReconciler#setBackgroundRepairEnabled(boolean) background repair mode}.
+ * <p>
+ * Background repairs use a scanner of their own so that the scanner used for
+ * synchronous repairs in the UI thread is never accessed concurrently. The two
+ * scanners are expected to return the same tokens.
+ * </p>
+ * <p>
+ * Subclasses which override {@link #createPresentation(TextPresentation, ITypedRegion)}
+ * must also override {@link #createPresentation(TextPresentation, ITypedRegion, IDocument)}
+ * accordingly, or repairs in the background will not reflect their changes.
+ * </p>
+ *
+ * @see IPresentationRepairerExtension
+ * @since 3.9
+ */
+public class BackgroundDamagerRepairer extends DefaultDamagerRepairer implements IPresentationRepairerExtension {
+
+	/** The scanner used for repairs in the background */
+	private final ITokenScanner fBackgroundScanner;
+
+	/**
+	 * Creates a damager/repairer that uses the given scanners. The scanners may not be
+	 * <code>null</code> and are assumed to return only token that carry text attributes.
+	 *
+	 * @param scanner the token scanner to be used in the UI thread, may not be <code>null</code>
+	 * @param backgroundScanner the token scanner to be used for repairs in the background, may
+	 *            not be <code>null</code> and not be shared with any other repairer
+	 */
+	public BackgroundDamagerRepairer(ITokenScanner scanner, ITokenScanner backgroundScanner) {
+		super(scanner);
+
+		Assert.isNotNull(backgroundScanner);
+		Assert.isLegal(backgroundScanner != scanner);
+
+		fBackgroundScanner= backgroundScanner;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.presentation.IPresentationRepairerExtension#createPresentation(org.eclipse.jface.text.TextPresentation, org.eclipse.jface.text.ITypedRegion, org.eclipse.jface.text.IDocument)
+	 */
+	public void createPresentation(TextPresentation presentation, ITypedRegion damage, IDocument document) {
+		createPresentation(presentation, damage, document, fBackgroundScanner);
+	}
+}
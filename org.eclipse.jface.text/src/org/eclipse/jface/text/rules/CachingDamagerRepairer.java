@@ -0,0 +1,402 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.rules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.eclipse.swt.custom.StyleRange;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.TextPresentation;
+import org.eclipse.jface.text.TypedRegion;
+
+
+/**
+ * A {@link DefaultDamagerRepairer} which caches the style ranges it computes per
+ * line. When asked to repair a region, lines whose content and partition
+ * segment did not change since they have been scanned last are taken from the
+ * cache; only the remaining lines are scanned.
+ * <p>
+ * A cache entry is keyed by the line number, the segment of the line covered by
+ * the partition being repaired, and the partition's content type. Entries are
+ * invalidated by document events and line numbers are shifted accordingly. The
+ * cache is cleared whenever the document's modification stamp indicates a change
+ * that has not been seen by this repairer.
+ * </p>
+ * <p>
+ * Like the damage computed by {@link DefaultDamagerRepairer}, the cache assumes
+ * that the presentation of a line only depends on the line's content within its
+ * partition. Clients must call {@link #clearCache()} whenever the text attributes
+ * returned by the scanner change, e.g. after a color preference change.
+ * </p>
+ *
+ * @since 3.9
+ */
+public class CachingDamagerRepairer extends DefaultDamagerRepairer {
+
+	/**
+	 * The cached style ranges for a segment of a line. The style ranges are relative
+	 * to the start of the line.
+	 */
+	private static final class Segment {
+		/** The offset of the segment relative to the line start. */
+		final int fStart;
+		/** The length of the segment. */
+		final int fLength;
+		/** The content type of the partition containing the segment. */
+		final String fType;
+		/** The line relative style ranges. */
+		final StyleRange[] fRanges;
+		/** The next segment of the same line or <code>null</code>. */
+		Segment fNext;
+
+		Segment(int start, int length, String type, StyleRange[] ranges) {
+			fStart= start;
+			fLength= length;
+			fType= type;
+			fRanges= ranges;
+		}
+	}
+
+	/**
+	 * Listener which invalidates the cached lines touched by a document change.
+	 */
+	private final IDocumentListener fDocumentListener= new IDocumentListener() {
+
+		public void documentAboutToBeChanged(DocumentEvent event) {
+			if (fLines == null)
+				return;
+
+			if (fChangeEvent != null) {
+				// notifications are deferred, the previous change has not been reported yet
+				fLines= null;
+				fChangeEvent= null;
+				return;
+			}
+
+			try {
+				IDocument document= event.getDocument();
+				fChangedFirstLine= document.getLineOfOffset(event.getOffset());
+				fChangedLastLine= document.getLineOfOffset(event.getOffset() + event.getLength());
+				fChangeEvent= event;
+			} catch (BadLocationException x) {
+				fLines= null;
+			}
+		}
+
+		public void documentChanged(DocumentEvent event) {
+			updateCache();
+			fModificationStamp= getModificationStamp();
+		}
+	};
+
+	/**
+	 * The cached segments per line, entries are <code>null</code> if nothing is cached
+	 * for a line. <code>null</code> if the cache has not been built yet.
+	 */
+	private ArrayList fLines;
+	/** The document change whose effect on the cache has not yet been applied, or <code>null</code>. */
+	private DocumentEvent fChangeEvent;
+	/** The first line affected by {@link #fChangeEvent}, before the change. */
+	private int fChangedFirstLine;
+	/** The last line affected by {@link #fChangeEvent}, before the change. */
+	private int fChangedLastLine;
+	/** The modification stamp of the document the cache is valid for. */
+	private long fModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	/** The number of lines taken from the cache. */
+	private int fHitCount;
+	/** The number of lines which had to be scanned. */
+	private int fMissCount;
+
+	/**
+	 * Creates a caching damager/repairer that uses the given scanner. The scanner may
+	 * not be <code>null</code> and is assumed to return only token that carry text
+	 * attributes.
+	 *
+	 * @param scanner the token scanner to be used, may not be <code>null</code>
+	 */
+	public CachingDamagerRepairer(ITokenScanner scanner) {
+		super(scanner);
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.rules.DefaultDamagerRepairer#setDocument(org.eclipse.jface.text.IDocument)
+	 */
+	public void setDocument(IDocument document) {
+		if (fDocument != null)
+			fDocument.removeDocumentListener(fDocumentListener);
+
+		super.setDocument(document);
+		clearCache();
+
+		if (fDocument != null)
+			fDocument.addDocumentListener(fDocumentListener);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Uses the cached style ranges for lines that did not change since they
+	 * have been scanned and scans the remaining lines.
+	 * </p>
+	 */
+	public void createPresentation(TextPresentation presentation, ITypedRegion region) {
+		IDocument document= fDocument;
+		try {
+			validateCache();
+
+			int end= region.getOffset() + region.getLength();
+			int line= document.getLineOfOffset(region.getOffset());
+			int lineOffset= document.getLineOffset(line);
+			int missStart= -1;
+
+			while (lineOffset < end) {
+				int lineLength= document.getLineLength(line);
+				int segmentStart= Math.max(lineOffset, region.getOffset());
+				int segmentEnd= Math.min(lineOffset + lineLength, end);
+				if (segmentEnd <= segmentStart)
+					break;
+
+				Segment segment= findSegment(line, segmentStart - lineOffset, segmentEnd - segmentStart, region.getType());
+				if (segment == null) {
+					++ fMissCount;
+					if (missStart == -1)
+						missStart= segmentStart;
+				} else {
+					++ fHitCount;
+					if (missStart != -1) {
+						scan(presentation, new TypedRegion(missStart, segmentStart - missStart, region.getType()));
+						missStart= -1;
+					}
+					for (int i= 0; i < segment.fRanges.length; i++) {
+						StyleRange range= (StyleRange) segment.fRanges[i].clone();
+						range.start += lineOffset;
+						presentation.addStyleRange(range);
+					}
+				}
+
+				lineOffset += lineLength;
+				++ line;
+			}
+
+			if (missStart != -1)
+				scan(presentation, new TypedRegion(missStart, end - missStart, region.getType()));
+
+		} catch (BadLocationException x) {
+			clearCache();
+		}
+	}
+
+	/**
+	 * Removes all cached style ranges.
+	 */
+	public void clearCache() {
+		fLines= null;
+		fChangeEvent= null;
+		fModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Returns the number of lines whose style ranges have been taken from the cache.
+	 *
+	 * @return the number of cache hits
+	 */
+	public int getCacheHitCount() {
+		return fHitCount;
+	}
+
+	/**
+	 * Returns the number of lines which had to be scanned because their style ranges
+	 * were not cached.
+	 *
+	 * @return the number of cache misses
+	 */
+	public int getCacheMissCount() {
+		return fMissCount;
+	}
+
+	/**
+	 * Resets the cache hit and miss counters.
+	 */
+	public void resetCacheStatistics() {
+		fHitCount= 0;
+		fMissCount= 0;
+	}
+
+	/**
+	 * Scans the given region, adds the resulting style ranges to the given presentation
+	 * and caches them per line.
+	 *
+	 * @param presentation the presentation to add the style ranges to
+	 * @param region the region to scan, starts at a line start or partition start
+	 * @throws BadLocationException if the region is not valid in the document
+	 */
+	private void scan(TextPresentation presentation, ITypedRegion region) throws BadLocationException {
+		TextPresentation scanned= new TextPresentation();
+		super.createPresentation(scanned, region);
+
+		int end= region.getOffset() + region.getLength();
+		int line= fDocument.getLineOfOffset(region.getOffset());
+		int lineOffset= fDocument.getLineOffset(line);
+		ArrayList lineRanges= new ArrayList();
+
+		Iterator ranges= scanned.getAllStyleRangeIterator();
+		StyleRange range= ranges.hasNext() ? (StyleRange) ranges.next() : null;
+		while (lineOffset < end) {
+			int lineLength= fDocument.getLineLength(line);
+			int segmentStart= Math.max(lineOffset, region.getOffset());
+			int segmentEnd= Math.min(lineOffset + lineLength, end);
+			if (segmentEnd <= segmentStart)
+				break;
+
+			lineRanges.clear();
+			while (range != null && range.start < segmentEnd) {
+				int rangeEnd= range.start + range.length;
+				int start= Math.max(range.start, segmentStart);
+				int length= Math.min(rangeEnd, segmentEnd) - start;
+				if (length > 0) {
+					StyleRange lineRange= (StyleRange) range.clone();
+					lineRange.start= start - lineOffset;
+					lineRange.length= length;
+					lineRanges.add(lineRange);
+				}
+				if (rangeEnd > segmentEnd)
+					break;
+				range= ranges.hasNext() ? (StyleRange) ranges.next() : null;
+			}
+
+			StyleRange[] cached= (StyleRange[]) lineRanges.toArray(new StyleRange[lineRanges.size()]);
+			addSegment(line, new Segment(segmentStart - lineOffset, segmentEnd - segmentStart, region.getType(), cached));
+
+			lineOffset += lineLength;
+			++ line;
+		}
+
+		ranges= scanned.getAllStyleRangeIterator();
+		while (ranges.hasNext())
+			presentation.addStyleRange((StyleRange) ranges.next());
+	}
+
+	/**
+	 * Applies a pending document change and makes sure the cache matches the
+	 * current state of the document.
+	 */
+	private void validateCache() {
+		updateCache();
+
+		long modificationStamp= getModificationStamp();
+		if (fLines == null || modificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP || modificationStamp != fModificationStamp) {
+			int lines= fDocument.getNumberOfLines();
+			fLines= new ArrayList(lines);
+			for (int i= 0; i < lines; i++)
+				fLines.add(null);
+			fModificationStamp= modificationStamp;
+		}
+	}
+
+	/**
+	 * Discards the cached lines affected by the pending document change and
+	 * shifts the following lines. Called as soon as the document has been changed,
+	 * which may be before {@link IDocumentListener#documentChanged(DocumentEvent)}
+	 * is sent to this repairer.
+	 */
+	private void updateCache() {
+		DocumentEvent event= fChangeEvent;
+		fChangeEvent= null;
+		if (event == null || fLines == null)
+			return;
+
+		try {
+			int textLength= event.getText() == null ? 0 : event.getText().length();
+			int newLastLine= fDocument.getLineOfOffset(event.getOffset() + textLength);
+
+			int oldLines= fChangedLastLine - fChangedFirstLine + 1;
+			int newLines= newLastLine - fChangedFirstLine + 1;
+			for (int i= fChangedFirstLine; i <= fChangedLastLine; i++)
+				fLines.set(i, null);
+			if (newLines < oldLines)
+				fLines.subList(fChangedFirstLine + newLines, fChangedFirstLine + oldLines).clear();
+			else if (newLines > oldLines)
+				fLines.addAll(fChangedFirstLine, Collections.nCopies(newLines - oldLines, null));
+
+			fModificationStamp= getModificationStamp();
+
+		} catch (BadLocationException x) {
+			fLines= null;
+		}
+	}
+
+	/**
+	 * Returns the cached segment of the given line.
+	 *
+	 * @param line the line
+	 * @param start the start of the segment relative to the line start
+	 * @param length the length of the segment
+	 * @param type the content type of the segment
+	 * @return the cached segment or <code>null</code> if none
+	 */
+	private Segment findSegment(int line, int start, int length, String type) {
+		if (line >= fLines.size())
+			return null;
+
+		Segment segment= (Segment) fLines.get(line);
+		while (segment != null) {
+			if (segment.fStart == start && segment.fLength == length && segment.fType.equals(type))
+				return segment;
+			segment= segment.fNext;
+		}
+		return null;
+	}
+
+	/**
+	 * Caches the given segment for the given line, replacing any segment that
+	 * overlaps with it.
+	 *
+	 * @param line the line
+	 * @param segment the segment
+	 */
+	private void addSegment(int line, Segment segment) {
+		if (line >= fLines.size())
+			return;
+
+		int end= segment.fStart + segment.fLength;
+		Segment head= null;
+		Segment current= (Segment) fLines.get(line);
+		while (current != null) {
+			Segment next= current.fNext;
+			if (current.fStart >= end || current.fStart + current.fLength <= segment.fStart) {
+				current.fNext= head;
+				head= current;
+			}
+			current= next;
+		}
+		segment.fNext= head;
+		fLines.set(line, segment);
+	}
+
+	/**
+	 * Returns the modification stamp of the document.
+	 *
+	 * @return the modification stamp or {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+	 */
+	private long getModificationStamp() {
+		if (fDocument instanceof IDocumentExtension4)
+			return ((IDocumentExtension4) fDocument).getModificationStamp();
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+}
@@ -0,0 +1,973 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.rules;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.Assert;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentRewriteSession;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IDocumentPartitionerExtension;
+import org.eclipse.jface.text.IDocumentPartitionerExtension2;
+import org.eclipse.jface.text.IDocumentPartitionerExtension3;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.TypedRegion;
+
+
+
+/**
+ * A document partitioner that behaves like {@link FastPartitioner} but keeps
+ * the document's partitioning in a compact data structure private to the
+ * partitioner rather than in a position category of the document.
+ * <p>
+ * The partitions are stored in parallel <code>int</code> arrays holding their
+ * offsets and lengths together with an index into a small table of content
+ * types. The arrays are organized as a gap buffer positioned at the most recent
+ * change: partitions in front of the gap store their absolute offset, partitions
+ * behind the gap store their distance from the end of the document. This way,
+ * partitions following a document change do not have to be shifted one by one
+ * and no {@link org.eclipse.jface.text.TypedPosition} objects need to be
+ * created, which considerably reduces the memory footprint for documents with
+ * a very large number of partitions.
+ * </p>
+ * <p>
+ * As this partitioner does not use position categories,
+ * {@link #getManagingPositionCategories()} returns <code>null</code>.
+ * </p>
+ *
+ * @see IPartitionTokenScanner
+ * @see FastPartitioner
+ * @since 3.9
+ */
+public class CompactPartitioner implements IDocumentPartitioner, IDocumentPartitionerExtension, IDocumentPartitionerExtension2, IDocumentPartitionerExtension3 {
+
+	/** The minimal capacity of the partition arrays. */
+	private static final int MIN_CAPACITY= 16;
+
+	/** The partitioner's scanner */
+	protected final IPartitionTokenScanner fScanner;
+	/** The legal content types of this partitioner */
+	protected final String[] fLegalContentTypes;
+	/** The partitioner's document */
+	protected IDocument fDocument;
+
+	/**
+	 * The partition offsets. Entries in front of the gap are absolute offsets,
+	 * entries behind the gap are distances from the end of the document.
+	 */
+	private int[] fOffsets;
+	/** The partition lengths. */
+	private int[] fLengths;
+	/** The partition content types as indices into {@link #fContentTypes}. */
+	private short[] fTypes;
+	/** The index of the first array slot of the gap. */
+	private int fGapStart;
+	/** The index of the first array slot behind the gap. */
+	private int fGapEnd;
+	/** The length of the document as seen by the stored partitions. */
+	private int fDocumentLength;
+	/** The content type table referenced by {@link #fTypes}. */
+	private String[] fContentTypes;
+	/** The number of valid entries in {@link #fContentTypes}. */
+	private int fContentTypeCount;
+
+	/** The offset at which the first changed partition starts */
+	private int fStartOffset;
+	/** The offset at which the last changed partition ends */
+	private int fEndOffset;
+	/**The offset at which a partition has been deleted */
+	private int fDeleteOffset;
+	/**
+	 * The active document rewrite session.
+	 */
+	private DocumentRewriteSession fActiveRewriteSession;
+	/**
+	 * Flag indicating whether this partitioner has been initialized.
+	 */
+	private boolean fIsInitialized= false;
+
+	/**
+	 * Creates a new partitioner that uses the given scanner and may return
+	 * partitions of the given legal content types.
+	 *
+	 * @param scanner the scanner this partitioner is supposed to use
+	 * @param legalContentTypes the legal content types of this partitioner
+	 */
+	public CompactPartitioner(IPartitionTokenScanner scanner, String[] legalContentTypes) {
+		fScanner= scanner;
+		fLegalContentTypes= TextUtilities.copy(legalContentTypes);
+		fContentTypes= TextUtilities.copy(legalContentTypes);
+		fContentTypeCount= fContentTypes.length;
+		clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This partitioner does not use any position category.
+	 * </p>
+	 *
+	 * @return <code>null</code>
+	 */
+	public String[] getManagingPositionCategories() {
+		return null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitioner#connect(org.eclipse.jface.text.IDocument)
+	 */
+	public final void connect(IDocument document) {
+		connect(document, false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public void connect(IDocument document, boolean delayInitialization) {
+		Assert.isNotNull(document);
+
+		fDocument= document;
+		clear();
+
+		fIsInitialized= false;
+		if (!delayInitialization)
+			checkInitialization();
+	}
+
+	/**
+	 * Calls {@link #initialize()} if the receiver is not yet initialized.
+	 */
+	protected final void checkInitialization() {
+		if (!fIsInitialized)
+			initialize();
+	}
+
+	/**
+	 * Performs the initial partitioning of the partitioner's document.
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	protected void initialize() {
+		fIsInitialized= true;
+		clear();
+		fDocumentLength= fDocument.getLength();
+		fScanner.setRange(fDocument, 0, fDocumentLength);
+
+		IToken token= fScanner.nextToken();
+		while (!token.isEOF()) {
+
+			String contentType= getTokenContentType(token);
+
+			if (isSupportedContentType(contentType))
+				insertPartition(fScanner.getTokenOffset(), fScanner.getTokenLength(), contentType);
+
+			token= fScanner.nextToken();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public void disconnect() {
+		Assert.isNotNull(fDocument);
+
+		clear();
+		fIsInitialized= false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public void documentAboutToBeChanged(DocumentEvent e) {
+		if (fIsInitialized) {
+
+			Assert.isTrue(e.getDocument() == fDocument);
+
+			fStartOffset= -1;
+			fEndOffset= -1;
+			fDeleteOffset= -1;
+		}
+	}
+
+	/*
+	 * @see IDocumentPartitioner#documentChanged(DocumentEvent)
+	 */
+	public final boolean documentChanged(DocumentEvent e) {
+		if (fIsInitialized) {
+			IRegion region= documentChanged2(e);
+			return (region != null);
+		}
+		return false;
+	}
+
+	/**
+	 * Helper method for tracking the minimal region containing all partition changes.
+	 * If <code>offset</code> is smaller than the remembered offset, <code>offset</code>
+	 * will from now on be remembered. If <code>offset  + length</code> is greater than
+	 * the remembered end offset, it will be remembered from now on.
+	 *
+	 * @param offset the offset
+	 * @param length the length
+	 */
+	private void rememberRegion(int offset, int length) {
+		// remember start offset
+		if (fStartOffset == -1)
+			fStartOffset= offset;
+		else if (offset < fStartOffset)
+			fStartOffset= offset;
+
+		// remember end offset
+		int endOffset= offset + length;
+		if (fEndOffset == -1)
+			fEndOffset= endOffset;
+		else if (endOffset > fEndOffset)
+			fEndOffset= endOffset;
+	}
+
+	/**
+	 * Creates the minimal region containing all partition changes using the
+	 * remembered offset, end offset, and deletion offset.
+	 *
+	 * @return the minimal region containing all the partition changes
+	 */
+	private IRegion createRegion() {
+		if (fDeleteOffset == -1) {
+			if (fStartOffset == -1 || fEndOffset == -1)
+				return null;
+			return new Region(fStartOffset, fEndOffset - fStartOffset);
+		} else if (fStartOffset == -1 || fEndOffset == -1) {
+			return new Region(fDeleteOffset, 0);
+		} else {
+			int offset= Math.min(fDeleteOffset, fStartOffset);
+			int endOffset= Math.max(fDeleteOffset, fEndOffset);
+			return new Region(offset, endOffset - offset);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public IRegion documentChanged2(DocumentEvent e) {
+
+		if (!fIsInitialized)
+			return null;
+
+		Assert.isTrue(e.getDocument() == fDocument);
+
+		try {
+
+			IRegion line= fDocument.getLineInformationOfOffset(e.getOffset());
+			int reparseStart= line.getOffset();
+			int partitionStart= -1;
+			String contentType= null;
+			int newLength= e.getText() == null ? 0 : e.getText().length();
+
+			int first= computeIndex(reparseStart);
+			if (first > 0)	{
+				int previousOffset= getOffset(first - 1);
+				int previousEnd= previousOffset + getLength(first - 1);
+				if (previousOffset <= reparseStart && reparseStart < previousEnd) {
+					partitionStart= previousOffset;
+					contentType= getType(first - 1);
+					if (e.getOffset() == previousEnd)
+						reparseStart= partitionStart;
+					-- first;
+				} else if (reparseStart == e.getOffset() && reparseStart == previousEnd) {
+					partitionStart= previousOffset;
+					contentType= getType(first - 1);
+					reparseStart= partitionStart;
+					-- first;
+				} else {
+					partitionStart= previousEnd;
+					contentType= IDocument.DEFAULT_CONTENT_TYPE;
+				}
+			}
+
+			if (updatePartitions(e.getOffset(), e.getLength(), newLength))
+				fDeleteOffset= e.getOffset();
+
+			// all partitions behind the gap are candidates for being replaced by the scanned ones
+			moveGap(first);
+
+			fScanner.setPartialRange(fDocument, reparseStart, fDocument.getLength() - reparseStart, contentType, partitionStart);
+
+			int behindLastScannedPosition= reparseStart;
+			IToken token= fScanner.nextToken();
+
+			while (!token.isEOF()) {
+
+				contentType= getTokenContentType(token);
+
+				if (!isSupportedContentType(contentType)) {
+					token= fScanner.nextToken();
+					continue;
+				}
+
+				int start= fScanner.getTokenOffset();
+				int length= fScanner.getTokenLength();
+
+				behindLastScannedPosition= start + length;
+				int lastScannedPosition= behindLastScannedPosition - 1;
+
+				// remove all affected partitions
+				while (fGapEnd < fOffsets.length) {
+					int offset= fDocumentLength - fOffsets[fGapEnd];
+					int partitionLength= fLengths[fGapEnd];
+					if (lastScannedPosition >= offset + partitionLength ||
+							(overlapsWith(offset, partitionLength, start, length) &&
+								(!containsPartition(start, length) ||
+								 !contentType.equals(fContentTypes[fTypes[fGapEnd]])))) {
+
+						rememberRegion(offset, partitionLength);
+						++ fGapEnd;
+
+					} else
+						break;
+				}
+
+				// if partition already exists and we have scanned at least the
+				// area covered by the event, we are done
+				if (containsPartition(start, length)) {
+					if (lastScannedPosition >= e.getOffset() + newLength)
+						return createRegion();
+					if (fGapEnd < fOffsets.length)
+						moveGap(fGapStart + 1);
+				} else {
+					// insert the new typed partition
+					insertPartition(start, length, contentType);
+					rememberRegion(start, length);
+				}
+
+				token= fScanner.nextToken();
+			}
+
+			// remove all partitions behind the last scanned position
+			while (fGapEnd < fOffsets.length && fDocumentLength - fOffsets[fGapEnd] < behindLastScannedPosition)
+				moveGap(fGapStart + 1);
+			while (fGapEnd < fOffsets.length) {
+				rememberRegion(fDocumentLength - fOffsets[fGapEnd], fLengths[fGapEnd]);
+				++ fGapEnd;
+			}
+
+		} catch (BadLocationException x) {
+		}
+
+		return createRegion();
+	}
+
+	/**
+	 * Updates the stored partitions to reflect the given document change the same
+	 * way a {@link org.eclipse.jface.text.DefaultPositionUpdater} updates the positions
+	 * it manages. Partitions which are swallowed by the change are removed.
+	 *
+	 * @param offset the offset of the change
+	 * @param length the length of the replaced text
+	 * @param replaceLength the length of the replacing text
+	 * @return <code>true</code> if a partition has been removed
+	 */
+	private boolean updatePartitions(int offset, int length, int replaceLength) {
+		// partitions starting at or after the end of the change are moved behind the gap
+		// where they are implicitly shifted when the document length is adapted
+		moveGap(computeIndex(offset + length));
+		fDocumentLength += replaceLength - length;
+
+		int low= fGapStart;
+		while (low > 0 && Math.max(fOffsets[low - 1], fOffsets[low - 1] + fLengths[low - 1] - 1) >= offset)
+			-- low;
+
+		boolean deleted= false;
+		int next= low;
+		for (int i= low; i < fGapStart; i++) {
+			int myOffset= fOffsets[i];
+			int myLength= fLengths[i];
+
+			if (offset < myOffset && myOffset + myLength < offset + length) {
+				deleted= true;
+				continue;
+			}
+
+			if (length > 0 && myOffset <= offset && offset + length <= myOffset + myLength) {
+				myLength += replaceLength - length;
+			} else {
+				if (length > 0) {
+					// adapt to remove
+					int myEnd= Math.max(myOffset, myOffset + myLength - 1);
+					int yoursEnd= Math.max(offset, offset + length - 1);
+					if (myEnd >= offset) {
+						if (myOffset <= offset) {
+							if (yoursEnd <= myEnd)
+								myLength -= length;
+							else
+								myLength -= (myEnd - offset + 1);
+						} else if (yoursEnd < myOffset) {
+							myOffset -= length;
+						} else {
+							myLength -= (yoursEnd - myOffset + 1);
+							myOffset= offset;
+						}
+						if (myOffset < 0)
+							myOffset= 0;
+						if (myLength < 0)
+							myLength= 0;
+					}
+				}
+				if (replaceLength > 0) {
+					// adapt to insert
+					int myEnd= Math.max(myOffset, myOffset + myLength - 1);
+					if (myEnd >= offset) {
+						if (myOffset < offset)
+							myLength += replaceLength;
+						else
+							myOffset += replaceLength;
+					}
+				}
+			}
+
+			fOffsets[next]= myOffset;
+			fLengths[next]= myLength;
+			fTypes[next]= fTypes[i];
+			++ next;
+		}
+		fGapStart= next;
+
+		return deleted;
+	}
+
+	/**
+	 * Returns whether the partition with the given offset and length overlaps
+	 * with the given range. Follows {@link org.eclipse.jface.text.Position#overlapsWith(int, int)}.
+	 *
+	 * @param offset the partition offset
+	 * @param length the partition length
+	 * @param rangeOffset the offset of the range
+	 * @param rangeLength the length of the range
+	 * @return <code>true</code> if the partition and the range overlap
+	 */
+	private static boolean overlapsWith(int offset, int length, int rangeOffset, int rangeLength) {
+		int end= rangeOffset + rangeLength;
+		int thisEnd= offset + length;
+
+		if (rangeLength > 0) {
+			if (length > 0)
+				return offset < end && rangeOffset < thisEnd;
+			return  rangeOffset <= offset && offset < end;
+		}
+
+		if (length > 0)
+			return offset <= rangeOffset && rangeOffset < thisEnd;
+		return offset == rangeOffset;
+	}
+
+	/**
+	 * Returns whether a partition with the given offset and length is stored
+	 * directly in front of or behind the gap.
+	 *
+	 * @param offset the offset
+	 * @param length the length
+	 * @return <code>true</code> if such a partition exists
+	 */
+	private boolean containsPartition(int offset, int length) {
+		for (int i= fGapStart - 1; i >= 0 && fOffsets[i] >= offset; i--) {
+			if (fOffsets[i] == offset && fLengths[i] == length)
+				return true;
+		}
+		for (int i= fGapEnd; i < fOffsets.length && fDocumentLength - fOffsets[i] <= offset; i++) {
+			if (fDocumentLength - fOffsets[i] == offset && fLengths[i] == length)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public String getContentType(int offset) {
+		checkInitialization();
+
+		int index= computeIndex(offset);
+		if (index == getPartitionCount() || getOffset(index) != offset)
+			-- index;
+
+		if (index >= 0) {
+			int partitionOffset= getOffset(index);
+			if (partitionOffset <= offset && offset < partitionOffset + getLength(index))
+				return getType(index);
+		}
+
+		return IDocument.DEFAULT_CONTENT_TYPE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public ITypedRegion getPartition(int offset) {
+		checkInitialization();
+
+		int count= getPartitionCount();
+		if (count == 0)
+			return new TypedRegion(0, fDocument.getLength(), IDocument.DEFAULT_CONTENT_TYPE);
+
+		int index= computeIndex(offset);
+
+		if (index < count) {
+
+			int nextOffset= getOffset(index);
+
+			if (offset == nextOffset)
+				return new TypedRegion(nextOffset, getLength(index), getType(index));
+
+			if (index == 0)
+				return new TypedRegion(0, nextOffset, IDocument.DEFAULT_CONTENT_TYPE);
+
+			int previousOffset= getOffset(index - 1);
+			int endOffset= previousOffset + getLength(index - 1);
+			if (previousOffset <= offset && offset < endOffset)
+				return new TypedRegion(previousOffset, endOffset - previousOffset, getType(index - 1));
+
+			return new TypedRegion(endOffset, nextOffset - endOffset, IDocument.DEFAULT_CONTENT_TYPE);
+		}
+
+		int previousOffset= getOffset(count - 1);
+		int endOffset= previousOffset + getLength(count - 1);
+		if (previousOffset <= offset && offset < endOffset)
+			return new TypedRegion(previousOffset, endOffset - previousOffset, getType(count - 1));
+
+		return new TypedRegion(endOffset, fDocument.getLength() - endOffset, IDocument.DEFAULT_CONTENT_TYPE);
+	}
+
+	/*
+	 * @see IDocumentPartitioner#computePartitioning(int, int)
+	 */
+	public final ITypedRegion[] computePartitioning(int offset, int length) {
+		return computePartitioning(offset, length, false);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public String[] getLegalContentTypes() {
+		return TextUtilities.copy(fLegalContentTypes);
+	}
+
+	/**
+	 * Returns whether the given type is one of the legal content types.
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 *
+	 * @param contentType the content type to check
+	 * @return <code>true</code> if the content type is a legal content type
+	 */
+	protected boolean isSupportedContentType(String contentType) {
+		if (contentType != null) {
+			for (int i= 0; i < fLegalContentTypes.length; i++) {
+				if (fLegalContentTypes[i].equals(contentType))
+					return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns a content type encoded in the given token. If the token's
+	 * data is not <code>null</code> and a string it is assumed that
+	 * it is the encoded content type.
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 *
+	 * @param token the token whose content type is to be determined
+	 * @return the token's content type
+	 */
+	protected String getTokenContentType(IToken token) {
+		Object data= token.getData();
+		if (data instanceof String)
+			return (String) data;
+		return null;
+	}
+
+    /* zero-length partition support */
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public String getContentType(int offset, boolean preferOpenPartitions) {
+		return getPartition(offset, preferOpenPartitions).getType();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public ITypedRegion getPartition(int offset, boolean preferOpenPartitions) {
+		ITypedRegion region= getPartition(offset);
+		if (preferOpenPartitions) {
+			if (region.getOffset() == offset && !region.getType().equals(IDocument.DEFAULT_CONTENT_TYPE)) {
+				if (offset > 0) {
+					region= getPartition(offset - 1);
+					if (region.getType().equals(IDocument.DEFAULT_CONTENT_TYPE))
+						return region;
+				}
+				return new TypedRegion(offset, 0, IDocument.DEFAULT_CONTENT_TYPE);
+			}
+		}
+        return region;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be replaced or extended by subclasses.
+	 * </p>
+	 */
+	public ITypedRegion[] computePartitioning(int offset, int length, boolean includeZeroLengthPartitions) {
+		checkInitialization();
+		List list= new ArrayList();
+
+		int endOffset= offset + length;
+		int documentLength= fDocument.getLength();
+
+		int previousEnd= -1;
+		int start, end, gapOffset, gapLength;
+
+		int startIndex= getFirstIndexEndingAfterOffset(offset);
+		int endIndex= getFirstIndexStartingAfterOffset(endOffset);
+		for (int i= startIndex; i < endIndex; i++) {
+
+			int currentOffset= getOffset(i);
+			int currentLength= getLength(i);
+
+			gapOffset= (previousEnd != -1) ? previousEnd : 0;
+			gapLength= currentOffset - gapOffset;
+			if ((includeZeroLengthPartitions && overlapsOrTouches(gapOffset, gapLength, offset, length)) ||
+					(gapLength > 0 && overlapsWith(gapOffset, gapLength, offset, length))) {
+				start= Math.max(offset, gapOffset);
+				end= Math.min(endOffset, gapOffset + gapLength);
+				list.add(new TypedRegion(start, end - start, IDocument.DEFAULT_CONTENT_TYPE));
+			}
+
+			if (overlapsWith(currentOffset, currentLength, offset, length)) {
+				start= Math.max(offset, currentOffset);
+				end= Math.min(endOffset, currentOffset + currentLength);
+				list.add(new TypedRegion(start, end - start, getType(i)));
+			}
+
+			previousEnd= currentOffset + currentLength;
+		}
+
+		if (previousEnd != -1) {
+			gapOffset= previousEnd;
+			gapLength= documentLength - gapOffset;
+			if ((includeZeroLengthPartitions && overlapsOrTouches(gapOffset, gapLength, offset, length)) ||
+					(gapLength > 0 && overlapsWith(gapOffset, gapLength, offset, length))) {
+				start= Math.max(offset, gapOffset);
+				end= Math.min(endOffset, documentLength);
+				list.add(new TypedRegion(start, end - start, IDocument.DEFAULT_CONTENT_TYPE));
+			}
+		}
+
+		if (list.isEmpty())
+			list.add(new TypedRegion(offset, length, IDocument.DEFAULT_CONTENT_TYPE));
+
+		TypedRegion[] result= new TypedRegion[list.size()];
+		list.toArray(result);
+		return result;
+	}
+
+	/**
+	 * Returns <code>true</code> if the given ranges overlap with or touch each other.
+	 *
+	 * @param gapOffset the offset of the first range
+	 * @param gapLength the length of the first range
+	 * @param offset the offset of the second range
+	 * @param length the length of the second range
+	 * @return <code>true</code> if the given ranges overlap with or touch each other
+	 */
+	private static boolean overlapsOrTouches(int gapOffset, int gapLength, int offset, int length) {
+		return gapOffset <= offset + length && offset <= gapOffset + gapLength;
+	}
+
+	/**
+	 * Returns the index of the first partition which ends after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first partition which ends after the offset
+	 */
+	private int getFirstIndexEndingAfterOffset(int offset) {
+		int i= -1, j= getPartitionCount();
+		while (j - i > 1) {
+			int k= (i + j) >> 1;
+			if (getOffset(k) + getLength(k) > offset)
+				j= k;
+			else
+				i= k;
+		}
+		return j;
+	}
+
+	/**
+	 * Returns the index of the first partition which starts at or after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first partition which starts after the offset
+	 */
+	private int getFirstIndexStartingAfterOffset(int offset) {
+		int i= -1, j= getPartitionCount();
+		while (j - i > 1) {
+			int k= (i + j) >> 1;
+			if (getOffset(k) >= offset)
+				j= k;
+			else
+				i= k;
+		}
+		return j;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitionerExtension3#startRewriteSession(org.eclipse.jface.text.DocumentRewriteSession)
+	 */
+	public void startRewriteSession(DocumentRewriteSession session) throws IllegalStateException {
+		if (fActiveRewriteSession != null)
+			throw new IllegalStateException();
+		fActiveRewriteSession= session;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public void stopRewriteSession(DocumentRewriteSession session) {
+		if (fActiveRewriteSession == session)
+			flushRewriteSession();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * May be extended by subclasses.
+	 * </p>
+	 */
+	public DocumentRewriteSession getActiveRewriteSession() {
+		return fActiveRewriteSession;
+	}
+
+	/**
+	 * Flushes the active rewrite session.
+	 */
+	protected final void flushRewriteSession() {
+		fActiveRewriteSession= null;
+		clear();
+		fIsInitialized= false;
+	}
+
+	/**
+	 * Returns the number of partitions currently stored by this partitioner.
+	 * Ranges between the stored partitions are of the
+	 * {@link IDocument#DEFAULT_CONTENT_TYPE default content type}.
+	 *
+	 * @return the number of stored partitions
+	 */
+	protected final int getPartitionCount() {
+		return fOffsets.length - (fGapEnd - fGapStart);
+	}
+
+	/**
+	 * Returns the offset of the stored partition with the given index.
+	 *
+	 * @param index the index of the partition, <code>0 &lt;= index &lt; getPartitionCount()</code>
+	 * @return the offset of the partition
+	 */
+	protected final int getOffset(int index) {
+		if (index < fGapStart)
+			return fOffsets[index];
+		return fDocumentLength - fOffsets[index + fGapEnd - fGapStart];
+	}
+
+	/**
+	 * Returns the length of the stored partition with the given index.
+	 *
+	 * @param index the index of the partition, <code>0 &lt;= index &lt; getPartitionCount()</code>
+	 * @return the length of the partition
+	 */
+	protected final int getLength(int index) {
+		if (index < fGapStart)
+			return fLengths[index];
+		return fLengths[index + fGapEnd - fGapStart];
+	}
+
+	/**
+	 * Returns the content type of the stored partition with the given index.
+	 *
+	 * @param index the index of the partition, <code>0 &lt;= index &lt; getPartitionCount()</code>
+	 * @return the content type of the partition
+	 */
+	protected final String getType(int index) {
+		if (index < fGapStart)
+			return fContentTypes[fTypes[index]];
+		return fContentTypes[fTypes[index + fGapEnd - fGapStart]];
+	}
+
+	/**
+	 * Returns the index at which a partition with the given offset would be inserted, i.e.
+	 * the index of the first stored partition whose offset is greater than or equal to
+	 * the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first partition starting at or after the given offset
+	 */
+	private int computeIndex(int offset) {
+		return getFirstIndexStartingAfterOffset(offset);
+	}
+
+	/**
+	 * Removes all stored partitions.
+	 */
+	private void clear() {
+		fOffsets= new int[MIN_CAPACITY];
+		fLengths= new int[MIN_CAPACITY];
+		fTypes= new short[MIN_CAPACITY];
+		fGapStart= 0;
+		fGapEnd= MIN_CAPACITY;
+		fDocumentLength= 0;
+	}
+
+	/**
+	 * Moves the gap such that it starts in front of the partition with the given index.
+	 *
+	 * @param index the index of the partition, <code>0 &lt;= index &lt;= getPartitionCount()</code>
+	 */
+	private void moveGap(int index) {
+		int gapSize= fGapEnd - fGapStart;
+		if (index < fGapStart) {
+			for (int i= fGapStart - 1; i >= index; i--) {
+				int target= i + gapSize;
+				fOffsets[target]= fDocumentLength - fOffsets[i];
+				fLengths[target]= fLengths[i];
+				fTypes[target]= fTypes[i];
+			}
+		} else if (index > fGapStart) {
+			for (int i= fGapStart; i < index; i++) {
+				int source= i + gapSize;
+				fOffsets[i]= fDocumentLength - fOffsets[source];
+				fLengths[i]= fLengths[source];
+				fTypes[i]= fTypes[source];
+			}
+		}
+		fGapStart= index;
+		fGapEnd= index + gapSize;
+	}
+
+	/**
+	 * Inserts a partition at the start of the gap, i.e. the partition must start at
+	 * or after all partitions in front of the gap and end before all partitions
+	 * behind the gap.
+	 *
+	 * @param offset the offset of the partition
+	 * @param length the length of the partition
+	 * @param contentType the content type of the partition
+	 */
+	private void insertPartition(int offset, int length, String contentType) {
+		if (fGapStart == fGapEnd) {
+			int capacity= fOffsets.length;
+			int newCapacity= Math.max(MIN_CAPACITY, capacity + (capacity >> 1));
+			int tail= capacity - fGapEnd;
+			int newGapEnd= newCapacity - tail;
+
+			int[] offsets= new int[newCapacity];
+			System.arraycopy(fOffsets, 0, offsets, 0, fGapStart);
+			System.arraycopy(fOffsets, fGapEnd, offsets, newGapEnd, tail);
+			fOffsets= offsets;
+
+			int[] lengths= new int[newCapacity];
+			System.arraycopy(fLengths, 0, lengths, 0, fGapStart);
+			System.arraycopy(fLengths, fGapEnd, lengths, newGapEnd, tail);
+			fLengths= lengths;
+
+			short[] types= new short[newCapacity];
+			System.arraycopy(fTypes, 0, types, 0, fGapStart);
+			System.arraycopy(fTypes, fGapEnd, types, newGapEnd, tail);
+			fTypes= types;
+
+			fGapEnd= newGapEnd;
+		}
+
+		fOffsets[fGapStart]= offset;
+		fLengths[fGapStart]= length;
+		fTypes[fGapStart]= getTypeIndex(contentType);
+		++ fGapStart;
+	}
+
+	/**
+	 * Returns the index of the given content type in the content type table,
+	 * adding it if necessary.
+	 *
+	 * @param contentType the content type
+	 * @return the index of the content type
+	 */
+	private short getTypeIndex(String contentType) {
+		for (int i= 0; i < fContentTypeCount; i++) {
+			if (fContentTypes[i] == contentType)
+				return (short) i;
+		}
+		for (int i= 0; i < fContentTypeCount; i++) {
+			if (fContentTypes[i].equals(contentType))
+				return (short) i;
+		}
+
+		Assert.isTrue(fContentTypeCount < Short.MAX_VALUE);
+		if (fContentTypeCount == fContentTypes.length) {
+			String[] contentTypes= new String[fContentTypeCount * 2 + 1];
+			System.arraycopy(fContentTypes, 0, contentTypes, 0, fContentTypeCount);
+			fContentTypes= contentTypes;
+		}
+		fContentTypes[fContentTypeCount]= contentType;
+		return (short) fContentTypeCount++;
+	}
+}
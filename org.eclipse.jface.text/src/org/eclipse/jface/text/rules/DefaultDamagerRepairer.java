@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -163,22 +163,37 @@ public class DefaultDamagerRepairer implements IPresentationDamager, IPresentati
 			return;
 		}
 
+		createPresentation(presentation, region, fDocument, fScanner);
+	}
+
+	/**
+	 * Fills the given presentation with the style ranges which the given scanner
+	 * returns for the given region of the given document.
+	 *
+	 * @param presentation the text presentation to be filled
+	 * @param region the region of the document to be scanned
+	 * @param document the document to be scanned
+	 * @param scanner the token scanner to be used, may not be <code>null</code>
+	 * @since 3.9
+	 */
+	protected void createPresentation(TextPresentation presentation, ITypedRegion region, IDocument document, ITokenScanner scanner) {
+
 		int lastStart= region.getOffset();
 		int length= 0;
 		boolean firstToken= true;
 		IToken lastToken= Token.UNDEFINED;
 		TextAttribute lastAttribute= getTokenTextAttribute(lastToken);
 
-		fScanner.setRange(fDocument, lastStart, region.getLength());
+		scanner.setRange(document, lastStart, region.getLength());
 
 		while (true) {
-			IToken token= fScanner.nextToken();
+			IToken token= scanner.nextToken();
 			if (token.isEOF())
 				break;
 
 			TextAttribute attribute= getTokenTextAttribute(token);
 			if (lastAttribute != null && lastAttribute.equals(attribute)) {
-				length += fScanner.getTokenLength();
+				length += scanner.getTokenLength();
 				firstToken= false;
 			} else {
 				if (!firstToken)
@@ -186,8 +201,8 @@ public class DefaultDamagerRepairer implements IPresentationDamager, IPresentati
 				firstToken= false;
 				lastToken= token;
 				lastAttribute= attribute;
-				lastStart= fScanner.getTokenOffset();
-				length= fScanner.getTokenLength();
+				lastStart= scanner.getTokenOffset();
+				length= scanner.getTokenLength();
 			}
 		}
 
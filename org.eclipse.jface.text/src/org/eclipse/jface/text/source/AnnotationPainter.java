@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,13 +14,14 @@ package org.eclipse.jface.text.source;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
@@ -315,6 +316,23 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 	 * @since 3.4
 	 */
 	private static final Object HIGHLIGHTING= new Object();
+	/**
+	 * The maximal number of separate ranges invalidated after an annotation model event,
+	 * more ranges are invalidated as a whole.
+	 * @since 3.9
+	 */
+	private static final int MAX_INVALIDATED_RANGES= 16;
+	/**
+	 * Orders positions by offset.
+	 * @since 3.9
+	 */
+	private static final Comparator POSITION_COMPARATOR= new Comparator() {
+		public int compare(Object o1, Object o2) {
+			int offset1= ((Position) o1).getOffset();
+			int offset2= ((Position) o2).getOffset();
+			return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+		}
+	};
 
 	/**
 	 * The presentation information (decoration) for an annotation.  Each such
@@ -336,6 +354,11 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 		 * @since 3.0
 		 */
 		private Object fPaintingStrategy;
+		/**
+		 * The annotation of this decoration.
+		 * @since 3.9
+		 */
+		private Annotation fAnnotation;
 	}
 
 
@@ -407,6 +430,18 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 	 * @since 3.3
 	 */
 	private Position fTotalDrawRange= null;
+	/**
+	 * The positions of the drawn annotations affected by the last annotation model event,
+	 * or <code>null</code> if {@link #fCurrentDrawRange} applies as a whole.
+	 * @since 3.9
+	 */
+	private List fCurrentDrawPositions= null;
+	/**
+	 * The positions of the highlight annotations affected by the last annotation model event,
+	 * or <code>null</code> if {@link #fCurrentHighlightAnnotationRange} applies as a whole.
+	 * @since 3.9
+	 */
+	private List fCurrentHighlightPositions= null;
 	/**
 	 * The text input listener.
 	 * @since 3.0
@@ -524,6 +559,14 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 	/**
 	 * Updates the set of decorations based on the current state of
 	 * the painter's annotation model.
+	 * <p>
+	 * Events which are not world changes are applied as deltas to the decoration maps.
+	 * This includes events which are no longer valid: the decorations of the affected
+	 * annotations are computed from the current state of the model, and the later
+	 * modifications of the model are reported by events of their own. The maps are only
+	 * modified by this method in the UI thread, hence they are read without holding the
+	 * locks here.
+	 * </p>
 	 *
 	 * @param event the annotation model event
 	 */
@@ -557,13 +600,8 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 		Map decorationsMap;
 		Map highlightedDecorationsMap;
 
-		// Clone decoration maps
-		synchronized (fDecorationMapLock) {
-			decorationsMap= new HashMap(fDecorationsMap);
-		}
-		synchronized (fHighlightedDecorationsMapLock) {
-			highlightedDecorationsMap= new HashMap(fHighlightedDecorationsMap);
-		}
+		List drawPositions= null;
+		List highlightPositions= null;
 
 		boolean isWorldChange= false;
 
@@ -574,7 +612,7 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 			if (DEBUG && event == null)
 				System.out.println("AP: INTERNAL CHANGE"); //$NON-NLS-1$
 
-			Iterator iter= decorationsMap.entrySet().iterator();
+			Iterator iter= fDecorationsMap.entrySet().iterator();
 			while (iter.hasNext()) {
 				Map.Entry entry= (Map.Entry)iter.next();
 				Annotation annotation= (Annotation)entry.getKey();
@@ -582,34 +620,42 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 				drawDecoration(decoration, null, annotation, clippingRegion, document);
 			}
 
-			decorationsMap.clear();
-
-			highlightedDecorationsMap.clear();
+			decorationsMap= new HashMap();
+			highlightedDecorationsMap= new HashMap();
 
 			e= fModel.getAnnotationIterator();
 
 
 		} else {
 
+			decorationsMap= fDecorationsMap;
+			highlightedDecorationsMap= fHighlightedDecorationsMap;
+			drawPositions= new ArrayList();
+			highlightPositions= new ArrayList();
+
 			// Remove annotations
 			Annotation[] removedAnnotations= event.getRemovedAnnotations();
 			for (int i= 0, length= removedAnnotations.length; i < length; i++) {
 				Annotation annotation= removedAnnotations[i];
-				Decoration decoration= (Decoration)highlightedDecorationsMap.remove(annotation);
+				Decoration decoration= (Decoration)highlightedDecorationsMap.get(annotation);
 				if (decoration != null) {
+					removeDecoration(annotation, true);
 					Position position= decoration.fPosition;
 					if (position != null) {
 						highlightAnnotationRangeStart= Math.min(highlightAnnotationRangeStart, position.offset);
 						highlightAnnotationRangeEnd= Math.max(highlightAnnotationRangeEnd, position.offset + position.length);
+						highlightPositions.add(new Position(position.offset, position.length));
 					}
 				}
-				decoration= (Decoration)decorationsMap.remove(annotation);
+				decoration= (Decoration)decorationsMap.get(annotation);
 				if (decoration != null) {
+					removeDecoration(annotation, false);
 					drawDecoration(decoration, null, annotation, clippingRegion, document);
 					Position position= decoration.fPosition;
 					if (position != null) {
 						drawRangeStart= Math.min(drawRangeStart, position.offset);
 						drawRangeEnd= Math.max(drawRangeEnd, position.offset + position.length);
+						drawPositions.add(new Position(position.offset, position.length));
 					}
 				}
 
@@ -629,17 +675,18 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 					// The call below updates the decoration - no need to create new decoration
 					decoration= getDecoration(annotation, decoration);
 					if (decoration == null) {
-						Decoration removedDecoration= (Decoration)highlightedDecorationsMap.remove(annotation);
+						Decoration removedDecoration= removeDecoration(annotation, true);
 						if (removedDecoration != null) {
 							highlightAnnotationRangeStart= Math.min(highlightAnnotationRangeStart, removedDecoration.fPosition.offset);
 							highlightAnnotationRangeEnd= Math.max(highlightAnnotationRangeEnd, removedDecoration.fPosition.offset + removedDecoration.fPosition.length);
+							highlightPositions.add(new Position(removedDecoration.fPosition.offset, removedDecoration.fPosition.length));
 						}
 					}
 
 				} else {
 					decoration= getDecoration(annotation, decoration);
 					if (decoration != null && decoration.fPaintingStrategy instanceof ITextStyleStrategy) {
-						highlightedDecorationsMap.put(annotation, decoration);
+						putDecoration(annotation, decoration, true);
 						isHighlighting= true;
 					}
 				}
@@ -656,16 +703,19 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 					if (isHighlighting) {
 						highlightAnnotationRangeStart= Math.min(highlightAnnotationRangeStart, position.offset);
 						highlightAnnotationRangeEnd= Math.max(highlightAnnotationRangeEnd, position.offset + position.length);
+						highlightPositions.add(new Position(position.offset, position.length));
 					}
 					if (usesDrawingStrategy) {
 						drawRangeStart= Math.min(drawRangeStart, position.offset);
 						drawRangeEnd= Math.max(drawRangeEnd, position.offset + position.length);
+						drawPositions.add(new Position(position.offset, position.length));
 					}
 				} else {
-					Decoration removedDecoration= (Decoration)highlightedDecorationsMap.remove(annotation);
+					Decoration removedDecoration= removeDecoration(annotation, true);
 					if (removedDecoration != null) {
 						highlightAnnotationRangeStart= Math.min(highlightAnnotationRangeStart, removedDecoration.fPosition.offset);
 						highlightAnnotationRangeEnd= Math.max(highlightAnnotationRangeEnd, removedDecoration.fPosition.offset + removedDecoration.fPosition.length);
+						highlightPositions.add(new Position(removedDecoration.fPosition.offset, removedDecoration.fPosition.length));
 					}
 				}
 
@@ -674,9 +724,9 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 					if (oldDecoration != null) {
 						drawDecoration(oldDecoration, null, annotation, clippingRegion, document);
 						if (decoration != null)
-							decorationsMap.put(annotation, decoration);
+							putDecoration(annotation, decoration, false);
 						else
-							decorationsMap.remove(annotation);
+							removeDecoration(annotation, false);
 					}
 				}
 			}
@@ -690,29 +740,155 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 			Decoration pp= getDecoration(annotation, null);
 			if (pp != null) {
 				if (pp.fPaintingStrategy instanceof IDrawingStrategy) {
-					decorationsMap.put(annotation, pp);
+					if (isWorldChange)
+						decorationsMap.put(annotation, pp);
+					else
+						putDecoration(annotation, pp, false);
 					drawRangeStart= Math.min(drawRangeStart, pp.fPosition.offset);
 					drawRangeEnd= Math.max(drawRangeEnd, pp.fPosition.offset + pp.fPosition.length);
+					if (drawPositions != null)
+						drawPositions.add(new Position(pp.fPosition.offset, pp.fPosition.length));
 				} else if (pp.fPaintingStrategy instanceof ITextStyleStrategy) {
-					highlightedDecorationsMap.put(annotation, pp);
+					if (isWorldChange)
+						highlightedDecorationsMap.put(annotation, pp);
+					else
+						putDecoration(annotation, pp, true);
 					highlightAnnotationRangeStart= Math.min(highlightAnnotationRangeStart, pp.fPosition.offset);
 					highlightAnnotationRangeEnd= Math.max(highlightAnnotationRangeEnd, pp.fPosition.offset + pp.fPosition.length);
+					if (highlightPositions != null)
+						highlightPositions.add(new Position(pp.fPosition.offset, pp.fPosition.length));
 				}
 
 			}
 		}
 
 		synchronized (fDecorationMapLock) {
-			fDecorationsMap= decorationsMap;
+			if (isWorldChange) {
+				fDecorationsMap= decorationsMap;
+			}
 			updateDrawRanges(drawRangeStart, drawRangeEnd, isWorldChange);
+			fCurrentDrawPositions= drawPositions;
 		}
 
 		synchronized (fHighlightedDecorationsMapLock) {
-			fHighlightedDecorationsMap= highlightedDecorationsMap;
+			if (isWorldChange) {
+				fHighlightedDecorationsMap= highlightedDecorationsMap;
+			}
 			updateHighlightRanges(highlightAnnotationRangeStart, highlightAnnotationRangeEnd, isWorldChange);
+			fCurrentHighlightPositions= highlightPositions;
+		}
+	}
+
+	/**
+	 * Adds the given decoration to the decorations map or the highlighted decorations map.
+	 *
+	 * @param annotation the annotation
+	 * @param decoration the decoration
+	 * @param isHighlighting <code>true</code> for the highlighted decorations map
+	 * @since 3.9
+	 */
+	private void putDecoration(Annotation annotation, Decoration decoration, boolean isHighlighting) {
+		if (isHighlighting) {
+			synchronized (fHighlightedDecorationsMapLock) {
+				fHighlightedDecorationsMap.put(annotation, decoration);
+			}
+		} else {
+			synchronized (fDecorationMapLock) {
+				fDecorationsMap.put(annotation, decoration);
+			}
+		}
+	}
+
+	/**
+	 * Removes the decoration of the given annotation from the decorations map or the
+	 * highlighted decorations map.
+	 *
+	 * @param annotation the annotation
+	 * @param isHighlighting <code>true</code> for the highlighted decorations map
+	 * @return the removed decoration or <code>null</code> if none
+	 * @since 3.9
+	 */
+	private Decoration removeDecoration(Annotation annotation, boolean isHighlighting) {
+		if (isHighlighting) {
+			synchronized (fHighlightedDecorationsMapLock) {
+				return (Decoration)fHighlightedDecorationsMap.remove(annotation);
+			}
+		}
+		synchronized (fDecorationMapLock) {
+			return (Decoration)fDecorationsMap.remove(annotation);
 		}
 	}
 
+	/**
+	 * Adds the decorations of the decorations map or the highlighted decorations map whose
+	 * positions touch or overlap the given region to <code>result</code>.
+	 * <p>
+	 * If the annotation model supports region queries, only the annotations in the region
+	 * are looked up, otherwise all decorations are checked.
+	 * </p>
+	 *
+	 * @param offset the offset of the region
+	 * @param length the length of the region
+	 * @param isHighlighting <code>true</code> for the highlighted decorations map
+	 * @param result the collection to which the decorations are added
+	 * @since 3.9
+	 */
+	private void collectDecorations(int offset, int length, boolean isHighlighting, Collection result) {
+		Object lock= isHighlighting ? fHighlightedDecorationsMapLock : fDecorationMapLock;
+		IAnnotationModel model= fModel;
+		if (model instanceof IAnnotationModelExtension2) {
+			// positions which only touch the region do not overlap it, hence the region is widened
+			List annotations= new ArrayList();
+			Iterator e= ((IAnnotationModelExtension2) model).getAnnotationIterator(Math.max(offset - 1, 0), length + 2, true, true);
+			while (e.hasNext())
+				annotations.add(e.next());
+
+			synchronized (lock) {
+				Map decorations= isHighlighting ? fHighlightedDecorationsMap : fDecorationsMap;
+				for (int i= 0, size= annotations.size(); i < size; i++) {
+					Decoration decoration= (Decoration)decorations.get(annotations.get(i));
+					if (decoration != null && regionsTouchOrOverlap(decoration.fPosition.getOffset(), decoration.fPosition.getLength(), offset, length))
+						result.add(decoration);
+				}
+			}
+		} else {
+			synchronized (lock) {
+				Map decorations= isHighlighting ? fHighlightedDecorationsMap : fDecorationsMap;
+				for (Iterator e= decorations.values().iterator(); e.hasNext();) {
+					Decoration decoration= (Decoration)e.next();
+					if (regionsTouchOrOverlap(decoration.fPosition.getOffset(), decoration.fPosition.getLength(), offset, length))
+						result.add(decoration);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the given positions into a minimal number of ranges.
+	 *
+	 * @param positions the positions, will be sorted
+	 * @return the merged ranges, or <code>null</code> if there are too many to be handled
+	 *         separately
+	 * @since 3.9
+	 */
+	private static List mergePositions(List positions) {
+		Collections.sort(positions, POSITION_COMPARATOR);
+		List ranges= new ArrayList();
+		Position last= null;
+		for (int i= 0, size= positions.size(); i < size; i++) {
+			Position position= (Position)positions.get(i);
+			if (last != null && position.offset <= last.offset + last.length) {
+				last.length= Math.max(last.length, position.offset + position.length - last.offset);
+			} else {
+				if (ranges.size() == MAX_INVALIDATED_RANGES)
+					return null;
+				last= new Position(position.offset, position.length);
+				ranges.add(last);
+			}
+		}
+		return ranges;
+	}
+
 	/**
 	 * Updates the remembered highlight ranges.
 	 *
@@ -857,6 +1033,7 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 
 		decoration.fPosition= position;
 		decoration.fColor= color;
+		decoration.fAnnotation= annotation;
 		if (fAnnotationAccess instanceof IAnnotationAccessExtension) {
 			IAnnotationAccessExtension extension= (IAnnotationAccessExtension) fAnnotationAccess;
 			decoration.fLayer= extension.getLayer(annotation);
@@ -954,18 +1131,38 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 			invalidateTextPresentation();
 
 		enablePainting();
+
+		// further draw requests are not caused by this event
+		synchronized (fDecorationMapLock) {
+			fCurrentDrawPositions= null;
+		}
 	}
 
 	private void invalidateTextPresentation() {
 		IRegion r= null;
+		List positions= null;
 		synchronized (fHighlightedDecorationsMapLock) {
 		    if (fCurrentHighlightAnnotationRange != null)
 		    	r= new Region(fCurrentHighlightAnnotationRange.getOffset(), fCurrentHighlightAnnotationRange.getLength());
+		    if (fCurrentHighlightPositions != null)
+		    	positions= mergePositions(fCurrentHighlightPositions);
 		}
 		if (r == null)
 			return;
 
 		if (fSourceViewer instanceof ITextViewerExtension2) {
+			if (positions != null) {
+				// only invalidate the ranges of the changed annotations
+				for (int i= 0, size= positions.size(); i < size; i++) {
+					Position position= (Position)positions.get(i);
+					if (DEBUG)
+						System.out.println("AP: invalidating offset: " + position.getOffset() + ", length= " + position.getLength()); //$NON-NLS-1$ //$NON-NLS-2$
+
+					((ITextViewerExtension2)fSourceViewer).invalidateTextPresentation(position.getOffset(), position.getLength());
+				}
+				return;
+			}
+
 			if (DEBUG)
 				System.out.println("AP: invalidating offset: " + r.getOffset() + ", length= " + r.getLength()); //$NON-NLS-1$ //$NON-NLS-2$
 
@@ -981,31 +1178,27 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 	 * @since 3.0
 	 */
 	public void applyTextPresentation(TextPresentation tp) {
-		Set decorations;
+		IRegion region= tp.getExtent();
+		List decorations= new ArrayList();
 
 		synchronized (fHighlightedDecorationsMapLock) {
 			if (fHighlightedDecorationsMap == null || fHighlightedDecorationsMap.isEmpty())
 				return;
-
-			decorations= new HashSet(fHighlightedDecorationsMap.entrySet());
 		}
-
-		IRegion region= tp.getExtent();
+		collectDecorations(region.getOffset(), region.getLength(), true, decorations);
 
 		if (DEBUG)
 			System.out.println("AP: applying text presentation offset: " + region.getOffset() + ", length= " + region.getLength()); //$NON-NLS-1$ //$NON-NLS-2$
 
 		for (int layer= 0, maxLayer= 1;	layer < maxLayer; layer++) {
 
-			for (Iterator iter= decorations.iterator(); iter.hasNext();) {
-				Map.Entry entry= (Map.Entry)iter.next();
+			for (int i= 0, size= decorations.size(); i < size; i++) {
+				Decoration pp= (Decoration)decorations.get(i);
 
-				Annotation a= (Annotation)entry.getKey();
+				Annotation a= pp.fAnnotation;
 				if (a.isMarkedDeleted())
 					continue;
 
-				Decoration pp = (Decoration)entry.getValue();
-
 				maxLayer= Math.max(maxLayer, pp.fLayer + 1); // dynamically update layer maximum
 				if (pp.fLayer != layer)	// wrong layer: skip annotation
 					continue;
@@ -1375,12 +1568,22 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 		int vLength= clippingRegion.getLength();
 
 		final GC gc= event != null ? event.gc : null;
+		IDocument document= fSourceViewer.getDocument();
 
-		// Clone decorations
-		Collection decorations;
+		// Collect the decorations in the clipping region, or in the ranges of the changed annotations
+		Collection decorations= new HashSet();
+		List positions= null;
 		synchronized (fDecorationMapLock) {
-			decorations= new ArrayList(fDecorationsMap.size());
-			decorations.addAll(fDecorationsMap.entrySet());
+			if (event == null && fCurrentDrawPositions != null)
+				positions= mergePositions(fCurrentDrawPositions);
+		}
+		if (positions != null) {
+			for (int i= 0, size= positions.size(); i < size; i++) {
+				Position position= (Position)positions.get(i);
+				collectDecorations(position.getOffset(), position.getLength(), false, decorations);
+			}
+		} else {
+			collectDecorations(vOffset, vLength, false, decorations);
 		}
 
 		/*
@@ -1389,26 +1592,22 @@ public class AnnotationPainter implements IPainter, PaintListener, IAnnotationMo
 		 */
 		ArrayList toBeDrawn= new ArrayList(10);
 		for (Iterator e = decorations.iterator(); e.hasNext();) {
-			Map.Entry entry= (Map.Entry)e.next();
+			Decoration pp = (Decoration)e.next();
 
-			Annotation a= (Annotation)entry.getKey();
-			Decoration pp = (Decoration)entry.getValue();
+			Annotation a= pp.fAnnotation;
 			// prune any annotation that is not drawable or does not need drawing
 			if (!(a.isMarkedDeleted() || skip(a) || !regionsTouchOrOverlap(pp.fPosition.getOffset(), pp.fPosition.getLength(), vOffset, vLength))) {
 				// ensure sized appropriately
 				for (int i= toBeDrawn.size(); i <= pp.fLayer; i++)
 					toBeDrawn.add(new LinkedList());
-				((List) toBeDrawn.get(pp.fLayer)).add(entry);
+				((List) toBeDrawn.get(pp.fLayer)).add(pp);
 			}
 		}
-		IDocument document= fSourceViewer.getDocument();
 		for (Iterator it= toBeDrawn.iterator(); it.hasNext();) {
 			List layer= (List) it.next();
 			for (Iterator e = layer.iterator(); e.hasNext();) {
-				Map.Entry entry= (Map.Entry)e.next();
-				Annotation a= (Annotation)entry.getKey();
-				Decoration pp = (Decoration)entry.getValue();
-				drawDecoration(pp, gc, a, clippingRegion, document);
+				Decoration pp = (Decoration)e.next();
+				drawDecoration(pp, gc, pp.fAnnotation, clippingRegion, document);
 			}
 		}
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,7 +12,7 @@
 package org.eclipse.jface.text.source;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -44,6 +44,7 @@ import org.eclipse.swt.widgets.Display;
 import org.eclipse.jface.util.Util;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ITextListener;
@@ -69,7 +70,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 	/**
 	 * Internal listener class.
 	 */
-	class InternalListener implements IViewportListener, IAnnotationModelListener, ITextListener {
+	class InternalListener implements IViewportListener, IAnnotationModelListener, IAnnotationModelListenerExtension, ITextListener {
 
 		/*
 		 * @see IViewportListener#viewportChanged(int)
@@ -83,6 +84,17 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 		 * @see IAnnotationModelListener#modelChanged(IAnnotationModel)
 		 */
 		public void modelChanged(IAnnotationModel model) {
+			queueEvent(null);
+			postRedraw();
+		}
+
+		/*
+		 * @see IAnnotationModelListenerExtension#modelChanged(AnnotationModelEvent)
+		 * @since 3.9
+		 */
+		public void modelChanged(AnnotationModelEvent event) {
+			// an invalid event might not carry the complete delta
+			queueEvent(event.isValid() && !event.isWorldChange() ? event : null);
 			postRedraw();
 		}
 
@@ -90,6 +102,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 		 * @see ITextListener#textChanged(TextEvent)
 		 */
 		public void textChanged(TextEvent e) {
+			updateLineCache(e);
 			if (e.getViewerRedrawState())
 				postRedraw();
 		}
@@ -102,17 +115,23 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 	private static class ReusableRegion extends Position implements IRegion {}
 
 	/**
-	 * Pair of an annotation and their associated position. Used inside the paint method
-	 * for sorting annotations based on the offset of their position.
-	 * @since 3.0
+	 * An annotation to be painted together with its position, layer and the document
+	 * lines it covers.
+	 * @since 3.9
 	 */
 	private static class Tuple {
-		Annotation annotation;
-		Position position;
+		final Annotation annotation;
+		final Position position;
+		final int layer;
+		final int startLine;
+		final int endLine;
 
-		Tuple(Annotation annotation, Position position) {
+		Tuple(Annotation annotation, Position position, int layer, int startLine, int endLine) {
 			this.annotation= annotation;
 			this.position= position;
+			this.layer= layer;
+			this.startLine= startLine;
+			this.endLine= endLine;
 		}
 	}
 
@@ -131,6 +150,11 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 		}
 	}
 
+	/** The empty line bucket. */
+	private static final Tuple[] NO_TUPLES= new Tuple[0];
+	/** The minimal number of lines kept in the line cache. */
+	private static final int MIN_CACHED_LINES= 256;
+
 	/**
 	 * <code>true</code> if we're on a Mac, where "new GC(canvas)" is expensive.
 	 * @see <a href="https://bugs.eclipse.org/298936">bug 298936</a>
@@ -181,10 +205,28 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 	 */
 	private IAnnotationHover fHover;
 	/**
-	 * The cached annotations.
-	 * @since 3.0
+	 * The annotations to be painted per document line. Maps line numbers to arrays of
+	 * <code>Tuple</code>s sorted by offset. Lines which are not contained have not been
+	 * computed yet. Accessed in the UI thread only.
+	 * @since 3.9
+	 */
+	private Map fLineCache= new HashMap();
+	/**
+	 * The number of lines of the document for which the line cache has been computed.
+	 * @since 3.9
 	 */
-	private List fCachedAnnotations= new ArrayList();
+	private int fCachedNumberOfLines;
+	/**
+	 * The cached tuples by annotation, used to invalidate the lines of changed annotations.
+	 * @since 3.9
+	 */
+	private Map fCachedTuples= new HashMap();
+	/**
+	 * The annotation model events which have not yet been applied to the line cache,
+	 * <code>null</code> entries denote world changes.
+	 * @since 3.9
+	 */
+	private final List fPendingEvents= new ArrayList();
 	/**
 	 * The comparator for sorting annotations according to the offset of their position.
 	 * @since 3.0
@@ -507,6 +549,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 		fConfiguredAnnotationTypes.clear();
 		fAllowedAnnotationTypes.clear();
 		fAnnotationAccessExtension= null;
+		clearLineCache();
 	}
 
 	/**
@@ -716,18 +759,125 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 		int vOffset= getInclusiveTopIndexStartOffset();
 		int vLength= getExclusiveBottomIndexEndOffset() - vOffset;
 
+		IDocument document= fCachedTextViewer.getDocument();
+		if (document == null || vOffset == -1)
+			return;
+
+		Tuple[] tuples;
+		try {
+			tuples= getVisibleTuples(document, document.getLineOfOffset(vOffset), document.getLineOfOffset(vOffset + Math.max(vLength, 0)));
+		} catch (BadLocationException x) {
+			return;
+		}
+
 		// draw Annotations
 		Rectangle r= new Rectangle(0, 0, 0, 0);
 		ReusableRegion range= new ReusableRegion();
 
 		int minLayer= Integer.MAX_VALUE, maxLayer= Integer.MIN_VALUE;
-		fCachedAnnotations.clear();
+		for (int i= 0; i < tuples.length; i++) {
+			minLayer= Math.min(minLayer, tuples[i].layer);
+			maxLayer= Math.max(maxLayer, tuples[i].layer);
+		}
+
+		for (int layer= minLayer; layer <= maxLayer; layer++) {
+			for (int i= 0; i < tuples.length; i++) {
+				Tuple tuple= tuples[i];
+				if (tuple.layer != layer)	// wrong layer: skip annotation
+					continue;
+
+				Annotation annotation= tuple.annotation;
+				Position position= tuple.position;
+
+				range.setOffset(position.getOffset());
+				range.setLength(position.getLength());
+				IRegion widgetRegion= extension.modelRange2WidgetRange(range);
+				if (widgetRegion == null)
+					continue;
+
+				int startLine= extension.widgetLineOfWidgetOffset(widgetRegion.getOffset());
+				if (startLine == -1)
+					continue;
+
+				int endLine= extension.widgetLineOfWidgetOffset(widgetRegion.getOffset() + Math.max(widgetRegion.getLength() -1, 0));
+				if (endLine == -1)
+					continue;
+
+				r.x= 0;
+				r.y= JFaceTextUtil.computeLineHeight(fCachedTextWidget, 0, startLine, startLine)  - fScrollPos;
+
+				r.width= dimension.x;
+				int lines= endLine - startLine;
+				r.height= JFaceTextUtil.computeLineHeight(fCachedTextWidget, startLine, endLine + 1, lines + 1);
+
+				if (r.y < dimension.y && fAnnotationAccessExtension != null)  // annotation within visible area
+					fAnnotationAccessExtension.paint(annotation, gc, fCanvas, r);
+			}
+		}
+	}
+
+	/**
+	 * Returns the annotations to be painted for the given document lines, sorted by
+	 * offset. Lines which are not yet in the line cache are computed with a single query
+	 * of the annotation model.
+	 *
+	 * @param document the document
+	 * @param topLine the first visible document line
+	 * @param bottomLine the last visible document line
+	 * @return the annotations covering the given lines
+	 * @throws BadLocationException if the document is modified concurrently
+	 * @since 3.9
+	 */
+	private Tuple[] getVisibleTuples(IDocument document, int topLine, int bottomLine) throws BadLocationException {
+		applyPendingEvents();
+
+		int lines= bottomLine - topLine + 1;
+		if (fLineCache.size() > Math.max(MIN_CACHED_LINES, 4 * lines))
+			clearLineCache();
+
+		int firstMissing= -1, lastMissing= -1;
+		for (int line= topLine; line <= bottomLine; line++) {
+			if (!fLineCache.containsKey(new Integer(line))) {
+				if (firstMissing == -1)
+					firstMissing= line;
+				lastMissing= line;
+			}
+		}
+		if (firstMissing != -1)
+			cacheLines(document, firstMissing, lastMissing);
+
+		// collect each annotation at its first visible line
+		List tuples= new ArrayList();
+		for (int line= topLine; line <= bottomLine; line++) {
+			Tuple[] bucket= (Tuple[]) fLineCache.get(new Integer(line));
+			for (int i= 0; i < bucket.length; i++) {
+				if (Math.max(bucket[i].startLine, topLine) == line)
+					tuples.add(bucket[i]);
+			}
+		}
+		return (Tuple[]) tuples.toArray(new Tuple[tuples.size()]);
+	}
+
+	/**
+	 * Computes the annotations of the given document lines and adds them to the line cache.
+	 *
+	 * @param document the document
+	 * @param firstLine the first line to compute
+	 * @param lastLine the last line to compute
+	 * @throws BadLocationException if the document is modified concurrently
+	 * @since 3.9
+	 */
+	private void cacheLines(IDocument document, int firstLine, int lastLine) throws BadLocationException {
+		int offset= document.getLineOffset(firstLine);
+		int end= document.getLineOffset(lastLine) + document.getLineLength(lastLine);
+
 		Iterator iter;
 		if (fModel instanceof IAnnotationModelExtension2)
-			iter= ((IAnnotationModelExtension2)fModel).getAnnotationIterator(vOffset, vLength + 1, true, true);
+			iter= ((IAnnotationModelExtension2)fModel).getAnnotationIterator(offset, end - offset + 1, true, true);
 		else
 			iter= fModel.getAnnotationIterator();
 
+		List[] buckets= new List[lastLine - firstLine + 1];
 		while (iter.hasNext()) {
 			Annotation annotation= (Annotation) iter.next();
 
@@ -738,60 +888,225 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 			if (position == null)
 				continue;
 
-			// https://bugs.eclipse.org/bugs/show_bug.cgi?id=217710
-			int extendedVLength= position.getLength() == 0 ? vLength + 1 : vLength;
-			if (!position.overlapsWith(vOffset, extendedVLength))
+			int startLine= document.getLineOfOffset(position.getOffset());
+			int endLine= position.getLength() > 0 ? document.getLineOfOffset(position.getOffset() + position.getLength() - 1) : startLine;
+			if (endLine < firstLine || startLine > lastLine)
 				continue;
 
 			int lay= IAnnotationAccessExtension.DEFAULT_LAYER;
 			if (fAnnotationAccessExtension != null)
 				lay= fAnnotationAccessExtension.getLayer(annotation);
 
-			minLayer= Math.min(minLayer, lay);
-			maxLayer= Math.max(maxLayer, lay);
-			fCachedAnnotations.add(new Tuple(annotation, position));
+			Tuple tuple= new Tuple(annotation, position, lay, startLine, endLine);
+			fCachedTuples.put(annotation, tuple);
+			for (int line= Math.max(startLine, firstLine), last= Math.min(endLine, lastLine); line <= last; line++) {
+				int index= line - firstLine;
+				if (buckets[index] == null)
+					buckets[index]= new ArrayList(2);
+				buckets[index].add(tuple);
+			}
 		}
-		Collections.sort(fCachedAnnotations, fTupleComparator);
 
-		for (int layer= minLayer; layer <= maxLayer; layer++) {
-			for (int i= 0, n= fCachedAnnotations.size(); i < n; i++) {
-				Tuple tuple= (Tuple) fCachedAnnotations.get(i);
-				Annotation annotation= tuple.annotation;
-				Position position= tuple.position;
+		for (int i= 0; i < buckets.length; i++) {
+			Tuple[] bucket= NO_TUPLES;
+			if (buckets[i] != null) {
+				bucket= (Tuple[]) buckets[i].toArray(new Tuple[buckets[i].size()]);
+				Arrays.sort(bucket, fTupleComparator);
+			}
+			fLineCache.put(new Integer(firstLine + i), bucket);
+		}
+		fCachedNumberOfLines= document.getNumberOfLines();
+	}
 
-				int lay= IAnnotationAccessExtension.DEFAULT_LAYER;
-				if (fAnnotationAccessExtension != null)
-					lay= fAnnotationAccessExtension.getLayer(annotation);
-				if (lay != layer)	// wrong layer: skip annotation
-					continue;
+	/**
+	 * Updates the line cache for the given text change. The lines replaced by the change
+	 * and the lines of the annotations overlapping them are removed, the lines after the
+	 * change are moved by the number of inserted minus the number of replaced lines.
+	 *
+	 * @param event the text event
+	 * @since 3.9
+	 */
+	private void updateLineCache(TextEvent event) {
+		if (fLineCache.isEmpty())
+			return;
 
-				range.setOffset(position.getOffset());
-				range.setLength(position.getLength());
-				IRegion widgetRegion= extension.modelRange2WidgetRange(range);
-				if (widgetRegion == null)
-					continue;
+		IDocument document= fCachedTextViewer != null ? fCachedTextViewer.getDocument() : null;
+		DocumentEvent documentEvent= event.getDocumentEvent();
+		if (document == null || documentEvent == null || documentEvent.getDocument() != document || !isDocumentChange(event, documentEvent)) {
+			clearLineCache();
+			return;
+		}
 
-				int startLine= extension.widgetLineOfWidgetOffset(widgetRegion.getOffset());
-				if (startLine == -1)
-					continue;
+		int replacedLines= document.computeNumberOfLines(event.getReplacedText());
+		int insertedLines= documentEvent.getText() != null ? document.computeNumberOfLines(documentEvent.getText()) : 0;
+		int delta= insertedLines - replacedLines;
+		if (document.getNumberOfLines() != fCachedNumberOfLines + delta) {
+			// line delimiters have been joined or split
+			clearLineCache();
+			return;
+		}
 
-				int endLine= extension.widgetLineOfWidgetOffset(widgetRegion.getOffset() + Math.max(widgetRegion.getLength() -1, 0));
-				if (endLine == -1)
+		int firstLine;
+		try {
+			firstLine= document.getLineOfOffset(documentEvent.getOffset());
+		} catch (BadLocationException x) {
+			clearLineCache();
+			return;
+		}
+		int lastLine= firstLine + replacedLines;
+
+		for (Iterator e= fCachedTuples.values().iterator(); e.hasNext();) {
+			Tuple tuple= (Tuple) e.next();
+			if (tuple.startLine <= lastLine && tuple.endLine >= firstLine) {
+				e.remove();
+				invalidateLines(tuple.startLine, tuple.endLine);
+			}
+		}
+		invalidateLines(firstLine, lastLine);
+
+		if (delta != 0) {
+			Map lineCache= new HashMap();
+			Map movedTuples= new HashMap();
+			for (Iterator e= fLineCache.entrySet().iterator(); e.hasNext();) {
+				Map.Entry entry= (Map.Entry) e.next();
+				int line= ((Integer) entry.getKey()).intValue();
+				if (line < firstLine) {
+					lineCache.put(entry.getKey(), entry.getValue());
 					continue;
+				}
 
-				r.x= 0;
-				r.y= JFaceTextUtil.computeLineHeight(fCachedTextWidget, 0, startLine, startLine)  - fScrollPos;
+				Tuple[] bucket= (Tuple[]) entry.getValue();
+				Tuple[] moved= new Tuple[bucket.length];
+				for (int i= 0; i < bucket.length; i++) {
+					moved[i]= (Tuple) movedTuples.get(bucket[i]);
+					if (moved[i] == null) {
+						Tuple tuple= bucket[i];
+						moved[i]= new Tuple(tuple.annotation, tuple.position, tuple.layer, tuple.startLine + delta, tuple.endLine + delta);
+						movedTuples.put(tuple, moved[i]);
+						fCachedTuples.put(tuple.annotation, moved[i]);
+					}
+				}
+				lineCache.put(new Integer(line + delta), moved);
+			}
+			fLineCache= lineCache;
+		}
+		fCachedNumberOfLines= document.getNumberOfLines();
+	}
 
-				r.width= dimension.x;
-				int lines= endLine - startLine;
-				r.height= JFaceTextUtil.computeLineHeight(fCachedTextWidget, startLine, endLine + 1, lines + 1);
+	/**
+	 * Tells whether the given text event replaces the same text in the widget as the
+	 * given document event replaces in the document, i.e. whether the replaced text of
+	 * the text event is the text replaced in the document.
+	 *
+	 * @param event the text event
+	 * @param documentEvent the document event of the text event
+	 * @return <code>true</code> if the text event reflects the complete document change
+	 * @since 3.9
+	 */
+	private static boolean isDocumentChange(TextEvent event, DocumentEvent documentEvent) {
+		String replaced= event.getReplacedText();
+		String text= event.getText() == null ? "" : event.getText(); //$NON-NLS-1$
+		String documentText= documentEvent.getText() == null ? "" : documentEvent.getText(); //$NON-NLS-1$
+		return replaced != null && replaced.length() == documentEvent.getLength() && text.equals(documentText);
+	}
 
-				if (r.y < dimension.y && fAnnotationAccessExtension != null)  // annotation within visible area
-					fAnnotationAccessExtension.paint(annotation, gc, fCanvas, r);
+	/**
+	 * Queues the given annotation model event to be applied to the line cache.
+	 *
+	 * @param event the event, or <code>null</code> for a world change
+	 * @since 3.9
+	 */
+	private void queueEvent(AnnotationModelEvent event) {
+		synchronized (fPendingEvents) {
+			if (event == null)
+				fPendingEvents.clear();
+			else if (!fPendingEvents.isEmpty() && fPendingEvents.get(0) == null)
+				return;
+			fPendingEvents.add(event);
+		}
+	}
+
+	/**
+	 * Removes the lines affected by the pending annotation model events from the line cache.
+	 *
+	 * @since 3.9
+	 */
+	private void applyPendingEvents() {
+		AnnotationModelEvent[] events;
+		synchronized (fPendingEvents) {
+			events= (AnnotationModelEvent[]) fPendingEvents.toArray(new AnnotationModelEvent[fPendingEvents.size()]);
+			fPendingEvents.clear();
+		}
+
+		if (events.length > 0 && events[0] == null) {
+			clearLineCache();
+			return;
+		}
+
+		IDocument document= fCachedTextViewer.getDocument();
+		for (int i= 0; i < events.length; i++) {
+			invalidateLines(document, events[i].getAddedAnnotations());
+			invalidateLines(document, events[i].getRemovedAnnotations());
+			invalidateLines(document, events[i].getChangedAnnotations());
+		}
+	}
+
+	/**
+	 * Removes the lines covered by the given annotations, both the cached lines and
+	 * the lines of their current position, from the line cache.
+	 *
+	 * @param document the document
+	 * @param annotations the annotations
+	 * @since 3.9
+	 */
+	private void invalidateLines(IDocument document, Annotation[] annotations) {
+		for (int i= 0; i < annotations.length; i++) {
+			Tuple tuple= (Tuple) fCachedTuples.remove(annotations[i]);
+			if (tuple != null)
+				invalidateLines(tuple.startLine, tuple.endLine);
+
+			Position position= fModel.getPosition(annotations[i]);
+			if (position != null && document != null) {
+				try {
+					int startLine= document.getLineOfOffset(position.getOffset());
+					int endLine= position.getLength() > 0 ? document.getLineOfOffset(position.getOffset() + position.getLength() - 1) : startLine;
+					invalidateLines(startLine, endLine);
+				} catch (BadLocationException x) {
+					clearLineCache();
+					return;
+				}
 			}
 		}
+	}
 
-		fCachedAnnotations.clear();
+	/**
+	 * Removes the given lines from the line cache.
+	 *
+	 * @param startLine the first line
+	 * @param endLine the last line
+	 * @since 3.9
+	 */
+	private void invalidateLines(int startLine, int endLine) {
+		if (endLine - startLine >= fLineCache.size()) {
+			for (Iterator e= fLineCache.keySet().iterator(); e.hasNext();) {
+				int line= ((Integer) e.next()).intValue();
+				if (line >= startLine && line <= endLine)
+					e.remove();
+			}
+		} else {
+			for (int line= startLine; line <= endLine; line++)
+				fLineCache.remove(new Integer(line));
+		}
+	}
+
+	/**
+	 * Clears the line cache.
+	 *
+	 * @since 3.9
+	 */
+	private void clearLineCache() {
+		fLineCache.clear();
+		fCachedTuples.clear();
 	}
 
 
@@ -837,6 +1152,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 				fModel.removeAnnotationModelListener(fInternalListener);
 
 			fModel= model;
+			queueEvent(null);
 
 			if (fModel != null)
 				fModel.addAnnotationModelListener(fInternalListener);
@@ -878,6 +1194,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 	public void addAnnotationType(Object annotationType) {
 		fConfiguredAnnotationTypes.add(annotationType);
 		fAllowedAnnotationTypes.clear();
+		queueEvent(null);
 	}
 
 	/*
@@ -907,6 +1224,7 @@ public class AnnotationRulerColumn implements IVerticalRulerColumn, IVerticalRul
 	public void removeAnnotationType(Object annotationType) {
 		fConfiguredAnnotationTypes.remove(annotationType);
 		fAllowedAnnotationTypes.clear();
+		queueEvent(null);
 	}
 
 	/**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2012 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,8 @@
 package org.eclipse.jface.text.source;
 import org.eclipse.core.runtime.Assert;
 
+import org.eclipse.jface.internal.text.CharacterPairIndex;
+
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension3;
@@ -32,6 +34,10 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 	private final CharPairs fPairs;
 	private final String fPartitioning;
 	private final boolean fCaretEitherSideOfBracket;
+	/** Whether matches are looked up in a {@link CharacterPairIndex}. */
+	private final boolean fUseIndex;
+	/** The index of the last matched document, <code>null</code> if none. */
+	private CharacterPairIndex fIndex;
 
 	/**
 	 * Creates a new character pair matcher that matches the specified characters within the
@@ -71,11 +77,44 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 	 * @since 3.8
 	 */
 	public DefaultCharacterPairMatcher(char[] chars, String partitioning, boolean caretEitherSideOfBracket) {
+		this(chars, partitioning, caretEitherSideOfBracket, false);
+	}
+
+	/**
+	 * Creates a new character pair matcher that matches the specified characters within the
+	 * specified partitioning. The specified list of characters must have the form <blockquote>{
+	 * <i>start</i>, <i>end</i>, <i>start</i>, <i>end</i>, ..., <i>start</i>, <i>end</i>
+	 * }</blockquote> For instance:
+	 * 
+	 * <pre>
+	 * char[] chars = new char[] {'(', ')', '{', '}', '[', ']'};
+	 * new DefaultCharacterPairMatcher(chars, ...);
+	 * </pre>
+	 * <p>
+	 * If <code>useIndex</code> is <code>true</code>, the matcher keeps an index of the
+	 * occurrences of the characters in the last matched document, which is updated when the
+	 * document changes and finds matching and enclosing peers in logarithmic time. The index
+	 * is only used if the specified characters are distinct. Subclasses which override
+	 * {@link #isMatchedChar(char, IDocument, int)} must not use the index.
+	 * </p>
+	 * 
+	 * @param chars a list of characters
+	 * @param partitioning the partitioning to match within
+	 * @param caretEitherSideOfBracket controls the matching behavior. When <code>true</code>, the
+	 *            matching peer will be found when the caret is placed either before or after a
+	 *            character. When <code>false</code>, the matching peer will be found only when the
+	 *            caret is placed after a character.
+	 * @param useIndex <code>true</code> if matches should be looked up in an index of the
+	 *            document
+	 * @since 3.9
+	 */
+	public DefaultCharacterPairMatcher(char[] chars, String partitioning, boolean caretEitherSideOfBracket, boolean useIndex) {
 		Assert.isLegal(chars.length % 2 == 0);
 		Assert.isNotNull(partitioning);
 		fPairs= new CharPairs(chars);
 		fPartitioning= partitioning;
 		fCaretEitherSideOfBracket= caretEitherSideOfBracket;
+		fUseIndex= useIndex && areDistinct(chars);
 	}
 
 	/**
@@ -147,6 +186,13 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 		//bracket is not selected
 		try {
 			final String partition= TextUtilities.getContentType(document, fPartitioning, offset, false);
+			CharacterPairIndex index= getIndex(document);
+			if (index != null) {
+				IRegion enclosingPeers= findEnclosingPeers(index, document, partition, offset, length);
+				if (enclosingPeers != null)
+					return enclosingPeers;
+				return findEnclosingPeers(index, document, IDocument.DEFAULT_CONTENT_TYPE, offset, length);
+			}
 			DocumentPartitionAccessor partDoc= new DocumentPartitionAccessor(document, fPartitioning, partition);
 			IRegion enclosingPeers= findEnclosingPeers(document, partDoc, offset, length, 0, document.getLength());
 			if (enclosingPeers != null)
@@ -296,9 +342,15 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 		final int searchStartPosition= isForward ? caretOffset : (fCaretEitherSideOfBracket ? caretOffset - 1 : caretOffset - 2);
 		final int adjustedOffset= isForward ? caretOffset - 1 : (fCaretEitherSideOfBracket ? caretOffset + 1 : caretOffset);
 		final String partition= TextUtilities.getContentType(doc, fPartitioning, ((!isForward && fCaretEitherSideOfBracket) ? caretOffset : Math.max(caretOffset - 1, 0)), false);
-		final DocumentPartitionAccessor partDoc= new DocumentPartitionAccessor(doc, fPartitioning, partition);
-		int endOffset= findMatchingPeer(partDoc, ch, fPairs.getMatching(ch),
-				isForward, isForward ? doc.getLength() : -1, searchStartPosition);
+		final CharacterPairIndex index= getIndex(doc);
+		int endOffset;
+		if (index != null) {
+			endOffset= isForward ? index.findClosingPeer(ch, searchStartPosition, partition) : index.findOpeningPeer(ch, searchStartPosition, partition);
+		} else {
+			final DocumentPartitionAccessor partDoc= new DocumentPartitionAccessor(doc, fPartitioning, partition);
+			endOffset= findMatchingPeer(partDoc, ch, fPairs.getMatching(ch),
+					isForward, isForward ? doc.getLength() : -1, searchStartPosition);
+		}
 		if (endOffset == -1)
 			return null;
 		final int adjustedEndOffset= isForward ? endOffset + 1 : endOffset;
@@ -424,6 +476,105 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 		return new Region(pos1, pos2 - pos1);
 	}
 
+	/**
+	 * Finds the enclosing peer characters like
+	 * {@link #findEnclosingPeers(IDocument, DocumentPartitionAccessor, int, int, int, int)}, but
+	 * looks up the peers in the given index.
+	 * 
+	 * @param index the index of the document
+	 * @param document the document to work on
+	 * @param partition the content type of the peer characters
+	 * @param offset the offset of the selection
+	 * @param length the length of the selection, may be negative
+	 * @return the region of the enclosing peer characters, or <code>null</code> if there are none
+	 * @throws BadLocationException if the selection is invalid
+	 * @since 3.9
+	 */
+	private IRegion findEnclosingPeers(CharacterPairIndex index, IDocument document, String partition, int offset, int length) throws BadLocationException {
+		char[] pairs= fPairs.fPairs;
+
+		int start;
+		int end;
+		if (length >= 0) {
+			start= offset;
+			end= offset + length;
+		} else {
+			end= offset;
+			start= offset + length;
+		}
+
+		int pos1;
+		int pos2;
+		if (fPairs.isEndCharacter(document.getChar(start))) {
+			pos1= start - 1;
+			pos2= start;
+		} else {
+			pos1= start;
+			pos2= start + 1;
+		}
+
+		while (true) {
+			// the nearest unmatched start character of any pair in front of the selection
+			int lower= -1;
+			int pair= -1;
+			for (int i= 0; i < pairs.length; i+= 2) {
+				int peer= index.findOpeningPeer(pairs[i + 1], pos1, partition);
+				if (peer > lower) {
+					lower= peer;
+					pair= i;
+				}
+			}
+			if (lower == -1)
+				return null;
+
+			int upper= index.findClosingPeer(pairs[pair], pos2, partition);
+			if (upper == -1)
+				return null;
+			if (upper >= end - 1)
+				return new Region(lower, upper + 1 - lower);
+
+			//match inside selection => discard
+			pos1= lower - 1;
+			pos2= upper + 1;
+		}
+	}
+
+	/**
+	 * Returns the index of the given document, creates it if necessary.
+	 * 
+	 * @param document the document
+	 * @return the index, or <code>null</code> if no index is used or it cannot answer queries
+	 * @since 3.9
+	 */
+	private CharacterPairIndex getIndex(IDocument document) {
+		if (!fUseIndex)
+			return null;
+		if (fIndex != null && fIndex.getDocument() != document) {
+			fIndex.dispose();
+			fIndex= null;
+		}
+		if (fIndex == null)
+			fIndex= new CharacterPairIndex(document, fPartitioning, fPairs.fPairs);
+		return fIndex.isAvailable() ? fIndex : null;
+	}
+
+	/**
+	 * Tells whether the given characters are distinct.
+	 * 
+	 * @param chars the characters
+	 * @return <code>true</code> if no character occurs twice
+	 * @since 3.9
+	 */
+	private static boolean areDistinct(char[] chars) {
+		for (int i= 0; i < chars.length; i++) {
+			for (int j= i + 1; j < chars.length; j++) {
+				if (chars[i] == chars[j])
+					return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Determines the index of the character in the char array passed to the constructor of the pair
 	 * matcher.
@@ -451,7 +602,12 @@ public class DefaultCharacterPairMatcher implements ICharacterPairMatcher, IChar
 	}
 
 	/* @see ICharacterPairMatcher#dispose() */
-	public void dispose() { }
+	public void dispose() {
+		if (fIndex != null) {
+			fIndex.dispose();
+			fIndex= null;
+		}
+	}
 
 	/* @see ICharacterPairMatcher#clear() */
 	public void clear() {
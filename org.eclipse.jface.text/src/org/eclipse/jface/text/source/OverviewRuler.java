@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.jface.text.source;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -80,6 +81,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		 * @see ITextListener#textChanged
 		 */
 		public void textChanged(TextEvent e) {
+			invalidateRectangles(e);
 			if (fTextViewer != null && e.getDocumentEvent() == null && e.getViewerRedrawState()) {
 				// handle only changes of visible document
 				redraw();
@@ -90,6 +92,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		 * @see IAnnotationModelListener#modelChanged(IAnnotationModel)
 		 */
 		public void modelChanged(IAnnotationModel model) {
+			queueEvent(null);
 			update();
 		}
 
@@ -98,14 +101,20 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		 * @since 3.3
 		 */
 		public void modelChanged(AnnotationModelEvent event) {
-			if (!event.isValid())
+			if (!event.isValid()) {
+				// the delta is incomplete, a later event triggers the update
+				queueEvent(null);
 				return;
+			}
 
 			if (event.isWorldChange()) {
+				queueEvent(null);
 				update();
 				return;
 			}
 
+			queueEvent(event);
+
 			Annotation[] annotations= event.getAddedAnnotations();
 			int length= annotations.length;
 			for (int i= 0; i < length; i++) {
@@ -239,6 +248,114 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		}
 	}
 
+	/**
+	 * The annotations of one annotation type and style together with the rectangles
+	 * representing them in the ruler. Equal rectangles are counted rather than drawn
+	 * repeatedly, hence the painting effort depends on the height of the ruler rather
+	 * than on the number of annotations.
+	 *
+	 * @since 3.9
+	 */
+	static class Raster {
+
+		/** Marks annotations which are not shown or whose rectangle has not been computed. */
+		private static final Integer NONE= new Integer(-1);
+
+		/** Maps the annotations to their packed rectangles. */
+		private final Map fAnnotations= new HashMap();
+		/** Maps the packed rectangles to their number of annotations, stored in an <code>int[1]</code>. */
+		private final Map fCounts= new HashMap();
+		/** The sorted packed rectangles, or <code>null</code> if not yet computed. */
+		private int[] fRectangles;
+
+		/**
+		 * Packs the given rectangle into an integer, ordered by <code>y</code>.
+		 *
+		 * @param y the vertical position of the rectangle
+		 * @param height the height of the rectangle
+		 * @return the packed rectangle
+		 */
+		static int pack(int y, int height) {
+			return Math.min(y, 0x7FFF) << 16 | Math.min(height, 0xFFFF);
+		}
+
+		/**
+		 * Adds or updates the given annotation.
+		 *
+		 * @param annotation the annotation
+		 * @param rectangle the packed rectangle of the annotation, or <code>-1</code> if none
+		 */
+		void put(Annotation annotation, int rectangle) {
+			remove(annotation);
+			if (rectangle == -1) {
+				fAnnotations.put(annotation, NONE);
+				return;
+			}
+
+			Integer key= new Integer(rectangle);
+			fAnnotations.put(annotation, key);
+			int[] count= (int[]) fCounts.get(key);
+			if (count == null) {
+				fCounts.put(key, new int[] { 1 });
+				fRectangles= null;
+			} else {
+				count[0]++;
+			}
+		}
+
+		/**
+		 * Removes the given annotation.
+		 *
+		 * @param annotation the annotation
+		 */
+		void remove(Annotation annotation) {
+			Integer key= (Integer) fAnnotations.remove(annotation);
+			if (key == null || key == NONE)
+				return;
+
+			int[] count= (int[]) fCounts.get(key);
+			if (--count[0] == 0) {
+				fCounts.remove(key);
+				fRectangles= null;
+			}
+		}
+
+		/**
+		 * Tells whether this raster contains the given annotation.
+		 *
+		 * @param annotation the annotation
+		 * @return <code>true</code> if the annotation is in this raster
+		 */
+		boolean contains(Annotation annotation) {
+			return fAnnotations.containsKey(annotation);
+		}
+
+		/**
+		 * Returns the annotations of this raster.
+		 *
+		 * @return the annotations
+		 */
+		Set getAnnotations() {
+			return fAnnotations.keySet();
+		}
+
+		/**
+		 * Returns the distinct rectangles of the annotations, sorted by vertical position.
+		 *
+		 * @return the packed rectangles
+		 */
+		int[] getRectangles() {
+			if (fRectangles == null) {
+				fRectangles= new int[fCounts.size()];
+				int i= 0;
+				for (Iterator e= fCounts.keySet().iterator(); e.hasNext();)
+					fRectangles[i++]= ((Integer) e.next()).intValue();
+				Arrays.sort(fRectangles);
+			}
+			return fRectangles;
+		}
+	}
+
 	/**
 	 * The painter of the overview ruler's header.
 	 */
@@ -370,6 +487,18 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 	        visibleLines= bottomIndex - topIndex;
 	        invisibleLines= maxLines - visibleLines;
 		}
+
+		/**
+		 * Tells whether the given widget infos map lines to the same vertical positions.
+		 *
+		 * @param infos the widget infos to compare with
+		 * @return <code>true</code> if the lines are mapped to the same positions
+		 * @since 3.9
+		 */
+		boolean hasSameLayout(WidgetInfos infos) {
+			return maxLines == infos.maxLines && thumbHeight == infos.thumbHeight && visibleLines == infos.visibleLines
+					&& invisibleLines == infos.invisibleLines && bounds.equals(infos.bounds) && writable == infos.writable;
+		}
 	}
 
 	private static final boolean DEBUG_DRAW= false;
@@ -455,10 +584,44 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 	 */
 	private Map fAllowedHeaderAnnotationTypes= new HashMap();
 	/**
-	 * The cached annotations.
-	 * @since 3.0
+	 * The rasters of the configured annotation types. Maps the annotation types to
+	 * an array holding the raster of the persistent and the raster of the temporary
+	 * annotations.
+	 * @since 3.9
 	 */
-	private List fCachedAnnotations= new ArrayList();
+	private Map fRasters= new HashMap();
+	/**
+	 * The rasters to which the annotations of a type belong. Maps annotation types
+	 * to a list of raster arrays, see {@link #fRasters}.
+	 * @since 3.9
+	 */
+	private Map fRastersByType= new HashMap();
+	/**
+	 * Tells whether the rasters contain the annotations of the model.
+	 * @since 3.9
+	 */
+	private boolean fRastersValid= false;
+	/**
+	 * Tells whether the rectangles of the annotations in the rasters are up to date.
+	 * @since 3.9
+	 */
+	private boolean fRectanglesValid= false;
+	/**
+	 * The widget infos for which the rectangles of the annotations have been computed.
+	 * @since 3.9
+	 */
+	private WidgetInfos fRasterInfos;
+	/**
+	 * The annotations on the lines changed since the rectangles have been computed.
+	 * @since 3.9
+	 */
+	private final Set fDirtyAnnotations= new HashSet();
+	/**
+	 * The annotation model events which have not yet been applied to the rasters,
+	 * <code>null</code> entries denote world changes.
+	 * @since 3.9
+	 */
+	private final List fPendingEvents= new ArrayList();
 
 	/**
 	 * Redraw runnable lock
@@ -556,6 +719,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 				fModel.removeAnnotationModelListener(fInternalListener);
 
 			fModel= model;
+			fRastersValid= false;
 
 			if (fModel != null)
 				fModel.addAnnotationModelListener(fInternalListener);
@@ -646,6 +810,10 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		fAnnotationTypes2Colors.clear();
 		fAnnotationsSortedByLayer.clear();
 		fLayersSortedByLayer.clear();
+		fRasters.clear();
+		fRastersByType.clear();
+		fRastersValid= false;
+		fRasterInfos= null;
 	}
 
 	/**
@@ -675,8 +843,6 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			gc.setBackground(fCanvas.getBackground());
 			gc.fillRectangle(0, 0, size.x, size.y);
 
-			cacheAnnotations();
-
 			doPaint(gc);
 
 		} finally {
@@ -686,33 +852,246 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		dest.drawImage(fBuffer, 0, 0);
 	}
 
-	private void cacheAnnotations() {
-		fCachedAnnotations.clear();
-		if (fModel != null) {
-			Iterator iter= fModel.getAnnotationIterator();
-			while (iter.hasNext()) {
-				Annotation annotation= (Annotation) iter.next();
+	/**
+	 * Queues the given annotation model event to be applied to the rasters.
+	 *
+	 * @param event the event, or <code>null</code> for a world change
+	 * @since 3.9
+	 */
+	private void queueEvent(AnnotationModelEvent event) {
+		synchronized (fPendingEvents) {
+			if (event == null)
+				fPendingEvents.clear();
+			else if (!fPendingEvents.isEmpty() && fPendingEvents.get(0) == null)
+				return;
+			fPendingEvents.add(event);
+		}
+	}
+
+	/**
+	 * Brings the rasters up to date with the annotation model, either by applying the
+	 * pending annotation model events or by rebuilding them.
+	 *
+	 * @since 3.9
+	 */
+	private void validateRasters() {
+		AnnotationModelEvent[] events;
+		synchronized (fPendingEvents) {
+			events= (AnnotationModelEvent[]) fPendingEvents.toArray(new AnnotationModelEvent[fPendingEvents.size()]);
+			fPendingEvents.clear();
+		}
+
+		if (!fRastersValid || events.length > 0 && events[0] == null) {
+			fRasters.clear();
+			fRastersByType.clear();
+			for (Iterator e= fAnnotationsSortedByLayer.iterator(); e.hasNext();)
+				fRasters.put(e.next(), new Raster[] { new Raster(), new Raster() });
+			fRastersValid= true;
+			fRectanglesValid= false;
+			fDirtyAnnotations.clear();
 
-				if (annotation.isMarkedDeleted())
-					continue;
+			if (fModel != null) {
+				for (Iterator e= fModel.getAnnotationIterator(); e.hasNext();)
+					addToRasters((Annotation) e.next());
+			}
+			return;
+		}
 
-				if (skip(annotation.getType()))
-					continue;
+		for (int i= 0; i < events.length; i++) {
+			Annotation[] annotations= events[i].getRemovedAnnotations();
+			for (int j= 0; j < annotations.length; j++)
+				removeFromRasters(annotations[j]);
 
-				fCachedAnnotations.add(annotation);
+			annotations= events[i].getChangedAnnotations();
+			for (int j= 0; j < annotations.length; j++) {
+				removeFromRasters(annotations[j]);
+				addToRasters(annotations[j]);
+			}
+
+			annotations= events[i].getAddedAnnotations();
+			for (int j= 0; j < annotations.length; j++) {
+				removeFromRasters(annotations[j]);
+				addToRasters(annotations[j]);
 			}
 		}
 	}
 
 	/**
-	 * Draws this overview ruler.
+	 * Adds the given annotation to the rasters it belongs to.
 	 *
-	 * @param gc the GC to draw into
+	 * @param annotation the annotation
+	 * @since 3.9
 	 */
-	private void doPaint(GC gc) {
+	private void addToRasters(Annotation annotation) {
+		if (annotation.isMarkedDeleted())
+			return;
 
-		Rectangle r= new Rectangle(0, 0, 0, 0);
-		int yy, hh= ANNOTATION_HEIGHT;
+		Object annotationType= annotation.getType();
+		if (skip(annotationType))
+			return;
+
+		List rasters= getRasters(annotationType);
+		if (rasters.isEmpty())
+			return;
+
+		int rectangle= fRectanglesValid ? computeRectangle(annotation) : -1;
+		int style= annotation.isPersistent() ? 0 : 1;
+		for (int i= 0, size= rasters.size(); i < size; i++)
+			((Raster[]) rasters.get(i))[style].put(annotation, rectangle);
+	}
+
+	/**
+	 * Removes the given annotation from all rasters.
+	 *
+	 * @param annotation the annotation
+	 * @since 3.9
+	 */
+	private void removeFromRasters(Annotation annotation) {
+		for (Iterator e= fRasters.values().iterator(); e.hasNext();) {
+			Raster[] rasters= (Raster[]) e.next();
+			rasters[0].remove(annotation);
+			rasters[1].remove(annotation);
+		}
+	}
+
+	/**
+	 * Returns the rasters to which the annotations of the given type belong. These are
+	 * the rasters of the type itself and, if the type is not configured, the rasters of
+	 * its configured super types.
+	 *
+	 * @param annotationType the annotation type
+	 * @return the list of raster arrays, see {@link #fRasters}
+	 * @since 3.9
+	 */
+	private List getRasters(Object annotationType) {
+		List rasters= (List) fRastersByType.get(annotationType);
+		if (rasters == null) {
+			rasters= new ArrayList(1);
+			boolean isConfigured= fConfiguredAnnotationTypes.contains(annotationType);
+			for (Iterator e= fRasters.entrySet().iterator(); e.hasNext();) {
+				Map.Entry entry= (Map.Entry) e.next();
+				Object type= entry.getKey();
+				if (type.equals(annotationType) || !isConfigured && isSubtype(annotationType, type))
+					rasters.add(entry.getValue());
+			}
+			fRastersByType.put(annotationType, rasters);
+		}
+		return rasters;
+	}
+
+	/**
+	 * Tells whether the given annotation type is a sub type of the given super type.
+	 *
+	 * @param annotationType the annotation type
+	 * @param superType the super type
+	 * @return <code>true</code> if the annotation type is a sub type of the super type
+	 * @since 3.9
+	 */
+	private boolean isSubtype(Object annotationType, Object superType) {
+		if (fAnnotationAccess instanceof IAnnotationAccessExtension)
+			return ((IAnnotationAccessExtension) fAnnotationAccess).isSubtype(annotationType, superType);
+		return superType.equals(annotationType);
+	}
+
+	/**
+	 * Invalidates the rectangles of the annotations affected by the given text change.
+	 * As long as the number of lines does not change, only the annotations on the
+	 * changed lines can move, so these are remembered for
+	 * {@link #validateRectangles(WidgetInfos)}. Changes of the number of lines or of
+	 * the visible document are detected there by comparing the widget infos.
+	 *
+	 * @param event the text event
+	 * @since 3.9
+	 */
+	private void invalidateRectangles(TextEvent event) {
+		if (!fRectanglesValid)
+			return;
+
+		if (event.getDocumentEvent() == null || !(fModel instanceof IAnnotationModelExtension2)) {
+			fRectanglesValid= false;
+			return;
+		}
+
+		int length= event.getText() == null ? 0 : event.getText().length();
+		IRegion region;
+		if (fTextViewer instanceof ITextViewerExtension5) {
+			region= ((ITextViewerExtension5) fTextViewer).widgetRange2ModelRange(new Region(event.getOffset(), length));
+		} else {
+			IRegion visible= fTextViewer.getVisibleRegion();
+			region= new Region(visible.getOffset() + event.getOffset(), length);
+		}
+		if (region == null) {
+			fRectanglesValid= false;
+			return;
+		}
+
+		try {
+			IDocument document= fTextViewer.getDocument();
+			int start= document.getLineInformationOfOffset(region.getOffset()).getOffset();
+			int endLine= document.getLineOfOffset(region.getOffset() + region.getLength());
+			int end= document.getLineOffset(endLine) + document.getLineLength(endLine);
+			Iterator e= ((IAnnotationModelExtension2) fModel).getAnnotationIterator(start, Math.max(end - start, 1), true, true);
+			while (e.hasNext())
+				fDirtyAnnotations.add(e.next());
+		} catch (BadLocationException x) {
+			fRectanglesValid= false;
+		}
+	}
+
+	/**
+	 * Recomputes the rectangles of all annotations in the rasters if the layout of the
+	 * ruler or the text has changed, otherwise only the rectangles of the annotations on
+	 * the changed lines.
+	 *
+	 * @param infos the current widget infos
+	 * @since 3.9
+	 */
+	private void validateRectangles(WidgetInfos infos) {
+		if (fRectanglesValid && fRasterInfos != null && fRasterInfos.hasSameLayout(infos)) {
+			if (!fDirtyAnnotations.isEmpty()) {
+				for (Iterator e= fDirtyAnnotations.iterator(); e.hasNext();) {
+					Annotation annotation= (Annotation) e.next();
+					int style= annotation.isPersistent() ? 0 : 1;
+					List rasters= getRasters(annotation.getType());
+					for (int i= 0, size= rasters.size(); i < size; i++) {
+						Raster raster= ((Raster[]) rasters.get(i))[style];
+						if (raster.contains(annotation))
+							raster.put(annotation, computeRectangle(annotation));
+					}
+				}
+				fDirtyAnnotations.clear();
+			}
+			return;
+		}
+
+		fRasterInfos= infos;
+		fRectanglesValid= true;
+		fDirtyAnnotations.clear();
+		for (Iterator e= fRasters.values().iterator(); e.hasNext();) {
+			Raster[] rasters= (Raster[]) e.next();
+			for (int i= 0; i < rasters.length; i++) {
+				Annotation[] annotations= (Annotation[]) rasters[i].getAnnotations().toArray(new Annotation[rasters[i].getAnnotations().size()]);
+				for (int j= 0; j < annotations.length; j++)
+					rasters[i].put(annotations[j], computeRectangle(annotations[j]));
+			}
+		}
+	}
+
+	/**
+	 * Computes the rectangle representing the given annotation in the ruler.
+	 *
+	 * @param annotation the annotation
+	 * @return the packed rectangle, see {@link Raster#pack(int, int)}, or <code>-1</code> if the
+	 *         annotation is not shown
+	 * @since 3.9
+	 */
+	private int computeRectangle(Annotation annotation) {
+		if (annotation.isMarkedDeleted())
+			return -1;
+
+		Position p= fModel.getPosition(annotation);
+		if (p == null)
+			return -1;
 
 		IDocument document= fTextViewer.getDocument();
 		StyledText textWidget= fTextViewer.getTextWidget();
@@ -723,101 +1102,109 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		else
 			visible= fTextViewer.getVisibleRegion(); // legacy support
 
-		WidgetInfos infos= null;
-		
+		if (visible != null && !p.overlapsWith(visible.getOffset(), visible.getLength()))
+			return -1;
+
+		int annotationOffset= p.getOffset();
+		int annotationLength= p.getLength();
+		IRegion widgetRegion= null;
+		if (visible != null) {
+			annotationOffset= Math.max(p.getOffset(), visible.getOffset());
+			int annotationEnd= Math.min(p.getOffset() + p.getLength(), visible.getOffset() + visible.getLength());
+			annotationLength= annotationEnd - annotationOffset;
+		} else {
+			widgetRegion= extension.modelRange2WidgetRange(new Region(annotationOffset, annotationLength));
+			if (widgetRegion == null)
+				return -1;
+		}
+
+		try {
+			int startOffset= visible != null ? annotationOffset - visible.getOffset() : widgetRegion.getOffset();
+			int startLine= textWidget.getLineAtOffset(startOffset);
+
+			int yy= computeY(startLine, fRasterInfos);
+			int hh= ANNOTATION_HEIGHT;
+
+			if (ANNOTATION_HEIGHT_SCALABLE) {
+				int numberOfLines= document.getNumberOfLines(annotationOffset, annotationLength);
+				// don't count empty trailing line
+				IRegion lastLine= document.getLineInformationOfOffset(annotationOffset + annotationLength);
+				if (lastLine.getOffset() == annotationOffset + annotationLength) {
+					numberOfLines--;
+				}
+				if (numberOfLines > 1) {
+					int yy2= computeY(startLine + numberOfLines - 1, fRasterInfos);
+					hh= Math.max(yy2 - yy, ANNOTATION_HEIGHT);
+				}
+			}
+			return Raster.pack(yy, hh);
+		} catch (BadLocationException x) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Draws this overview ruler.
+	 *
+	 * @param gc the GC to draw into
+	 */
+	private void doPaint(GC gc) {
+
+		Rectangle r= new Rectangle(0, 0, 0, 0);
+		int yy, hh;
+
+		StyledText textWidget= fTextViewer.getTextWidget();
+		WidgetInfos infos= new WidgetInfos(textWidget, fCanvas);
+		r.x= INSET;
+		r.width= infos.bounds.width - (2 * INSET);
+
+		validateRasters();
+		validateRectangles(infos);
+
 		for (Iterator iterator= fAnnotationsSortedByLayer.iterator(); iterator.hasNext();) {
 			Object annotationType= iterator.next();
 
 			if (skip(annotationType))
 				continue;
 
-			int[] style= new int[] { FilterIterator.PERSISTENT, FilterIterator.TEMPORARY };
-			for (int t=0; t < style.length; t++) {
-				boolean areColorsComputed= false;
-				Color fill= null;
-				Color stroke= null;
-
-				Iterator e= new FilterIterator(annotationType, style[t], fCachedAnnotations.iterator());
-				while (e.hasNext()) {
-					Annotation a= (Annotation) e.next();
-					Position p= fModel.getPosition(a);
+			Raster[] rasters= (Raster[]) fRasters.get(annotationType);
+			if (rasters == null)
+				continue;
 
-					if (p == null)
-						continue;
-					if (visible != null && !p.overlapsWith(visible.getOffset(), visible.getLength()))
-						continue;
+			for (int t=0; t < rasters.length; t++) {
+				int[] rectangles= rasters[t].getRectangles();
+				if (rectangles.length == 0)
+					continue;
 
-					int annotationOffset= p.getOffset();
-					int annotationLength= p.getLength();
-					IRegion widgetRegion= null;
-					if (visible != null) {
-						annotationOffset= Math.max(p.getOffset(), visible.getOffset());
-						int annotationEnd= Math.min(p.getOffset() + p.getLength(), visible.getOffset() + visible.getLength());
-						annotationLength= annotationEnd - annotationOffset;
-					} else {
-						widgetRegion= extension.modelRange2WidgetRange(new Region(annotationOffset, annotationLength));
-						if (widgetRegion == null)
-							continue;
-					}
-					
-					if (infos == null) {
-						infos= new WidgetInfos(textWidget, fCanvas);
-						r.x= INSET;
-						r.width= infos.bounds.width - (2 * INSET);
-					}
+				boolean temporary= t == 1;
+				Color stroke= getStrokeColor(annotationType, temporary);
+				Color fill= fUseSaturatedColors ? stroke : getFillColor(annotationType, temporary);
 
-					try {
-						int startOffset= visible != null ? annotationOffset - visible.getOffset() : widgetRegion.getOffset();
-						int startLine= textWidget.getLineAtOffset(startOffset);
-						
-						yy= computeY(startLine, infos);
-						
-						if (ANNOTATION_HEIGHT_SCALABLE) {
-							int numberOfLines= document.getNumberOfLines(annotationOffset, annotationLength);
-							// don't count empty trailing line
-							IRegion lastLine= document.getLineInformationOfOffset(annotationOffset + annotationLength);
-							if (lastLine.getOffset() == annotationOffset + annotationLength) {
-								numberOfLines--;
-							}
-							if (numberOfLines > 1) {
-								int yy2= computeY(startLine + numberOfLines - 1, infos);
-								hh= Math.max(yy2 - yy, ANNOTATION_HEIGHT);
-							} else {
-								hh= ANNOTATION_HEIGHT;
-							}
-						}
-						fAnnotationHeight= hh;
-						
-						if (!areColorsComputed) {
-							stroke= getStrokeColor(annotationType, style[t] == FilterIterator.TEMPORARY);
-							fill= fUseSaturatedColors ? stroke : getFillColor(annotationType, style[t] == FilterIterator.TEMPORARY);
-							areColorsComputed= true;
-						}
+				for (int i= 0; i < rectangles.length; i++) {
+					yy= rectangles[i] >>> 16;
+					hh= rectangles[i] & 0xFFFF;
+					fAnnotationHeight= hh;
 
-						if (fill != null) {
-							gc.setBackground(fill);
-							gc.fillRectangle(INSET, yy, infos.bounds.width-(2*INSET), hh);
-						}
+					if (fill != null) {
+						gc.setBackground(fill);
+						gc.fillRectangle(INSET, yy, infos.bounds.width-(2*INSET), hh);
+					}
 
-						if (stroke != null) {
-							gc.setForeground(stroke);
-							r.y= yy;
-							if (yy + hh == infos.bounds.height)
-								r.y--;
-							r.height= hh;
-							gc.setLineWidth(0); // NOTE: 0 means width is 1 but with optimized performance
-							gc.drawRectangle(r);
-						}
-					} catch (BadLocationException x) {
+					if (stroke != null) {
+						gc.setForeground(stroke);
+						r.y= yy;
+						if (yy + hh == infos.bounds.height)
+							r.y--;
+						r.height= hh;
+						gc.setLineWidth(0); // NOTE: 0 means width is 1 but with optimized performance
+						gc.drawRectangle(r);
 					}
 				}
 			}
 		}
-		
+
 		if (DEBUG_DRAW) {
 			// draw debugging guides (boundaries):
-			if (infos == null)
-				infos= new WidgetInfos(textWidget, fCanvas);
 			gc.setForeground(gc.getDevice().getSystemColor(SWT.COLOR_DARK_MAGENTA));
 			yy= infos.thumbHeight / 2;
 			gc.drawLine(0, yy, infos.bounds.x/2, yy);
@@ -1135,6 +1522,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 	public void addAnnotationType(Object annotationType) {
 		fConfiguredAnnotationTypes.add(annotationType);
 		fAllowedAnnotationTypes.clear();
+		fRastersValid= false;
 	}
 
 	/*
@@ -1143,6 +1531,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 	public void removeAnnotationType(Object annotationType) {
 		fConfiguredAnnotationTypes.remove(annotationType);
 		fAllowedAnnotationTypes.clear();
+		fRastersValid= false;
 	}
 
 	/*
@@ -1164,6 +1553,7 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			fLayersSortedByLayer.add(i, layerObj);
 			fAnnotationsSortedByLayer.add(i, annotationType);
 		}
+		fRastersValid= false;
 	}
 
 	/*
@@ -1435,18 +1825,17 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 		fHeader.setToolTipText(null);
 
+		validateRasters();
+
 		Object colorType= null;
-		outer: for (int i= fAnnotationsSortedByLayer.size() -1; i >= 0; i--) {
+		for (int i= fAnnotationsSortedByLayer.size() -1; i >= 0; i--) {
 			Object annotationType= fAnnotationsSortedByLayer.get(i);
 			if (skipInHeader(annotationType) || skip(annotationType))
 				continue;
 
-			Iterator e= new FilterIterator(annotationType, FilterIterator.PERSISTENT | FilterIterator.TEMPORARY | FilterIterator.IGNORE_BAGS, fCachedAnnotations.iterator());
-			while (e.hasNext()) {
-				if (e.next() != null) {
-					colorType= annotationType;
-					break outer;
-				}
+			if (countHeaderAnnotations(annotationType, true) > 0) {
+				colorType= annotationType;
+				break;
 			}
 		}
 
@@ -1469,6 +1858,45 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 
 	}
 
+	/**
+	 * Tells whether the given annotation is shown in the header, i.e. whether it is
+	 * neither an annotation bag nor marked as deleted.
+	 *
+	 * @param annotation the annotation
+	 * @return <code>true</code> if the annotation is shown in the header
+	 * @since 3.9
+	 */
+	private static boolean isShownInHeader(Annotation annotation) {
+		return !(annotation instanceof AnnotationBag) && !annotation.isMarkedDeleted();
+	}
+
+	/**
+	 * Counts the annotations of the given type that are shown in the header, see
+	 * {@link #isShownInHeader(Annotation)}.
+	 *
+	 * @param annotationType the annotation type
+	 * @param any <code>true</code> to stop counting at the first annotation
+	 * @return the number of annotations
+	 * @since 3.9
+	 */
+	private int countHeaderAnnotations(Object annotationType, boolean any) {
+		Raster[] rasters= (Raster[]) fRasters.get(annotationType);
+		if (rasters == null)
+			return 0;
+
+		int count= 0;
+		for (int i= 0; i < rasters.length; i++) {
+			for (Iterator e= rasters[i].getAnnotations().iterator(); e.hasNext();) {
+				if (isShownInHeader((Annotation) e.next())) {
+					count++;
+					if (any)
+						return count;
+				}
+			}
+		}
+		return count;
+	}
+
 	/**
 	 * Updates the header tool tip text of this ruler.
 	 */
@@ -1479,6 +1907,8 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 		if (fHeader.getToolTipText() != null)
 			return;
 
+		validateRasters();
+
 		String overview= ""; //$NON-NLS-1$
 
 		for (int i= fAnnotationsSortedByLayer.size() -1; i >= 0; i--) {
@@ -1488,16 +1918,18 @@ public class OverviewRuler implements IOverviewRulerExtension, IOverviewRuler {
 			if (skipInHeader(annotationType) || skip(annotationType))
 				continue;
 
-			int count= 0;
+			int count= countHeaderAnnotations(annotationType, false);
 			String annotationTypeLabel= null;
-
-			Iterator e= new FilterIterator(annotationType, FilterIterator.PERSISTENT | FilterIterator.TEMPORARY | FilterIterator.IGNORE_BAGS, fCachedAnnotations.iterator());
-			while (e.hasNext()) {
-				Annotation annotation= (Annotation)e.next();
-				if (annotation != null) {
-					if (annotationTypeLabel == null)
-						annotationTypeLabel= ((IAnnotationAccessExtension)fAnnotationAccess).getTypeLabel(annotation);
-					count++;
+			if (count > 0) {
+				Raster[] rasters= (Raster[]) fRasters.get(annotationType);
+				for (int j= 0; j < rasters.length && annotationTypeLabel == null; j++) {
+					for (Iterator e= rasters[j].getAnnotations().iterator(); e.hasNext();) {
+						Annotation annotation= (Annotation)e.next();
+						if (isShownInHeader(annotation)) {
+							annotationTypeLabel= ((IAnnotationAccessExtension)fAnnotationAccess).getTypeLabel(annotation);
+							break;
+						}
+					}
 				}
 			}
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2005 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -66,17 +66,19 @@ public abstract class TemplateCompletionProcessor implements IContentAssistProce
 
 		context.setVariable("selection", selection.getText()); // name of the selection variables {line, word}_selection //$NON-NLS-1$
 
-		Template[] templates= getTemplates(context.getContextType().getId());
+		TemplateContextType contextType= context.getContextType();
+		String contextTypeId= contextType.getId();
+		Template[] templates= getTemplates(contextTypeId, prefix);
 
 		List matches= new ArrayList();
 		for (int i= 0; i < templates.length; i++) {
 			Template template= templates[i];
 			try {
-				context.getContextType().validate(template.getPattern());
+				contextType.validate(template.getPattern());
 			} catch (TemplateException e) {
 				continue;
 			}
-			if (template.matches(prefix, context.getContextType().getId()))
+			if (template.matches(prefix, contextTypeId))
 				matches.add(createProposal(template, context, (IRegion) region, getRelevance(template, prefix)));
 		}
 
@@ -132,6 +134,26 @@ public abstract class TemplateCompletionProcessor implements IContentAssistProce
 	 */
 	protected abstract Template[] getTemplates(String contextTypeId);
 
+	/**
+	 * Returns the templates valid for the context type specified by <code>contextTypeId</code>
+	 * which are considered for the given prefix. The default implementation returns
+	 * {@link #getTemplates(String)}.
+	 * <p>
+	 * Subclasses may return only the templates whose names start with the prefix, for instance
+	 * by {@link org.eclipse.jface.text.templates.persistence.TemplateStore#getTemplates(String, String)},
+	 * so that no proposals are computed for the other templates.
+	 * </p>
+	 *
+	 * @param contextTypeId the context type id
+	 * @param prefix the prefix after which content assist was requested
+	 * @return the templates to consider for this context type id and prefix
+	 * @see #extractPrefix(ITextViewer, int)
+	 * @since 3.9
+	 */
+	protected Template[] getTemplates(String contextTypeId, String prefix) {
+		return getTemplates(contextTypeId);
+	}
+
 	/**
 	 * Creates a concrete template context for the given region in the document. This involves finding out which
 	 * context type is valid at the given location, and then creating a context of this type. The default implementation
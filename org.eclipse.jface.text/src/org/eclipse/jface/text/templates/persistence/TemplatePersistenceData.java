@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -37,6 +37,14 @@ public class TemplatePersistenceData {
 	private boolean fIsDeleted= false;
 	private boolean fCustomIsEnabled= true;
 
+	/**
+	 * The store which holds this instance and is notified when its template changes, or
+	 * <code>null</code> if none.
+	 *
+	 * @since 3.9
+	 */
+	private TemplateStore fStore;
+
 	/**
 	 * Creates a new, user-added instance that is not linked to a contributed
 	 * template.
@@ -112,6 +120,27 @@ public class TemplatePersistenceData {
 	 */
 	public void setTemplate(Template template) {
 		fCustomTemplate= template;
+		templateChanged();
+	}
+
+	/**
+	 * Sets the store which holds this instance.
+	 *
+	 * @param store the store, or <code>null</code> if none
+	 * @since 3.9
+	 */
+	void setStore(TemplateStore store) {
+		fStore= store;
+	}
+
+	/**
+	 * Notifies the store holding this instance that its template has changed.
+	 *
+	 * @since 3.9
+	 */
+	private void templateChanged() {
+		if (fStore != null)
+			fStore.templateChanged();
 	}
 
 	/**
@@ -157,6 +186,7 @@ public class TemplatePersistenceData {
 		fCustomTemplate= fOriginalTemplate;
 		fCustomIsEnabled= fOriginalIsEnabled;
 		fIsDeleted= false;
+		templateChanged();
 	}
 
 
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,39 +10,30 @@
  *******************************************************************************/
 package org.eclipse.jface.text.templates.persistence;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
+import java.util.List;
 import java.util.MissingResourceException;
 import java.util.ResourceBundle;
-import java.util.Set;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
+import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.SAXNotSupportedException;
+import org.xml.sax.ext.LexicalHandler;
 import org.xml.sax.helpers.DefaultHandler;
 
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.w3c.dom.Text;
-
 import org.eclipse.core.runtime.Assert;
 
 import org.eclipse.jface.text.templates.Template;
@@ -72,6 +63,14 @@ public class TemplateReaderWriter {
 	 * @since 3.1
 	 */
 	private static final String AUTO_INSERTABLE_ATTRIBUTE= "autoinsert"; //$NON-NLS-1$
+	/**
+	 * @since 3.9
+	 */
+	private static final String ENCODING= "UTF-8"; //$NON-NLS-1$
+	/**
+	 * @since 3.9
+	 */
+	private static final String LEXICAL_HANDLER_PROPERTY= "http://xml.org/sax/properties/lexical-handler"; //$NON-NLS-1$
 
 	/**
 	 * Create a new instance.
@@ -145,68 +144,19 @@ public class TemplateReaderWriter {
 	 */
 	private TemplatePersistenceData[] read(InputSource source, ResourceBundle bundle, String singleId) throws IOException {
 		try {
-			Collection templates= new ArrayList();
-			Set ids= new HashSet();
-
-			DocumentBuilderFactory factory= DocumentBuilderFactory.newInstance();
-			DocumentBuilder parser= factory.newDocumentBuilder();
-			parser.setErrorHandler(new DefaultHandler());
-			Document document= parser.parse(source);
-
-			NodeList elements= document.getElementsByTagName(TEMPLATE_ELEMENT);
-
-			int count= elements.getLength();
-			for (int i= 0; i != count; i++) {
-				Node node= elements.item(i);
-				NamedNodeMap attributes= node.getAttributes();
-
-				if (attributes == null)
-					continue;
-
-				String id= getStringValue(attributes, ID_ATTRIBUTE, null);
-				if (id != null && ids.contains(id))
-					throw new IOException(TemplatePersistenceMessages.getString("TemplateReaderWriter.duplicate.id")); //$NON-NLS-1$
-
-				if (singleId != null && !singleId.equals(id))
-					continue;
-
-				boolean deleted = getBooleanValue(attributes, DELETED_ATTRIBUTE, false);
-
-				String name= getStringValue(attributes, NAME_ATTRIBUTE);
-				name= translateString(name, bundle);
-
-				String description= getStringValue(attributes, DESCRIPTION_ATTRIBUTE, ""); //$NON-NLS-1$
-				description= translateString(description, bundle);
-
-				String context= getStringValue(attributes, CONTEXT_ATTRIBUTE);
-
-				if (name == null || context == null)
-					throw new IOException(TemplatePersistenceMessages.getString("TemplateReaderWriter.error.missing_attribute")); //$NON-NLS-1$
-
-				boolean enabled = getBooleanValue(attributes, ENABLED_ATTRIBUTE, true);
-				boolean autoInsertable= getBooleanValue(attributes, AUTO_INSERTABLE_ATTRIBUTE, true);
-
-				StringBuffer buffer= new StringBuffer();
-				NodeList children= node.getChildNodes();
-				for (int j= 0; j != children.getLength(); j++) {
-					String value= children.item(j).getNodeValue();
-					if (value != null)
-						buffer.append(value);
-				}
-				String pattern= buffer.toString();
-				pattern= translateString(pattern, bundle);
-
-				Template template= new Template(name, description, context, pattern, autoInsertable);
-				TemplatePersistenceData data= new TemplatePersistenceData(template, enabled, id);
-				data.setDeleted(deleted);
-
-				templates.add(data);
-
-				if (singleId != null && singleId.equals(id))
-					break;
+			SAXParserFactory factory= SAXParserFactory.newInstance();
+			SAXParser parser= factory.newSAXParser();
+			TemplateHandler handler= new TemplateHandler(bundle, singleId);
+			try {
+				parser.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
+			} catch (SAXNotRecognizedException e) {
+				// comments will not be part of the patterns
+			} catch (SAXNotSupportedException e) {
+				// comments will not be part of the patterns
 			}
+			parser.parse(source, handler);
 
-			return (TemplatePersistenceData[]) templates.toArray(new TemplatePersistenceData[templates.size()]);
+			return handler.getTemplates();
 
 		} catch (ParserConfigurationException e) {
 			Assert.isTrue(false);
@@ -225,7 +175,7 @@ public class TemplateReaderWriter {
 	 * @throws IOException if writing the templates fails
 	 */
 	public void save(TemplatePersistenceData[] templates, OutputStream stream) throws IOException {
-		save(templates, new StreamResult(stream));
+		save(templates, new OutputStreamWriter(stream, ENCODING));
 	}
 
 	/**
@@ -236,94 +186,126 @@ public class TemplateReaderWriter {
 	 * @throws IOException if writing the templates fails
 	 */
 	public void save(TemplatePersistenceData[] templates, Writer writer) throws IOException {
-		save(templates, new StreamResult(writer));
-	}
-
-	/**
-	 * Saves the templates as XML.
-	 *
-	 * @param templates the templates to save
-	 * @param result the stream result to write to
-	 * @throws IOException if writing the templates fails
-	 */
-	private void save(TemplatePersistenceData[] templates, StreamResult result) throws IOException {
-		try {
-			DocumentBuilderFactory factory= DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder= factory.newDocumentBuilder();
-			Document document= builder.newDocument();
-
-			Node root= document.createElement(TEMPLATE_ROOT);
-			document.appendChild(root);
+		for (int i= 0; i < templates.length; i++) {
+			Template template= templates[i].getTemplate();
+			if (template != null) {
+				validateXML(template.getName());
+				validateXML(template.getDescription());
+				validateXML(template.getContextTypeId());
+				validateXML(template.getPattern());
+			}
+		}
 
+		Writer out= new BufferedWriter(writer);
+		out.write("<?xml version=\"1.0\" encoding=\"" + ENCODING + "\" standalone=\"no\"?>"); //$NON-NLS-1$ //$NON-NLS-2$
+		if (templates.length == 0) {
+			out.write('<' + TEMPLATE_ROOT + "/>"); //$NON-NLS-1$
+		} else {
+			out.write('<' + TEMPLATE_ROOT + '>');
 			for (int i= 0; i < templates.length; i++) {
 				TemplatePersistenceData data= templates[i];
 				Template template= data.getTemplate();
 
-				Node node= document.createElement(TEMPLATE_ELEMENT);
-				root.appendChild(node);
-
-				NamedNodeMap attributes= node.getAttributes();
-
-				String id= data.getId();
-				if (id != null) {
-					Attr idAttr= document.createAttribute(ID_ATTRIBUTE);
-					idAttr.setValue(id);
-					attributes.setNamedItem(idAttr);
-				}
-
-				if (template != null) {
-					Attr name= document.createAttribute(NAME_ATTRIBUTE);
-					name.setValue(validateXML(template.getName()));
-					attributes.setNamedItem(name);
-				}
-
-				if (template != null) {
-					Attr description= document.createAttribute(DESCRIPTION_ATTRIBUTE);
-					description.setValue(validateXML(template.getDescription()));
-					attributes.setNamedItem(description);
-				}
-
+				// the attributes are sorted by name
+				out.write('<' + TEMPLATE_ELEMENT);
 				if (template != null) {
-					Attr context= document.createAttribute(CONTEXT_ATTRIBUTE);
-					context.setValue(validateXML(template.getContextTypeId()));
-					attributes.setNamedItem(context);
+					writeAttribute(out, AUTO_INSERTABLE_ATTRIBUTE, Boolean.toString(template.isAutoInsertable()));
+					writeAttribute(out, CONTEXT_ATTRIBUTE, template.getContextTypeId());
 				}
-
-				Attr enabled= document.createAttribute(ENABLED_ATTRIBUTE);
-				enabled.setValue(data.isEnabled() ? Boolean.toString(true) : Boolean.toString(false));
-				attributes.setNamedItem(enabled);
-
-				Attr deleted= document.createAttribute(DELETED_ATTRIBUTE);
-				deleted.setValue(data.isDeleted() ? Boolean.toString(true) : Boolean.toString(false));
-				attributes.setNamedItem(deleted);
-
-				if (template != null) {
-					Attr autoInsertable= document.createAttribute(AUTO_INSERTABLE_ATTRIBUTE);
-					autoInsertable.setValue(template.isAutoInsertable() ? Boolean.toString(true) : Boolean.toString(false));
-					attributes.setNamedItem(autoInsertable);
-				}
-
-				if (template != null) {
-					Text pattern= document.createTextNode(validateXML(template.getPattern()));
-					node.appendChild(pattern);
+				writeAttribute(out, DELETED_ATTRIBUTE, Boolean.toString(data.isDeleted()));
+				if (template != null)
+					writeAttribute(out, DESCRIPTION_ATTRIBUTE, template.getDescription());
+				writeAttribute(out, ENABLED_ATTRIBUTE, Boolean.toString(data.isEnabled()));
+				String id= data.getId();
+				if (id != null)
+					writeAttribute(out, ID_ATTRIBUTE, id);
+				if (template != null)
+					writeAttribute(out, NAME_ATTRIBUTE, template.getName());
+
+				if (template == null || template.getPattern().length() == 0) {
+					out.write("/>"); //$NON-NLS-1$
+				} else {
+					out.write('>');
+					writeEscaped(out, template.getPattern(), false);
+					out.write("</" + TEMPLATE_ELEMENT + '>'); //$NON-NLS-1$
 				}
 			}
+			out.write("</" + TEMPLATE_ROOT + '>'); //$NON-NLS-1$
+		}
+		out.flush();
+	}
 
+	/**
+	 * Writes an attribute of the current element.
+	 *
+	 * @param out the writer to write to
+	 * @param name the name of the attribute
+	 * @param value the value of the attribute
+	 * @throws IOException if writing fails
+	 * @since 3.9
+	 */
+	private static void writeAttribute(Writer out, String name, String value) throws IOException {
+		out.write(' ');
+		out.write(name);
+		out.write("=\""); //$NON-NLS-1$
+		writeEscaped(out, value, true);
+		out.write('"');
+	}
 
-			Transformer transformer=TransformerFactory.newInstance().newTransformer();
-			transformer.setOutputProperty(OutputKeys.METHOD, "xml"); //$NON-NLS-1$
-			transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8"); //$NON-NLS-1$
-			DOMSource source = new DOMSource(document);
-
-			transformer.transform(source, result);
-
-		} catch (ParserConfigurationException e) {
-			Assert.isTrue(false);
-		} catch (TransformerException e) {
-			if (e.getException() instanceof IOException)
-				throw (IOException) e.getException();
-			Assert.isTrue(false);
+	/**
+	 * Writes the given string, escaping the characters that cannot appear literally in
+	 * attribute values or character data respectively.
+	 *
+	 * @param out the writer to write to
+	 * @param string the string to write
+	 * @param attribute <code>true</code> if the string is an attribute value,
+	 *            <code>false</code> if it is character data
+	 * @throws IOException if writing fails
+	 * @since 3.9
+	 */
+	private static void writeEscaped(Writer out, String string, boolean attribute) throws IOException {
+		int length= string.length();
+		int start= 0;
+		for (int i= 0; i < length; i++) {
+			char ch= string.charAt(i);
+			int end= i + 1;
+			String escaped;
+			switch (ch) {
+				case '&':
+					escaped= "&amp;"; //$NON-NLS-1$
+					break;
+				case '<':
+					escaped= "&lt;"; //$NON-NLS-1$
+					break;
+				case '>':
+					escaped= "&gt;"; //$NON-NLS-1$
+					break;
+				case '"':
+					escaped= attribute ? "&quot;" : null; //$NON-NLS-1$
+					break;
+				case '\t':
+				case '\n':
+					escaped= attribute ? "&#" + (int) ch + ';' : null; //$NON-NLS-1$
+					break;
+				default:
+					if (ch < 32 || !attribute && ch >= 0x7F && ch <= 0x9F) {
+						escaped= "&#" + (int) ch + ';'; //$NON-NLS-1$
+					} else if (isHighSurrogate(ch) && end < length && isLowSurrogate(string.charAt(end))) {
+						int codePoint= 0x10000 + (ch - 0xD800 << 10) + (string.charAt(end) - 0xDC00);
+						escaped= "&#" + codePoint + ';'; //$NON-NLS-1$
+						end++;
+					} else {
+						escaped= null;
+					}
+			}
+			if (escaped != null) {
+				out.write(string, start, i - start);
+				out.write(escaped);
+				start= end;
+				i= end - 1;
+			}
 		}
+		out.write(string, start, length - start);
 	}
 
 	/**
@@ -339,32 +321,213 @@ public class TemplateReaderWriter {
 			char ch= string.charAt(i);
 			if (!(ch == 9 || ch == 10 || ch == 13 || ch >= 32))
 				throw new IOException("Character reference \"&#" + Integer.toString(ch) + "\" is an invalid XML character."); //$NON-NLS-1$ //$NON-NLS-2$
+			if (isHighSurrogate(ch) && i + 1 < string.length() && isLowSurrogate(string.charAt(i + 1)))
+				i++;
+			else if (isHighSurrogate(ch) || isLowSurrogate(ch))
+				throw new IOException("Unpaired surrogate \"&#" + Integer.toString(ch) + "\" is an invalid XML character."); //$NON-NLS-1$ //$NON-NLS-2$
 		}
 		return string;
 	}
 
-	private boolean getBooleanValue(NamedNodeMap attributes, String attribute, boolean defaultValue) throws SAXException {
-		Node enabledNode= attributes.getNamedItem(attribute);
-		if (enabledNode == null)
+	private static boolean isHighSurrogate(char ch) {
+		return ch >= 0xD800 && ch <= 0xDBFF;
+	}
+
+	private static boolean isLowSurrogate(char ch) {
+		return ch >= 0xDC00 && ch <= 0xDFFF;
+	}
+
+	/**
+	 * The attributes and the pattern of a template element.
+	 *
+	 * @since 3.9
+	 */
+	private static final class TemplateElement {
+		String fId;
+		String fName;
+		String fDescription;
+		String fContext;
+		boolean fEnabled;
+		boolean fDeleted;
+		boolean fAutoInsertable;
+		final StringBuffer fPattern= new StringBuffer();
+	}
+
+	/**
+	 * Collects the templates while the XML is parsed. The pattern of a template is the
+	 * concatenation of its text, comment and processing instruction children.
+	 *
+	 * @since 3.9
+	 */
+	private final class TemplateHandler extends DefaultHandler implements LexicalHandler {
+
+		/** The resource bundle used for translation, or <code>null</code> */
+		private final ResourceBundle fBundle;
+		/** The id of the template to extract, or <code>null</code> */
+		private final String fSingleId;
+		/** The read template elements, in document order */
+		private final List fTemplates= new ArrayList();
+		/** The open elements, <code>null</code> for elements which are not read as templates */
+		private final List fOpenElements= new ArrayList();
+		/** <code>true</code> if the single template has been read */
+		private boolean fDone;
+
+		public TemplateHandler(ResourceBundle bundle, String singleId) {
+			fBundle= bundle;
+			fSingleId= singleId;
+		}
+
+		/*
+		 * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String, java.lang.String, java.lang.String, org.xml.sax.Attributes)
+		 */
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+			TemplateElement element= null;
+			if (!fDone && TEMPLATE_ELEMENT.equals(qName)) {
+				String id= getStringValue(attributes, ID_ATTRIBUTE, null);
+				if (fSingleId == null || fSingleId.equals(id)) {
+					element= new TemplateElement();
+					element.fId= id;
+					element.fDeleted= getBooleanValue(attributes, DELETED_ATTRIBUTE, false);
+					element.fName= translateString(getStringValue(attributes, NAME_ATTRIBUTE), fBundle);
+					element.fDescription= translateString(getStringValue(attributes, DESCRIPTION_ATTRIBUTE, ""), fBundle); //$NON-NLS-1$
+					element.fContext= getStringValue(attributes, CONTEXT_ATTRIBUTE);
+					element.fEnabled= getBooleanValue(attributes, ENABLED_ATTRIBUTE, true);
+					element.fAutoInsertable= getBooleanValue(attributes, AUTO_INSERTABLE_ATTRIBUTE, true);
+					fTemplates.add(element);
+					fDone= fSingleId != null;
+				}
+			}
+			fOpenElements.add(element);
+		}
+
+		/*
+		 * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		public void endElement(String uri, String localName, String qName) {
+			fOpenElements.remove(fOpenElements.size() - 1);
+		}
+
+		/*
+		 * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+		 */
+		public void characters(char[] ch, int start, int length) {
+			append(ch, start, length);
+		}
+
+		/*
+		 * @see org.xml.sax.helpers.DefaultHandler#ignorableWhitespace(char[], int, int)
+		 */
+		public void ignorableWhitespace(char[] ch, int start, int length) {
+			append(ch, start, length);
+		}
+
+		/*
+		 * @see org.xml.sax.helpers.DefaultHandler#processingInstruction(java.lang.String, java.lang.String)
+		 */
+		public void processingInstruction(String target, String data) {
+			if (data != null)
+				append(data.toCharArray(), 0, data.length());
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#comment(char[], int, int)
+		 */
+		public void comment(char[] ch, int start, int length) {
+			append(ch, start, length);
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#startDTD(java.lang.String, java.lang.String, java.lang.String)
+		 */
+		public void startDTD(String name, String publicId, String systemId) {
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#endDTD()
+		 */
+		public void endDTD() {
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#startEntity(java.lang.String)
+		 */
+		public void startEntity(String name) {
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#endEntity(java.lang.String)
+		 */
+		public void endEntity(String name) {
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#startCDATA()
+		 */
+		public void startCDATA() {
+		}
+
+		/*
+		 * @see org.xml.sax.ext.LexicalHandler#endCDATA()
+		 */
+		public void endCDATA() {
+		}
+
+		/**
+		 * Appends the given characters to the pattern of the enclosing template, if the
+		 * innermost open element is a template.
+		 *
+		 * @param ch the characters
+		 * @param start the start offset in <code>ch</code>
+		 * @param length the number of characters
+		 */
+		private void append(char[] ch, int start, int length) {
+			if (fOpenElements.isEmpty())
+				return;
+			TemplateElement element= (TemplateElement) fOpenElements.get(fOpenElements.size() - 1);
+			if (element != null)
+				element.fPattern.append(ch, start, length);
+		}
+
+		/**
+		 * Returns the read templates with their translated patterns.
+		 *
+		 * @return the read templates
+		 */
+		public TemplatePersistenceData[] getTemplates() {
+			TemplatePersistenceData[] datas= new TemplatePersistenceData[fTemplates.size()];
+			for (int i= 0; i < datas.length; i++) {
+				TemplateElement element= (TemplateElement) fTemplates.get(i);
+				String pattern= translateString(element.fPattern.toString(), fBundle);
+				Template template= new Template(element.fName, element.fDescription, element.fContext, pattern, element.fAutoInsertable);
+				datas[i]= new TemplatePersistenceData(template, element.fEnabled, element.fId);
+				datas[i].setDeleted(element.fDeleted);
+			}
+			return datas;
+		}
+	}
+
+	private boolean getBooleanValue(Attributes attributes, String attribute, boolean defaultValue) throws SAXException {
+		String value= attributes.getValue(attribute);
+		if (value == null)
 			return defaultValue;
-		else if (enabledNode.getNodeValue().equals(Boolean.toString(true)))
+		else if (value.equals(Boolean.toString(true)))
 			return true;
-		else if (enabledNode.getNodeValue().equals(Boolean.toString(false)))
+		else if (value.equals(Boolean.toString(false)))
 			return false;
 		else
 			throw new SAXException(TemplatePersistenceMessages.getString("TemplateReaderWriter.error.illegal_boolean_attribute")); //$NON-NLS-1$
 	}
 
-	private String getStringValue(NamedNodeMap attributes, String name) throws SAXException {
+	private String getStringValue(Attributes attributes, String name) throws SAXException {
 		String val= getStringValue(attributes, name, null);
 		if (val == null)
 			throw new SAXException(TemplatePersistenceMessages.getString("TemplateReaderWriter.error.missing_attribute")); //$NON-NLS-1$
 		return val;
 	}
 
-	private String getStringValue(NamedNodeMap attributes, String name, String defaultValue) {
-		Node node= attributes.getNamedItem(name);
-		return node == null	? defaultValue : node.getNodeValue();
+	private String getStringValue(Attributes attributes, String name, String defaultValue) {
+		String value= attributes.getValue(name);
+		return value == null ? defaultValue : value;
 	}
 
 	private String translateString(String str, ResourceBundle bundle) {
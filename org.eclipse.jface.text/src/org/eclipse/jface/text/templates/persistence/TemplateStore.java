@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,8 @@ import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -64,6 +66,38 @@ public class TemplateStore {
 	 * @since 3.2
 	 */
 	private IPropertyChangeListener fPropertyListener;
+	/**
+	 * The modification stamp of the stored templates, incremented whenever a template is
+	 * added, removed or replaced.
+	 *
+	 * @since 3.9
+	 */
+	private int fModificationStamp;
+	/**
+	 * The stored templates sorted by the lower case names of their templates, <code>null</code>
+	 * if not computed.
+	 *
+	 * @since 3.9
+	 */
+	private TemplatePersistenceData[] fNameIndex;
+	/**
+	 * The lower case names of the templates in {@link #fNameIndex}.
+	 *
+	 * @since 3.9
+	 */
+	private String[] fIndexedNames;
+	/**
+	 * The positions in {@link #fTemplates} of the templates in {@link #fNameIndex}.
+	 *
+	 * @since 3.9
+	 */
+	private int[] fIndexedPositions;
+	/**
+	 * The modification stamp of the stored templates when {@link #fNameIndex} was computed.
+	 *
+	 * @since 3.9
+	 */
+	private int fIndexedModificationStamp;
 
 
 	/**
@@ -105,6 +139,7 @@ public class TemplateStore {
 	 */
 	public void load() throws IOException {
 		fTemplates.clear();
+		fModificationStamp++;
 		loadContributedTemplates();
 		loadCustomTemplates();
 	}
@@ -190,6 +225,8 @@ public class TemplateStore {
 					return;
 			}
 			fTemplates.add(data);
+			data.setStore(this);
+			fModificationStamp++;
 		}
 	}
 
@@ -232,6 +269,8 @@ public class TemplateStore {
 
 		if (data.isUserAdded()) {
 			fTemplates.add(data);
+			data.setStore(this);
+			fModificationStamp++;
 		} else {
 			for (Iterator it= fTemplates.iterator(); it.hasNext();) {
 				TemplatePersistenceData d2= (TemplatePersistenceData) it.next();
@@ -247,6 +286,8 @@ public class TemplateStore {
 			if (data.getTemplate() != null) {
 				TemplatePersistenceData newData= new TemplatePersistenceData(data.getTemplate(), data.isEnabled());
 				fTemplates.add(newData);
+				newData.setStore(this);
+				fModificationStamp++;
 			}
 		}
 	}
@@ -257,9 +298,12 @@ public class TemplateStore {
 	 * @param data the template to remove
 	 */
 	public void delete(TemplatePersistenceData data) {
-		if (data.isUserAdded())
-			fTemplates.remove(data);
-		else
+		if (data.isUserAdded()) {
+			if (fTemplates.remove(data)) {
+				data.setStore(null);
+				fModificationStamp++;
+			}
+		} else
 			data.setDeleted(true);
 	}
 
@@ -345,6 +389,88 @@ public class TemplateStore {
 		return (Template[]) templates.toArray(new Template[templates.size()]);
 	}
 
+	/**
+	 * Returns all enabled templates for the given context type whose names start with the given
+	 * prefix, ignoring case. The templates are looked up in an index of the template names.
+	 *
+	 * @param contextTypeId the id of the context type of the requested templates, or
+	 *            <code>null</code> if templates of all context types should be returned
+	 * @param prefix the prefix of the names of the requested templates
+	 * @return all enabled templates for the given context type whose names start with
+	 *         <code>prefix</code>, in the order of {@link #getTemplates(String)}
+	 * @since 3.9
+	 */
+	public Template[] getTemplates(String contextTypeId, String prefix) {
+		Assert.isNotNull(prefix);
+		if (fNameIndex == null || fIndexedModificationStamp != fModificationStamp)
+			computeNameIndex();
+
+		String key= prefix.toLowerCase();
+		int low= 0, high= fIndexedNames.length;
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (fIndexedNames[mid].compareTo(key) < 0)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+
+		int[] positions= new int[fIndexedNames.length - low];
+		int count= 0;
+		for (int i= low; i < fIndexedNames.length && fIndexedNames[i].startsWith(key); i++) {
+			TemplatePersistenceData data= fNameIndex[i];
+			if (data.isEnabled() && !data.isDeleted() && (contextTypeId == null || contextTypeId.equals(data.getTemplate().getContextTypeId())))
+				positions[count++]= fIndexedPositions[i];
+		}
+		Arrays.sort(positions, 0, count);
+
+		Template[] templates= new Template[count];
+		for (int i= 0; i < count; i++)
+			templates[i]= ((TemplatePersistenceData) fTemplates.get(positions[i])).getTemplate();
+		return templates;
+	}
+
+	/**
+	 * Records that the template of a stored template has been replaced.
+	 *
+	 * @since 3.9
+	 */
+	void templateChanged() {
+		fModificationStamp++;
+	}
+
+	/**
+	 * Computes the index of the template names.
+	 *
+	 * @since 3.9
+	 */
+	private void computeNameIndex() {
+		int size= fTemplates.size();
+		final String[] names= new String[size];
+		Integer[] order= new Integer[size];
+		for (int i= 0; i < size; i++) {
+			names[i]= ((TemplatePersistenceData) fTemplates.get(i)).getTemplate().getName().toLowerCase();
+			order[i]= new Integer(i);
+		}
+		// stable, templates with the same name remain in store order
+		Arrays.sort(order, new Comparator() {
+			public int compare(Object o1, Object o2) {
+				return names[((Integer) o1).intValue()].compareTo(names[((Integer) o2).intValue()]);
+			}
+		});
+
+		fNameIndex= new TemplatePersistenceData[size];
+		fIndexedNames= new String[size];
+		fIndexedPositions= new int[size];
+		for (int i= 0; i < size; i++) {
+			int position= order[i].intValue();
+			fNameIndex[i]= (TemplatePersistenceData) fTemplates.get(position);
+			fIndexedNames[i]= names[position];
+			fIndexedPositions[i]= position;
+		}
+		fIndexedModificationStamp= fModificationStamp;
+	}
+
 	/**
 	 * Returns the first enabled template that matches the name.
 	 *
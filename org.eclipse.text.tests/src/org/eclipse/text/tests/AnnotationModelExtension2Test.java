@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2013 IBM Corporation and others.
+ * Copyright (c) 2007, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -15,6 +15,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -269,4 +270,153 @@ public class AnnotationModelExtension2Test extends TestCase {
 		assertPermutations(true, true, expected);
 	}
 
+	public void testRegionsAfterDocumentChanges() throws Exception {
+		Random random= new Random(4711);
+		Document document= createDocument(random);
+		AnnotationModel model= createModel(document, random);
+
+		for (int i= 0; i < 200; i++) {
+			replaceRandomly(document, random);
+			if (random.nextInt(4) == 0)
+				model.addAnnotation(new Annotation(false), new Position(random.nextInt(document.getLength() - 10), random.nextInt(10)));
+			if (random.nextInt(4) == 0)
+				model.removeAnnotation((Annotation) model.getAnnotationIterator().next());
+
+			assertRegions(model, document, random);
+		}
+
+		model.disconnect(document);
+	}
+
+	public void testRegionsAfterChangesBetweenAnnotations() throws Exception {
+		Random random= new Random(1234);
+		Document document= createDocument(random);
+		AnnotationModel model= new AnnotationModel();
+		model.connect(document);
+		for (int i= 0; i < 50; i++)
+			model.addAnnotation(new Annotation(false), new Position(random.nextInt(950), random.nextInt(5)));
+
+		for (int i= 0; i < 200; i++) {
+			int offset= random.nextInt(document.getLength() - 5);
+			if (random.nextInt(2) == 0)
+				document.replace(offset, 0, "0123456789");
+			else
+				document.replace(offset, 5, "");
+			assertRegions(model, document, random);
+		}
+
+		model.disconnect(document);
+	}
+
+	public void testRegionsAfterModifyingPositions() throws Exception {
+		Random random= new Random(815);
+		Document document= createDocument(random);
+		AnnotationModel model= createModel(document, random);
+
+		for (int i= 0; i < 200; i++) {
+			Annotation annotation= (Annotation) model.getAnnotationIterator().next();
+			model.modifyAnnotationPosition(annotation, new Position(random.nextInt(document.getLength() - 10), random.nextInt(10)));
+			if (random.nextInt(2) == 0)
+				replaceRandomly(document, random);
+
+			assertRegions(model, document, random);
+		}
+
+		model.disconnect(document);
+	}
+
+	public void testRegionsWithStoppedNotification() throws Exception {
+		Random random= new Random(42);
+		Document document= createDocument(random);
+		AnnotationModel model= createModel(document, random);
+
+		for (int i= 0; i < 50; i++) {
+			document.stopListenerNotification();
+			int changes= random.nextInt(3) + 1;
+			for (int j= 0; j < changes; j++) {
+				replaceRandomly(document, random);
+				if (random.nextInt(2) == 0)
+					model.addAnnotation(new Annotation(false), new Position(random.nextInt(document.getLength() - 10), random.nextInt(10)));
+			}
+			assertRegions(model, document, random);
+			document.resumeListenerNotification();
+
+			assertRegions(model, document, random);
+		}
+
+		model.disconnect(document);
+	}
+
+	public void testRegionsAfterReconnect() throws Exception {
+		Random random= new Random(13);
+		Document document= createDocument(random);
+		AnnotationModel model= createModel(document, random);
+
+		model.disconnect(document);
+		model.addAnnotation(new Annotation(false), new Position(random.nextInt(document.getLength() - 10), random.nextInt(10)));
+		model.connect(document);
+
+		for (int i= 0; i < 50; i++) {
+			replaceRandomly(document, random);
+			assertRegions(model, document, random);
+		}
+
+		model.disconnect(document);
+	}
+
+	private Document createDocument(Random random) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 1000; i++)
+			buffer.append((char) ('a' + random.nextInt(26)));
+		return new Document(buffer.toString());
+	}
+
+	private AnnotationModel createModel(Document document, Random random) {
+		AnnotationModel model= new AnnotationModel();
+		model.connect(document);
+		for (int i= 0; i < 500; i++)
+			model.addAnnotation(new Annotation(false), new Position(random.nextInt(950), random.nextInt(50)));
+		return model;
+	}
+
+	private void replaceRandomly(Document document, Random random) throws Exception {
+		int offset= random.nextInt(document.getLength());
+		int length= random.nextInt(Math.min(10, document.getLength() - offset) + 1);
+		document.replace(offset, length, "0123456789abcdefghij".substring(0, random.nextInt(21)));
+	}
+
+	private void assertRegions(AnnotationModel model, Document document, Random random) {
+		int regionOffset= random.nextInt(document.getLength());
+		int regionLength= random.nextInt(document.getLength() - regionOffset + 1);
+		for (int j= 0; j < 4; j++) {
+			boolean canStartBefore= (j & 1) != 0;
+			boolean canEndAfter= (j & 2) != 0;
+			HashSet expected= new HashSet();
+			Position region= new Position(regionOffset, regionLength);
+			for (Iterator iterator= model.getAnnotationIterator(); iterator.hasNext();) {
+				Annotation annotation= (Annotation) iterator.next();
+				Position position= model.getPosition(annotation);
+				// deleted positions are only removed from the model once listeners are notified
+				if (!position.isDeleted() && isWithinRegion(region, position, canStartBefore, canEndAfter))
+					expected.add(annotation);
+			}
+			HashSet actual= new HashSet();
+			for (Iterator iterator= model.getAnnotationIterator(regionOffset, regionLength, canStartBefore, canEndAfter); iterator.hasNext();)
+				assertTrue(actual.add(iterator.next()));
+			assertEquals(expected, actual);
+		}
+	}
+
+	private boolean isWithinRegion(Position region, Position position, boolean canStartBefore, boolean canEndAfter) {
+		int start= position.getOffset();
+		int length= position.getLength();
+		int last= start + length - (length > 0 ? 1 : 0);
+		if (canStartBefore && canEndAfter)
+			return region.overlapsWith(start, length);
+		else if (canStartBefore)
+			return region.includes(last);
+		else if (canEndAfter)
+			return region.includes(start);
+		return region.includes(start) && region.includes(last);
+	}
 }
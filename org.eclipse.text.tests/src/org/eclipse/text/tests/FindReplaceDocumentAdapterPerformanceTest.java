@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.text.tests;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.FindReplaceDocumentAdapter;
+import org.eclipse.jface.text.IRegion;
+
+
+/**
+ * Measures find next on a synthetic document of about 100 MB.
+ *
+ * @since 3.6
+ */
+public class FindReplaceDocumentAdapterPerformanceTest extends PerformanceTestCase {
+
+	/** The number of characters of the synthetic document. */
+	private static final int LENGTH= 50 * 1024 * 1024;
+	/** The number of find next operations per run. */
+	private static final int FINDS= 1000;
+	private static final int WARM_UP_RUNS= 2;
+	private static final int MEASURED_RUNS= 5;
+
+	private static final String[] LINES= {
+		"\tpublic void method(int value) {\n", //$NON-NLS-1$
+		"\t\t// compute the result\n", //$NON-NLS-1$
+		"\t\tint result= value * 2 + fOffset;\n", //$NON-NLS-1$
+		"\t\treturn;\n", //$NON-NLS-1$
+		"\t}\n", //$NON-NLS-1$
+		"\n" //$NON-NLS-1$
+	};
+
+	private Document fDocument;
+
+	public static Test suite() {
+		return new TestSuite(FindReplaceDocumentAdapterPerformanceTest.class);
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceTestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		StringBuffer buffer= new StringBuffer(LENGTH + 64);
+		while (buffer.length() < LENGTH) {
+			for (int i= 0; i < LINES.length; i++)
+				buffer.append(LINES[i]);
+		}
+		fDocument= new Document(buffer.toString());
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceTestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		fDocument= null;
+		super.tearDown();
+	}
+
+	/**
+	 * Repeatedly finds the next match starting at the end of the previous one.
+	 *
+	 * @param findString the string to find
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * @throws BadLocationException if the search fails
+	 */
+	private void measureFindNext(String findString, boolean caseSensitive, boolean regExSearch) throws BadLocationException {
+		FindReplaceDocumentAdapter adapter= new FindReplaceDocumentAdapter(fDocument);
+		for (int i= 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			if (i >= WARM_UP_RUNS)
+				startMeasuring();
+			int offset= 0;
+			for (int j= 0; j < FINDS; j++) {
+				IRegion region= adapter.find(offset, findString, true, caseSensitive, false, regExSearch);
+				assertNotNull(region);
+				offset= region.getOffset() + region.getLength();
+			}
+			if (i >= WARM_UP_RUNS)
+				stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	/**
+	 * Finds a string which does not occur, scanning the whole document.
+	 *
+	 * @param findString the string to find
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * @throws BadLocationException if the search fails
+	 */
+	private void measureFindMissing(String findString, boolean regExSearch) throws BadLocationException {
+		FindReplaceDocumentAdapter adapter= new FindReplaceDocumentAdapter(fDocument);
+		for (int i= 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			if (i >= WARM_UP_RUNS)
+				startMeasuring();
+			assertNull(adapter.find(0, findString, true, true, false, regExSearch));
+			if (i >= WARM_UP_RUNS)
+				stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testFindNext() throws Exception {
+		measureFindNext("result", true, false); //$NON-NLS-1$
+	}
+
+	public void testFindNextCaseInsensitive() throws Exception {
+		measureFindNext("RESULT", false, false); //$NON-NLS-1$
+	}
+
+	public void testFindNextRegEx() throws Exception {
+		measureFindNext("int\\s+\\w+=", true, true); //$NON-NLS-1$
+	}
+
+	public void testFindMissing() throws Exception {
+		measureFindMissing("missing", false); //$NON-NLS-1$
+	}
+
+	public void testFindMissingRegEx() throws Exception {
+		measureFindMissing("value\\s*/\\s*\\d", true); //$NON-NLS-1$
+	}
+}
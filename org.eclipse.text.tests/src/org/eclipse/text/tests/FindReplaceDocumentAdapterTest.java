@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ package org.eclipse.text.tests;
 
 import java.util.Arrays;
 import java.util.Locale;
+import java.util.regex.Matcher;
 import java.util.regex.PatternSyntaxException;
 
 import junit.framework.Test;
@@ -233,6 +234,201 @@ public class FindReplaceDocumentAdapterTest extends TestCase {
 		}
 	}
 
+	/*
+	 * @since 3.6
+	 */
+	public void testFindNext() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		IRegion r= findReplaceDocumentAdapter.find(0, "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(38, 6), r);
+		r= findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(75, 6), r);
+
+		// switching the pattern must not continue the previous match
+		r= findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "method\\d", true, true, false, true); //$NON-NLS-1$
+		assertEquals(new Region(87, 7), r);
+		r= findReplaceDocumentAdapter.find(0, "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(38, 6), r);
+
+		// a modification must not continue the previous match
+		fDocument.replace(0, 0, "public "); //$NON-NLS-1$
+		r= findReplaceDocumentAdapter.find(1, "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(45, 6), r);
+		r= findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(82, 6), r);
+		r= findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "public", true, true, false, false); //$NON-NLS-1$
+		assertEquals(new Region(126, 6), r);
+		assertNull(findReplaceDocumentAdapter.find(r.getOffset() + r.getLength(), "public", true, true, false, false)); //$NON-NLS-1$
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testInterleavedReplaceAndFind() throws Exception {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 20000; i++)
+			buffer.append("line ").append(i).append(" public\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		fDocument.set(buffer.toString());
+
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		int offset= 0;
+		for (int i= 0; i < 2000; i++) {
+			IRegion r= findReplaceDocumentAdapter.find(offset, "public", true, true, false, false); //$NON-NLS-1$
+			assertEquals(fDocument.get().indexOf("public", offset), r.getOffset()); //$NON-NLS-1$
+			assertEquals(6, r.getLength());
+
+			if (i % 3 == 0) {
+				r= findReplaceDocumentAdapter.replace("private", false); //$NON-NLS-1$
+				assertEquals(7, r.getLength());
+			} else if (i % 3 == 1) {
+				// modify the document behind the adapter, before and after the match
+				fDocument.replace(r.getOffset() + r.getLength(), 0, " public"); //$NON-NLS-1$
+				fDocument.replace(0, 1, ""); //$NON-NLS-1$
+				r= new Region(r.getOffset() - 1, r.getLength());
+			}
+			offset= r.getOffset() + r.getLength();
+		}
+		assertEquals(fDocument.get().indexOf("public", offset), findReplaceDocumentAdapter.find(offset, "public", true, true, false, false).getOffset()); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(fDocument.get().lastIndexOf("public", offset), findReplaceDocumentAdapter.find(offset, "public", false, true, false, false).getOffset()); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testFindInDocumentModifiedDuringScan() throws Exception {
+		final StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 20000; i++)
+			buffer.append("line ").append(i).append('\n'); //$NON-NLS-1$
+		buffer.append("public"); //$NON-NLS-1$
+		fDocument= new Document(buffer.toString()) {
+			private boolean fModified;
+
+			public String get(int offset, int length) throws BadLocationException {
+				String content= super.get(offset, length);
+				if (!fModified) {
+					// simulates a modification by another thread while the document is scanned
+					fModified= true;
+					replace(0, 0, "public "); //$NON-NLS-1$
+				}
+				return content;
+			}
+		};
+
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		assertEquals(new Region(0, 6), findReplaceDocumentAdapter.find(0, "public", true, true, false, false)); //$NON-NLS-1$
+		assertEquals(new Region(buffer.length() + 1, 6), findReplaceDocumentAdapter.find(6, "public", true, true, false, false)); //$NON-NLS-1$
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testFindAll() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		int[] matches= findReplaceDocumentAdapter.findAll(0, fDocument.getLength(), "public", true, false, false, null); //$NON-NLS-1$
+		assertTrue(Arrays.equals(new int[] { 38, 6, 75, 6, 119, 6 }, matches));
+
+		matches= findReplaceDocumentAdapter.findAll(40, 80, "public", true, false, false, null); //$NON-NLS-1$
+		assertTrue(Arrays.equals(new int[] { 75, 6 }, matches));
+
+		matches= findReplaceDocumentAdapter.findAll(0, fDocument.getLength(), "method\\d", true, false, true, null); //$NON-NLS-1$
+		assertTrue(Arrays.equals(new int[] { 87, 7, 131, 7 }, matches));
+
+		// an empty match ends the search
+		matches= findReplaceDocumentAdapter.findAll(0, fDocument.getLength(), "x*", true, false, true, null); //$NON-NLS-1$
+		assertTrue(Arrays.equals(new int[] { 0, 0 }, matches));
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testCreatePattern() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		String text= fDocument.get();
+		String[] findStrings= { "public", "PUBLIC", "method", "method\\d", "^\\s+}\\R" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+		for (int i= 0; i < findStrings.length; i++) {
+			for (int options= 0; options < 3; options++) {
+				boolean caseSensitive= options != 1;
+				boolean wholeWord= options == 2;
+				boolean regExSearch= i >= 3;
+				if (regExSearch && wholeWord)
+					continue;
+
+				int[] matches= findReplaceDocumentAdapter.findAll(0, text.length(), findStrings[i], caseSensitive, wholeWord, regExSearch, null);
+				Matcher matcher= FindReplaceDocumentAdapter.createPattern(findStrings[i], caseSensitive, wholeWord, regExSearch).matcher(text);
+				for (int j= 0; j < matches.length; j+= 2) {
+					assertTrue(matcher.find());
+					assertEquals(matches[j], matcher.start());
+					assertEquals(matches[j + 1], matcher.end() - matcher.start());
+				}
+				assertFalse(matcher.find());
+			}
+		}
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testReplaceAll() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+		int count= findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "public", "private", true, false, false); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(3, count);
+
+		String text=
+			"package TestPackage;\n" + //$NON-NLS-1$
+			"/*\n" + //$NON-NLS-1$
+			"* comment\n" + //$NON-NLS-1$
+			"*/\n" + //$NON-NLS-1$
+			"	private class Class {\n" + //$NON-NLS-1$
+			"		// comment1\n" + //$NON-NLS-1$
+			"		private void method1() {\n" + //$NON-NLS-1$
+			"		}\n" + //$NON-NLS-1$
+			"		// comment2\n" + //$NON-NLS-1$
+			"		private void method2() {\n" + //$NON-NLS-1$
+			"		}\n" + //$NON-NLS-1$
+			"	}\n" + //$NON-NLS-1$
+			"// Gel\u00f6st"; //$NON-NLS-1$S
+		assertEquals(text, fDocument.get());
+
+		assertEquals(0, findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "public", "private", true, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testReplaceAllInRegion() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+
+		fDocument.set("ab ab ab ab"); //$NON-NLS-1$
+		assertEquals(2, findReplaceDocumentAdapter.replaceAll(2, 6, "AB", "xyz", false, false, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("ab xyz xyz ab", fDocument.get()); //$NON-NLS-1$
+
+		fDocument.set("ab abab ab"); //$NON-NLS-1$
+		assertEquals(2, findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "ab", "", true, true, false)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals(" abab ", fDocument.get()); //$NON-NLS-1$
+	}
+
+	/*
+	 * @since 3.6
+	 */
+	public void testRegexReplaceAll() throws Exception {
+		FindReplaceDocumentAdapter findReplaceDocumentAdapter= new FindReplaceDocumentAdapter(fDocument);
+
+		fDocument.set("foo1 Foo22 FOO333"); //$NON-NLS-1$
+		assertEquals(3, findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "(foo)(\\d+)", "$2\\C$1bar", false, false, true)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("1foobar 22Foobar 333FOOBAR", fDocument.get()); //$NON-NLS-1$
+
+		// an empty match ends the operation
+		fDocument.set("aab"); //$NON-NLS-1$
+		assertEquals(0, findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "b*", "x", true, false, true)); //$NON-NLS-1$ //$NON-NLS-2$
+		assertEquals("aab", fDocument.get()); //$NON-NLS-1$
+
+		try {
+			findReplaceDocumentAdapter.replaceAll(0, fDocument.getLength(), "(a", "x", true, false, true); //$NON-NLS-1$ //$NON-NLS-2$
+			fail();
+		} catch (PatternSyntaxException ex) {
+		}
+	}
+
 	public void _testRegexReplace() throws Exception {
 		fDocument.set(
 				"UnixWindowsMacInferred\n" +
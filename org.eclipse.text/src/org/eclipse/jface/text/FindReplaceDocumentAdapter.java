@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,11 +12,15 @@
  *******************************************************************************/
 package org.eclipse.jface.text;
 
+import java.util.ConcurrentModificationException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 
 /**
@@ -36,6 +40,165 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	private static class FindReplaceOperationCode {
 	}
 
+	/**
+	 * Cache of compiled patterns which evicts the least recently used pattern.
+	 *
+	 * @since 3.6
+	 */
+	private static class PatternCache extends LinkedHashMap {
+
+		private static final long serialVersionUID= 1L;
+
+		/** The maximum number of cached patterns. */
+		private static final int SIZE= 8;
+
+		PatternCache() {
+			super(2 * SIZE, 0.75f, true);
+		}
+
+		/*
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > SIZE;
+		}
+	}
+
+	/**
+	 * Character sequence over the adapted document which is scanned by the matcher. The
+	 * content is read in blocks without copying the whole document. Each block is read while
+	 * holding the lock of the document, if it has one, and only if the document has not been
+	 * modified since the last {@link #reset()}. Otherwise a
+	 * {@link ConcurrentModificationException} is thrown, so that a scan never mixes the
+	 * content before and after a modification.
+	 *
+	 * @since 3.6
+	 */
+	private static class DocumentSequence implements CharSequence {
+
+		/** The size of the blocks read from the document. */
+		private static final int BLOCK_SIZE= 4096;
+
+		/** The scanned document. */
+		private final IDocument fDocument;
+		/** The modification stamp of the document at the last reset. */
+		private long fModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		/** The length of the document at the last reset. */
+		private int fLength;
+		/** The last block read from the document. */
+		private String fBlock= ""; //$NON-NLS-1$
+		/** The document offset of the last block. */
+		private int fBlockOffset;
+
+		DocumentSequence(IDocument document) {
+			fDocument= document;
+		}
+
+		/**
+		 * Makes this sequence reflect the current content of the document.
+		 *
+		 * @return the modification stamp of the document or
+		 *         {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP}
+		 */
+		long reset() {
+			Object lock= getLockObject();
+			if (lock == null) {
+				fModificationStamp= getModificationStamp();
+				fLength= fDocument.getLength();
+			} else {
+				synchronized (lock) {
+					fModificationStamp= getModificationStamp();
+					fLength= fDocument.getLength();
+				}
+			}
+			fBlock= ""; //$NON-NLS-1$
+			fBlockOffset= 0;
+			return fModificationStamp;
+		}
+
+		private Object getLockObject() {
+			if (fDocument instanceof ISynchronizable)
+				return ((ISynchronizable) fDocument).getLockObject();
+			return null;
+		}
+
+		private long getModificationStamp() {
+			if (fDocument instanceof IDocumentExtension4)
+				return ((IDocumentExtension4) fDocument).getModificationStamp();
+			return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		}
+
+		/**
+		 * Reads the given range of the document.
+		 *
+		 * @param offset the offset of the range
+		 * @param length the length of the range
+		 * @return the content of the range
+		 * @throws ConcurrentModificationException if the document has been modified since the
+		 *             last reset
+		 */
+		private String read(int offset, int length) {
+			Object lock= getLockObject();
+			if (lock == null)
+				return doRead(offset, length);
+			synchronized (lock) {
+				return doRead(offset, length);
+			}
+		}
+
+		private String doRead(int offset, int length) {
+			String content;
+			try {
+				content= fDocument.get(offset, length);
+			} catch (BadLocationException e) {
+				throw new ConcurrentModificationException();
+			}
+			if (getModificationStamp() != fModificationStamp || fDocument.getLength() != fLength)
+				throw new ConcurrentModificationException();
+			return content;
+		}
+
+		/*
+		 * @see java.lang.CharSequence#length()
+		 */
+		public int length() {
+			return fLength;
+		}
+
+		/*
+		 * @see java.lang.CharSequence#charAt(int)
+		 */
+		public char charAt(int index) {
+			int blockIndex= index - fBlockOffset;
+			if (blockIndex < 0 || blockIndex >= fBlock.length()) {
+				if (index < 0 || index >= fLength)
+					throw new IndexOutOfBoundsException();
+				fBlockOffset= index - index % BLOCK_SIZE;
+				fBlock= read(fBlockOffset, Math.min(BLOCK_SIZE, fLength - fBlockOffset));
+				blockIndex= index - fBlockOffset;
+			}
+			return fBlock.charAt(blockIndex);
+		}
+
+		/*
+		 * @see java.lang.CharSequence#subSequence(int, int)
+		 */
+		public CharSequence subSequence(int start, int end) {
+			if (start < 0 || end > fLength || start > end)
+				throw new IndexOutOfBoundsException();
+			if (start >= fBlockOffset && end <= fBlockOffset + fBlock.length())
+				return fBlock.substring(start - fBlockOffset, end - fBlockOffset);
+			return read(start, end - start);
+		}
+
+		/*
+		 * @see java.lang.Object#toString()
+		 */
+		public String toString() {
+			return read(0, fLength);
+		}
+	}
+
 	// Find/replace operation codes.
 	private static final FindReplaceOperationCode FIND_FIRST= new FindReplaceOperationCode();
 	private static final FindReplaceOperationCode FIND_NEXT= new FindReplaceOperationCode();
@@ -77,6 +240,32 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	 */
 	private int fRetainCaseMode;
 
+	/**
+	 * The compiled patterns, keyed by the search options and the regular expression.
+	 * @since 3.6
+	 */
+	private final PatternCache fPatternCache= new PatternCache();
+
+	/**
+	 * The modification stamp of the document in which the matcher found its last match in a
+	 * forward search, or {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP} if the
+	 * matcher cannot be continued.
+	 * @since 3.6
+	 */
+	private long fMatcherModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * The end offset of the last match found in a forward search.
+	 * @since 3.6
+	 */
+	private int fMatcherEndOffset;
+
+	/**
+	 * The view of the adapted document which is scanned by {@link #fFindReplaceMatcher}.
+	 * @since 3.6
+	 */
+	private final DocumentSequence fDocumentSequence;
+
 	/**
 	 * Constructs a new find replace document adapter.
 	 *
@@ -85,6 +274,7 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	public FindReplaceDocumentAdapter(IDocument document) {
 		Assert.isNotNull(document);
 		fDocument= document;
+		fDocumentSequence= new DocumentSequence(document);
 	}
 
 	/**
@@ -153,53 +343,22 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 				return null;
 
 			// Validate start offset
-			if (startOffset < 0 || startOffset > length())
+			fDocumentSequence.reset();
+			if (startOffset < 0 || startOffset > fDocumentSequence.length())
 				throw new BadLocationException();
 
-			int patternFlags= 0;
-
-			if (regExSearch) {
-				patternFlags |= Pattern.MULTILINE;
-				findString= substituteLinebreak(findString);
-			}
-
-			if (!caseSensitive)
-				patternFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
-
-			if (!regExSearch)
-				findString= asRegPattern(findString);
-
-			if (wholeWord)
-				findString= "\\b" + findString + "\\b"; //$NON-NLS-1$ //$NON-NLS-2$
-
 			fFindReplaceMatchOffset= startOffset;
-			if (fFindReplaceMatcher != null && fFindReplaceMatcher.pattern().pattern().equals(findString) && fFindReplaceMatcher.pattern().flags() == patternFlags) {
-				/*
-				 * Commented out for optimization:
-				 * The call is not needed since FIND_FIRST uses find(int) which resets the matcher
-				 */
-				// fFindReplaceMatcher.reset();
-			} else {
-				Pattern pattern= Pattern.compile(findString, patternFlags);
-				fFindReplaceMatcher= pattern.matcher(this);
-			}
+			findString= prepareMatcher(findString, caseSensitive, wholeWord, regExSearch);
 		}
 
 		// Set state
 		fFindReplaceState= operationCode;
 
 		if (operationCode == REPLACE || operationCode == REPLACE_FIND_NEXT) {
-			if (regExSearch) {
-				Pattern pattern= fFindReplaceMatcher.pattern();
-				String prevMatch= fFindReplaceMatcher.group();
-				try {
-					replaceText= interpretReplaceEscapes(replaceText, prevMatch);
-					Matcher replaceTextMatcher= pattern.matcher(prevMatch);
-					replaceText= replaceTextMatcher.replaceFirst(replaceText);
-				} catch (IndexOutOfBoundsException ex) {
-					throw new PatternSyntaxException(ex.getLocalizedMessage(), replaceText, -1);
-				}
-			}
+			// the match is read from the current content of the document
+			fDocumentSequence.reset();
+			if (regExSearch)
+				replaceText= interpretReplacement(fFindReplaceMatcher.pattern(), replaceText, fFindReplaceMatcher.group());
 
 			int offset= fFindReplaceMatcher.start();
 			int length= fFindReplaceMatcher.group().length();
@@ -218,45 +377,355 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 		}
 
 		if (operationCode != REPLACE) {
-			try {
-				if (forwardSearch) {
+			long modificationStamp= fDocumentSequence.reset();
+			// a find starting where the last forward match ended continues the matcher
+			boolean continueMatcher= operationCode == FIND_FIRST && forwardSearch && startOffset == fMatcherEndOffset
+					&& modificationStamp == fMatcherModificationStamp && modificationStamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+			fMatcherModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 
-					boolean found= false;
-					if (operationCode == FIND_FIRST)
-						found= fFindReplaceMatcher.find(startOffset);
-					else
-						found= fFindReplaceMatcher.find();
+			while (true) {
+				try {
+					return find(operationCode, startOffset, forwardSearch, continueMatcher, modificationStamp);
+				} catch (ConcurrentModificationException e) {
+					// the document has been modified during the scan, scan its new content
+					modificationStamp= fDocumentSequence.reset();
+					continueMatcher= false;
+				} catch (StackOverflowError e) {
+					String message= TextMessages.getString("FindReplaceDocumentAdapter.patternTooComplex"); //$NON-NLS-1$
+					throw new PatternSyntaxException(message, findString, -1);
+				}
+			}
+		}
 
-					if (operationCode == REPLACE_FIND_NEXT)
-						fFindReplaceState= FIND_NEXT;
+		return null;
+	}
 
-					if (found && fFindReplaceMatcher.group().length() > 0)
-						return new Region(fFindReplaceMatcher.start(), fFindReplaceMatcher.group().length());
-					return null;
-				}
-				// backward search
-				boolean found= fFindReplaceMatcher.find(0);
-				int index= -1;
-				int length= -1;
-				while (found && fFindReplaceMatcher.start() + fFindReplaceMatcher.group().length() <= fFindReplaceMatchOffset + 1) {
-					index= fFindReplaceMatcher.start();
-					length= fFindReplaceMatcher.group().length();
-					found= fFindReplaceMatcher.find(index + 1);
+	/**
+	 * Scans the document for the next match of {@link #fFindReplaceMatcher}.
+	 *
+	 * @param operationCode specifies what kind of operation is executed
+	 * @param startOffset document offset at which search starts
+	 * @param forwardSearch the search direction
+	 * @param continueMatcher <code>true</code> if a forward search continues the last match
+	 * @param modificationStamp the modification stamp of the scanned document
+	 * @return the found region or <code>null</code> if there was no match
+	 * @throws ConcurrentModificationException if the document is modified during the scan
+	 * @since 3.6
+	 */
+	private IRegion find(FindReplaceOperationCode operationCode, int startOffset, boolean forwardSearch, boolean continueMatcher, long modificationStamp) {
+		if (forwardSearch) {
+
+			boolean found= false;
+			if (operationCode == FIND_FIRST && !continueMatcher)
+				found= fFindReplaceMatcher.find(startOffset);
+			else
+				found= fFindReplaceMatcher.find();
+
+			if (operationCode == REPLACE_FIND_NEXT)
+				fFindReplaceState= FIND_NEXT;
+
+			if (found && fFindReplaceMatcher.end() > fFindReplaceMatcher.start()) {
+				fMatcherModificationStamp= modificationStamp;
+				fMatcherEndOffset= fFindReplaceMatcher.end();
+				return new Region(fFindReplaceMatcher.start(), fMatcherEndOffset - fFindReplaceMatcher.start());
+			}
+			return null;
+		}
+		// backward search
+		boolean found= fFindReplaceMatcher.find(0);
+		int index= -1;
+		int length= -1;
+		while (found && fFindReplaceMatcher.end() <= fFindReplaceMatchOffset + 1) {
+			index= fFindReplaceMatcher.start();
+			length= fFindReplaceMatcher.end() - index;
+			found= fFindReplaceMatcher.find(index + 1);
+		}
+		if (index > -1) {
+			// must set matcher to correct position
+			fFindReplaceMatcher.find(index);
+			fFindReplaceMatchOffset= index;
+			return new Region(index, length);
+		}
+		fFindReplaceMatchOffset= index;
+		return null;
+	}
+
+	/**
+	 * Replaces all matches of the given find string which lie completely inside the given
+	 * region. All matches are located in a single scan of the document before the document
+	 * is modified. The replacements are then applied in document order, each sending a
+	 * <code>DocumentEvent</code> to all registered <code>IDocumentListener</code>.
+	 * <p>
+	 * Clients replacing a large number of matches should call this method inside a
+	 * document rewrite session, see {@link IDocumentExtension4#startRewriteSession(DocumentRewriteSessionType)}.
+	 * As with repeated find and replace operations, an empty match ends the operation.
+	 * </p>
+	 *
+	 * @param offset the offset of the region in which to replace
+	 * @param length the length of the region in which to replace
+	 * @param findString the string to find
+	 * @param replaceText the substitution text
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param wholeWord indicates whether the findString should be limited by white spaces as
+	 * 			defined by Character.isWhiteSpace. Must not be used in combination with <code>regExSearch</code>.
+	 * @param regExSearch if <code>true</code> findString represents a regular expression and
+	 * 			<code>replaceText</code> a regular expression replace pattern.
+	 * 			Must not be used in combination with <code>wholeWord</code>.
+	 * @return the number of replaced matches
+	 * @throws BadLocationException if the region is not inside the document
+	 * @throws PatternSyntaxException if a regular expression has invalid syntax
+	 * @since 3.6
+	 */
+	public int replaceAll(int offset, int length, String findString, String replaceText, boolean caseSensitive, boolean wholeWord, boolean regExSearch) throws BadLocationException {
+		Assert.isTrue(!(regExSearch && wholeWord));
+
+		if (findString == null || findString.length() == 0)
+			return 0;
+
+		fDocumentSequence.reset();
+		int end= offset + length;
+		if (offset < 0 || length < 0 || end > fDocumentSequence.length())
+			throw new BadLocationException();
+
+		// a replace after this operation needs a preceding find
+		fFindReplaceState= null;
+		fMatcherModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		findString= prepareMatcher(findString, caseSensitive, wholeWord, regExSearch);
+		Matcher matcher= fFindReplaceMatcher;
+
+		// Locate all matches before the document is modified
+		int count= 0;
+		int[] matches= new int[32];
+		String[] replacements= regExSearch ? new String[16] : null;
+		boolean scanned= false;
+		while (!scanned) {
+			try {
+				count= 0;
+				boolean found= matcher.find(offset);
+				while (found && matcher.end() <= end && matcher.end() > matcher.start()) {
+					if (2 * count + 1 >= matches.length) {
+						int[] newMatches= new int[2 * matches.length];
+						System.arraycopy(matches, 0, newMatches, 0, matches.length);
+						matches= newMatches;
+					}
+					matches[2 * count]= matcher.start();
+					matches[2 * count + 1]= matcher.end() - matcher.start();
+
+					if (regExSearch) {
+						if (count == replacements.length) {
+							String[] newReplacements= new String[2 * replacements.length];
+							System.arraycopy(replacements, 0, newReplacements, 0, replacements.length);
+							replacements= newReplacements;
+						}
+						replacements[count]= interpretReplacement(matcher.pattern(), replaceText, matcher.group());
+					}
+
+					count++;
+					found= matcher.find();
 				}
-				fFindReplaceMatchOffset= index;
-				if (index > -1) {
-					// must set matcher to correct position
-					fFindReplaceMatcher.find(index);
-					return new Region(index, length);
+				scanned= true;
+			} catch (ConcurrentModificationException e) {
+				// the document has been modified during the scan, scan its new content
+				fDocumentSequence.reset();
+				if (end > fDocumentSequence.length())
+					throw new BadLocationException();
+			} catch (StackOverflowError e) {
+				String message= TextMessages.getString("FindReplaceDocumentAdapter.patternTooComplex"); //$NON-NLS-1$
+				throw new PatternSyntaxException(message, findString, -1);
+			}
+		}
+
+		// Apply the replacements, shifting the match offsets by the preceding changes
+		int delta= 0;
+		for (int i= 0; i < count; i++) {
+			int matchOffset= matches[2 * i] + delta;
+			int matchLength= matches[2 * i + 1];
+			String replacement= regExSearch ? replacements[i] : replaceText;
+
+			if (fDocument instanceof IRepairableDocumentExtension
+					&& ((IRepairableDocumentExtension)fDocument).isLineInformationRepairNeeded(matchOffset, matchLength, replacement)) {
+				String message= TextMessages.getString("FindReplaceDocumentAdapter.incompatibleLineDelimiter"); //$NON-NLS-1$
+				throw new PatternSyntaxException(message, replacement, matchOffset);
+			}
+
+			fDocument.replace(matchOffset, matchLength, replacement);
+			delta+= replacement.length() - matchLength;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the offsets and lengths of all matches of the given find string which lie
+	 * completely inside the given region, in document order. The matches are located
+	 * in a single scan, each search continuing at the end of the previous match. As
+	 * with repeated find operations, an empty match ends the search. It is reported
+	 * as the last match, with a length of <code>0</code>.
+	 *
+	 * @param offset the offset of the region in which to search
+	 * @param length the length of the region in which to search
+	 * @param findString the string to find
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param wholeWord indicates whether the findString should be limited by white spaces as
+	 * 			defined by Character.isWhiteSpace. Must not be used in combination with <code>regExSearch</code>.
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * 			Must not be used in combination with <code>wholeWord</code>.
+	 * @param monitor the progress monitor used to cancel the search, can be <code>null</code>
+	 * @return the offsets and lengths of the matches as consecutive pairs, or <code>null</code>
+	 *         if the search has been canceled
+	 * @throws BadLocationException if the region is not inside the document
+	 * @throws PatternSyntaxException if a regular expression has invalid syntax
+	 * @since 3.6
+	 */
+	public int[] findAll(int offset, int length, String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch, IProgressMonitor monitor) throws BadLocationException {
+		Assert.isTrue(!(regExSearch && wholeWord));
+
+		if (findString == null || findString.length() == 0)
+			return new int[0];
+
+		fDocumentSequence.reset();
+		int end= offset + length;
+		if (offset < 0 || length < 0 || end > fDocumentSequence.length())
+			throw new BadLocationException();
+
+		// a replace after this operation needs a preceding find
+		fFindReplaceState= null;
+		fMatcherModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		findString= prepareMatcher(findString, caseSensitive, wholeWord, regExSearch);
+		Matcher matcher= fFindReplaceMatcher;
+
+		int count= 0;
+		int[] matches= new int[32];
+		boolean scanned= false;
+		while (!scanned) {
+			try {
+				count= 0;
+				boolean found= matcher.find(offset);
+				while (found && matcher.end() <= end) {
+					if (monitor != null && (count & 0xff) == 0xff && monitor.isCanceled())
+						return null;
+
+					if (2 * count + 1 >= matches.length) {
+						int[] newMatches= new int[2 * matches.length];
+						System.arraycopy(matches, 0, newMatches, 0, matches.length);
+						matches= newMatches;
+					}
+					matches[2 * count]= matcher.start();
+					matches[2 * count + 1]= matcher.end() - matcher.start();
+					count++;
+
+					if (matcher.end() == matcher.start())
+						break;
+					found= matcher.find();
 				}
-				return null;
+				scanned= true;
+			} catch (ConcurrentModificationException e) {
+				// the document has been modified during the scan, scan its new content
+				fDocumentSequence.reset();
+				if (end > fDocumentSequence.length())
+					throw new BadLocationException();
 			} catch (StackOverflowError e) {
 				String message= TextMessages.getString("FindReplaceDocumentAdapter.patternTooComplex"); //$NON-NLS-1$
 				throw new PatternSyntaxException(message, findString, -1);
 			}
 		}
 
-		return null;
+		if (monitor != null && monitor.isCanceled())
+			return null;
+
+		int[] result= new int[2 * count];
+		System.arraycopy(matches, 0, result, 0, result.length);
+		return result;
+	}
+
+	/**
+	 * Makes {@link #fFindReplaceMatcher} a matcher for the pattern of the given find string.
+	 * The compiled patterns of recent searches are cached and the matcher is reused if its
+	 * pattern did not change.
+	 *
+	 * @param findString the string to find
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param wholeWord indicates whether the findString should be limited by white spaces
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * @return the regular expression
+	 * @throws PatternSyntaxException if a regular expression has invalid syntax
+	 * @since 3.6
+	 */
+	private String prepareMatcher(String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) {
+		String key= (caseSensitive ? "c" : "i") + (wholeWord ? "w" : "p") + (regExSearch ? "r" : "s") + findString; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+		Pattern pattern= (Pattern) fPatternCache.get(key);
+		if (pattern == null) {
+			pattern= createPattern(findString, caseSensitive, wholeWord, regExSearch);
+			fPatternCache.put(key, pattern);
+		}
+
+		if (fFindReplaceMatcher == null || fFindReplaceMatcher.pattern() != pattern) {
+			fFindReplaceMatcher= pattern.matcher(fDocumentSequence);
+			fMatcherModificationStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		}
+		/*
+		 * Not reset for optimization:
+		 * FIND_FIRST uses find(int) which resets the matcher unless it continues the last match
+		 * in the unmodified document
+		 */
+		return pattern.pattern();
+	}
+
+	/**
+	 * Returns the pattern with which this adapter searches for the given find string. It
+	 * allows to search text which is not held by a document, for example a copy of a
+	 * document's content, with the same results as this adapter.
+	 *
+	 * @param findString the string to find
+	 * @param caseSensitive indicates whether lower and upper case should be distinguished
+	 * @param wholeWord indicates whether the findString should be limited by white spaces as
+	 * 			defined by Character.isWhiteSpace. Must not be used in combination with <code>regExSearch</code>.
+	 * @param regExSearch if <code>true</code> findString represents a regular expression
+	 * 			Must not be used in combination with <code>wholeWord</code>.
+	 * @return the compiled pattern
+	 * @throws PatternSyntaxException if a regular expression has invalid syntax
+	 * @since 3.6
+	 */
+	public static Pattern createPattern(String findString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) {
+		Assert.isTrue(!(regExSearch && wholeWord));
+
+		int patternFlags= 0;
+
+		if (regExSearch) {
+			patternFlags |= Pattern.MULTILINE;
+			findString= substituteLinebreak(findString);
+		}
+
+		if (!caseSensitive)
+			patternFlags |= Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+		if (!regExSearch)
+			findString= asRegPattern(findString);
+
+		if (wholeWord)
+			findString= "\\b" + findString + "\\b"; //$NON-NLS-1$ //$NON-NLS-2$
+
+		return Pattern.compile(findString, patternFlags);
+	}
+
+	/**
+	 * Computes the text which replaces the given match of a regular expression.
+	 *
+	 * @param pattern the pattern of the regular expression
+	 * @param replaceText the regular expression replace pattern
+	 * @param match the matched text
+	 * @return the text replacing the match
+	 * @throws PatternSyntaxException if the replace pattern has invalid syntax
+	 * @since 3.6
+	 */
+	private String interpretReplacement(Pattern pattern, String replaceText, String match) {
+		try {
+			replaceText= interpretReplaceEscapes(replaceText, match);
+			Matcher replaceTextMatcher= pattern.matcher(match);
+			return replaceTextMatcher.replaceFirst(replaceText);
+		} catch (IndexOutOfBoundsException ex) {
+			throw new PatternSyntaxException(ex.getLocalizedMessage(), replaceText, -1);
+		}
 	}
 
 	/**
@@ -267,7 +736,7 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	 * @throws PatternSyntaxException if \R is added at an illegal position (e.g. in a character set)
 	 * @since 3.4
 	 */
-	private String substituteLinebreak(String findString) throws PatternSyntaxException {
+	private static String substituteLinebreak(String findString) throws PatternSyntaxException {
 		int length= findString.length();
 		StringBuffer buf= new StringBuffer(length);
 
@@ -560,7 +1029,7 @@ public class FindReplaceDocumentAdapter implements CharSequence {
 	 * @param string the non-regex pattern
 	 * @return the string converted to a regex pattern
 	 */
-	private String asRegPattern(String string) {
+	private static String asRegPattern(String string) {
 		StringBuffer out= new StringBuffer(string.length());
 		boolean quoting= false;
 
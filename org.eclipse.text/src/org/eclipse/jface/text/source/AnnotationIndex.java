@@ -0,0 +1,439 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jface.text.source;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.Position;
+
+
+/**
+ * Interval index over the positions of the annotations of an {@link AnnotationModel}.
+ * <p>
+ * The positions are kept in a treap ordered by offset. Each node stores the maximum
+ * last offset covered by the positions of its subtree, relative to the offset of its
+ * own position. This allows to answer region queries in <code>O(log n + k)</code> for
+ * <code>k</code> overlapping positions and to add or remove positions in
+ * <code>O(log n)</code>.
+ * </p>
+ * <p>
+ * The document updates the positions in place. Positions which end before a document
+ * change keep their offset and positions which start after it are all shifted by the
+ * same amount, so neither their order nor their relative values change. Only the
+ * positions overlapping the change are reinserted, and the nodes on the path to the
+ * change are recomputed. The index must be told about a change before and after the
+ * positions have been updated, see {@link #documentAboutToBeChanged(DocumentEvent)}
+ * and {@link #positionsUpdated(DocumentEvent)}. If it misses one of these notifications
+ * it is rebuilt with the next query.
+ * </p>
+ * <p>
+ * This class is not thread-safe, clients must synchronize on the lock object of the
+ * annotation model.
+ * </p>
+ *
+ * @since 3.6
+ */
+final class AnnotationIndex {
+
+	/**
+	 * A node of the treap.
+	 */
+	private static final class Node {
+		/** The position of the annotation. */
+		final Position fPosition;
+		/** The annotation. */
+		Annotation fAnnotation;
+		/** Orders nodes with the same offset. */
+		final long fSequence;
+		/** The heap priority of the node. */
+		final int fPriority;
+		/** The maximum last offset of the positions in this subtree, relative to the offset of this node's position. */
+		int fReach;
+		/** The parent node or <code>null</code> for the root. */
+		Node fParent;
+		/** The left child or <code>null</code>. */
+		Node fLeft;
+		/** The right child or <code>null</code>. */
+		Node fRight;
+
+		Node(Position position, Annotation annotation, long sequence, int priority) {
+			fPosition= position;
+			fAnnotation= annotation;
+			fSequence= sequence;
+			fPriority= priority;
+		}
+	}
+
+	/** Maps positions to the nodes of the index. */
+	private final Map fNodes= new IdentityHashMap();
+	/** The random generator for the node priorities. */
+	private final Random fRandom= new Random();
+	/** The root of the treap or <code>null</code> if empty. */
+	private Node fRoot;
+	/** The sequence number of the next node. */
+	private long fNextSequence;
+	/** Tells whether the treap must be rebuilt before it can be used. */
+	private boolean fRebuild;
+	/**
+	 * The nodes whose positions overlap the document change in progress, or
+	 * <code>null</code> if no change is in progress.
+	 */
+	private List fChangedNodes;
+
+	/**
+	 * Adds the given position to the index, or associates it with the given annotation
+	 * if it has already been added.
+	 *
+	 * @param position the position
+	 * @param annotation the annotation of the position
+	 */
+	void add(Position position, Annotation annotation) {
+		Node node= (Node) fNodes.get(position);
+		if (node != null) {
+			node.fAnnotation= annotation;
+			return;
+		}
+
+		node= new Node(position, annotation, fNextSequence++, fRandom.nextInt());
+		fNodes.put(position, node);
+		if (fChangedNodes != null) {
+			// the position may be updated by the document change in progress
+			fChangedNodes.add(node);
+		}
+		if (!fRebuild)
+			insert(node);
+	}
+
+	/**
+	 * Removes the given position from the index.
+	 *
+	 * @param position the position
+	 */
+	void remove(Position position) {
+		Node node= (Node) fNodes.remove(position);
+		if (node == null)
+			return;
+
+		if (fChangedNodes != null)
+			fChangedNodes.remove(node);
+		if (!fRebuild)
+			unlink(node);
+	}
+
+	/**
+	 * Removes all positions from the index.
+	 */
+	void clear() {
+		fNodes.clear();
+		fRoot= null;
+		fRebuild= false;
+		if (fChangedNodes != null)
+			fChangedNodes.clear();
+	}
+
+	/**
+	 * Notifies the index that the document is about to be changed. Must be called
+	 * before the positions are updated.
+	 *
+	 * @param event the document event
+	 */
+	void documentAboutToBeChanged(DocumentEvent event) {
+		if (fChangedNodes != null) {
+			// the previous change has not been reported
+			fChangedNodes= null;
+			fRebuild= true;
+		}
+		if (fRebuild)
+			return;
+
+		fChangedNodes= new ArrayList();
+		collectOverlapping(fRoot, event.getOffset(), event.getOffset() + event.getLength(), fChangedNodes);
+	}
+
+	/**
+	 * Notifies the index that the positions have been updated to the given document
+	 * change.
+	 *
+	 * @param event the document event
+	 */
+	void positionsUpdated(DocumentEvent event) {
+		List changed= fChangedNodes;
+		fChangedNodes= null;
+		if (changed == null) {
+			fRebuild= true;
+			return;
+		}
+		if (fRebuild)
+			return;
+
+		for (Iterator e= changed.iterator(); e.hasNext();)
+			unlink((Node) e.next());
+
+		// nodes before the change are unchanged and the others are shifted, which only
+		// affects the subtrees containing nodes of both kinds
+		int offset= event.getOffset();
+		List path= new ArrayList();
+		for (Node node= fRoot; node != null; node= node.fPosition.getOffset() < offset ? node.fRight : node.fLeft)
+			path.add(node);
+		for (int i= path.size() - 1; i >= 0; i--)
+			updateReach((Node) path.get(i));
+
+		for (Iterator e= changed.iterator(); e.hasNext();)
+			insert((Node) e.next());
+	}
+
+	/**
+	 * Returns the annotations whose positions are inside the given region. See
+	 * {@link IAnnotationModelExtension2} for the definition of inside.
+	 *
+	 * @param offset the start of the region
+	 * @param length the length of the region
+	 * @param canStartBefore include annotations starting before region
+	 * @param canEndAfter include annotations ending after region
+	 * @return the annotations in the region ordered by offset
+	 */
+	List getAnnotations(int offset, int length, boolean canStartBefore, boolean canEndAfter) {
+		if (fRebuild)
+			rebuild();
+
+		List result= new ArrayList();
+		Position region= new Position(offset, length);
+		int minStart= canStartBefore ? Integer.MIN_VALUE : offset;
+		collect(fRoot, minStart, offset + length, offset, region, canStartBefore, canEndAfter, result);
+		return result;
+	}
+
+	/**
+	 * Collects the annotations in the given subtree in order whose position starts in
+	 * the given range, ends at or after the given offset and is inside the given region.
+	 *
+	 * @param node the root of the subtree, may be <code>null</code>
+	 * @param minStart the minimum offset of the positions to visit
+	 * @param maxStart the maximum offset of the positions to visit
+	 * @param minEnd the minimum last offset of the positions to visit
+	 * @param region the region
+	 * @param canStartBefore include annotations starting before region
+	 * @param canEndAfter include annotations ending after region
+	 * @param result the list to which to add the annotations
+	 */
+	private void collect(Node node, int minStart, int maxStart, int minEnd, Position region, boolean canStartBefore, boolean canEndAfter, List result) {
+		if (node == null || getMaxEnd(node) < minEnd)
+			return;
+
+		int start= node.fPosition.getOffset();
+		if (start >= minStart)
+			collect(node.fLeft, minStart, maxStart, minEnd, region, canStartBefore, canEndAfter, result);
+		if (start >= minStart && start <= maxStart && isWithinRegion(node.fPosition, region, canStartBefore, canEndAfter))
+			result.add(node.fAnnotation);
+		if (start <= maxStart)
+			collect(node.fRight, minStart, maxStart, minEnd, region, canStartBefore, canEndAfter, result);
+	}
+
+	/**
+	 * Collects the nodes in the given subtree whose position touches the given range.
+	 *
+	 * @param node the root of the subtree, may be <code>null</code>
+	 * @param start the start of the range
+	 * @param end the end of the range
+	 * @param result the list to which to add the nodes
+	 */
+	private void collectOverlapping(Node node, int start, int end, List result) {
+		if (node == null || getMaxEnd(node) < start)
+			return;
+
+		collectOverlapping(node.fLeft, start, end, result);
+		if (node.fPosition.getOffset() <= end) {
+			if (getLastOffset(node.fPosition) >= start)
+				result.add(node);
+			collectOverlapping(node.fRight, start, end, result);
+		}
+	}
+
+	/**
+	 * Tells whether the given position is inside the given region.
+	 *
+	 * @param position the position
+	 * @param region the region
+	 * @param canStartBefore include positions starting before region
+	 * @param canEndAfter include positions ending after region
+	 * @return <code>true</code> if the position is inside the region
+	 */
+	private static boolean isWithinRegion(Position position, Position region, boolean canStartBefore, boolean canEndAfter) {
+		if (position.isDeleted())
+			return false;
+
+		int start= position.getOffset();
+		int length= position.getLength();
+		if (canStartBefore && canEndAfter)
+			return region.overlapsWith(start, length);
+		if (canStartBefore)
+			return region.includes(start + length - (length > 0 ? 1 : 0));
+		if (canEndAfter)
+			return region.includes(start);
+		return region.includes(start) && region.includes(start + length - (length > 0 ? 1 : 0));
+	}
+
+	/**
+	 * Returns the last offset covered by the given position.
+	 *
+	 * @param position the position
+	 * @return the last offset of the position, its offset if it is empty
+	 */
+	private static int getLastOffset(Position position) {
+		return position.getOffset() + Math.max(position.getLength() - 1, 0);
+	}
+
+	/**
+	 * Returns the maximum last offset of the positions in the given subtree.
+	 *
+	 * @param node the root of the subtree
+	 * @return the maximum last offset
+	 */
+	private static int getMaxEnd(Node node) {
+		return node.fPosition.getOffset() + node.fReach;
+	}
+
+	/**
+	 * Recomputes the reach of the given node from its position and its children.
+	 *
+	 * @param node the node
+	 */
+	private static void updateReach(Node node) {
+		int max= getLastOffset(node.fPosition);
+		if (node.fLeft != null)
+			max= Math.max(max, getMaxEnd(node.fLeft));
+		if (node.fRight != null)
+			max= Math.max(max, getMaxEnd(node.fRight));
+		node.fReach= max - node.fPosition.getOffset();
+	}
+
+	/**
+	 * Tells whether the first node is ordered before the second node.
+	 *
+	 * @param node1 the first node
+	 * @param node2 the second node
+	 * @return <code>true</code> if <code>node1</code> comes before <code>node2</code>
+	 */
+	private static boolean isBefore(Node node1, Node node2) {
+		int offset1= node1.fPosition.getOffset();
+		int offset2= node2.fPosition.getOffset();
+		return offset1 < offset2 || offset1 == offset2 && node1.fSequence < node2.fSequence;
+	}
+
+	/**
+	 * Inserts the given detached node into the treap.
+	 *
+	 * @param node the node
+	 */
+	private void insert(Node node) {
+		node.fLeft= null;
+		node.fRight= null;
+		updateReach(node);
+
+		Node parent= null;
+		Node current= fRoot;
+		while (current != null) {
+			parent= current;
+			current= isBefore(node, current) ? current.fLeft : current.fRight;
+		}
+		node.fParent= parent;
+		if (parent == null)
+			fRoot= node;
+		else if (isBefore(node, parent))
+			parent.fLeft= node;
+		else
+			parent.fRight= node;
+
+		while (node.fParent != null && node.fParent.fPriority < node.fPriority)
+			rotateUp(node);
+		for (Node ancestor= node.fParent; ancestor != null; ancestor= ancestor.fParent)
+			updateReach(ancestor);
+	}
+
+	/**
+	 * Removes the given node from the treap. Does not compare offsets, hence works
+	 * while the positions are being updated.
+	 *
+	 * @param node the node
+	 */
+	private void unlink(Node node) {
+		while (node.fLeft != null && node.fRight != null)
+			rotateUp(node.fLeft.fPriority > node.fRight.fPriority ? node.fLeft : node.fRight);
+
+		Node child= node.fLeft != null ? node.fLeft : node.fRight;
+		Node parent= node.fParent;
+		replaceChild(parent, node, child);
+		node.fParent= null;
+		node.fLeft= null;
+		node.fRight= null;
+
+		for (Node ancestor= parent; ancestor != null; ancestor= ancestor.fParent)
+			updateReach(ancestor);
+	}
+
+	/**
+	 * Rotates the given node above its parent.
+	 *
+	 * @param node the node, must have a parent
+	 */
+	private void rotateUp(Node node) {
+		Node parent= node.fParent;
+		replaceChild(parent.fParent, parent, node);
+		if (parent.fLeft == node) {
+			parent.fLeft= node.fRight;
+			if (node.fRight != null)
+				node.fRight.fParent= parent;
+			node.fRight= parent;
+		} else {
+			parent.fRight= node.fLeft;
+			if (node.fLeft != null)
+				node.fLeft.fParent= parent;
+			node.fLeft= parent;
+		}
+		parent.fParent= node;
+		updateReach(parent);
+		updateReach(node);
+	}
+
+	/**
+	 * Replaces a child of the given parent.
+	 *
+	 * @param parent the parent or <code>null</code> to replace the root
+	 * @param child the child to replace
+	 * @param replacement the replacement, may be <code>null</code>
+	 */
+	private void replaceChild(Node parent, Node child, Node replacement) {
+		if (parent == null)
+			fRoot= replacement;
+		else if (parent.fLeft == child)
+			parent.fLeft= replacement;
+		else
+			parent.fRight= replacement;
+		if (replacement != null)
+			replacement.fParent= parent;
+	}
+
+	/**
+	 * Rebuilds the treap from the added positions.
+	 */
+	private void rebuild() {
+		fRebuild= false;
+		fRoot= null;
+		for (Iterator e= fNodes.values().iterator(); e.hasNext();)
+			insert((Node) e.next());
+	}
+}
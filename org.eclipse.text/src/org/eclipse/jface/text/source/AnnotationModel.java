@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,6 +12,7 @@
 package org.eclipse.jface.text.source;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -21,12 +22,11 @@ import java.util.NoSuchElementException;
 
 import org.eclipse.core.runtime.Assert;
 
-import org.eclipse.jface.text.AbstractDocument;
 import org.eclipse.jface.text.BadLocationException;
-import org.eclipse.jface.text.BadPositionCategoryException;
 import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IPositionUpdater;
 import org.eclipse.jface.text.ISynchronizable;
 import org.eclipse.jface.text.Position;
 
@@ -133,65 +133,6 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 		}
 	}
 
-	/**
-	 * An iterator iteration over a Positions and mapping positions to
-	 * annotations using a provided map if the provided map contains the element.
-	 *
-	 * @since 3.4
-	 */
-	private static final class AnnotationsInterator implements Iterator {
-
-		private Object fNext;
-		private final Position[] fPositions;
-		private int fIndex;
-		private final Map fMap;
-
-		/**
-		 * @param positions positions to iterate over
-		 * @param map a map to map positions to annotations
-		 */
-		public AnnotationsInterator(Position[] positions, Map map) {
-			fPositions= positions;
-			fIndex= 0;
-			fMap= map;
-			fNext= findNext();
-		}
-
-		/* (non-Javadoc)
-		 * @see java.util.Iterator#hasNext()
-		 */
-		public boolean hasNext() {
-			return fNext != null;
-		}
-
-		/* (non-Javadoc)
-		 * @see java.util.Iterator#next()
-		 */
-		public Object next() {
-			Object result= fNext;
-			fNext= findNext();
-			return result;
-		}
-
-		/* (non-Javadoc)
-		 * @see java.util.Iterator#remove()
-		 */
-		public void remove() {
-			throw new UnsupportedOperationException();
-		}
-
-		private Object findNext() {
-			while (fIndex < fPositions.length) {
-				Position position= fPositions[fIndex];
-				fIndex++;
-				if (fMap.containsKey(position))
-					return fMap.get(position);
-			}
-
-			return null;
-		}
-	}
-
 	/**
 	 * A single iterator builds its behavior based on a sequence of iterators.
 	 *
@@ -273,6 +214,16 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	 * @since 3.4
 	 **/
 	private IdentityHashMap fPositions;
+	/**
+	 * The interval index over the annotation positions.
+	 * @since 3.6
+	 */
+	private AnnotationIndex fIndex;
+	/**
+	 * The position updater which keeps the index up to date with the document.
+	 * @since 3.6
+	 */
+	private IPositionUpdater fIndexUpdater;
 	/** The list of annotation model listeners */
 	protected ArrayList fAnnotationModelListeners;
 	/** The document connected with this model */
@@ -311,17 +262,30 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	public AnnotationModel() {
 		fAnnotations= new AnnotationMap(10);
 		fPositions= new IdentityHashMap(10);
+		fIndex= new AnnotationIndex();
 		fAnnotationModelListeners= new ArrayList(2);
 
 		fDocumentListener= new IDocumentListener() {
 
 			public void documentAboutToBeChanged(DocumentEvent event) {
+				synchronized (getLockObject()) {
+					fIndex.documentAboutToBeChanged(event);
+				}
 			}
 
 			public void documentChanged(DocumentEvent event) {
 				fDocumentChanged= true;
 			}
 		};
+
+		// runs after the updaters of the positions, even if listener notification is stopped
+		fIndexUpdater= new IPositionUpdater() {
+			public void update(DocumentEvent event) {
+				synchronized (getLockObject()) {
+					fIndex.positionsUpdated(event);
+				}
+			}
+		};
 	}
 
 	/**
@@ -441,6 +405,7 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 			fAnnotations.put(annotation, position);
 			fPositions.put(position, annotation);
 			synchronized (getLockObject()) {
+				fIndex.add(position, annotation);
 				getAnnotationModelEvent().annotationAdded(annotation);
 			}
 
@@ -512,6 +477,7 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 		++ fOpenConnections;
 		if (fOpenConnections == 1) {
 			document.addDocumentListener(fDocumentListener);
+			document.addPositionUpdater(fIndexUpdater);
 			connected();
 		}
 
@@ -552,6 +518,7 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 
 			disconnected();
 			document.removeDocumentListener(fDocumentListener);
+			document.removePositionUpdater(fIndexUpdater);
 
 			Iterator e= getAnnotationMap().valuesIterator();
 			while (e.hasNext()) {
@@ -728,19 +695,10 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 	 * @since 3.4
 	 */
 	private Iterator getRegionAnnotationIterator(int offset, int length, boolean canStartBefore, boolean canEndAfter) {
-		if (!(fDocument instanceof AbstractDocument))
-			return new RegionIterator(getAnnotationIterator(true), this, offset, length, canStartBefore, canEndAfter);
-
-		AbstractDocument document= (AbstractDocument) fDocument;
 		cleanup(true);
 
-		try {
-			Position[] positions= document.getPositions(IDocument.DEFAULT_CATEGORY, offset, length, canStartBefore, canEndAfter);
-			return new AnnotationsInterator(positions, fPositions);
-		} catch (BadPositionCategoryException e) {
-			//can not happen
-			Assert.isTrue(false);
-			return null;
+		synchronized (getLockObject()) {
+			return Collections.unmodifiableList(fIndex.getAnnotations(offset, length, canStartBefore, canEndAfter)).iterator();
 		}
 	}
 
@@ -829,6 +787,9 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 
 		fAnnotations.clear();
 		fPositions.clear();
+		synchronized (getLockObject()) {
+			fIndex.clear();
+		}
 
 		if (fireModelChanged)
 			fireModelChanged();
@@ -861,6 +822,7 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 			fAnnotations.remove(annotation);
 			fPositions.remove(p);
 			synchronized (getLockObject()) {
+				fIndex.remove(p);
 				getAnnotationModelEvent().annotationRemoved(annotation, p);
 			}
 
@@ -902,8 +864,12 @@ public class AnnotationModel implements IAnnotationModel, IAnnotationModelExtens
 
 				if (position.getOffset() != p.getOffset() || position.getLength() != p.getLength()) {
 					fDocument.removePosition(p);
-					p.setOffset(position.getOffset());
-					p.setLength(position.getLength());
+					synchronized (getLockObject()) {
+						fIndex.remove(p);
+						p.setOffset(position.getOffset());
+						p.setLength(position.getLength());
+						fIndex.add(p, annotation);
+					}
 					try {
 						fDocument.addPosition(p);
 					} catch (BadLocationException e) {
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -44,6 +45,31 @@ import org.eclipse.jface.text.IDocument;
  */
 public class TemplateContextType {
 
+	/**
+	 * Map from template patterns to their translations, which forgets the least recently used
+	 * translations.
+	 *
+	 * @since 3.6
+	 */
+	private static final class TranslationCache extends LinkedHashMap {
+
+		private static final long serialVersionUID= 1L;
+
+		/** The maximum number of cached translations. */
+		private static final int MAX_SIZE= 10000;
+
+		TranslationCache() {
+			super(16, 0.75f, true);
+		}
+
+		/*
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > MAX_SIZE;
+		}
+	}
+
 	/** The id of the context type. */
 	private /* final */ String fId= null;
 
@@ -53,6 +79,15 @@ public class TemplateContextType {
 	/** The name of the context type. */
 	private String fName= null;
 
+	/**
+	 * The translations of the validated patterns, a map from patterns to
+	 * {@link TemplateBuffer}s or to the {@link TemplateException}s thrown by their
+	 * translation. The buffers are only used for validation and must not be modified.
+	 *
+	 * @since 3.6
+	 */
+	private final Map fTranslations= new TranslationCache();
+
 	/**
 	 * Creates a context type with an identifier. The identifier must be unique,
 	 * a qualified name is suggested. The id is also used as name.
@@ -190,17 +225,46 @@ public class TemplateContextType {
 
 	/**
 	 * Validates a pattern, a <code>TemplateException</code> is thrown if
-	 * validation fails.
+	 * validation fails. The translation of the pattern is cached, the
+	 * variables are validated on each call.
 	 *
 	 * @param pattern the template pattern to validate
 	 * @throws TemplateException if the pattern is invalid
 	 */
 	public void validate(String pattern) throws TemplateException {
-		TemplateTranslator translator= new TemplateTranslator();
-		TemplateBuffer buffer= translator.translate(pattern);
+		TemplateBuffer buffer= getTranslation(pattern);
 		validateVariables(buffer.getVariables());
 	}
 
+	/**
+	 * Returns the translation of the given pattern, translates it if it is not cached.
+	 *
+	 * @param pattern the template pattern
+	 * @return the translation of the pattern, which must not be modified
+	 * @throws TemplateException if the pattern cannot be translated
+	 * @since 3.6
+	 */
+	private TemplateBuffer getTranslation(String pattern) throws TemplateException {
+		Object translation;
+		synchronized (fTranslations) {
+			translation= fTranslations.get(pattern);
+		}
+		if (translation == null) {
+			TemplateTranslator translator= new TemplateTranslator();
+			try {
+				translation= translator.translate(pattern);
+			} catch (TemplateException x) {
+				translation= x;
+			}
+			synchronized (fTranslations) {
+				fTranslations.put(pattern, translation);
+			}
+		}
+		if (translation instanceof TemplateException)
+			throw (TemplateException) translation;
+		return (TemplateBuffer) translation;
+	}
+
 	/**
 	 * Validates the variables in this context type. If a variable is not valid,
 	 * e.g. if its type is not known in this context type, a
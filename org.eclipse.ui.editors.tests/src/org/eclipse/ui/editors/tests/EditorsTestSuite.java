@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -26,6 +26,7 @@ public class EditorsTestSuite extends TestSuite {
 		suite.addTest(ChainedPreferenceStoreTest.suite());
 		suite.addTest(EncodingChangeTests.suite());
 		suite.addTest(GotoLineTest.suite());
+		suite.addTest(MarkerAnnotationModelTest.suite());
 		suite.addTest(SegmentedModeTest.suite());
 		//$JUnit-END$
 		return suite;
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.editors.tests;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.CoreException;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.IMarker;
+
+import org.eclipse.core.filebuffers.tests.ResourceHelper;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.Position;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModelEvent;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModelListener;
+import org.eclipse.jface.text.source.IAnnotationModelListenerExtension;
+
+import org.eclipse.ui.texteditor.MarkerAnnotation;
+import org.eclipse.ui.texteditor.ResourceMarkerAnnotationModel;
+
+
+/**
+ * Tests the lookup of marker annotations in the {@link ResourceMarkerAnnotationModel} and
+ * how the model catches up with the markers when it gets connected.
+ *
+ * @since 3.8
+ */
+public class MarkerAnnotationModelTest extends TestCase {
+
+	private static final String PROJECT= "MarkerAnnotationModelTestProject";
+	private static final String CONTENT= "line1\nline2\nline3\nline4\nline5";
+
+	private static class EventRecorder implements IAnnotationModelListener, IAnnotationModelListenerExtension {
+
+		private final List fEvents= new ArrayList();
+
+		public void modelChanged(IAnnotationModel model) {
+		}
+
+		public void modelChanged(AnnotationModelEvent event) {
+			fEvents.add(event);
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(MarkerAnnotationModelTest.class);
+	}
+
+	private IFile fFile;
+	private IDocument fDocument;
+	private ResourceMarkerAnnotationModel fModel;
+
+	protected void setUp() throws Exception {
+		IFolder folder= ResourceHelper.createFolder(PROJECT + "/MarkerAnnotationModelTest/");
+		fFile= ResourceHelper.createFile(folder, "file.txt", CONTENT);
+		fDocument= new Document(CONTENT);
+		fModel= new ResourceMarkerAnnotationModel(fFile);
+	}
+
+	protected void tearDown() throws Exception {
+		fModel.disconnect(fDocument);
+		ResourceHelper.deleteProject(PROJECT);
+	}
+
+	private IMarker createMarker(int start, int end) throws CoreException {
+		IMarker marker= fFile.createMarker(IMarker.PROBLEM);
+		marker.setAttribute(IMarker.CHAR_START, start);
+		marker.setAttribute(IMarker.CHAR_END, end);
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_WARNING);
+		marker.setAttribute(IMarker.MESSAGE, "problem");
+		return marker;
+	}
+
+	private void assertAnnotation(IMarker marker, int offset, int length) {
+		MarkerAnnotation annotation= fModel.getMarkerAnnotation(marker);
+		assertNotNull(annotation);
+		assertSame(marker, annotation.getMarker());
+		assertEquals(new Position(offset, length), fModel.getPosition(annotation));
+		assertEquals(new Position(offset, length), fModel.getMarkerPosition(marker));
+	}
+
+	public void testLookupAfterAdd() throws Exception {
+		fModel.connect(fDocument);
+		IMarker marker= createMarker(6, 11);
+		assertAnnotation(marker, 6, 5);
+		assertNull(fModel.getMarkerAnnotation(fFile.createMarker(IMarker.BOOKMARK)));
+	}
+
+	public void testLookupAfterModify() throws Exception {
+		fModel.connect(fDocument);
+		IMarker marker= createMarker(6, 11);
+		MarkerAnnotation annotation= fModel.getMarkerAnnotation(marker);
+
+		marker.setAttribute(IMarker.CHAR_START, 12);
+		marker.setAttribute(IMarker.CHAR_END, 14);
+		assertAnnotation(marker, 12, 2);
+		assertSame(annotation, fModel.getMarkerAnnotation(marker));
+	}
+
+	public void testLookupAfterRemove() throws Exception {
+		fModel.connect(fDocument);
+		IMarker marker= createMarker(6, 11);
+		IMarker other= createMarker(0, 5);
+		MarkerAnnotation annotation= fModel.getMarkerAnnotation(marker);
+
+		marker.delete();
+		assertNull(fModel.getMarkerAnnotation(marker));
+		assertNull(fModel.getPosition(annotation));
+		assertAnnotation(other, 0, 5);
+	}
+
+	public void testDuplicateMarkerAnnotations() throws Exception {
+		fModel.connect(fDocument);
+		IMarker marker= createMarker(6, 11);
+		MarkerAnnotation first= fModel.getMarkerAnnotation(marker);
+		MarkerAnnotation duplicate= new MarkerAnnotation(marker);
+		fModel.addAnnotation(duplicate, new Position(18, 5));
+		assertSame(first, fModel.getMarkerAnnotation(marker));
+
+		// the duplicate replaces the removed annotation
+		fModel.removeAnnotation(first);
+		assertSame(duplicate, fModel.getMarkerAnnotation(marker));
+		assertAnnotation(marker, 18, 5);
+
+		fModel.removeAnnotation(duplicate);
+		assertNull(fModel.getMarkerAnnotation(marker));
+	}
+
+	public void testRemoveDuplicateFirst() throws Exception {
+		fModel.connect(fDocument);
+		IMarker marker= createMarker(6, 11);
+		MarkerAnnotation first= fModel.getMarkerAnnotation(marker);
+		MarkerAnnotation duplicate= new MarkerAnnotation(marker);
+		fModel.addAnnotation(duplicate, new Position(18, 5));
+
+		fModel.removeAnnotation(duplicate);
+		assertSame(first, fModel.getMarkerAnnotation(marker));
+
+		fModel.removeAnnotation(first);
+		assertNull(fModel.getMarkerAnnotation(marker));
+	}
+
+	public void testRemoveAll() throws Exception {
+		fModel.connect(fDocument);
+		final IMarker marker= createMarker(6, 11);
+		final IMarker other= createMarker(0, 5);
+		fModel.addAnnotation(new MarkerAnnotation(marker), new Position(18, 5));
+
+		final List found= new ArrayList();
+		fModel.addAnnotationModelListener(new IAnnotationModelListener() {
+			public void modelChanged(IAnnotationModel model) {
+				found.add(fModel.getMarkerAnnotation(marker));
+				found.add(fModel.getMarkerAnnotation(other));
+			}
+		});
+		fModel.removeAllAnnotations();
+
+		// the listeners are notified once the annotations can no longer be found
+		assertEquals(2, found.size());
+		assertNull(found.get(0));
+		assertNull(found.get(1));
+		assertNull(fModel.getMarkerAnnotation(marker));
+		assertNull(fModel.getMarkerAnnotation(other));
+		assertFalse(fModel.getAnnotationIterator().hasNext());
+	}
+
+	public void testConnectSkipsInvalidPositions() throws Exception {
+		IMarker marker= createMarker(6, 11);
+		IMarker beyondEnd= createMarker(CONTENT.length() - 2, CONTENT.length() + 3);
+		fModel.connect(fDocument);
+		assertAnnotation(marker, 6, 5);
+		assertNull(fModel.getMarkerAnnotation(beyondEnd));
+	}
+
+	public void testConnectAddsRemainingAnnotations() throws Exception {
+		IMarker first= createMarker(0, 5);
+		final IMarker failing= createMarker(6, 11);
+		IMarker last= createMarker(12, 17);
+		fModel= new ResourceMarkerAnnotationModel(fFile) {
+			protected void addAnnotation(Annotation annotation, Position position, boolean fireModelChanged) throws BadLocationException {
+				if (annotation instanceof MarkerAnnotation && failing.equals(((MarkerAnnotation) annotation).getMarker()))
+					throw new BadLocationException();
+				super.addAnnotation(annotation, position, fireModelChanged);
+			}
+		};
+		fModel.connect(fDocument);
+		assertAnnotation(first, 0, 5);
+		assertNull(fModel.getMarkerAnnotation(failing));
+		assertAnnotation(last, 12, 5);
+	}
+
+	public void testReconnectReportsChangedMarkers() throws Exception {
+		IMarker marker= createMarker(6, 11);
+		fModel.connect(fDocument);
+		MarkerAnnotation annotation= fModel.getMarkerAnnotation(marker);
+		fModel.disconnect(fDocument);
+
+		marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+
+		EventRecorder recorder= new EventRecorder();
+		fModel.addAnnotationModelListener(recorder);
+		fModel.connect(fDocument);
+
+		assertSame(annotation, fModel.getMarkerAnnotation(marker));
+		assertEquals(1, recorder.fEvents.size());
+		AnnotationModelEvent event= (AnnotationModelEvent) recorder.fEvents.get(0);
+		assertEquals(1, event.getChangedAnnotations().length);
+		assertSame(annotation, event.getChangedAnnotations()[0]);
+		assertEquals(0, event.getAddedAnnotations().length);
+		assertEquals(0, event.getRemovedAnnotations().length);
+	}
+}
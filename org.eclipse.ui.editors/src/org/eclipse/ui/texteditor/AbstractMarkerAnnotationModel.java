@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,8 +11,12 @@
 package org.eclipse.ui.texteditor;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.osgi.framework.Bundle;
 
@@ -65,8 +69,15 @@ import org.eclipse.ui.editors.text.EditorsUI;
  */
 public abstract class AbstractMarkerAnnotationModel extends AnnotationModel implements IPersistableAnnotationModel {
 
-	/** List of annotations whose text range became invalid because of document changes */
-	private List fDeletedAnnotations= new ArrayList(2);
+	/** Set of annotations whose text range became invalid because of document changes */
+	private Set fDeletedAnnotations= new LinkedHashSet(2);
+	/** Maps the markers to their annotations in this model */
+	private Map fMarkerAnnotations= new HashMap();
+	/**
+	 * Marker annotations in this model whose marker is already mapped to another annotation in
+	 * {@link #fMarkerAnnotations}.
+	 */
+	private List fDuplicateMarkerAnnotations= new ArrayList(0);
 	/** List of registered and instantiated marker updaters */
 	private List fInstantiatedMarkerUpdaters= null;
 	/** List of registered but not yet instantiated marker updaters */
@@ -232,6 +243,69 @@ public abstract class AbstractMarkerAnnotationModel extends AnnotationModel impl
 		}
 	}
 
+	/*
+	 * @see org.eclipse.jface.text.source.AnnotationModel#addAnnotation(org.eclipse.jface.text.source.Annotation, org.eclipse.jface.text.Position, boolean)
+	 */
+	protected void addAnnotation(Annotation annotation, Position position, boolean fireModelChanged) throws BadLocationException {
+		if (!(annotation instanceof MarkerAnnotation) || getAnnotationMap().containsKey(annotation)) {
+			super.addAnnotation(annotation, position, fireModelChanged);
+			return;
+		}
+
+		super.addAnnotation(annotation, position, false);
+
+		MarkerAnnotation markerAnnotation= (MarkerAnnotation) annotation;
+		IMarker marker= markerAnnotation.getMarker();
+		if (fMarkerAnnotations.containsKey(marker))
+			fDuplicateMarkerAnnotations.add(markerAnnotation);
+		else
+			fMarkerAnnotations.put(marker, markerAnnotation);
+
+		if (fireModelChanged)
+			fireModelChanged();
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.source.AnnotationModel#removeAnnotation(org.eclipse.jface.text.source.Annotation, boolean)
+	 */
+	protected void removeAnnotation(Annotation annotation, boolean fireModelChanged) {
+		if (!(annotation instanceof MarkerAnnotation) || !getAnnotationMap().containsKey(annotation)) {
+			super.removeAnnotation(annotation, fireModelChanged);
+			return;
+		}
+
+		super.removeAnnotation(annotation, false);
+
+		MarkerAnnotation markerAnnotation= (MarkerAnnotation) annotation;
+		IMarker marker= markerAnnotation.getMarker();
+		if (fMarkerAnnotations.get(marker) == markerAnnotation) {
+			fMarkerAnnotations.remove(marker);
+			// promote another annotation for the same marker, if any
+			for (Iterator e= fDuplicateMarkerAnnotations.iterator(); e.hasNext();) {
+				MarkerAnnotation duplicate= (MarkerAnnotation) e.next();
+				if (marker.equals(duplicate.getMarker())) {
+					e.remove();
+					fMarkerAnnotations.put(marker, duplicate);
+					break;
+				}
+			}
+		} else
+			fDuplicateMarkerAnnotations.remove(markerAnnotation);
+
+		if (fireModelChanged)
+			fireModelChanged();
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.source.AnnotationModel#removeAllAnnotations(boolean)
+	 */
+	protected void removeAllAnnotations(boolean fireModelChanged) {
+		// listeners notified by super must not find the removed annotations
+		fMarkerAnnotations.clear();
+		fDuplicateMarkerAnnotations.clear();
+		super.removeAllAnnotations(fireModelChanged);
+	}
+
 	/**
 	 * Connects to the source of markers as marker change listener.
 	 * @see AnnotationModel#connected()
@@ -387,23 +461,71 @@ public abstract class AbstractMarkerAnnotationModel extends AnnotationModel impl
 	}
 
 	/**
-	 * Re-populates this model with annotations for all markers retrieved
-	 * from the maker source via <code>retrieveMarkers</code>.
+	 * Brings this model in sync with the markers retrieved from the maker
+	 * source via <code>retrieveMarkers</code>.
+	 * <p>
+	 * Annotations of markers that still exist are kept, updated and reported
+	 * as changed. Annotations are only created for new markers and only removed
+	 * for markers that no longer exist or are no longer acceptable. Markers
+	 * whose position is not valid in the document are skipped, and an annotation
+	 * that cannot be added does not prevent the others from being added.
+	 * </p>
 	 *
 	 * @throws CoreException if there is a problem getting the markers
 	 */
 	private void catchupWithMarkers() throws CoreException {
 
-		for (Iterator e=getAnnotationIterator(false); e.hasNext();) {
-			Annotation a= (Annotation) e.next();
-			if (a instanceof MarkerAnnotation)
-				removeAnnotation(a, false);
+		IMarker[] markers= retrieveMarkers();
+		if (markers == null)
+			markers= new IMarker[0];
+
+		Map remaining= new HashMap(fMarkerAnnotations);
+		List toRemove= new ArrayList(fDuplicateMarkerAnnotations);
+		Map toAdd= new HashMap();
+		int documentLength= fDocument != null ? fDocument.getLength() : 0;
+
+		for (int i= 0; i < markers.length; i++) {
+			IMarker marker= markers[i];
+			if (!isAcceptable(marker))
+				continue;
+
+			Position p= createPositionFromMarker(marker);
+			if (p == null || p.getOffset() < 0 || p.getLength() < 0 || p.getOffset() + p.getLength() > documentLength)
+				continue;
+
+			MarkerAnnotation a= (MarkerAnnotation) remaining.remove(marker);
+			if (a == null) {
+				a= createMarkerAnnotation(marker);
+				if (a != null)
+					toAdd.put(a, p);
+				continue;
+			}
+
+			a.update();
+			Position current= (Position) getAnnotationMap().get(a);
+			if (current == null || current.isDeleted()) {
+				// re-add with a fresh position
+				toRemove.add(a);
+				toAdd.put(a, p);
+			} else {
+				// reports the annotation as changed and moves it if needed
+				modifyAnnotationPosition(a, p, false);
+			}
 		}
 
-		IMarker[] markers= retrieveMarkers();
-		if (markers != null) {
-			for (int i= 0; i < markers.length; i++)
-				addMarkerAnnotation(markers[i]);
+		// markers which no longer exist or are no longer acceptable
+		toRemove.addAll(remaining.values());
+
+		for (Iterator e= toRemove.iterator(); e.hasNext();)
+			removeAnnotation((Annotation) e.next(), false);
+
+		for (Iterator e= toAdd.entrySet().iterator(); e.hasNext();) {
+			Map.Entry entry= (Map.Entry) e.next();
+			try {
+				addAnnotation((Annotation) entry.getKey(), (Position) entry.getValue(), false);
+			} catch (BadLocationException x) {
+				// ignore invalid position
+			}
 		}
 	}
 
@@ -414,17 +536,7 @@ public abstract class AbstractMarkerAnnotationModel extends AnnotationModel impl
 	 * @return the annotation, or <code>null</code> if none
 	 */
 	public final MarkerAnnotation getMarkerAnnotation(IMarker marker) {
-		Iterator e= getAnnotationIterator(false);
-		while (e.hasNext()) {
-			Object o= e.next();
-			if (o instanceof MarkerAnnotation) {
-				MarkerAnnotation a= (MarkerAnnotation) o;
-				if (marker.equals(a.getMarker())) {
-					return a;
-				}
-			}
-		}
-		return null;
+		return (MarkerAnnotation) fMarkerAnnotations.get(marker);
 	}
 
 	/**
@@ -568,15 +680,13 @@ public abstract class AbstractMarkerAnnotationModel extends AnnotationModel impl
 					MarkerAnnotation a= (MarkerAnnotation) o;
 					IMarker marker= a.getMarker();
 					Position position= (Position) annotationMap.get(a);
-					if ( !updateMarker(marker, document, position)) {
-						if ( !fDeletedAnnotations.contains(a))
-							fDeletedAnnotations.add(a);
-					}
+					if ( !updateMarker(marker, document, position))
+						fDeletedAnnotations.add(a);
 				}
 			}
 
 			if (!fDeletedAnnotations.isEmpty()) {
-				removeAnnotations(fDeletedAnnotations, true, true);
+				removeAnnotations(new ArrayList(fDeletedAnnotations), true, true);
 				fDeletedAnnotations.clear();
 			}
 
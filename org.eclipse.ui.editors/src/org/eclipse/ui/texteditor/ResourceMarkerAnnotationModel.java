@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,6 @@
  *******************************************************************************/
 package org.eclipse.ui.texteditor;
 
-import java.util.HashSet;
-import java.util.Iterator;
-
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -26,8 +23,6 @@ import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IWorkspace;
 import org.eclipse.core.resources.IWorkspaceRunnable;
 
-import org.eclipse.jface.text.Position;
-
 
 
 /**
@@ -86,7 +81,8 @@ public class ResourceMarkerAnnotationModel extends AbstractMarkerAnnotationModel
 	}
 
 	/**
-	 * Updates this model to the given marker deltas.
+	 * Updates this model to the given marker deltas. All changes are applied
+	 * before a single model change event is sent out.
 	 *
 	 * @param markerDeltas the array of marker deltas
 	 */
@@ -95,8 +91,8 @@ public class ResourceMarkerAnnotationModel extends AbstractMarkerAnnotationModel
 		if (markerDeltas.length ==  0)
 			return;
 
-		if (markerDeltas.length == 1) {
-			IMarkerDelta delta= markerDeltas[0];
+		for (int i= 0; i < markerDeltas.length; i++) {
+			IMarkerDelta delta= markerDeltas[i];
 			switch (delta.getKind()) {
 				case IResourceDelta.ADDED :
 					addMarkerAnnotation(delta.getMarker());
@@ -108,66 +104,9 @@ public class ResourceMarkerAnnotationModel extends AbstractMarkerAnnotationModel
 					modifyMarkerAnnotation(delta.getMarker());
 					break;
 			}
-		} else
-			batchedUpdate(markerDeltas);
-
-		fireModelChanged();
-	}
-
-	/**
-	 * Updates this model to the given marker deltas.
-	 *
-	 * @param markerDeltas the array of marker deltas
-	 */
-	private void batchedUpdate(IMarkerDelta[] markerDeltas) {
-		HashSet removedMarkers= new HashSet(markerDeltas.length);
-		HashSet modifiedMarkers= new HashSet(markerDeltas.length);
-
-		for (int i= 0; i < markerDeltas.length; i++) {
-			IMarkerDelta delta= markerDeltas[i];
-			switch (delta.getKind()) {
-				case IResourceDelta.ADDED:
-					addMarkerAnnotation(delta.getMarker());
-					break;
-				case IResourceDelta.REMOVED:
-					removedMarkers.add(delta.getMarker());
-					break;
-				case IResourceDelta.CHANGED:
-					modifiedMarkers.add(delta.getMarker());
-					break;
-				}
-		}
-
-		if (modifiedMarkers.isEmpty() && removedMarkers.isEmpty())
-			return;
-
-		Iterator e= getAnnotationIterator(false);
-		while (e.hasNext()) {
-			Object o= e.next();
-			if (o instanceof MarkerAnnotation) {
-				MarkerAnnotation a= (MarkerAnnotation)o;
-				IMarker marker= a.getMarker();
-
-				if (removedMarkers.remove(marker))
-					removeAnnotation(a, false);
-
-				if (modifiedMarkers.remove(marker)) {
-					Position p= createPositionFromMarker(marker);
-					if (p != null) {
-						a.update();
-						modifyAnnotationPosition(a, p, false);
-					}
-				}
-
-				if (modifiedMarkers.isEmpty() && removedMarkers.isEmpty())
-					return;
-
-			}
 		}
 
-		Iterator iter= modifiedMarkers.iterator();
-		while (iter.hasNext())
-			addMarkerAnnotation((IMarker)iter.next());
+		fireModelChanged();
 	}
 
 	/*
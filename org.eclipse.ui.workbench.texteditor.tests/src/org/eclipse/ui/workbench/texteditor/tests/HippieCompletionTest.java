@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,13 @@
  *******************************************************************************/
 package org.eclipse.ui.workbench.texteditor.tests;
 
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import junit.framework.Test;
 import junit.framework.TestCase;
@@ -29,6 +32,7 @@ import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 
 import org.eclipse.ui.internal.texteditor.HippieCompletionEngine;
+import org.eclipse.ui.internal.texteditor.HippieWordIndex;
 
 
 /**
@@ -581,6 +585,106 @@ public class HippieCompletionTest extends TestCase {
 
 	}
 
+	/*
+	 * Completions from the word index
+	 * @since 3.9
+	 */
+	public void testIndex() throws Exception {
+		Random random= new Random(42);
+		String[] parts= { "a", "ab", "b", "a_b", "$", "1", " ", "\n", ".", "(", "\u0085", "\u0300", "\u0903", "\u00B2" };
+		String[] prefixes= { "a", "ab", "b", "$", "_", "1", "a\u0300" };
+		IDocument document= new Document(createText(random, parts, 200));
+		HippieCompletionEngine scanner= new HippieCompletionEngine(false);
+
+		waitForIndex(document);
+		assertSameCompletions(scanner, document, prefixes);
+		for (int i= 0; i < 20; i++) {
+			int offset= random.nextInt(document.getLength() + 1);
+			int length= random.nextInt(Math.min(5, document.getLength() - offset) + 1);
+			document.replace(offset, length, createText(random, parts, random.nextInt(4)));
+			assertSameCompletions(scanner, document, prefixes);
+		}
+	}
+
+	/*
+	 * The word index is not used for surrogate characters
+	 * @since 3.9
+	 */
+	public void testIndexSurrogates() throws Exception {
+		IDocument document= new Document("bar \uD835\uDC00bar bar1 bar\uD835\uDC00 bar");
+		HippieWordIndex index= HippieWordIndex.getIndex(document);
+		index.isAvailable();
+		Thread.sleep(100);
+		assertFalse(index.isAvailable());
+
+		List completions= fEngine.getCompletionsBackwards(document, "bar", document.getLength());
+		assertEquals(new HippieCompletionEngine(false).getCompletionsBackwards(document, "bar", document.getLength()), completions);
+	}
+
+	/*
+	 * A disposed index does not answer queries any more and is replaced by a new one
+	 * @since 3.9
+	 */
+	public void testIndexDisposal() throws Exception {
+		IDocument document= new Document("foo bar foobar");
+		waitForIndex(document);
+		HippieWordIndex index= HippieWordIndex.getIndex(document);
+		index.dispose();
+		assertFalse(index.isAvailable());
+		assertNull(index.findForward("foo", 0, true));
+
+		document.replace(0, 0, "food ");
+		assertNotSame(index, HippieWordIndex.getIndex(document));
+		waitForIndex(document);
+		assertSameCompletions(new HippieCompletionEngine(false), document, new String[] { "foo", "b" });
+		HippieWordIndex.getIndex(document).dispose();
+	}
+
+	/*
+	 * The shared word index does not keep its document alive
+	 * @since 3.9
+	 */
+	public void testIndexReleasesDocument() throws Exception {
+		IDocument document= new Document("foo bar foobar");
+		waitForIndex(document);
+		Reference reference= new WeakReference(document);
+		document= null;
+
+		long end= System.currentTimeMillis() + 10000;
+		while (reference.get() != null) {
+			assertTrue("document not collected", System.currentTimeMillis() < end);
+			System.gc();
+			Thread.sleep(10);
+		}
+	}
+
+	private String createText(Random random, String[] parts, int count) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < count; i++)
+			buffer.append(parts[random.nextInt(parts.length)]);
+		return buffer.toString();
+	}
+
+	private void waitForIndex(IDocument document) throws InterruptedException {
+		long end= System.currentTimeMillis() + 10000;
+		while (!HippieWordIndex.getIndex(document).isAvailable()) {
+			assertTrue("index not computed", System.currentTimeMillis() < end);
+			Thread.sleep(10);
+		}
+	}
+
+	private void assertSameCompletions(HippieCompletionEngine scanner, IDocument document, String[] prefixes) throws BadLocationException {
+		assertTrue(HippieWordIndex.getIndex(document).isAvailable());
+		for (int i= 0; i < prefixes.length; i++) {
+			for (int offset= 0; offset <= document.getLength(); offset++) {
+				String message= prefixes[i] + " at " + offset;
+				assertEquals(message, scanner.getCompletionsBackwards(document, prefixes[i], offset), fEngine.getCompletionsBackwards(document, prefixes[i], offset));
+				assertEquals(message, scanner.getCompletionsForward(document, prefixes[i], offset, true), fEngine.getCompletionsForward(document, prefixes[i], offset, true));
+				assertEquals(message, scanner.getCompletionsForward(document, prefixes[i], offset, false), fEngine.getCompletionsForward(document, prefixes[i], offset, false));
+			}
+		}
+	}
+
 	public static Test suite() {
 		return new TestSuite(HippieCompletionTest.class);
 	}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.IConfigurationElement;
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.rules.EndOfLineRule;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.eclipse.jface.text.rules.Token;
+
+import org.eclipse.ui.internal.texteditor.spelling.ParallelSpellingChecker;
+import org.eclipse.ui.texteditor.spelling.ISpellingEngine;
+import org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector;
+import org.eclipse.ui.texteditor.spelling.SpellingContext;
+import org.eclipse.ui.texteditor.spelling.SpellingEngineDescriptor;
+import org.eclipse.ui.texteditor.spelling.SpellingProblem;
+
+
+/**
+ * Tests the {@link ParallelSpellingChecker}.
+ *
+ * @since 3.9
+ */
+public class ParallelSpellingCheckerTest extends TestCase {
+
+	private static final String COMMENT= "comment"; //$NON-NLS-1$
+	private static final String MISSPELLED= "wrnog"; //$NON-NLS-1$
+	private static final long TIMEOUT= 10000;
+
+	/**
+	 * Spelling problem at a fixed offset.
+	 */
+	private static class Problem extends SpellingProblem {
+
+		private final int fOffset;
+
+		Problem(int offset) {
+			fOffset= offset;
+		}
+
+		public int getOffset() {
+			return fOffset;
+		}
+
+		public int getLength() {
+			return MISSPELLED.length();
+		}
+
+		public String getMessage() {
+			return MISSPELLED;
+		}
+
+		public ICompletionProposal[] getProposals() {
+			return new ICompletionProposal[0];
+		}
+	}
+
+	/**
+	 * Spelling engine which reports the misspelled word in comments.
+	 */
+	private class Engine implements ISpellingEngine {
+
+		public void check(IDocument document, IRegion[] regions, SpellingContext context, ISpellingProblemCollector collector, IProgressMonitor monitor) {
+			engineStarted(document);
+			try {
+				for (int i= 0; i < regions.length; i++) {
+					int end= regions[i].getOffset() + regions[i].getLength();
+					for (int offset= regions[i].getOffset(); offset + MISSPELLED.length() <= end; offset++) {
+						if (MISSPELLED.equals(document.get(offset, MISSPELLED.length())) && COMMENT.equals(TextUtilities.getContentType(document, IDocumentExtension3.DEFAULT_PARTITIONING, offset, false)))
+							collector.accept(new Problem(offset));
+					}
+				}
+			} catch (BadLocationException x) {
+				engineFailed(x);
+			}
+		}
+	}
+
+	/**
+	 * Collects the reported problems.
+	 */
+	private static class Collector implements ISpellingProblemCollector {
+
+		final List fOffsets= new ArrayList();
+
+		public void accept(SpellingProblem problem) {
+			fOffsets.add(new Integer(problem.getOffset()));
+		}
+
+		public void beginCollecting() {
+		}
+
+		public void endCollecting() {
+		}
+	}
+
+	private Document fDocument;
+	private final List fCheckedDocuments= new ArrayList();
+	private Throwable fFailure;
+	private boolean fDone;
+
+	public static Test suite() {
+		return new TestSuite(ParallelSpellingCheckerTest.class);
+	}
+
+	protected void setUp() {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 5000; i++)
+			buffer.append(i % 2 == 0 ? "# some " + MISSPELLED + " text\n" : "code " + MISSPELLED + " code\n"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		fDocument= new Document(buffer.toString());
+
+		RuleBasedPartitionScanner scanner= new RuleBasedPartitionScanner();
+		scanner.setPredicateRules(new IPredicateRule[] { new EndOfLineRule("#", new Token(COMMENT)) }); //$NON-NLS-1$
+		FastPartitioner partitioner= new FastPartitioner(scanner, new String[] { COMMENT });
+		fDocument.setDocumentPartitioner(partitioner);
+		partitioner.connect(fDocument);
+	}
+
+	synchronized void engineStarted(IDocument document) {
+		fCheckedDocuments.add(document);
+		notifyAll();
+	}
+
+	synchronized void engineFailed(Throwable x) {
+		fFailure= x;
+	}
+
+	synchronized void waitForEngine() throws InterruptedException {
+		long end= System.currentTimeMillis() + TIMEOUT;
+		while (fCheckedDocuments.isEmpty() && !fDone && System.currentTimeMillis() < end)
+			wait(50);
+	}
+
+	synchronized boolean isDone() {
+		return fDone;
+	}
+
+	private synchronized void setDone() {
+		fDone= true;
+		notifyAll();
+	}
+
+	private SpellingEngineDescriptor createDescriptor() {
+		IConfigurationElement element= (IConfigurationElement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { IConfigurationElement.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		});
+		return new SpellingEngineDescriptor(element) {
+			public ISpellingEngine createEngine() {
+				return new Engine();
+			}
+		};
+	}
+
+	private List getExpectedOffsets(String text) {
+		List offsets= new ArrayList();
+		int lineStart= 0;
+		while (lineStart < text.length()) {
+			int lineEnd= text.indexOf('\n', lineStart);
+			if (text.charAt(lineStart) == '#')
+				offsets.add(new Integer(text.indexOf(MISSPELLED, lineStart)));
+			lineStart= lineEnd + 1;
+		}
+		return offsets;
+	}
+
+	public void testCheckWhileDocumentIsModified() throws Exception {
+		String original= fDocument.get();
+		Thread modifier= new Thread() {
+			public void run() {
+				try {
+					waitForEngine();
+					for (int i= 0; !isDone(); i++) {
+						if (i % 2 == 0)
+							fDocument.replace(0, 0, "x\n# " + MISSPELLED + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+						else
+							fDocument.replace(0, 1, ""); //$NON-NLS-1$
+						Thread.yield();
+					}
+				} catch (Exception x) {
+					engineFailed(x);
+				}
+			}
+		};
+		modifier.start();
+
+		Collector collector= new Collector();
+		boolean checked;
+		try {
+			checked= new ParallelSpellingChecker(fDocument, new SpellingContext()).check(createDescriptor(), new Engine(), new IRegion[] { new Region(0, original.length()) }, collector, null);
+		} finally {
+			setDone();
+			modifier.join(TIMEOUT);
+		}
+
+		if (!checked) {
+			// a single processor, the regions are checked sequentially by the caller
+			assertEquals(1, Runtime.getRuntime().availableProcessors());
+			return;
+		}
+
+		assertNull(fFailure);
+		assertTrue(fCheckedDocuments.size() > 1);
+		for (int i= 0; i < fCheckedDocuments.size(); i++)
+			assertNotSame(fDocument, fCheckedDocuments.get(i));
+		assertEquals(getExpectedOffsets(original), collector.fOffsets);
+	}
+}
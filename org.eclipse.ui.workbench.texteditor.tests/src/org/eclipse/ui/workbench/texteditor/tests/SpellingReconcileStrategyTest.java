@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.content.IContentType;
+
+import org.eclipse.jface.preference.PreferenceStore;
+import org.eclipse.jface.util.IPropertyChangeListener;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.contentassist.ICompletionProposal;
+import org.eclipse.jface.text.rules.FastPartitioner;
+import org.eclipse.jface.text.rules.IPredicateRule;
+import org.eclipse.jface.text.rules.MultiLineRule;
+import org.eclipse.jface.text.rules.RuleBasedPartitionScanner;
+import org.eclipse.jface.text.rules.Token;
+import org.eclipse.jface.text.source.Annotation;
+import org.eclipse.jface.text.source.AnnotationModel;
+import org.eclipse.jface.text.source.IAnnotationModel;
+import org.eclipse.jface.text.source.ISourceViewer;
+
+import org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector;
+import org.eclipse.ui.texteditor.spelling.SpellingAnnotation;
+import org.eclipse.ui.texteditor.spelling.SpellingContext;
+import org.eclipse.ui.texteditor.spelling.SpellingProblem;
+import org.eclipse.ui.texteditor.spelling.SpellingReconcileStrategy;
+import org.eclipse.ui.texteditor.spelling.SpellingService;
+
+
+/**
+ * Tests the cache of correct lines of the {@link SpellingReconcileStrategy}.
+ *
+ * @since 3.9
+ */
+public class SpellingReconcileStrategyTest extends TestCase {
+
+	private static final String COMMENT= "comment"; //$NON-NLS-1$
+	private static final String MISSPELLED= "wrnog"; //$NON-NLS-1$
+
+	/**
+	 * Spelling problem at a fixed range.
+	 */
+	private static class Problem extends SpellingProblem {
+
+		private final int fOffset;
+		private final int fLength;
+
+		Problem(int offset, int length) {
+			fOffset= offset;
+			fLength= length;
+		}
+
+		public int getOffset() {
+			return fOffset;
+		}
+
+		public int getLength() {
+			return fLength;
+		}
+
+		public String getMessage() {
+			return MISSPELLED;
+		}
+
+		public ICompletionProposal[] getProposals() {
+			return new ICompletionProposal[0];
+		}
+	}
+
+	/**
+	 * Spelling service which reports the misspelled word in comments and records the
+	 * checked regions.
+	 */
+	private static class Service extends SpellingService {
+
+		private final List fChecked= new ArrayList();
+		private boolean fCheckAllPartitions= true;
+
+		Service(PreferenceStore store) {
+			super(store);
+		}
+
+		public void check(IDocument document, IRegion[] regions, SpellingContext context, ISpellingProblemCollector collector, IProgressMonitor monitor) {
+			collector.beginCollecting();
+			try {
+				for (int i= 0; i < regions.length; i++) {
+					String text= document.get(regions[i].getOffset(), regions[i].getLength());
+					fChecked.add(text);
+					for (int index= text.indexOf(MISSPELLED); index != -1; index= text.indexOf(MISSPELLED, index + 1)) {
+						int offset= regions[i].getOffset() + index;
+						if (fCheckAllPartitions || COMMENT.equals(TextUtilities.getContentType(document, IDocumentExtension3.DEFAULT_PARTITIONING, offset, false)))
+							collector.accept(new Problem(offset, MISSPELLED.length()));
+					}
+				}
+			} catch (BadLocationException x) {
+				fail();
+			}
+			collector.endCollecting();
+		}
+
+		List getChecked() {
+			List checked= new ArrayList(fChecked);
+			fChecked.clear();
+			return checked;
+		}
+	}
+
+	private PreferenceStore fStore;
+	private Service fService;
+	private Document fDocument;
+	private AnnotationModel fModel;
+	private SpellingReconcileStrategy fStrategy;
+
+	public static Test suite() {
+		return new TestSuite(SpellingReconcileStrategyTest.class);
+	}
+
+	protected void setUp() {
+		fStore= new PreferenceStore();
+		fService= new Service(fStore);
+		fDocument= new Document();
+		fModel= new AnnotationModel();
+		fModel.connect(fDocument);
+
+		ISourceViewer viewer= (ISourceViewer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] { ISourceViewer.class }, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				return null;
+			}
+		});
+		fStrategy= new SpellingReconcileStrategy(viewer, fService) {
+			protected IAnnotationModel getAnnotationModel() {
+				return fModel;
+			}
+			protected IContentType getContentType() {
+				return null;
+			}
+		};
+	}
+
+	protected void tearDown() {
+		fModel.disconnect(fDocument);
+	}
+
+	private void reconcile() {
+		fStrategy.reconcile(new Region(0, fDocument.getLength()));
+	}
+
+	private List getProblemOffsets() {
+		List offsets= new ArrayList();
+		for (Iterator e= fModel.getAnnotationIterator(); e.hasNext();) {
+			Annotation annotation= (Annotation) e.next();
+			if (SpellingAnnotation.TYPE.equals(annotation.getType()))
+				offsets.add(new Integer(fModel.getPosition(annotation).getOffset()));
+		}
+		return offsets;
+	}
+
+	private void assertChecked(String[] expected, List actual) {
+		assertEquals(expected.length, actual.size());
+		for (int i= 0; i < expected.length; i++)
+			assertEquals(expected[i], actual.get(i));
+	}
+
+	public void testCorrectLinesAreNotCheckedAgain() throws BadLocationException {
+		fDocument.set("first\nsecond\nthird"); //$NON-NLS-1$
+		fStrategy.setDocument(fDocument);
+		reconcile();
+		assertChecked(new String[] { "first\nsecond\nthird" }, fService.getChecked()); //$NON-NLS-1$
+
+		reconcile();
+		assertChecked(new String[0], fService.getChecked());
+
+		fDocument.replace(6, 6, "changed"); //$NON-NLS-1$
+		reconcile();
+		assertChecked(new String[] { "changed" }, fService.getChecked()); //$NON-NLS-1$
+	}
+
+	public void testLinesWithProblemsAreCheckedAgain() throws BadLocationException {
+		fDocument.set("first\n" + MISSPELLED + "\nthird"); //$NON-NLS-1$ //$NON-NLS-2$
+		fStrategy.setDocument(fDocument);
+		reconcile();
+		fService.getChecked();
+		assertEquals(1, getProblemOffsets().size());
+
+		reconcile();
+		assertChecked(new String[] { MISSPELLED }, fService.getChecked());
+		assertEquals(1, getProblemOffsets().size());
+		assertEquals(new Integer(6), getProblemOffsets().get(0));
+	}
+
+	public void testPreferenceChangeInvalidatesCache() {
+		fDocument.set("first\nsecond"); //$NON-NLS-1$
+		fStrategy.setDocument(fDocument);
+		reconcile();
+		fService.getChecked();
+
+		fStore.setValue(SpellingService.PREFERENCE_SPELLING_ENABLED, true);
+		reconcile();
+		assertChecked(new String[] { "first\nsecond" }, fService.getChecked()); //$NON-NLS-1$
+
+		fStore.setValue(SpellingService.PREFERENCE_SPELLING_ENGINE, "other.engine"); //$NON-NLS-1$
+		reconcile();
+		assertChecked(new String[] { "first\nsecond" }, fService.getChecked()); //$NON-NLS-1$
+
+		reconcile();
+		assertChecked(new String[0], fService.getChecked());
+	}
+
+	public void testUnrelatedPreferenceChangeKeepsCache() {
+		fDocument.set("first\nsecond"); //$NON-NLS-1$
+		fStrategy.setDocument(fDocument);
+		reconcile();
+		fService.getChecked();
+
+		fStore.setValue("unrelated", "value"); //$NON-NLS-1$ //$NON-NLS-2$
+		reconcile();
+		assertChecked(new String[0], fService.getChecked());
+	}
+
+	public void testServiceDoesNotListenToPreferences() {
+		final List listeners= new ArrayList();
+		new Service(new PreferenceStore() {
+			public void addPropertyChangeListener(IPropertyChangeListener listener) {
+				listeners.add(listener);
+			}
+		});
+		assertEquals(0, listeners.size());
+	}
+
+	public void testSameTextInDifferentPartition() throws BadLocationException {
+		RuleBasedPartitionScanner scanner= new RuleBasedPartitionScanner();
+		scanner.setPredicateRules(new IPredicateRule[] { new MultiLineRule("/*", "*/", new Token(COMMENT), (char) 0, true) }); //$NON-NLS-1$ //$NON-NLS-2$
+		FastPartitioner partitioner= new FastPartitioner(scanner, new String[] { COMMENT });
+		fDocument.setDocumentPartitioner(partitioner);
+		partitioner.connect(fDocument);
+		fService.fCheckAllPartitions= false;
+
+		fDocument.set("code\n" + MISSPELLED + "\n"); //$NON-NLS-1$ //$NON-NLS-2$
+		fStrategy.setDocument(fDocument);
+		reconcile();
+		fService.getChecked();
+		assertEquals(0, getProblemOffsets().size());
+
+		// the same line is now inside a comment
+		fDocument.replace(0, 0, "/*\n"); //$NON-NLS-1$
+		reconcile();
+		assertChecked(new String[] { "/*\ncode\n" + MISSPELLED }, fService.getChecked()); //$NON-NLS-1$
+		assertEquals(1, getProblemOffsets().size());
+		assertEquals(new Integer(8), getProblemOffsets().get(0));
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import org.eclipse.jface.text.templates.Template;
+import org.eclipse.jface.text.templates.persistence.TemplatePersistenceData;
+import org.eclipse.jface.text.templates.persistence.TemplateReaderWriter;
+
+
+/**
+ * Measures reading and saving a synthetic template file with many templates.
+ *
+ * @since 3.9
+ */
+public class TemplateReaderWriterPerformanceTest extends PerformanceTestCase {
+
+	/** The number of templates in the synthetic file. */
+	private static final int TEMPLATES= 50000;
+	private static final int WARM_UP_RUNS= 2;
+	private static final int MEASURED_RUNS= 5;
+
+	private static final String PATTERN= "for (int ${index} = 0; ${index} < ${array}.length; ${index}++) {\n\t${line_selection}${cursor}\n}"; //$NON-NLS-1$
+
+	private TemplatePersistenceData[] fTemplates;
+
+	private byte[] fContents;
+
+	public static Test suite() {
+		return new TestSuite(TemplateReaderWriterPerformanceTest.class);
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceTestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		fTemplates= new TemplatePersistenceData[TEMPLATES];
+		for (int i= 0; i < TEMPLATES; i++) {
+			Template template= new Template("template" + i, "iterate over array <" + i + ">", "java", PATTERN, i % 2 == 0); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			fTemplates[i]= new TemplatePersistenceData(template, true, "org.eclipse.test.template" + i); //$NON-NLS-1$
+		}
+		fContents= save();
+	}
+
+	/*
+	 * @see org.eclipse.test.performance.PerformanceTestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		fTemplates= null;
+		fContents= null;
+		super.tearDown();
+	}
+
+	private byte[] save() throws IOException {
+		ByteArrayOutputStream stream= new ByteArrayOutputStream();
+		new TemplateReaderWriter().save(fTemplates, stream);
+		return stream.toByteArray();
+	}
+
+	public void testRead() throws Exception {
+		for (int i= 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			if (i >= WARM_UP_RUNS)
+				startMeasuring();
+			TemplatePersistenceData[] templates= new TemplateReaderWriter().read(new ByteArrayInputStream(fContents), null);
+			if (i >= WARM_UP_RUNS)
+				stopMeasuring();
+			assertEquals(TEMPLATES, templates.length);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testSave() throws Exception {
+		for (int i= 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			if (i >= WARM_UP_RUNS)
+				startMeasuring();
+			byte[] contents= save();
+			if (i >= WARM_UP_RUNS)
+				stopMeasuring();
+			assertEquals(fContents.length, contents.length);
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+}
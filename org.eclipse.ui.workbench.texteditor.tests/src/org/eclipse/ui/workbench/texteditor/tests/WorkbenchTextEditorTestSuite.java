@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2012 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -13,6 +13,8 @@ package org.eclipse.ui.workbench.texteditor.tests;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
+import org.eclipse.ui.workbench.texteditor.tests.quickdiff.DiffAlgorithmTest;
+import org.eclipse.ui.workbench.texteditor.tests.quickdiff.DocumentEquivalenceClassTest;
 import org.eclipse.ui.workbench.texteditor.tests.revisions.ChangeRegionTest;
 import org.eclipse.ui.workbench.texteditor.tests.revisions.HunkComputerTest;
 import org.eclipse.ui.workbench.texteditor.tests.revisions.RangeTest;
@@ -35,6 +37,10 @@ public class WorkbenchTextEditorTestSuite extends TestSuite {
         suite.addTest(ChangeRegionTest.suite());
         suite.addTest(RulerTestSuite.suite());
         suite.addTest(HunkComputerTest.suite());
+        suite.addTest(DocumentEquivalenceClassTest.suite());
+        suite.addTest(DiffAlgorithmTest.suite());
+        suite.addTest(SpellingReconcileStrategyTest.suite());
+        suite.addTest(ParallelSpellingCheckerTest.suite());
         suite.addTest(ScreenshotTest.suite());
 
 		//$JUnit-END$
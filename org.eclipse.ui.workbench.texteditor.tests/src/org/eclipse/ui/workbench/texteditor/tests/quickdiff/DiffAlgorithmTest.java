@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests.quickdiff;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.HistogramDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.IDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.MyersDiffAlgorithm;
+
+
+/**
+ * Tests the {@link IDiffAlgorithm} implementations.
+ *
+ * @since 3.9
+ */
+public class DiffAlgorithmTest extends TestCase {
+
+	public static Test suite() {
+		return new TestSuite(DiffAlgorithmTest.class);
+	}
+
+	/**
+	 * Computes the length of the longest common subsequence.
+	 *
+	 * @param a the left sequence
+	 * @param b the right sequence
+	 * @return the length of the longest common subsequence
+	 */
+	private int lcsLength(int[] a, int[] b) {
+		int[][] lcs= new int[a.length + 1][b.length + 1];
+		for (int i= a.length - 1; i >= 0; i--) {
+			for (int j= b.length - 1; j >= 0; j--) {
+				if (a[i] == b[j])
+					lcs[i][j]= lcs[i + 1][j + 1] + 1;
+				else
+					lcs[i][j]= Math.max(lcs[i + 1][j], lcs[i][j + 1]);
+			}
+		}
+		return lcs[0][0];
+	}
+
+	/**
+	 * Asserts that the runs are ordered, merged and describe common lines.
+	 *
+	 * @param a the left sequence
+	 * @param b the right sequence
+	 * @param runs the runs
+	 * @return the number of common lines
+	 */
+	private int assertValidRuns(int[] a, int[] b, int[] runs) {
+		assertEquals(0, runs.length % 3);
+		int common= 0;
+		int leftEnd= 0, rightEnd= 0;
+		for (int i= 0; i < runs.length; i += 3) {
+			int leftStart= runs[i], rightStart= runs[i + 1], length= runs[i + 2];
+			assertTrue(length > 0);
+			assertTrue(leftStart >= leftEnd);
+			assertTrue(rightStart >= rightEnd);
+			if (i > 0)
+				assertTrue("runs not merged", leftStart > leftEnd || rightStart > rightEnd); //$NON-NLS-1$
+			assertTrue(leftStart + length <= a.length);
+			assertTrue(rightStart + length <= b.length);
+			for (int j= 0; j < length; j++)
+				assertEquals(a[leftStart + j], b[rightStart + j]);
+			leftEnd= leftStart + length;
+			rightEnd= rightStart + length;
+			common += length;
+		}
+		return common;
+	}
+
+	private int[] createRandomSequence(Random random, int length, int alphabet) {
+		int[] sequence= new int[length];
+		for (int i= 0; i < length; i++)
+			sequence[i]= random.nextInt(alphabet);
+		return sequence;
+	}
+
+	private int[] edit(Random random, int[] sequence, int edits, int alphabet) {
+		int[] result= sequence;
+		for (int i= 0; i < edits; i++) {
+			int offset= random.nextInt(result.length + 1);
+			int removed= random.nextInt(Math.min(3, result.length - offset) + 1);
+			int[] inserted= createRandomSequence(random, random.nextInt(3), alphabet);
+			int[] edited= new int[result.length - removed + inserted.length];
+			System.arraycopy(result, 0, edited, 0, offset);
+			System.arraycopy(inserted, 0, edited, offset, inserted.length);
+			System.arraycopy(result, offset + removed, edited, offset + inserted.length, result.length - offset - removed);
+			result= edited;
+		}
+		return result;
+	}
+
+	public void testEmpty() {
+		IDiffAlgorithm[] algorithms= { new MyersDiffAlgorithm(), new HistogramDiffAlgorithm() };
+		for (int i= 0; i < algorithms.length; i++) {
+			assertEquals(0, algorithms[i].findCommonRuns(new int[0], new int[0], null).length);
+			assertEquals(0, algorithms[i].findCommonRuns(new int[] { 1, 2 }, new int[0], null).length);
+			assertEquals(0, algorithms[i].findCommonRuns(new int[0], new int[] { 1, 2 }, null).length);
+			assertEquals(0, algorithms[i].findCommonRuns(new int[] { 1, 2 }, new int[] { 3, 4 }, null).length);
+		}
+	}
+
+	public void testEqual() {
+		int[] a= { 1, 2, 3, 1, 2, 3 };
+		int[] b= { 1, 2, 3, 1, 2, 3 };
+		IDiffAlgorithm[] algorithms= { new MyersDiffAlgorithm(), new HistogramDiffAlgorithm() };
+		for (int i= 0; i < algorithms.length; i++) {
+			int[] runs= algorithms[i].findCommonRuns(a, b, null);
+			assertEquals(3, runs.length);
+			assertEquals(0, runs[0]);
+			assertEquals(0, runs[1]);
+			assertEquals(a.length, runs[2]);
+		}
+	}
+
+	public void testMyersIsMinimal() {
+		Random random= new Random(13);
+		IDiffAlgorithm algorithm= new MyersDiffAlgorithm();
+		for (int i= 0; i < 500; i++) {
+			int alphabet= 1 + random.nextInt(8);
+			int[] a= createRandomSequence(random, random.nextInt(40), alphabet);
+			int[] b= random.nextBoolean() ? createRandomSequence(random, random.nextInt(40), alphabet) : edit(random, a, 1 + random.nextInt(5), alphabet);
+			int common= assertValidRuns(a, b, algorithm.findCommonRuns(a, b, null));
+			assertEquals(lcsLength(a, b), common);
+		}
+	}
+
+	public void testHistogram() {
+		Random random= new Random(17);
+		IDiffAlgorithm algorithm= new HistogramDiffAlgorithm();
+		for (int i= 0; i < 500; i++) {
+			int alphabet= 1 + random.nextInt(100);
+			int[] a= createRandomSequence(random, random.nextInt(200), alphabet);
+			int[] b= edit(random, a, 1 + random.nextInt(5), alphabet);
+			assertValidRuns(a, b, algorithm.findCommonRuns(a, b, null));
+		}
+	}
+
+	public void testLargeInputs() {
+		// exceeds the maximum edit cost of the Myers algorithm
+		Random random= new Random(19);
+		int[] a= createRandomSequence(random, 5000, 50);
+		int[] b= createRandomSequence(random, 4000, 50);
+		assertValidRuns(a, b, new MyersDiffAlgorithm().findCommonRuns(a, b, null));
+		assertValidRuns(a, b, new HistogramDiffAlgorithm().findCommonRuns(a, b, null));
+	}
+
+	public void testHistogramAlignsUniqueLines() {
+		// the unique lines 10 and 11 must be matched instead of the frequent line 0
+		int[] a= { 0, 0, 10, 0, 0, 11 };
+		int[] b= { 0, 10, 0, 0, 0, 11, 0 };
+		int[] runs= new HistogramDiffAlgorithm().findCommonRuns(a, b, null);
+		assertValidRuns(a, b, runs);
+
+		boolean found10= false, found11= false;
+		for (int i= 0; i < runs.length; i += 3) {
+			for (int j= 0; j < runs[i + 2]; j++) {
+				found10 |= a[runs[i] + j] == 10;
+				found11 |= a[runs[i] + j] == 11;
+			}
+		}
+		assertTrue(found10);
+		assertTrue(found11);
+	}
+}
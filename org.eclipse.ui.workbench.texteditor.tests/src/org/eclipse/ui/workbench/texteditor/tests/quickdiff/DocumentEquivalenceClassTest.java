@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests.quickdiff;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.ConfigurableLineTracker;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DJBHashFunction;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DocumentEquivalenceClass;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.IHashFunction;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.SystemHashFunction;
+
+
+/**
+ * Tests {@link DocumentEquivalenceClass}.
+ *
+ * @since 3.9
+ */
+public class DocumentEquivalenceClassTest extends TestCase {
+
+	private static final String[] LINES= { "", "a", "foo", "bar", "foo bar", "\t}" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+	private static final String[] DELIMITERS= { "\n", "\r\n", "\r" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	/**
+	 * Document with custom legal line delimiters.
+	 */
+	private static class ConfigurableDocument extends Document {
+		ConfigurableDocument(String[] delimiters) {
+			setLineTracker(new ConfigurableLineTracker(delimiters));
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(DocumentEquivalenceClassTest.class);
+	}
+
+	private String createRandomText(Random random, int lines) {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < lines; i++) {
+			if (i > 0)
+				buffer.append(DELIMITERS[random.nextInt(DELIMITERS.length)]);
+			buffer.append(LINES[random.nextInt(LINES.length)]);
+		}
+		return buffer.toString();
+	}
+
+	private void assertSameHashes(DocumentEquivalenceClass expected, DocumentEquivalenceClass actual) {
+		assertEquals(expected.getCount(), actual.getCount());
+		for (int line= 0; line < expected.getCount(); line++)
+			assertEquals("line " + line, expected.getHashCode(line), actual.getHashCode(line)); //$NON-NLS-1$
+	}
+
+	private void assertContentsConstructor(String text, IHashFunction hashFunction) {
+		IDocument document= new Document(text);
+		DocumentEquivalenceClass expected= new DocumentEquivalenceClass(document, hashFunction);
+		DocumentEquivalenceClass actual= new DocumentEquivalenceClass(document, text, hashFunction);
+		assertSameHashes(expected, actual);
+	}
+
+	public void testContentsConstructor() {
+		assertContentsConstructor("", new DJBHashFunction()); //$NON-NLS-1$
+		assertContentsConstructor("\n", new DJBHashFunction()); //$NON-NLS-1$
+		assertContentsConstructor("a\r\n\r\rb\n", new DJBHashFunction()); //$NON-NLS-1$
+		assertContentsConstructor("a\r\n\r\rb\n", new SystemHashFunction()); //$NON-NLS-1$
+
+		Random random= new Random(42);
+		for (int i= 0; i < 20; i++)
+			assertContentsConstructor(createRandomText(random, random.nextInt(100)), new DJBHashFunction());
+	}
+
+	public void testContentsConstructorWithLegalDelimiters() {
+		String text= "a\r\nb<c<<\rd\n<<<e"; //$NON-NLS-1$
+		IDocument document= new ConfigurableDocument(new String[] { "\n", "<", "<<" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		document.set(text);
+
+		DocumentEquivalenceClass expected= new DocumentEquivalenceClass(document, new DJBHashFunction());
+		DocumentEquivalenceClass actual= new DocumentEquivalenceClass(document, text, new DJBHashFunction());
+		assertEquals(7, actual.getCount());
+		assertSameHashes(expected, actual);
+	}
+
+	public void testEquivalence() {
+		IDocument document= new Document("foo\nbar\nfoo\n"); //$NON-NLS-1$
+		DocumentEquivalenceClass equivalence= new DocumentEquivalenceClass(document);
+		assertEquals(4, equivalence.getCount());
+		assertEquals(equivalence.getHashCode(0), equivalence.getHashCode(2));
+		assertFalse(equivalence.getHashCode(0) == equivalence.getHashCode(1));
+		assertEquals(equivalence.getHash(0), equivalence.getHash(2));
+	}
+
+	public void testRandomUpdates() throws BadLocationException {
+		Random random= new Random(7);
+		IDocument document= new Document(createRandomText(random, 200));
+		DocumentEquivalenceClass equivalence= new DocumentEquivalenceClass(document, document.get(), new DJBHashFunction());
+
+		for (int i= 0; i < 500; i++) {
+			int offset= random.nextInt(document.getLength() + 1);
+			int length= random.nextInt(Math.min(30, document.getLength() - offset) + 1);
+			String text= createRandomText(random, random.nextInt(4));
+
+			equivalence.update(new DocumentEvent(document, offset, length, text));
+			document.replace(offset, length, text);
+
+			assertSameHashes(new DocumentEquivalenceClass(document), equivalence);
+		}
+	}
+}
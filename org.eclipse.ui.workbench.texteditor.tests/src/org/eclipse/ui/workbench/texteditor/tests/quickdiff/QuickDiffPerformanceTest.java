@@ -0,0 +1,162 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.workbench.texteditor.tests.quickdiff;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.test.performance.PerformanceTestCase;
+
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.HistogramDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.IDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.MyersDiffAlgorithm;
+
+
+/**
+ * Measures the {@link IDiffAlgorithm} implementations on synthetic large files
+ * with typical edit patterns.
+ *
+ * @since 3.9
+ */
+public class QuickDiffPerformanceTest extends PerformanceTestCase {
+
+	/** The number of lines of the synthetic files. */
+	private static final int LINES= 200000;
+	private static final int WARM_UP_RUNS= 2;
+	private static final int MEASURED_RUNS= 5;
+
+	public static Test suite() {
+		return new TestSuite(QuickDiffPerformanceTest.class);
+	}
+
+	/**
+	 * Creates the line hashes of a synthetic source file. Most lines are unique,
+	 * a fraction of them are frequent lines like braces and empty lines.
+	 *
+	 * @param random the random number generator
+	 * @return the line hashes
+	 */
+	private int[] createFile(Random random) {
+		int[] lines= new int[LINES];
+		for (int i= 0; i < lines.length; i++)
+			lines[i]= random.nextInt(4) == 0 ? random.nextInt(8) : 8 + i;
+		return lines;
+	}
+
+	/**
+	 * Applies the given number of edits of at most <code>maxLength</code> lines.
+	 *
+	 * @param random the random number generator
+	 * @param lines the original line hashes
+	 * @param edits the number of edits
+	 * @param maxLength the maximum number of lines removed or inserted by an edit
+	 * @return the edited line hashes
+	 */
+	private int[] edit(Random random, int[] lines, int edits, int maxLength) {
+		int[] result= lines;
+		int id= -1;
+		for (int i= 0; i < edits; i++) {
+			int offset= random.nextInt(result.length);
+			int removed= random.nextInt(Math.min(maxLength, result.length - offset) + 1);
+			int inserted= random.nextInt(maxLength + 1);
+			int[] edited= new int[result.length - removed + inserted];
+			System.arraycopy(result, 0, edited, 0, offset);
+			for (int j= 0; j < inserted; j++)
+				edited[offset + j]= id--;
+			System.arraycopy(result, offset + removed, edited, offset + inserted, result.length - offset - removed);
+			result= edited;
+		}
+		return result;
+	}
+
+	/**
+	 * Moves the given number of blocks of <code>length</code> lines.
+	 *
+	 * @param random the random number generator
+	 * @param lines the original line hashes
+	 * @param moves the number of moves
+	 * @param length the length of the moved blocks
+	 * @return the edited line hashes
+	 */
+	private int[] move(Random random, int[] lines, int moves, int length) {
+		int[] result= new int[lines.length];
+		System.arraycopy(lines, 0, result, 0, lines.length);
+		int[] block= new int[length];
+		for (int i= 0; i < moves; i++) {
+			int from= random.nextInt(result.length - length);
+			int to= random.nextInt(result.length - length);
+			System.arraycopy(result, from, block, 0, length);
+			System.arraycopy(result, from + length, result, from, result.length - from - length);
+			System.arraycopy(result, to, result, to + length, result.length - to - length);
+			System.arraycopy(block, 0, result, to, length);
+		}
+		return result;
+	}
+
+	private void measure(IDiffAlgorithm algorithm, int[] left, int[] right) {
+		for (int i= 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			if (i >= WARM_UP_RUNS)
+				startMeasuring();
+			algorithm.findCommonRuns(left, right, null);
+			if (i >= WARM_UP_RUNS)
+				stopMeasuring();
+		}
+		commitMeasurements();
+		assertPerformance();
+	}
+
+	public void testFewScatteredEditsMyers() {
+		Random random= new Random(1);
+		int[] left= createFile(random);
+		measure(new MyersDiffAlgorithm(), left, edit(random, left, 20, 5));
+	}
+
+	public void testFewScatteredEditsHistogram() {
+		Random random= new Random(1);
+		int[] left= createFile(random);
+		measure(new HistogramDiffAlgorithm(), left, edit(random, left, 20, 5));
+	}
+
+	public void testManyScatteredEditsMyers() {
+		Random random= new Random(2);
+		int[] left= createFile(random);
+		measure(new MyersDiffAlgorithm(), left, edit(random, left, 2000, 5));
+	}
+
+	public void testManyScatteredEditsHistogram() {
+		Random random= new Random(2);
+		int[] left= createFile(random);
+		measure(new HistogramDiffAlgorithm(), left, edit(random, left, 2000, 5));
+	}
+
+	public void testLargeBlockEditsHistogram() {
+		Random random= new Random(3);
+		int[] left= createFile(random);
+		measure(new HistogramDiffAlgorithm(), left, edit(random, left, 20, 2000));
+	}
+
+	public void testMovedBlocksHistogram() {
+		Random random= new Random(4);
+		int[] left= createFile(random);
+		measure(new HistogramDiffAlgorithm(), left, move(random, left, 50, 200));
+	}
+
+	public void testReplacedFileHistogram() {
+		Random random= new Random(5);
+		int[] left= createFile(random);
+		int[] right= new int[LINES / 10];
+		for (int i= 0; i < right.length; i++)
+			right[i]= random.nextInt(4) == 0 ? random.nextInt(8) : -1 - i;
+		measure(new HistogramDiffAlgorithm(), left, right);
+	}
+}
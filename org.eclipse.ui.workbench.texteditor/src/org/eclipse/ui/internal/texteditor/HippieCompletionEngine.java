@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -89,9 +89,30 @@ public final class HippieCompletionEngine {
 	private static final boolean CASE_SENSITIVE= true;
 
 	/**
-	 * Creates a new engine.
+	 * Whether completions are looked up in the {@link HippieWordIndex} of the documents.
+	 *
+	 * @since 3.9
+	 */
+	private final boolean fUseIndex;
+
+	/**
+	 * Creates a new engine which looks up completions in the word indices of the documents
+	 * when they are available.
 	 */
 	public HippieCompletionEngine() {
+		this(true);
+	}
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param useIndex <code>true</code> if completions are looked up in the word indices of the
+	 *            documents when they are available, <code>false</code> if the documents are
+	 *            always scanned
+	 * @since 3.9
+	 */
+	public HippieCompletionEngine(boolean useIndex) {
+		fUseIndex= useIndex;
 	}
 
 	/*
@@ -296,6 +317,9 @@ public final class HippieCompletionEngine {
 	 * @since 3.6
 	 */
 	public Iterator getForwardIterator(IDocument document, CharSequence prefix, int firstPosition, boolean currentWordLast) {
+		HippieWordIndex index= getIndex(document, prefix);
+		if (index != null)
+			return new IndexedForwardIterator(index, document, prefix, firstPosition, currentWordLast);
 		return new HippieCompletionForwardIterator(document, prefix, firstPosition, currentWordLast);
 	}
 
@@ -313,9 +337,33 @@ public final class HippieCompletionEngine {
 	 * @since 3.6
 	 */
 	public Iterator getBackwardIterator(IDocument document, CharSequence prefix, int firstPosition) {
+		HippieWordIndex index= getIndex(document, prefix);
+		if (index != null)
+			return new IndexedBackwardIterator(index, document, prefix, firstPosition);
 		return new HippieCompletionBackwardIterator(document, prefix, firstPosition);
 	}
 
+	/**
+	 * Returns the word index of the given document if it can be used to look up the
+	 * completions of the given prefix. The index is computed in the background the first time
+	 * it is requested, the document is scanned until it is available.
+	 *
+	 * @param document the document
+	 * @param prefix the prefix to search for
+	 * @return the index, or <code>null</code> if the document has to be scanned
+	 * @since 3.9
+	 */
+	private HippieWordIndex getIndex(IDocument document, CharSequence prefix) {
+		if (!fUseIndex || prefix.length() == 0)
+			return null;
+		for (int i= 0; i < prefix.length(); i++) {
+			if (!HippieWordIndex.isWordPart(prefix.charAt(i)))
+				return null;
+		}
+		HippieWordIndex index= HippieWordIndex.getIndex(document);
+		return index.isAvailable() ? index : null;
+	}
+
 	/**
 	 * Provides an iterator that will get the completions for all the documents received, starting
 	 * at the "document" passed (first going backward and then forward from the position passed) and
@@ -827,6 +875,199 @@ public final class HippieCompletionEngine {
 
 	}
 
+	/**
+	 * Iterator that gets the word completions from the word index of a document, with the same
+	 * results as {@link HippieCompletionForwardIterator}. If the index becomes invalid while
+	 * iterating, the search continues with a scan of the document.
+	 * 
+	 * @since 3.9
+	 */
+	private final class IndexedForwardIterator extends HippieCompletionIterator {
+
+		/** The word index of the document. */
+		private final HippieWordIndex fIndex;
+
+		/** If <code>true</code> the word at caret position should be that last completion. */
+		private final boolean fCurrentWordLast;
+
+		/** The completion for the current word. */
+		private String fCurrentWordCompletion= null;
+
+		/** The iterator continuing the search if the index became invalid. */
+		private Iterator fScanner;
+
+		/*
+		 * (non-Javadoc)
+		 * @see HippieCompletionEngine#getForwardIterator(IDocument, CharSequence, int, boolean)
+		 */
+		private IndexedForwardIterator(HippieWordIndex index, IDocument document, CharSequence prefix, int firstPosition, boolean currentWordLast) {
+			super(document, prefix, firstPosition);
+			fIndex= index;
+			fCurrentWordLast= currentWordLast;
+			calculateFirst();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see HippieCompletionIterator#calculateNext()
+		 */
+		protected void calculateNext() throws BadLocationException {
+			if (fCurrentState == 0) {
+				if (fFirstPosition == fDocument.getLength()) {
+					this.fHasNext= false;
+					return;
+				}
+				fNextPos= fFirstPosition;
+				fCurrentState= 1;
+			}
+
+			if (fCurrentState == 1) {
+				String prefix= fPrefix.toString();
+				while (fNextPos < fDocument.getLength()) {
+					// words at the beginning of a line are matched by the pattern used at the beginning of the document
+					IRegion word= fIndex.findForward(prefix, fNextPos, fFirstPosition == 0);
+					if (word == null) {
+						if (fNextPos == fFirstPosition)
+							fScanner= new HippieCompletionForwardIterator(fDocument, fPrefix, fFirstPosition, fCurrentWordLast);
+						else
+							fScanner= new HippieCompletionForwardIterator(fDocument, fPrefix, fNextPos, false);
+						break;
+					}
+					if (word == HippieWordIndex.NO_MATCH)
+						break;
+
+					boolean atCaret= fNextPos == fFirstPosition && isAtCaret(word.getOffset());
+					fNextPos= word.getOffset() + word.getLength();
+					if (word.getLength() > fPrefix.length()) { // empty suggestion will be added later
+						String completion= fDocument.get(word.getOffset() + fPrefix.length(), word.getLength() - fPrefix.length());
+						if (fCurrentWordLast && atCaret) {
+							fCurrentWordCompletion= completion; // add it as the last word.
+						} else {
+							fNext= completion;
+							fHasNext= true;
+							return;
+						}
+					}
+				}
+				fCurrentState= 2;
+			}
+
+			if (fCurrentState == 2) {
+				if (fScanner != null && fScanner.hasNext()) {
+					fNext= (String) fScanner.next();
+					fHasNext= true;
+					return;
+				}
+				fCurrentState= 3;
+				// the word at caret position goes last (bug 132533).
+				if (fCurrentWordCompletion != null) {
+					fNext= fCurrentWordCompletion;
+					fHasNext= true;
+					return;
+				}
+			}
+
+			fNext= null;
+			fHasNext= false;
+		}
+
+		/**
+		 * Tells whether the first word found is the word at the caret position, i.e. only word
+		 * boundaries are between the first position and the word.
+		 * 
+		 * @param wordOffset the offset of the first word found
+		 * @return <code>true</code> if the word is the word at the caret position
+		 * @throws BadLocationException if we're at an invalid position in the document.
+		 */
+		private boolean isAtCaret(int wordOffset) throws BadLocationException {
+			// the search pattern starts with a boundary, which starts before the first position
+			for (int i= Math.max(fFirstPosition - 1, 0); i < wordOffset; i++) {
+				if (!HippieWordIndex.isBoundary(fDocument.getChar(i)))
+					return false;
+			}
+			return true;
+		}
+	}
+
+
+
+	/**
+	 * Iterator that gets the word completions backward from the word index of a document, with
+	 * the same results as {@link HippieCompletionBackwardIterator}. If the index becomes invalid
+	 * while iterating, the search continues with a scan of the document.
+	 * 
+	 * @since 3.9
+	 */
+	private final class IndexedBackwardIterator extends HippieCompletionIterator {
+
+		/** The word index of the document. */
+		private final HippieWordIndex fIndex;
+
+		/** The iterator continuing the search if the index became invalid. */
+		private Iterator fScanner;
+
+		/*
+		 * (non-Javadoc)
+		 * @see HippieCompletionEngine#getBackwardIterator(IDocument, CharSequence, int)
+		 */
+		private IndexedBackwardIterator(HippieWordIndex index, IDocument document, CharSequence prefix, int firstPosition) {
+			super(document, prefix, firstPosition);
+			fIndex= index;
+			calculateFirst();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see HippieCompletionIterator#calculateNext()
+		 */
+		protected void calculateNext() throws BadLocationException {
+			if (fCurrentState == 0) {
+				if (fFirstPosition <= 1) {
+					this.fNext= null;
+					this.fHasNext= false;
+					return;
+				}
+				fNextPos= Math.min(fFirstPosition, fDocument.getLength() - 1);
+				fCurrentState= 1;
+			}
+
+			if (fScanner != null) {
+				fHasNext= fScanner.hasNext();
+				fNext= fHasNext ? (String) fScanner.next() : null;
+				return;
+			}
+
+			String prefix= fPrefix.toString();
+			while (fNextPos > 0) {
+				// a match must end at or before the search position plus one
+				IRegion word= fIndex.findBackward(prefix, fNextPos + 1 - fPrefix.length());
+				if (word == null) {
+					if (fCurrentState == 1)
+						fScanner= new HippieCompletionBackwardIterator(fDocument, fPrefix, fFirstPosition);
+					else
+						fScanner= new HippieCompletionBackwardIterator(fDocument, fPrefix, fNextPos);
+					fHasNext= fScanner.hasNext();
+					fNext= fHasNext ? (String) fScanner.next() : null;
+					return;
+				}
+				if (word == HippieWordIndex.NO_MATCH)
+					break;
+
+				fCurrentState= 2;
+				fNextPos= word.getOffset() - 1;
+				if (word.getOffset() + word.getLength() > fFirstPosition)
+					continue;
+				if (word.getLength() > fPrefix.length()) { // empty suggestion will be added later
+					this.fNext= fDocument.get(word.getOffset() + fPrefix.length(), word.getLength() - fPrefix.length());
+					this.fHasNext= true;
+					return;
+				}
+			}
+			this.fNext= null;
+			this.fHasNext= false;
+		}
+	}
+
 	/**
 	 * Logs the exception.
 	 * 
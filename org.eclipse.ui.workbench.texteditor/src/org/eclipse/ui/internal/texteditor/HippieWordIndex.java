@@ -0,0 +1,627 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor;
+
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.jface.internal.text.AbstractDocumentIndex;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.Region;
+
+
+/**
+ * Index of the words of a document which can be completed by the
+ * {@link HippieCompletionEngine}.
+ * <p>
+ * The index holds the words which start at a word boundary in document order, together with
+ * a sorted table of the distinct words, which allows to skip documents that do not contain a
+ * completion for a prefix. A word is a maximal sequence of the characters matched by the
+ * completion word pattern of the engine, the word boundaries are the characters matched by
+ * its completion boundary pattern.
+ * </p>
+ * <p>
+ * The index is computed by a background job the first time it is queried. Document changes
+ * update it in place by scanning the words touching the change, large changes invalidate it.
+ * The index does not answer queries while it is not computed, or if the document contains
+ * surrogate characters, which the regular expressions of the engine match as code points. The
+ * answers are the same as the ones of the regular expression search of the engine.
+ * </p>
+ * <p>
+ * The indices are shared per document, the shared indices do not keep their documents alive.
+ * An index which has not been requested for {@link #EXPIRATION_DELAY} milliseconds is
+ * disposed, which stops it from listening to its document.
+ * </p>
+ *
+ * @since 3.9
+ */
+public final class HippieWordIndex extends AbstractDocumentIndex {
+
+	/** The time after which an index which has not been requested is disposed, in milliseconds. */
+	static final long EXPIRATION_DELAY= 30 * 1000;
+
+	/** The kind of a word which is not preceded by a word boundary. */
+	private static final byte NONE= -1;
+	/** The kind of a word which is preceded by a word boundary or starts the document. */
+	private static final byte BOUNDARY= 0;
+	/**
+	 * The kind of a word which is preceded by a line delimiter that is no word boundary. The
+	 * beginning of line anchor of the engine's patterns matches before such words.
+	 */
+	private static final byte LINE_START= 1;
+
+	/**
+	 * Weak references to the indices of the documents, keyed by document. An index references
+	 * its document and is kept alive by the document as long as it listens to it, the map holds
+	 * neither of them.
+	 */
+	private static final Map fgIndices= new WeakHashMap();
+
+	/** The job disposing the indices which have not been requested any more. */
+	private static final Job fgExpirationJob= new ExpirationJob();
+
+	/**
+	 * A distinct word of the document.
+	 */
+	private static final class Word {
+
+		/** The text of the word. */
+		final String fText;
+		/** The number of occurrences of the word. */
+		int fCount;
+
+		Word(String text) {
+			fText= text;
+		}
+	}
+
+	/**
+	 * The words of a text, in text order.
+	 */
+	private static final class WordList {
+
+		/** The offsets of the words. */
+		int[] fOffsets= new int[16];
+		/** The texts of the words. */
+		String[] fTexts= new String[16];
+		/** The kinds of the words. */
+		byte[] fKinds= new byte[16];
+		/** The number of words. */
+		int fCount;
+
+		/**
+		 * Adds the words starting at a word boundary or at the beginning of a line in the given
+		 * text.
+		 *
+		 * @param text the text to scan
+		 * @param offset the document offset of the text
+		 * @param kind the kind a word at the beginning of the text would have
+		 * @param monitor the progress monitor, or <code>null</code>
+		 * @return <code>false</code> if the text contains surrogate characters or the scan has
+		 *         been canceled, <code>true</code> otherwise
+		 */
+		boolean scan(String text, int offset, byte kind, IProgressMonitor monitor) {
+			int length= text.length();
+			int checked= 0;
+			int i= 0;
+			while (i < length) {
+				char ch= text.charAt(i);
+				if (Character.getType(ch) == Character.SURROGATE)
+					return false;
+				if (isWordPart(ch)) {
+					int start= i;
+					while (i < length && isWordPart(text.charAt(i)))
+						i++;
+					if (kind != NONE)
+						add(offset + start, text.substring(start, i), kind);
+				} else {
+					kind= getKind(ch);
+					i++;
+				}
+				if (monitor != null && i - checked >= 0x10000) {
+					if (monitor.isCanceled())
+						return false;
+					checked= i;
+				}
+			}
+			return true;
+		}
+
+		private void add(int offset, String text, byte kind) {
+			if (fCount == fOffsets.length) {
+				int capacity= 2 * fCount;
+				int[] offsets= new int[capacity];
+				String[] texts= new String[capacity];
+				byte[] kinds= new byte[capacity];
+				System.arraycopy(fOffsets, 0, offsets, 0, fCount);
+				System.arraycopy(fTexts, 0, texts, 0, fCount);
+				System.arraycopy(fKinds, 0, kinds, 0, fCount);
+				fOffsets= offsets;
+				fTexts= texts;
+				fKinds= kinds;
+			}
+			fOffsets[fCount]= offset;
+			fTexts[fCount]= text;
+			fKinds[fCount]= kind;
+			fCount++;
+		}
+	}
+
+	/**
+	 * Computation of the words of the document.
+	 */
+	private final class WordComputation extends Computation {
+
+		/** The words in document order. */
+		private final WordList fList= new WordList();
+		/** Whether the document contains only supported characters. */
+		private boolean fSupported;
+		/** The distinct words by their text. */
+		private TreeMap fResultTable;
+		/** The distinct words of the words in the list. */
+		private Word[] fResultWords;
+
+		/*
+		 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex.Computation#compute(java.lang.String, org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		protected boolean compute(String text, IProgressMonitor monitor) {
+			fSupported= fList.scan(text, 0, BOUNDARY, monitor);
+			if (monitor.isCanceled())
+				return false;
+
+			if (fSupported) {
+				fResultTable= new TreeMap();
+				fResultWords= new Word[fList.fOffsets.length];
+				for (int i= 0; i < fList.fCount; i++)
+					fResultWords[i]= addWord(fResultTable, fList.fTexts[i]);
+			}
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex.Computation#install()
+		 */
+		protected void install() {
+			if (fSupported) {
+				fOffsets= fList.fOffsets;
+				fWords= fResultWords;
+				fKinds= fList.fKinds;
+				fCount= fList.fCount;
+				fTable= fResultTable;
+			} else {
+				fUnsupported= true;
+			}
+		}
+	}
+
+	/**
+	 * Job which disposes the indices which have not been requested for
+	 * {@link HippieWordIndex#EXPIRATION_DELAY} milliseconds. The job does not reference the
+	 * indices while it waits.
+	 */
+	private static final class ExpirationJob extends Job {
+
+		ExpirationJob() {
+			super(HippieWordIndex.class.getName());
+			setSystem(true);
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		protected IStatus run(IProgressMonitor monitor) {
+			List expired= new ArrayList();
+			long delay= -1;
+			synchronized (fgIndices) {
+				long now= System.currentTimeMillis();
+				for (Iterator e= fgIndices.values().iterator(); e.hasNext();) {
+					HippieWordIndex index= (HippieWordIndex) ((Reference) e.next()).get();
+					if (index == null)
+						continue;
+					long remaining= EXPIRATION_DELAY - (now - index.fLastRequest);
+					if (remaining <= 0)
+						expired.add(index);
+					else if (delay == -1 || remaining < delay)
+						delay= remaining;
+				}
+			}
+
+			// the indices are disposed outside of the lock of the map, like by clients
+			for (Iterator e= expired.iterator(); e.hasNext();)
+				((HippieWordIndex) e.next()).dispose();
+			if (delay != -1)
+				schedule(delay);
+			return Status.OK_STATUS;
+		}
+	}
+
+
+	/** The offsets of the words, <code>null</code> if the index is not valid. */
+	private int[] fOffsets;
+	/** The words. */
+	private Word[] fWords;
+	/** The kinds of the words. */
+	private byte[] fKinds;
+	/** The number of words. */
+	private int fCount;
+	/** The distinct words by their text. */
+	private TreeMap fTable;
+	/** Whether the document contains characters which are not supported by the index. */
+	private boolean fUnsupported;
+	/**
+	 * The time at which the index has last been requested by {@link #getIndex(IDocument)}.
+	 * Guarded by {@link #fgIndices}.
+	 */
+	private long fLastRequest;
+
+
+	/**
+	 * Returns the index of the given document. The index is created and connected to the
+	 * document if needed, it is disposed once it has not been requested for
+	 * {@link #EXPIRATION_DELAY} milliseconds.
+	 *
+	 * @param document the document
+	 * @return the index of the document
+	 */
+	public static HippieWordIndex getIndex(IDocument document) {
+		synchronized (fgIndices) {
+			Reference reference= (Reference) fgIndices.get(document);
+			HippieWordIndex index= reference == null ? null : (HippieWordIndex) reference.get();
+			if (index == null) {
+				index= new HippieWordIndex(document);
+				fgIndices.put(document, new WeakReference(index));
+				// runs again after the current run if it is running
+				fgExpirationJob.schedule(EXPIRATION_DELAY);
+			}
+			index.fLastRequest= System.currentTimeMillis();
+			return index;
+		}
+	}
+
+	/**
+	 * Creates a new index. Indices are shared per document, see {@link #getIndex(IDocument)}.
+	 *
+	 * @param document the document
+	 */
+	private HippieWordIndex(IDocument document) {
+		super(document);
+	}
+
+	/**
+	 * Disposes this index and removes it from the shared indices. A disposed index does not
+	 * answer queries any more.
+	 */
+	public void dispose() {
+		synchronized (fgIndices) {
+			Reference reference= (Reference) fgIndices.get(getDocument());
+			if (reference != null && reference.get() == this)
+				fgIndices.remove(getDocument());
+		}
+		super.dispose();
+	}
+
+	/**
+	 * Tells whether the index can answer queries. If the index is not computed yet, its
+	 * computation is started.
+	 *
+	 * @return <code>true</code> if the index can answer queries
+	 */
+	public synchronized boolean isAvailable() {
+		if (fOffsets != null)
+			return true;
+		if (!fUnsupported)
+			startComputation();
+		return false;
+	}
+
+	/**
+	 * Returns the first word starting at or after the given offset which starts with the given
+	 * prefix and is preceded by a word boundary.
+	 *
+	 * @param prefix the prefix, consisting of word characters
+	 * @param offset the offset to search from
+	 * @param lineStarts <code>true</code> if words at the beginning of a line count as
+	 *            preceded by a word boundary
+	 * @return the region of the word, {@link #NO_MATCH} if there is no such word, or
+	 *         <code>null</code> if the index cannot answer the query
+	 */
+	public synchronized IRegion findForward(String prefix, int offset, boolean lineStarts) {
+		if (!isAvailable())
+			return null;
+		if (!hasCompletion(prefix))
+			return NO_MATCH;
+
+		for (int i= firstStartingAt(offset); i < fCount; i++) {
+			if ((lineStarts || fKinds[i] == BOUNDARY) && fWords[i].fText.startsWith(prefix))
+				return new Region(fOffsets[i], fWords[i].fText.length());
+		}
+		return NO_MATCH;
+	}
+
+	/**
+	 * Returns the last word starting at or before the given offset which starts with the given
+	 * prefix and is preceded by a word boundary or starts a line.
+	 *
+	 * @param prefix the prefix, consisting of word characters
+	 * @param offset the offset to search from
+	 * @return the region of the word, {@link #NO_MATCH} if there is no such word, or
+	 *         <code>null</code> if the index cannot answer the query
+	 */
+	public synchronized IRegion findBackward(String prefix, int offset) {
+		if (!isAvailable())
+			return null;
+		if (!hasCompletion(prefix))
+			return NO_MATCH;
+
+		for (int i= firstStartingAt(offset + 1) - 1; i >= 0; i--) {
+			if (fWords[i].fText.startsWith(prefix))
+				return new Region(fOffsets[i], fWords[i].fText.length());
+		}
+		return NO_MATCH;
+	}
+
+	/**
+	 * Tells whether the document contains a word which is longer than the given prefix and
+	 * starts with it.
+	 *
+	 * @param prefix the prefix
+	 * @return <code>true</code> if a word completes the prefix
+	 */
+	private boolean hasCompletion(String prefix) {
+		Iterator words= fTable.tailMap(prefix).keySet().iterator();
+		while (words.hasNext()) {
+			String text= (String) words.next();
+			if (!text.startsWith(prefix))
+				return false;
+			if (text.length() > prefix.length())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the index of the first word starting at or after the given offset.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first word starting at or after <code>offset</code>
+	 */
+	private int firstStartingAt(int offset) {
+		int low= 0, high= fCount;
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (fOffsets[mid] < offset)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+		return low;
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#createComputation()
+	 */
+	protected Computation createComputation() {
+		return new WordComputation();
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#isValid()
+	 */
+	protected boolean isValid() {
+		return fOffsets != null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.internal.text.AbstractDocumentIndex#discardIndex()
+	 */
+	protected void discardIndex() {
+		fOffsets= null;
+		fWords= null;
+		fKinds= null;
+		fCount= 0;
+		fTable= null;
+		fUnsupported= false;
+	}
+
+	/**
+	 * Updates the words after the given change by scanning the words touching the changed
+	 * region. The word following the change is scanned as well, as its preceding character
+	 * may have changed.
+	 *
+	 * @param offset the offset of the change
+	 * @param length the length of the replaced text
+	 * @param textLength the length of the inserted text
+	 * @return <code>false</code> if the index could not be updated
+	 * @throws BadLocationException if the document has been changed concurrently
+	 */
+	protected boolean update(int offset, int length, int textLength) throws BadLocationException {
+		IDocument document= getDocument();
+		int delta= textLength - length;
+		int documentLength= document.getLength();
+
+		// extend the changed region to the words touching it
+		int start= offset;
+		while (start > 0 && isWordPart(document.getChar(start - 1))) {
+			if (offset - start > MAX_UPDATE_LENGTH)
+				return false;
+			start--;
+		}
+		int end= offset + textLength;
+		while (end < documentLength && isWordPart(document.getChar(end))) {
+			if (end - offset > 2 * MAX_UPDATE_LENGTH)
+				return false;
+			end++;
+		}
+
+		WordList list= new WordList();
+		byte kind= start == 0 ? BOUNDARY : getKind(document.getChar(start - 1));
+		if (!list.scan(document.get(start, end - start), start, kind, null))
+			return false;
+
+		// the words starting in the scanned region, in the coordinates before the change
+		int first= firstStartingAt(start);
+		int last= firstStartingAt(end - delta);
+		for (int i= first; i < last; i++)
+			removeWord(fWords[i]);
+
+		int added= list.fCount;
+		int count= fCount - (last - first) + added;
+		int[] offsets= fOffsets;
+		Word[] words= fWords;
+		byte[] kinds= fKinds;
+		if (count > offsets.length) {
+			int capacity= Math.max(count, 2 * offsets.length);
+			offsets= new int[capacity];
+			words= new Word[capacity];
+			kinds= new byte[capacity];
+			System.arraycopy(fOffsets, 0, offsets, 0, first);
+			System.arraycopy(fWords, 0, words, 0, first);
+			System.arraycopy(fKinds, 0, kinds, 0, first);
+		}
+		System.arraycopy(fOffsets, last, offsets, first + added, fCount - last);
+		System.arraycopy(fWords, last, words, first + added, fCount - last);
+		System.arraycopy(fKinds, last, kinds, first + added, fCount - last);
+		for (int i= count; i < fCount; i++)
+			words[i]= null;
+
+		for (int i= 0; i < added; i++) {
+			offsets[first + i]= list.fOffsets[i];
+			words[first + i]= addWord(fTable, list.fTexts[i]);
+			kinds[first + i]= list.fKinds[i];
+		}
+		for (int i= first + added; i < count; i++)
+			offsets[i]+= delta;
+
+		fOffsets= offsets;
+		fWords= words;
+		fKinds= kinds;
+		fCount= count;
+		return true;
+	}
+
+	/**
+	 * Adds an occurrence of a word to the given table.
+	 *
+	 * @param table the table of distinct words
+	 * @param text the text of the word
+	 * @return the word
+	 */
+	private static Word addWord(SortedMap table, String text) {
+		Word word= (Word) table.get(text);
+		if (word == null) {
+			word= new Word(text);
+			table.put(text, word);
+		}
+		word.fCount++;
+		return word;
+	}
+
+	/**
+	 * Removes an occurrence of a word from the table.
+	 *
+	 * @param word the word
+	 */
+	private void removeWord(Word word) {
+		if (--word.fCount == 0)
+			fTable.remove(word.fText);
+	}
+
+	/**
+	 * Tells whether the given character is part of a word, i.e. matched by the completion word
+	 * pattern of the engine.
+	 *
+	 * @param ch the character
+	 * @return <code>true</code> if the character is part of a word
+	 */
+	static boolean isWordPart(char ch) {
+		switch (Character.getType(ch)) {
+			case Character.UPPERCASE_LETTER:
+			case Character.LOWERCASE_LETTER:
+			case Character.TITLECASE_LETTER:
+			case Character.MODIFIER_LETTER:
+			case Character.OTHER_LETTER:
+			case Character.NON_SPACING_MARK:
+			case Character.CONNECTOR_PUNCTUATION:
+			case Character.DECIMAL_DIGIT_NUMBER:
+			case Character.LETTER_NUMBER:
+			case Character.CURRENCY_SYMBOL:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Tells whether the given character is a word boundary, i.e. matched by the non-empty
+	 * completion boundary pattern of the engine.
+	 *
+	 * @param ch the character
+	 * @return <code>true</code> if the character is a word boundary
+	 */
+	static boolean isBoundary(char ch) {
+		switch (ch) {
+			case ' ':
+			case '\t':
+			case '\n':
+			case '\u000B':
+			case '\f':
+			case '\r':
+				return true;
+		}
+		switch (Character.getType(ch)) {
+			case Character.SPACE_SEPARATOR:
+			case Character.LINE_SEPARATOR:
+			case Character.PARAGRAPH_SEPARATOR:
+			case Character.DASH_PUNCTUATION:
+			case Character.START_PUNCTUATION:
+			case Character.END_PUNCTUATION:
+			case Character.INITIAL_QUOTE_PUNCTUATION:
+			case Character.FINAL_QUOTE_PUNCTUATION:
+			case Character.OTHER_PUNCTUATION:
+			case Character.MATH_SYMBOL:
+			case Character.MODIFIER_SYMBOL:
+			case Character.OTHER_SYMBOL:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Returns the kind of a word preceded by the given character.
+	 *
+	 * @param previous the character preceding the word
+	 * @return the kind of the word
+	 */
+	private static byte getKind(char previous) {
+		if (isBoundary(previous))
+			return BOUNDARY;
+		// NEL is a line terminator for the regular expressions but no word boundary
+		if (previous == '\u0085')
+			return LINE_START;
+		return NONE;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,7 +11,6 @@
 package org.eclipse.ui.internal.texteditor.quickdiff;
 
 import java.util.List;
-import java.util.ListIterator;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
@@ -89,15 +88,11 @@ public final class DiffRegion extends Annotation implements ILineDiffInfo {
 				return Math.max(fDifference.leftLength() - fDifference.rightLength(), 0);
 
 			synchronized (fList) {
-				for (ListIterator it= fList.listIterator(); it.hasNext();) {
-					if (fDifference.equals(it.next())) {
-						if (it.hasNext()) {
-							QuickDiffRangeDifference next= (QuickDiffRangeDifference) it.next();
-							if (next.rightLength() == 0)
-								return Math.max(next.leftLength() - next.rightLength(), 0);
-						}
-						break;
-					}
+				int index= QuickDiffRangeDifference.indexOf(fList, fDifference);
+				if (index != -1 && index + 1 < fList.size()) {
+					QuickDiffRangeDifference next= (QuickDiffRangeDifference) fList.get(index + 1);
+					if (next.rightLength() == 0)
+						return Math.max(next.leftLength() - next.rightLength(), 0);
 				}
 			}
 		}
@@ -121,14 +116,10 @@ public final class DiffRegion extends Annotation implements ILineDiffInfo {
 	public int getRemovedLinesAbove() {
 		if (getChangeType() == UNCHANGED && fOffset == 0) {
 			synchronized (fList) {
-				for (ListIterator it= fList.listIterator(fList.size()); it.hasPrevious();) {
-					if (fDifference.equals(it.previous())) {
-						if (it.hasPrevious()) {
-							QuickDiffRangeDifference previous= (QuickDiffRangeDifference) it.previous();
-							return Math.max(previous.leftLength() - previous.rightLength(), 0);
-						}
-						break;
-					}
+				int index= QuickDiffRangeDifference.indexOf(fList, fDifference);
+				if (index > 0) {
+					QuickDiffRangeDifference previous= (QuickDiffRangeDifference) fList.get(index - 1);
+					return Math.max(previous.leftLength() - previous.rightLength(), 0);
 				}
 			}
 		}
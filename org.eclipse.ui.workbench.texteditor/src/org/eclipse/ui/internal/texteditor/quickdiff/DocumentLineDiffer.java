@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2013 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,7 +16,6 @@ import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -57,6 +56,9 @@ import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DJBHashF
 import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DocEquivalenceComparator;
 import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.DocumentEquivalenceClass;
 import org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence.IHashFunction;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.HistogramDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.IDiffAlgorithm;
+import org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.MyersDiffAlgorithm;
 import org.eclipse.ui.progress.IProgressConstants;
 
 import org.eclipse.ui.texteditor.quickdiff.IQuickDiffReferenceProvider;
@@ -144,6 +146,18 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 
 	/** The delay after which the initialization job is triggered. */
 	private static final int INITIALIZE_DELAY= 500;
+	/**
+	 * The maximum number of lines re-diffed on a document change when using the
+	 * {@link RangeDifferencer}, larger changes cause a re-initialization.
+	 * @since 3.9
+	 */
+	private static final int MAX_INCREMENTAL_LINES= 50;
+	/**
+	 * The maximum number of lines re-diffed on a document change when using an
+	 * {@link IDiffAlgorithm}, larger changes cause a re-initialization.
+	 * @since 3.9
+	 */
+	private static final int MAX_INCREMENTAL_LINES_DIFF_ALGORITHM= 2000;
 
 	/** Suspended state */
 	private static final int SUSPENDED= 0;
@@ -237,6 +251,13 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 
 	private RangeDifferenceFactory fRangeDiffFactory= new RangeDifferenceFactory();
 
+	/**
+	 * The algorithm computing the line differences, or <code>null</code> to use
+	 * the {@link RangeDifferencer}.
+	 * @since 3.9
+	 */
+	private IDiffAlgorithm fDiffAlgorithm= new MyersDiffAlgorithm();
+
 
 	/**
 	 * Creates a new differ.
@@ -548,14 +569,17 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 					return Status.CANCEL_STATUS;
 				}
 
-				// Getting our own copies of the documents for offline diffing.
+				// Getting snapshots of the document contents for offline diffing. The line hashes
+				// are computed from the snapshots, no document copies are created unless events
+				// need to be re-injected.
 				//
 				// We need to make sure that we do get all document modifications after
-				// copying the documents as we want to re-inject them later on to become consistent.
+				// taking the snapshots as we want to re-inject them later on to become consistent.
 
 				IDocument right= fRightDocument; // fRightDocument, but not subject to change
-				IDocument actual= null; // the copy of the actual (right) document
-				IDocument reference= null; // the copy of the reference (left) document
+				String actualContents= null; // the contents of the actual (right) document
+				String referenceContents= null; // the contents of the reference (left) document
+				IDocument actual= null; // the copy of the actual (right) document, created when re-injecting events
 
 				synchronized (DocumentLineDiffer.this) {
 					// 4: take an early exit if the documents are not valid
@@ -578,13 +602,13 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 				// to be able to deal with this.
 				left.addDocumentListener(DocumentLineDiffer.this);
 
-				// create the reference copy - note that any changes on the
+				// get the reference contents - note that any changes on the
 				// reference will trigger re-initialization anyway
-				reference= createCopy(left);
-				if (reference == null)
+				referenceContents= getContents(left);
+				if (referenceContents == null)
 					return Status.CANCEL_STATUS;
 
-				// create the actual copy
+				// get the actual contents
 
 				Object lock= null;
 				if (right instanceof ISynchronizable)
@@ -598,7 +622,7 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 							if (isCanceled(monitor))
 								return Status.CANCEL_STATUS;
 							fStoredEvents.clear();
-							actual= createUnprotectedCopy(right);
+							actualContents= right.get();
 						}
 					}
 				} else {
@@ -622,27 +646,26 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 						}
 
 						// access documents non synchronized:
-						// get an exclusive copy of the actual document
-						actual= createCopy(right);
+						// get a snapshot of the actual document
+						actualContents= getContents(right);
 
 						synchronized (DocumentLineDiffer.this) {
 							if (isCanceled(monitor))
 								return Status.CANCEL_STATUS;
-							if (fStoredEvents.size() == 0 && actual != null)
+							if (fStoredEvents.size() == 0 && actualContents != null)
 								break;
 						}
 					} while (true);
 				}
 
 				IHashFunction hash= new DJBHashFunction();
-				DocumentEquivalenceClass leftEquivalent= new DocumentEquivalenceClass(reference, hash);
+				DocumentEquivalenceClass leftEquivalent= new DocumentEquivalenceClass(left, referenceContents, hash);
+				referenceContents= null;
 				fLeftEquivalent= leftEquivalent;
-				IRangeComparator ref= new DocEquivalenceComparator(leftEquivalent, null);
 
-				DocumentEquivalenceClass rightEquivalent= new DocumentEquivalenceClass(actual, hash);
+				DocumentEquivalenceClass rightEquivalent= new DocumentEquivalenceClass(right, actualContents, hash);
 				fRightEquivalent= rightEquivalent;
-				IRangeComparator act= new DocEquivalenceComparator(rightEquivalent, null);
-				List diffs= new ArrayList(Arrays.asList(RangeDifferencer.findRanges(fRangeDiffFactory, monitor, ref, act)));
+				List diffs= findRanges(monitor, leftEquivalent, null, rightEquivalent, null);
 				// 7:	Reset the model to the just gotten differences
 				// 		re-inject stored events to get up to date.
 				synchronized (DocumentLineDiffer.this) {
@@ -678,13 +701,14 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 						}
 
 						// access documents non synchronized:
-						IDocument copy= null;
-						if (event.fDocument == right)
-							copy= actual;
-						else if (event.fDocument == left)
-							copy= reference;
-						else
-							Assert.isTrue(false);
+						// events from the reference trigger re-initialization, so only the
+						// actual document needs a copy to replay the events on
+						Assert.isTrue(event.fDocument == right);
+						if (actual == null) {
+							actual= new Document(actualContents);
+							rightEquivalent.setDocument(actual);
+						}
+						IDocument copy= actual;
 
 						// copy the event to inject it into our diff copies
 						// don't modify the original event! See https://bugs.eclipse.org/bugs/show_bug.cgi?id=134227
@@ -725,20 +749,20 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 			}
 
 			/**
-			 * Creates a copy of <code>document</code> and catches any
+			 * Returns the contents of <code>document</code> and catches any
 			 * exceptions that may occur if the document is modified concurrently.
 			 * Only call this method in a synchronized block if the document is
 			 * an ISynchronizable and has been locked, as document.get() is called
 			 * and may result in a deadlock otherwise.
 			 *
-			 * @param document the document to create a copy of
-			 * @return a copy of the document, or <code>null</code> if an exception was thrown
+			 * @param document the document to get the contents of
+			 * @return the contents of the document, or <code>null</code> if an exception was thrown
 			 */
-			private IDocument createCopy(IDocument document) {
+			private String getContents(IDocument document) {
 				Assert.isNotNull(document);
 				// this fixes https://bugs.eclipse.org/bugs/show_bug.cgi?id=56091
 				try {
-					return createUnprotectedCopy(document);
+					return document.get();
 				} catch (NullPointerException e) {
 				} catch (ArrayStoreException e) {
 				} catch (IndexOutOfBoundsException e) {
@@ -747,10 +771,6 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 				}
 				return null;
 			}
-
-			private IDocument createUnprotectedCopy(IDocument document) {
-				return new Document(document.get());
-			}
 		};
 
 		fInitializationJob.setSystem(true);
@@ -940,7 +960,8 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 		// size: the size of the document change in lines
 
 		// put an upper bound to the delay we can afford
-		if (added > 50 || fNLines > 50) {
+		int maxLines= fDiffAlgorithm == null ? MAX_INCREMENTAL_LINES : MAX_INCREMENTAL_LINES_DIFF_ALGORITHM;
+		if (added > maxLines || fNLines > maxLines) {
 			initialize();
 			return;
 		}
@@ -1004,7 +1025,6 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 			leftLine += lineDelta;
 		int leftEndLine= leftLine - shiftAfter;
 		ILineRange leftRange= new LineRange(leftStartLine, leftEndLine - leftStartLine);
-		IRangeComparator reference= new DocEquivalenceComparator(leftEquivalent, leftRange);
 
 		// right (actual) document
 		int rightStartLine= consistentBefore.rightStart() + shiftBefore;
@@ -1013,10 +1033,9 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 			rightLine += lineDelta;
 		int rightEndLine= rightLine - shiftAfter;
 		ILineRange rightRange= new LineRange(rightStartLine, rightEndLine - rightStartLine);
-		IRangeComparator change= new DocEquivalenceComparator(rightEquivalent, rightRange);
 
 		// put an upper bound to the delay we can afford
-		if (leftLine - shiftAfter - leftStartLine > 50 || rightLine - shiftAfter - rightStartLine > 50) {
+		if (leftLine - shiftAfter - leftStartLine > maxLines || rightLine - shiftAfter - rightStartLine > maxLines) {
 			initialize();
 			return;
 		}
@@ -1026,7 +1045,7 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 //					">\n\n<" + right.get(rightRegion.getOffset(), rightRegion.getLength()) + ">\n"); //$NON-NLS-1$ //$NON-NLS-2$
 
 		// compare
-		List diffs= new ArrayList(Arrays.asList(RangeDifferencer.findRanges(fRangeDiffFactory, null, reference, change)));
+		List diffs= findRanges(null, leftEquivalent, leftRange, rightEquivalent, rightRange);
 		if (diffs.size() == 0) {
 			diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, 0, 0, 0, 0));
 		}
@@ -1058,85 +1077,59 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 
 		// replace changed diff range
 		synchronized (fDifferences) {
-			final ListIterator it= fDifferences.listIterator();
-			Iterator newIt= diffs.iterator();
-			QuickDiffRangeDifference current;
+			final List differences= fDifferences;
 			boolean changed= false;
 
 			// replace regions from consistentBefore to consistentAfter with new diffs
-
-			// search for consistentBefore
-			do {
-				Assert.isTrue(it.hasNext());
-				current= (QuickDiffRangeDifference) it.next();
-			} while (current != consistentBefore);
-			Assert.isTrue(current == consistentBefore);
+			int first= QuickDiffRangeDifference.indexOf(differences, consistentBefore);
+			int end= QuickDiffRangeDifference.indexOf(differences, consistentAfter) + 1;
+			Assert.isTrue(first != -1 && end > first);
 
 			fChanged.clear();
 			fRemoved.clear();
 			fAdded.clear();
 
-			// replace until consistentAfter
-			while (current != consistentAfter) {
-				if (newIt.hasNext()) {
-					Object o= newIt.next();
-					if (!current.equals(o)) {
-						fRemoved.add(current);
-						fAdded.add(o);
-						changed= true;
-						it.set(o);
+			// keep the old diffs that did not change
+			int oldCount= end - first;
+			for (int i= 0, n= diffs.size(); i < n; i++) {
+				Object o= diffs.get(i);
+				if (i < oldCount) {
+					Object current= differences.get(first + i);
+					if (current.equals(o)) {
+						diffs.set(i, current);
+						continue;
 					}
-				} else {
 					fRemoved.add(current);
-					it.remove();
-					changed= true;
 				}
-				Assert.isTrue(it.hasNext());
-				current= (QuickDiffRangeDifference) it.next();
+				fAdded.add(o);
+				changed= true;
 			}
-
-			// replace consistentAfter
-			Assert.isTrue(current == consistentAfter);
-			if (newIt.hasNext()) {
-				Object o= newIt.next();
-				if (!current.equals(o)) {
-					fRemoved.add(current);
-					fAdded.add(o);
-					changed= true;
-					it.set(o);
-				}
-			} else {
-				fRemoved.add(current);
-				it.remove();
+			for (int i= diffs.size(); i < oldCount; i++) {
+				fRemoved.add(differences.get(first + i));
 				changed= true;
 			}
 
-			// add remaining new diffs
-			while (newIt.hasNext()) {
-				Object next= newIt.next();
-				fAdded.add(next);
-				it.add(next);
-				changed= true;
+			if (changed) {
+				List replaced= differences.subList(first, end);
+				replaced.clear();
+				replaced.addAll(diffs);
 			}
 
 			// shift the old remaining diffs
-			boolean init= true;
-			int leftShift= 0;
-			int rightShift= 0;
-			while (it.hasNext()) {
-				current= (QuickDiffRangeDifference) it.next();
-				if (init) {
-					init= false;
-					leftShift= last.leftEnd() - current.leftStart();
-					rightShift= last.rightEnd() - current.rightStart();
-					if (leftShift != 0 || rightShift != 0)
-						changed= true;
-					else
-						break;
+			int next= first + diffs.size();
+			if (next < differences.size()) {
+				QuickDiffRangeDifference current= (QuickDiffRangeDifference) differences.get(next);
+				int leftShift= last.leftEnd() - current.leftStart();
+				int rightShift= last.rightEnd() - current.rightStart();
+				if (leftShift != 0 || rightShift != 0) {
+					changed= true;
+					for (int i= next, n= differences.size(); i < n; i++) {
+						current= (QuickDiffRangeDifference) differences.get(i);
+//						fChanged.add(current); // not needed since positional shifting is not handled by an annotation model
+						current.shiftLeft(leftShift);
+						current.shiftRight(rightShift);
+					}
 				}
-//				fChanged.add(current); // not needed since positional shifting is not handled by an annotation model
-				current.shiftLeft(leftShift);
-				current.shiftRight(rightShift);
 			}
 
 			fUpdateNeeded= changed;
@@ -1145,6 +1138,60 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 		fLastDifference= null;
 	}
 
+	/**
+	 * Computes the differences between the given line ranges of the reference and
+	 * the actual document.
+	 *
+	 * @param monitor the progress monitor, may be <code>null</code>
+	 * @param leftEquivalent the equivalence class of the reference document
+	 * @param leftRange the line range of the reference document, or <code>null</code> for all lines
+	 * @param rightEquivalent the equivalence class of the actual document
+	 * @param rightRange the line range of the actual document, or <code>null</code> for all lines
+	 * @return the list of <code>QuickDiffRangeDifference</code>s, relative to the line ranges
+	 * @since 3.9
+	 */
+	private List findRanges(IProgressMonitor monitor, DocumentEquivalenceClass leftEquivalent, ILineRange leftRange, DocumentEquivalenceClass rightEquivalent, ILineRange rightRange) {
+		IDiffAlgorithm algorithm= fDiffAlgorithm;
+		if (algorithm == null) {
+			IRangeComparator reference= new DocEquivalenceComparator(leftEquivalent, leftRange);
+			IRangeComparator change= new DocEquivalenceComparator(rightEquivalent, rightRange);
+			return new ArrayList(Arrays.asList(RangeDifferencer.findRanges(fRangeDiffFactory, monitor, reference, change)));
+		}
+
+		int[] left= leftRange == null ? leftEquivalent.getHashCodes(0, leftEquivalent.getCount()) : leftEquivalent.getHashCodes(leftRange.getStartLine(), leftRange.getNumberOfLines());
+		int[] right= rightRange == null ? rightEquivalent.getHashCodes(0, rightEquivalent.getCount()) : rightEquivalent.getHashCodes(rightRange.getStartLine(), rightRange.getNumberOfLines());
+		int[] runs= algorithm.findCommonRuns(left, right, monitor);
+
+		// fill the gaps between the common runs with changes
+		List diffs= new ArrayList(runs.length / 3 * 2 + 1);
+		int leftLine= 0, rightLine= 0;
+		for (int i= 0; i < runs.length; i += 3) {
+			int leftStart= runs[i];
+			int rightStart= runs[i + 1];
+			int length= runs[i + 2];
+			if (leftStart > leftLine || rightStart > rightLine)
+				diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, rightLine, rightStart - rightLine, leftLine, leftStart - leftLine));
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.NOCHANGE, rightStart, length, leftStart, length));
+			leftLine= leftStart + length;
+			rightLine= rightStart + length;
+		}
+		if (left.length > leftLine || right.length > rightLine)
+			diffs.add(new QuickDiffRangeDifference(RangeDifference.CHANGE, rightLine, right.length - rightLine, leftLine, left.length - leftLine));
+		return diffs;
+	}
+
+	/**
+	 * Sets the algorithm used to compute the line differences. The algorithm is
+	 * used for the next computation of differences. The {@link MyersDiffAlgorithm}
+	 * is used by default, clients may opt in to the {@link HistogramDiffAlgorithm}.
+	 *
+	 * @param algorithm the algorithm, or <code>null</code> to use the {@link RangeDifferencer}
+	 * @since 3.9
+	 */
+	public synchronized void setDiffAlgorithm(IDiffAlgorithm algorithm) {
+		fDiffAlgorithm= algorithm;
+	}
+
 	/**
 	 * Finds a consistent range of at least size before <code>line</code> in the left document.
 	 *
@@ -1153,20 +1200,21 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	 * @return the first range found, or the first range in the differ if none can be found
 	 */
 	private QuickDiffRangeDifference findConsistentRangeBeforeLeft(int line, int size) {
-		QuickDiffRangeDifference found= null;
-
-		for (ListIterator it= fDifferences.listIterator(); it.hasNext();) {
-			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) it.next();
-			if (found == null || difference.kind() == RangeDifference.NOCHANGE
+		final List differences= fDifferences;
+		if (differences.isEmpty())
+			return null;
+
+		// search backwards from the first range ending at or after line
+		int start= Math.min(QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.LEFT_END, line - 1), differences.size() - 1);
+		for (int i= start; i > 0; i--) {
+			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) differences.get(i);
+			if (difference.kind() == RangeDifference.NOCHANGE
 					&& (difference.leftEnd() < line && difference.leftLength() >= size
 							|| difference.leftEnd() >= line && line - difference.leftStart() >= size))
-				found= difference;
-
-			if (difference.leftEnd() >= line)
-				break;
+				return difference;
 		}
 
-		return found;
+		return (QuickDiffRangeDifference) differences.get(0);
 	}
 
 	/**
@@ -1177,21 +1225,22 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	 * @return the first range found, or the last range in the differ if none can be found
 	 */
 	private QuickDiffRangeDifference findConsistentRangeAfterLeft(int line, int size) {
-		QuickDiffRangeDifference found= null;
-
-		for (ListIterator it= fDifferences.listIterator(fDifferences.size()); it.hasPrevious();) {
-			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) it.previous();
-			if (found == null || difference.kind() == RangeDifference.NOCHANGE
+		final List differences= fDifferences;
+		if (differences.isEmpty())
+			return null;
+
+		// search forward from the last range starting at or before line
+		int last= differences.size() - 1;
+		int start= Math.max(QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.LEFT_START, line) - 1, 0);
+		for (int i= start; i < last; i++) {
+			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) differences.get(i);
+			if (difference.kind() == RangeDifference.NOCHANGE
 					&& (difference.leftStart() > line && difference.leftLength() >= size
 							|| difference.leftStart() <= line && difference.leftEnd() - line >= size))
-				found= difference;
-
-			if (difference.leftStart() <= line)
-				break;
-
+				return difference;
 		}
 
-		return found;
+		return (QuickDiffRangeDifference) differences.get(last);
 	}
 
 	/**
@@ -1202,24 +1251,22 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	 * @return the first range found, or the first range in the differ if none can be found
 	 */
 	private QuickDiffRangeDifference findConsistentRangeBeforeRight(int line, int size) {
-		QuickDiffRangeDifference found= null;
-
-		int unchanged= -1; // the number of unchanged lines before line
-		for (ListIterator it= fDifferences.listIterator(); it.hasNext();) {
-			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) it.next();
-			if (found == null)
-				found= difference;
-			else if (difference.kind() == RangeDifference.NOCHANGE) {
-				unchanged= Math.min(line, difference.rightEnd()) - difference.rightStart();
+		final List differences= fDifferences;
+		if (differences.isEmpty())
+			return null;
+
+		// search backwards from the first range ending at or after line
+		int start= Math.min(QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.RIGHT_END, line - 1), differences.size() - 1);
+		for (int i= start; i > 0; i--) {
+			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) differences.get(i);
+			if (difference.kind() == RangeDifference.NOCHANGE) {
+				int unchanged= Math.min(line, difference.rightEnd()) - difference.rightStart(); // the number of unchanged lines before line
 				if (unchanged >= size)
-					found= difference;
+					return difference;
 			}
-
-			if (difference.rightEnd() >= line)
-				break;
 		}
 
-		return found;
+		return (QuickDiffRangeDifference) differences.get(0);
 	}
 
 	/**
@@ -1230,24 +1277,23 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	 * @return the first range found, or the last range in the differ if none can be found
 	 */
 	private QuickDiffRangeDifference findConsistentRangeAfterRight(int line, int size) {
-		QuickDiffRangeDifference found= null;
-
-		int unchanged= -1; // the number of unchanged lines after line
-		for (ListIterator it= fDifferences.listIterator(fDifferences.size()); it.hasPrevious();) {
-			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) it.previous();
-			if (found == null)
-				found= difference;
-			else if (difference.kind() == RangeDifference.NOCHANGE) {
-				unchanged= difference.rightEnd() - Math.max(line + 1, difference.rightStart()); // + 1 to step over the changed line
+		final List differences= fDifferences;
+		if (differences.isEmpty())
+			return null;
+
+		// search forward from the last range starting at or before line
+		int last= differences.size() - 1;
+		int start= Math.max(QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.RIGHT_START, line) - 1, 0);
+		for (int i= start; i < last; i++) {
+			QuickDiffRangeDifference difference= (QuickDiffRangeDifference) differences.get(i);
+			if (difference.kind() == RangeDifference.NOCHANGE) {
+				int unchanged= difference.rightEnd() - Math.max(line + 1, difference.rightStart()); // + 1 to step over the changed line
 				if (unchanged >= size)
-					found= difference;
+					return difference;
 			}
-
-			if (difference.rightStart() <= line)
-				break;
 		}
 
-		return found;
+		return (QuickDiffRangeDifference) differences.get(last);
 	}
 
 	/**
@@ -1357,11 +1403,12 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	 * @return the corresponding RangeDifference, or <code>null</code>
 	 */
 	private QuickDiffRangeDifference getRangeDifferenceForLeftLine(int leftLine) {
-		for (Iterator it= fDifferences.iterator(); it.hasNext();) {
-			QuickDiffRangeDifference d= (QuickDiffRangeDifference) it.next();
-			if (leftLine >= d.leftStart() && leftLine < d.leftEnd()) {
+		final List differences= fDifferences;
+		int index= QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.LEFT_END, leftLine);
+		if (index < differences.size()) {
+			QuickDiffRangeDifference d= (QuickDiffRangeDifference) differences.get(index);
+			if (leftLine >= d.leftStart())
 				return d;
-			}
 		}
 		return null;
 	}
@@ -1375,11 +1422,11 @@ public class DocumentLineDiffer implements ILineDiffer, IDocumentListener, IAnno
 	private QuickDiffRangeDifference getRangeDifferenceForRightLine(int rightLine) {
 		final List differences= fDifferences;
 		synchronized (differences) {
-			for (Iterator it= differences.iterator(); it.hasNext();) {
-				QuickDiffRangeDifference d= (QuickDiffRangeDifference) it.next();
-				if (rightLine >= d.rightStart() && rightLine < d.rightEnd()) {
+			int index= QuickDiffRangeDifference.upperBound(differences, QuickDiffRangeDifference.RIGHT_END, rightLine);
+			if (index < differences.size()) {
+				QuickDiffRangeDifference d= (QuickDiffRangeDifference) differences.get(index);
+				if (rightLine >= d.rightStart())
 					return d;
-				}
 			}
 		}
 		return null;
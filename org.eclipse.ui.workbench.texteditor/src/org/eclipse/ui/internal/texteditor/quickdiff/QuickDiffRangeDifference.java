@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -37,6 +37,27 @@ import org.eclipse.compare.rangedifferencer.RangeDifferencer;
  */
 public class QuickDiffRangeDifference extends org.eclipse.compare.rangedifferencer.RangeDifference {
 
+	/**
+	 * Selects the start of the left range, see {@link #upperBound(List, int, int)}.
+	 * @since 3.9
+	 */
+	static final int LEFT_START= 0;
+	/**
+	 * Selects the end of the left range, see {@link #upperBound(List, int, int)}.
+	 * @since 3.9
+	 */
+	static final int LEFT_END= 1;
+	/**
+	 * Selects the start of the right range, see {@link #upperBound(List, int, int)}.
+	 * @since 3.9
+	 */
+	static final int RIGHT_START= 2;
+	/**
+	 * Selects the end of the right range, see {@link #upperBound(List, int, int)}.
+	 * @since 3.9
+	 */
+	static final int RIGHT_END= 3;
+
 	private DiffRegion fRegion;
 
 	/**
@@ -110,6 +131,73 @@ public class QuickDiffRangeDifference extends org.eclipse.compare.rangedifferenc
 		leftLength+= shift;
 	}
 
+	/**
+	 * Returns the given bound of this difference.
+	 *
+	 * @param bound one of {@link #LEFT_START}, {@link #LEFT_END}, {@link #RIGHT_START}
+	 *            and {@link #RIGHT_END}
+	 * @return the bound
+	 * @since 3.9
+	 */
+	private int getBound(int bound) {
+		switch (bound) {
+			case LEFT_START:
+				return leftStart;
+			case LEFT_END:
+				return leftStart + leftLength;
+			case RIGHT_START:
+				return rightStart;
+			default:
+				return rightStart + rightLength;
+		}
+	}
+
+	/**
+	 * Returns the index of the first difference in the given list whose bound is
+	 * greater than <code>line</code>. The differences must be ordered and partition
+	 * both sides, as the differences maintained by {@link DocumentLineDiffer}.
+	 *
+	 * @param differences the list of differences supporting fast random access
+	 * @param bound one of {@link #LEFT_START}, {@link #LEFT_END}, {@link #RIGHT_START}
+	 *            and {@link #RIGHT_END}
+	 * @param line the line
+	 * @return the index of the first difference whose bound is greater than
+	 *         <code>line</code>, or the size of the list if there is none
+	 * @since 3.9
+	 */
+	static int upperBound(List differences, int bound, int line) {
+		int low= 0, high= differences.size();
+		while (low < high) {
+			int mid= (low + high) >>> 1;
+			if (((QuickDiffRangeDifference) differences.get(mid)).getBound(bound) <= line)
+				low= mid + 1;
+			else
+				high= mid;
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the given difference in the given list.
+	 *
+	 * @param differences the list of differences supporting fast random access,
+	 *            see {@link #upperBound(List, int, int)}
+	 * @param difference the difference to search
+	 * @return the index of the difference, or <code>-1</code> if it is not in the list
+	 * @since 3.9
+	 */
+	static int indexOf(List differences, QuickDiffRangeDifference difference) {
+		int size= differences.size();
+		for (int i= upperBound(differences, RIGHT_START, difference.rightStart - 1); i < size; i++) {
+			QuickDiffRangeDifference d= (QuickDiffRangeDifference) differences.get(i);
+			if (d.rightStart != difference.rightStart)
+				break;
+			if (difference.equals(d))
+				return i;
+		}
+		return -1;
+	}
+
 	/**
 	 * Returns the diff region corresponding to this range difference.
 	 *
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,9 @@
  *******************************************************************************/
 package org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence;
 
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.IDocument;
+
 /**
  *
  * @since 3.2
@@ -17,18 +20,47 @@ package org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence;
 public final class DJBHashFunction implements IHashFunction {
 
 	public Hash computeHash(CharSequence string) {
-		return new IntHash(hash(string));
+		return new IntHash(hash(string, 0, string.length()));
 	}
 
-	private int hash(CharSequence seq){
-        int hash = 5381;
-        int len= seq.length();
-        for (int i= 0; i < len; i++) {
-        	char ch= seq.charAt(i);
-            hash = ((hash << 5) + hash) + ch; /* hash * 33 + ch */
-        }
+	/**
+	 * Computes the hash of a range of a character sequence.
+	 *
+	 * @param seq the character sequence
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @return the hash of the range
+	 * @since 3.9
+	 */
+	static int hash(CharSequence seq, int offset, int length) {
+		int hash = 5381;
+		for (int i= offset, end= offset + length; i < end; i++) {
+			char ch= seq.charAt(i);
+			hash = ((hash << 5) + hash) + ch; /* hash * 33 + ch */
+		}
+
+		return hash;
+	}
 
-        return hash;
-    }
+	/**
+	 * Computes the hash of a range of a document without extracting the
+	 * range's contents.
+	 *
+	 * @param document the document
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @return the hash of the range
+	 * @throws BadLocationException if the range is not valid in the document
+	 * @since 3.9
+	 */
+	static int hash(IDocument document, int offset, int length) throws BadLocationException {
+		int hash = 5381;
+		for (int i= offset, end= offset + length; i < end; i++) {
+			char ch= document.getChar(i);
+			hash = ((hash << 5) + hash) + ch; /* hash * 33 + ch */
+		}
+
+		return hash;
+	}
 
 }
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -72,9 +72,7 @@ public final class DocEquivalenceComparator implements IRangeComparator {
 		if (other instanceof DocEquivalenceComparator) {
 			DocEquivalenceComparator dec= (DocEquivalenceComparator) other;
 			try {
-				Hash ourHash= getHash(thisIndex);
-				Hash otherHash= dec.getHash(otherIndex);
-				return ourHash.equals(otherHash);
+				return getHashCode(thisIndex) == dec.getHashCode(otherIndex);
 			} catch (ConcurrentModificationException e) {
 				fSkip= true;
 			} catch (IndexOutOfBoundsException e) {
@@ -84,8 +82,8 @@ public final class DocEquivalenceComparator implements IRangeComparator {
 		return false;
 	}
 
-	Hash getHash(int index) {
-		return fEquivalenceClass.getHash(fLineOffset + index);
+	int getHashCode(int index) {
+		return fEquivalenceClass.getHashCode(fLineOffset + index);
 	}
 
 	/**
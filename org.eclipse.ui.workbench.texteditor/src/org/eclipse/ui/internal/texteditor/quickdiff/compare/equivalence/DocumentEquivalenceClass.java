@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2008 IBM Corporation and others.
+ * Copyright (c) 2005, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,9 +10,6 @@
  *******************************************************************************/
 package org.eclipse.ui.internal.texteditor.quickdiff.compare.equivalence;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.ConcurrentModificationException;
 
 import org.eclipse.core.runtime.Assert;
@@ -23,13 +20,31 @@ import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
 
 /**
+ * The line hashes of a document.
+ * <p>
+ * The hashes are stored in a primitive array, two lines are equivalent if the
+ * hash codes of their hashes are equal. Hashes are computed directly over the
+ * document or text contents, without extracting the line contents as strings.
+ * </p>
+ *
  * @since 3.2
  */
 public final class DocumentEquivalenceClass {
 
 	private static final boolean DEBUG= false;
 
-	private final ArrayList fHashes;
+	/** Marks a line whose hash has been computed, see {@link #fHashes}. */
+	private static final long VALID= 1L << 32;
+
+	/**
+	 * The hashes of the lines, only the first {@link #fCount} entries are used. An
+	 * entry is <code>0</code> if the hash of the line has not been computed yet,
+	 * otherwise it holds the hash in its lower 32 bits and has the {@link #VALID}
+	 * bit set.
+	 */
+	private long[] fHashes;
+	/** The number of lines. */
+	private int fCount;
 	private IDocument fDocument;
 	private final IHashFunction fHashFunction;
 
@@ -38,13 +53,82 @@ public final class DocumentEquivalenceClass {
 	}
 
 	public DocumentEquivalenceClass(IDocument document, IHashFunction hashFunction) {
+		if (hashFunction == null)
+			throw new NullPointerException("hashFunction"); //$NON-NLS-1$
 		fDocument= document;
-		Object[] nulls= new Object[fDocument.getNumberOfLines()];
-		fHashes= new ArrayList(Arrays.asList(nulls));
+		fHashFunction= hashFunction;
+		fCount= fDocument.getNumberOfLines();
+		fHashes= new long[fCount];
+	}
 
+	/**
+	 * Creates a new equivalence class for the given document and computes the
+	 * hashes of all lines from the given contents of the document. Lines are
+	 * separated by the legal line delimiters of the document, where the longest
+	 * delimiter wins if several match at the same offset, like in
+	 * {@link org.eclipse.jface.text.ConfigurableLineTracker}.
+	 * <p>
+	 * The contents must not be changed in the document between the time they have
+	 * been retrieved and the first call to {@link #update(DocumentEvent)}.
+	 * </p>
+	 *
+	 * @param document the document
+	 * @param contents the contents of the document
+	 * @param hashFunction the hash function
+	 * @since 3.9
+	 */
+	public DocumentEquivalenceClass(IDocument document, String contents, IHashFunction hashFunction) {
 		if (hashFunction == null)
 			throw new NullPointerException("hashFunction"); //$NON-NLS-1$
+		fDocument= document;
 		fHashFunction= hashFunction;
+		fHashes= new long[16];
+
+		String[] delimiters= document.getLegalLineDelimiters();
+		int length= contents.length();
+		int start= 0;
+		for (int i= 0; i < length; i++) {
+			int delimiterLength= getDelimiterLength(contents, i, delimiters);
+			if (delimiterLength > 0) {
+				append(computeHash(contents, start, i - start));
+				i += delimiterLength - 1;
+				start= i + 1;
+			}
+		}
+		append(computeHash(contents, start, length - start));
+	}
+
+	/**
+	 * Returns the length of the longest delimiter starting at the given offset.
+	 *
+	 * @param text the text
+	 * @param offset the offset
+	 * @param delimiters the legal line delimiters
+	 * @return the length of the delimiter at <code>offset</code>, <code>0</code> if there
+	 *         is none
+	 */
+	private static int getDelimiterLength(String text, int offset, String[] delimiters) {
+		int length= 0;
+		for (int i= 0; i < delimiters.length; i++) {
+			String delimiter= delimiters[i];
+			if (delimiter.length() > length && text.startsWith(delimiter, offset))
+				length= delimiter.length();
+		}
+		return length;
+	}
+
+	/**
+	 * Appends a line with the given hash.
+	 *
+	 * @param hash the hash of the line
+	 */
+	private void append(int hash) {
+		if (fCount == fHashes.length) {
+			long[] hashes= new long[fCount * 2];
+			System.arraycopy(fHashes, 0, hashes, 0, fCount);
+			fHashes= hashes;
+		}
+		fHashes[fCount++]= VALID | (hash & 0xFFFFFFFFL);
 	}
 
 	/**
@@ -59,26 +143,96 @@ public final class DocumentEquivalenceClass {
 	 *         modified concurrently to this method call
 	 */
 	public Hash getHash(int line) {
+		return new IntHash(getHashCode(line));
+	}
+
+	/**
+	 * Returns the hash code of the equivalence hash for line <code>line</code>.
+	 * Two lines are equivalent if their hash codes are equal.
+	 *
+	 * @param line the line for which to get the hash code
+	 * @return the hash code of the line's hash
+	 * @throws IndexOutOfBoundsException if <code>line</code> is not a
+	 *         legal document line
+	 * @throws ConcurrentModificationException if the document is
+	 *         modified concurrently to this method call
+	 * @since 3.9
+	 */
+	public int getHashCode(int line) {
 		try {
-			return internalGetHash(line);
+			return internalGetHashCode(line);
 		} catch (BadLocationException x) {
 			throw new ConcurrentModificationException();
 		}
 	}
 
-	private Hash internalGetHash(int line) throws BadLocationException {
-		Hash hash= (Hash) fHashes.get(line);
-		if (hash == null) {
+	/**
+	 * Returns the hash codes of the given lines.
+	 *
+	 * @param line the first line
+	 * @param count the number of lines
+	 * @return the hash codes of the lines
+	 * @throws IndexOutOfBoundsException if the lines are not legal document lines
+	 * @throws ConcurrentModificationException if the document is
+	 *         modified concurrently to this method call
+	 * @see #getHashCode(int)
+	 * @since 3.9
+	 */
+	public int[] getHashCodes(int line, int count) {
+		int[] hashes= new int[count];
+		try {
+			for (int i= 0; i < count; i++)
+				hashes[i]= internalGetHashCode(line + i);
+		} catch (BadLocationException x) {
+			throw new ConcurrentModificationException();
+		}
+		return hashes;
+	}
+
+	private int internalGetHashCode(int line) throws BadLocationException {
+		if (line < 0 || line >= fCount)
+			throw new IndexOutOfBoundsException(String.valueOf(line));
+
+		long hash= fHashes[line];
+		if (hash == 0) {
 			if (fDocument == null)
 				throw new AssertionError("hash cannot be null after loadAndForget"); //$NON-NLS-1$
 
 			IRegion lineRegion= fDocument.getLineInformation(line);
-			String lineContents= fDocument.get(lineRegion.getOffset(), lineRegion.getLength());
-			hash= fHashFunction.computeHash(lineContents);
-			fHashes.set(line, hash);
+			hash= VALID | (computeHash(fDocument, lineRegion.getOffset(), lineRegion.getLength()) & 0xFFFFFFFFL);
+			fHashes[line]= hash;
 		}
 
-		return hash;
+		return (int) hash;
+	}
+
+	/**
+	 * Computes the hash of the given range of the text.
+	 *
+	 * @param text the text
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @return the hash code of the hash of the range
+	 */
+	private int computeHash(String text, int offset, int length) {
+		if (fHashFunction instanceof DJBHashFunction)
+			return DJBHashFunction.hash(text, offset, length);
+		return fHashFunction.computeHash(text.substring(offset, offset + length)).hashCode();
+	}
+
+	/**
+	 * Computes the hash of the given range of the document.
+	 *
+	 * @param document the document
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @return the hash code of the hash of the range
+	 * @throws BadLocationException if the range is not valid in the document
+	 */
+	private int computeHash(IDocument document, int offset, int length) throws BadLocationException {
+		if (fHashFunction instanceof DJBHashFunction)
+			return DJBHashFunction.hash(document, offset, length);
+		return fHashFunction.computeHash(document.get(offset, length)).hashCode();
 	}
 
 	/**
@@ -107,20 +261,34 @@ public final class DocumentEquivalenceClass {
 		int delta= linesAfter - linesBefore;
 		int changed= Math.min(linesAfter, linesBefore);
 
+		if (firstLine + linesBefore > fCount)
+			throw new ConcurrentModificationException();
+
 		if (delta > 0) {
-			Object[] nulls= new Object[delta];
-			fHashes.addAll(firstLine + changed, Arrays.asList(nulls));
+			int count= fCount + delta;
+			if (count > fHashes.length) {
+				long[] hashes= new long[Math.max(count, fHashes.length * 3 / 2)];
+				System.arraycopy(fHashes, 0, hashes, 0, firstLine + changed);
+				System.arraycopy(fHashes, firstLine + changed, hashes, firstLine + changed + delta, fCount - firstLine - changed);
+				fHashes= hashes;
+			} else {
+				System.arraycopy(fHashes, firstLine + changed, fHashes, firstLine + changed + delta, fCount - firstLine - changed);
+			}
+			fCount= count;
 		} else if (delta < 0) {
-			fHashes.subList(firstLine, firstLine - delta).clear();
+			System.arraycopy(fHashes, firstLine - delta, fHashes, firstLine, fCount - firstLine + delta);
+			fCount += delta;
 		}
-		Collections.fill(fHashes.subList(firstLine, firstLine + changed), null);
+		// invalidate the changed and the inserted lines
+		for (int i= firstLine, end= firstLine + Math.max(changed, linesAfter); i < end; i++)
+			fHashes[i]= 0;
 	}
 
 	/**
 	 * @return the number of items
 	 */
 	public int getCount() {
-		return fHashes.size();
+		return fCount;
 	}
 
 	public void setDocument(IDocument document) {
@@ -137,7 +305,7 @@ public final class DocumentEquivalenceClass {
 	public void loadAndForget() {
 		int count= getCount();
 		for (int line= 0; line < count; line++)
-			getHash(line);
+			getHashCode(line);
 
 		fDocument= null;
 	}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer;
+
+
+/**
+ * Collects the common runs computed by an {@link IDiffAlgorithm}. Runs must be
+ * added in ascending order, adjacent runs are merged.
+ *
+ * @since 3.9
+ */
+final class CommonRuns {
+
+	/** The runs as <code>(leftStart, rightStart, length)</code> triples. */
+	private int[] fRuns= new int[48];
+	/** The number of used entries in {@link #fRuns}. */
+	private int fSize;
+
+	/**
+	 * Adds a run of common lines.
+	 *
+	 * @param leftStart the start of the run in the left sequence
+	 * @param rightStart the start of the run in the right sequence
+	 * @param length the length of the run
+	 */
+	void add(int leftStart, int rightStart, int length) {
+		if (length <= 0)
+			return;
+
+		if (fSize > 0) {
+			int last= fSize - 3;
+			int lastLength= fRuns[last + 2];
+			if (fRuns[last] + lastLength == leftStart && fRuns[last + 1] + lastLength == rightStart) {
+				fRuns[last + 2]= lastLength + length;
+				return;
+			}
+		}
+
+		if (fSize + 3 > fRuns.length) {
+			int[] runs= new int[fRuns.length * 2];
+			System.arraycopy(fRuns, 0, runs, 0, fSize);
+			fRuns= runs;
+		}
+		fRuns[fSize++]= leftStart;
+		fRuns[fSize++]= rightStart;
+		fRuns[fSize++]= length;
+	}
+
+	/**
+	 * Returns the collected runs.
+	 *
+	 * @return the runs as <code>(leftStart, rightStart, length)</code> triples
+	 */
+	int[] toArray() {
+		int[] runs= new int[fSize];
+		System.arraycopy(fRuns, 0, runs, 0, fSize);
+		return runs;
+	}
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+
+/**
+ * Histogram difference algorithm, an extension of patience diff.
+ * <p>
+ * The sequences are split at the longest run of common lines that contains a line
+ * occurring least often in the left range, and the ranges before and after the
+ * run are diffed recursively. Ranges in which all common lines occur too often
+ * are diffed with {@link MyersDiffAlgorithm}. This usually produces diffs that
+ * align with the structure of the text, and is fast for large inputs with few
+ * changes.
+ * </p>
+ *
+ * @since 3.9
+ */
+public final class HistogramDiffAlgorithm implements IDiffAlgorithm {
+
+	/**
+	 * The maximum number of occurrences of a line in the left range for it to
+	 * be used to split the ranges.
+	 */
+	private static final int MAX_CHAIN_LENGTH= 64;
+
+	/**
+	 * Computes the differences of one pair of sequences.
+	 * <p>
+	 * The occurrences of the lines of the left sequence are indexed once. The
+	 * occurrences of a line form a sorted slice of {@link #fOccurrences}, hence the
+	 * occurrences within a range are found by binary search and the histogram of a
+	 * range is never rebuilt. Each anchor search only scans the unmatched range of
+	 * the right sequence.
+	 * </p>
+	 */
+	private final class Differ {
+
+		private final int[] fA;
+		private final int[] fB;
+		private final CommonRuns fRuns;
+		private final IProgressMonitor fMonitor;
+		/** The positions in the left sequence, grouped by line and sorted within each group. */
+		private final int[] fOccurrences;
+		/** The start of the group of each line in {@link #fOccurrences}, plus the end of the last group. */
+		private final int[] fGroupStart;
+		/** The group of each line of the right sequence, <code>-1</code> if it does not occur in the left sequence. */
+		private final int[] fGroupOfB;
+		/** The anchor computed by {@link #findAnchor(int, int, int, int)}. */
+		private int fAnchorA, fAnchorB, fAnchorLength;
+
+		Differ(int[] a, int[] b, CommonRuns runs, IProgressMonitor monitor) {
+			fA= a;
+			fB= b;
+			fRuns= runs;
+			fMonitor= monitor;
+
+			int capacity= 4;
+			while (capacity < 2 * a.length)
+				capacity <<= 1;
+			int mask= capacity - 1;
+			int[] keys= new int[capacity];
+			int[] groups= new int[capacity];
+			for (int i= 0; i < capacity; i++)
+				groups[i]= -1;
+
+			// number the distinct lines and count their occurrences
+			int[] groupOfA= new int[a.length];
+			int[] counts= new int[a.length + 1];
+			int groupCount= 0;
+			for (int i= 0; i < a.length; i++) {
+				int slot= findSlot(keys, groups, mask, a[i]);
+				if (groups[slot] == -1) {
+					keys[slot]= a[i];
+					groups[slot]= groupCount++;
+				}
+				groupOfA[i]= groups[slot];
+				counts[groups[slot]]++;
+			}
+
+			fGroupStart= new int[groupCount + 1];
+			for (int g= 0; g < groupCount; g++)
+				fGroupStart[g + 1]= fGroupStart[g] + counts[g];
+			fOccurrences= new int[a.length];
+			int[] fill= counts;
+			System.arraycopy(fGroupStart, 0, fill, 0, groupCount);
+			for (int i= 0; i < a.length; i++)
+				fOccurrences[fill[groupOfA[i]]++]= i;
+
+			fGroupOfB= new int[b.length];
+			for (int i= 0; i < b.length; i++)
+				fGroupOfB[i]= groups[findSlot(keys, groups, mask, b[i])];
+		}
+
+		/**
+		 * Adds the common runs of the given ranges.
+		 *
+		 * @param aStart the start of the range in the left sequence
+		 * @param aEnd the end of the range in the left sequence, exclusive
+		 * @param bStart the start of the range in the right sequence
+		 * @param bEnd the end of the range in the right sequence, exclusive
+		 */
+		void diff(int aStart, int aEnd, int bStart, int bEnd) {
+			int suffix= 0;
+			while (aEnd - suffix > aStart && bEnd - suffix > bStart && fA[aEnd - suffix - 1] == fB[bEnd - suffix - 1])
+				suffix++;
+			aEnd -= suffix;
+			bEnd -= suffix;
+
+			// recurse into the ranges before the anchors, iterate over the ranges after them
+			while (true) {
+				int prefix= 0;
+				while (aStart + prefix < aEnd && bStart + prefix < bEnd && fA[aStart + prefix] == fB[bStart + prefix])
+					prefix++;
+				fRuns.add(aStart, bStart, prefix);
+				aStart += prefix;
+				bStart += prefix;
+
+				if (aStart == aEnd || bStart == bEnd || isCanceled())
+					break;
+
+				if (!findAnchor(aStart, aEnd, bStart, bEnd)) {
+					fFallback.diff(fA, aStart, aEnd, fB, bStart, bEnd, fRuns, fMonitor);
+					break;
+				}
+
+				int anchorA= fAnchorA;
+				int anchorB= fAnchorB;
+				int anchorLength= fAnchorLength;
+				diff(aStart, anchorA, bStart, anchorB);
+				fRuns.add(anchorA, anchorB, anchorLength);
+				aStart= anchorA + anchorLength;
+				bStart= anchorB + anchorLength;
+			}
+
+			fRuns.add(aEnd, bEnd, suffix);
+		}
+
+		/**
+		 * Finds the longest run of common lines containing a line that occurs least
+		 * often in the left range and stores it in {@link #fAnchorA}, {@link #fAnchorB}
+		 * and {@link #fAnchorLength}.
+		 *
+		 * @param aStart the start of the range in the left sequence
+		 * @param aEnd the end of the range in the left sequence, exclusive
+		 * @param bStart the start of the range in the right sequence
+		 * @param bEnd the end of the range in the right sequence, exclusive
+		 * @return <code>true</code> if an anchor has been found, <code>false</code> if
+		 *         there is no common line occurring at most {@link #MAX_CHAIN_LENGTH} times
+		 */
+		private boolean findAnchor(int aStart, int aEnd, int bStart, int bEnd) {
+			int bestCount= MAX_CHAIN_LENGTH;
+			int bestLength= 0;
+			for (int bi= bStart; bi < bEnd;) {
+				int group= fGroupOfB[bi];
+				int nextB= bi + 1;
+				if (group != -1) {
+					int first= lowerBound(fGroupStart[group], fGroupStart[group + 1], aStart);
+					int last= lowerBound(first, fGroupStart[group + 1], aEnd);
+					int count= last - first;
+					if (count > 0 && count <= bestCount) {
+						for (int k= first; k < last; k++) {
+							int ai= fOccurrences[k];
+							int as= ai, bs= bi;
+							while (as > aStart && bs > bStart && fA[as - 1] == fB[bs - 1]) {
+								as--;
+								bs--;
+							}
+							int ae= ai + 1, be= bi + 1;
+							while (ae < aEnd && be < bEnd && fA[ae] == fB[be]) {
+								ae++;
+								be++;
+							}
+							if (count < bestCount || ae - as > bestLength) {
+								bestCount= count;
+								bestLength= ae - as;
+								fAnchorA= as;
+								fAnchorB= bs;
+								fAnchorLength= bestLength;
+							}
+							nextB= Math.max(nextB, be);
+						}
+					}
+				}
+				bi= nextB;
+			}
+
+			return bestLength > 0;
+		}
+
+		/**
+		 * Returns the index of the first occurrence in the given slice of
+		 * {@link #fOccurrences} which is not before the given position.
+		 *
+		 * @param low the start of the slice
+		 * @param high the end of the slice, exclusive
+		 * @param position the position in the left sequence
+		 * @return the index of the first occurrence at or after <code>position</code>
+		 */
+		private int lowerBound(int low, int high, int position) {
+			while (low < high) {
+				int mid= (low + high) >>> 1;
+				if (fOccurrences[mid] < position)
+					low= mid + 1;
+				else
+					high= mid;
+			}
+			return low;
+		}
+
+		private int findSlot(int[] keys, int[] groups, int mask, int key) {
+			int hash= key * 0x9E3779B9;
+			int slot= (hash ^ hash >>> 16) & mask;
+			while (groups[slot] != -1 && keys[slot] != key)
+				slot= slot + 1 & mask;
+			return slot;
+		}
+
+		private boolean isCanceled() {
+			return fMonitor != null && fMonitor.isCanceled();
+		}
+	}
+
+	/** The algorithm used for ranges without suitable anchors. */
+	private final MyersDiffAlgorithm fFallback= new MyersDiffAlgorithm();
+
+	/*
+	 * @see org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.IDiffAlgorithm#findCommonRuns(int[], int[], org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public int[] findCommonRuns(int[] left, int[] right, IProgressMonitor monitor) {
+		CommonRuns runs= new CommonRuns();
+		new Differ(left, right, runs, monitor).diff(0, left.length, 0, right.length);
+		return runs.toArray();
+	}
+}
@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+
+/**
+ * Computes the differences between two sequences of line hashes. Two lines are
+ * considered equal if their hashes are equal.
+ * <p>
+ * The result is described by the runs of lines common to both sequences. The
+ * runs are returned as triples <code>(leftStart, rightStart, length)</code>,
+ * ordered by their start indices; neither the left nor the right ranges of two
+ * runs overlap, and adjacent runs are merged.
+ * </p>
+ *
+ * @since 3.9
+ */
+public interface IDiffAlgorithm {
+
+	/**
+	 * Computes the runs of lines common to the two given sequences.
+	 *
+	 * @param left the hashes of the left lines
+	 * @param right the hashes of the right lines
+	 * @param monitor the progress monitor, may be <code>null</code>. If the monitor
+	 *            is canceled, the result is incomplete.
+	 * @return the common runs as <code>(leftStart, rightStart, length)</code> triples
+	 */
+	int[] findCommonRuns(int[] left, int[] right, IProgressMonitor monitor);
+}
@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+
+/**
+ * Linear space variant of the O(ND) difference algorithm by Eugene W. Myers.
+ * <p>
+ * The sequences are split at the middle snake of an optimal edit path, which
+ * is computed in linear space, and the two halves are diffed recursively. The
+ * result is a longest common subsequence of the two sequences.
+ * </p>
+ * <p>
+ * To bound the running time for very different inputs, the search for the middle
+ * snake is given up once the edit cost exceeds the square root of the input size
+ * (but at least {@link #MIN_MAX_COST}); the sequences are then split at the
+ * furthest reaching forward path, and the result may no longer be minimal.
+ * </p>
+ *
+ * @since 3.9
+ */
+public class MyersDiffAlgorithm implements IDiffAlgorithm {
+
+	/** The minimum edit cost after which the search for the middle snake is given up. */
+	private static final int MIN_MAX_COST= 256;
+
+	/**
+	 * Computes the differences of one pair of sequences.
+	 */
+	private static final class Differ {
+
+		private final int[] fA;
+		private final int[] fB;
+		private final CommonRuns fRuns;
+		private final IProgressMonitor fMonitor;
+		/** The furthest reaching forward paths, indexed by diagonal. */
+		private final int[] fForward;
+		/** The furthest reaching backward paths, indexed by diagonal. */
+		private final int[] fBackward;
+		/** The edit cost after which the search for the middle snake is given up. */
+		private final int fMaxCost;
+		/** The split point computed by {@link #split(int, int, int, int)}. */
+		private int fSplitA, fSplitB;
+
+		Differ(int[] a, int[] b, int maxLength, CommonRuns runs, IProgressMonitor monitor) {
+			fA= a;
+			fB= b;
+			fRuns= runs;
+			fMonitor= monitor;
+			int size= maxLength + 2;
+			fForward= new int[size];
+			fBackward= new int[size];
+			int maxCost= 1;
+			while (maxCost * maxCost < maxLength)
+				maxCost <<= 1;
+			fMaxCost= Math.max(maxCost, MIN_MAX_COST);
+		}
+
+		/**
+		 * Adds the common runs of the given ranges.
+		 *
+		 * @param aStart the start of the range in the left sequence
+		 * @param aEnd the end of the range in the left sequence, exclusive
+		 * @param bStart the start of the range in the right sequence
+		 * @param bEnd the end of the range in the right sequence, exclusive
+		 */
+		void diff(int aStart, int aEnd, int bStart, int bEnd) {
+			int prefix= 0;
+			while (aStart + prefix < aEnd && bStart + prefix < bEnd && fA[aStart + prefix] == fB[bStart + prefix])
+				prefix++;
+			fRuns.add(aStart, bStart, prefix);
+			aStart += prefix;
+			bStart += prefix;
+
+			int suffix= 0;
+			while (aEnd - suffix > aStart && bEnd - suffix > bStart && fA[aEnd - suffix - 1] == fB[bEnd - suffix - 1])
+				suffix++;
+			aEnd -= suffix;
+			bEnd -= suffix;
+
+			if (aStart < aEnd && bStart < bEnd && !isCanceled() && split(aStart, aEnd, bStart, bEnd)) {
+				int splitA= fSplitA;
+				int splitB= fSplitB;
+				diff(aStart, splitA, bStart, splitB);
+				diff(splitA, aEnd, splitB, bEnd);
+			}
+
+			fRuns.add(aEnd, bEnd, suffix);
+		}
+
+		/**
+		 * Finds the middle snake of the given ranges and stores its end in
+		 * {@link #fSplitA} and {@link #fSplitB}.
+		 *
+		 * @param aStart the start of the range in the left sequence
+		 * @param aEnd the end of the range in the left sequence, exclusive
+		 * @param bStart the start of the range in the right sequence
+		 * @param bEnd the end of the range in the right sequence, exclusive
+		 * @return <code>true</code> if a split point has been found, <code>false</code> if canceled
+		 *         or if the ranges have nothing in common
+		 */
+		private boolean split(int aStart, int aEnd, int bStart, int bEnd) {
+			int n= aEnd - aStart;
+			int m= bEnd - bStart;
+			int maxD= (n + m + 1) / 2;
+			int vOffset= maxD;
+			int vLength= 2 * maxD + 2;
+			// only the diagonals up to the maximum cost are ever visited
+			int vLow= Math.max(0, vOffset - fMaxCost - 2);
+			int vHigh= Math.min(vLength, vOffset + fMaxCost + 3);
+			int[] v1= fForward;
+			int[] v2= fBackward;
+			for (int i= vLow; i < vHigh; i++) {
+				v1[i]= -1;
+				v2[i]= -1;
+			}
+			v1[vOffset + 1]= 0;
+			v2[vOffset + 1]= 0;
+
+			int delta= n - m;
+			// if the total number of lines is odd, the front path will collide with the reverse path
+			boolean front= (delta & 1) != 0;
+			// offsets for start and end of k loop, prevents mapping of space beyond the grid
+			int k1Start= 0, k1End= 0, k2Start= 0, k2End= 0;
+			// the furthest reaching forward path, used if the maximum cost is exceeded
+			int bestX= 0, bestY= 0;
+			for (int d= 0; d < maxD; d++) {
+				if (d == fMaxCost) {
+					if (bestX + bestY == 0 || bestX + bestY == n + m)
+						return false;
+					fSplitA= aStart + bestX;
+					fSplitB= bStart + bestY;
+					return true;
+				}
+				if ((d & 0xFF) == 0xFF && isCanceled())
+					return false;
+
+				// walk the front path one step
+				for (int k1= -d + k1Start; k1 <= d - k1End; k1 += 2) {
+					int k1Offset= vOffset + k1;
+					int x1;
+					if (k1 == -d || k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])
+						x1= v1[k1Offset + 1];
+					else
+						x1= v1[k1Offset - 1] + 1;
+					int y1= x1 - k1;
+					while (x1 < n && y1 < m && fA[aStart + x1] == fB[bStart + y1]) {
+						x1++;
+						y1++;
+					}
+					v1[k1Offset]= x1;
+					if (x1 > n) {
+						// ran off the right of the graph
+						k1End += 2;
+					} else if (y1 > m) {
+						// ran off the bottom of the graph
+						k1Start += 2;
+					} else {
+						if (x1 + y1 > bestX + bestY) {
+							bestX= x1;
+							bestY= y1;
+						}
+						int k2Offset= vOffset + delta - k1;
+						if (front && k2Offset >= vLow && k2Offset < vHigh && v2[k2Offset] != -1) {
+							// mirror x2 onto top-left coordinate system
+							int x2= n - v2[k2Offset];
+							if (x1 >= x2) {
+								fSplitA= aStart + x1;
+								fSplitB= bStart + y1;
+								return true;
+							}
+						}
+					}
+				}
+
+				// walk the reverse path one step
+				for (int k2= -d + k2Start; k2 <= d - k2End; k2 += 2) {
+					int k2Offset= vOffset + k2;
+					int x2;
+					if (k2 == -d || k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])
+						x2= v2[k2Offset + 1];
+					else
+						x2= v2[k2Offset - 1] + 1;
+					int y2= x2 - k2;
+					while (x2 < n && y2 < m && fA[aEnd - x2 - 1] == fB[bEnd - y2 - 1]) {
+						x2++;
+						y2++;
+					}
+					v2[k2Offset]= x2;
+					if (x2 > n) {
+						// ran off the left of the graph
+						k2End += 2;
+					} else if (y2 > m) {
+						// ran off the top of the graph
+						k2Start += 2;
+					} else if (!front) {
+						int k1Offset= vOffset + delta - k2;
+						if (k1Offset >= vLow && k1Offset < vHigh && v1[k1Offset] != -1) {
+							int x1= v1[k1Offset];
+							int y1= vOffset + x1 - k1Offset;
+							// mirror x2 onto top-left coordinate system
+							x2= n - x2;
+							if (x1 >= x2) {
+								fSplitA= aStart + x1;
+								fSplitB= bStart + y1;
+								return true;
+							}
+						}
+					}
+				}
+			}
+			// no commonality at all
+			return false;
+		}
+
+		private boolean isCanceled() {
+			return fMonitor != null && fMonitor.isCanceled();
+		}
+	}
+
+	/*
+	 * @see org.eclipse.ui.internal.texteditor.quickdiff.compare.rangedifferencer.IDiffAlgorithm#findCommonRuns(int[], int[], org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public int[] findCommonRuns(int[] left, int[] right, IProgressMonitor monitor) {
+		CommonRuns runs= new CommonRuns();
+		diff(left, 0, left.length, right, 0, right.length, runs, monitor);
+		return runs.toArray();
+	}
+
+	/**
+	 * Adds the common runs of the given ranges of the two sequences.
+	 *
+	 * @param a the left sequence
+	 * @param aStart the start of the range in the left sequence
+	 * @param aEnd the end of the range in the left sequence, exclusive
+	 * @param b the right sequence
+	 * @param bStart the start of the range in the right sequence
+	 * @param bEnd the end of the range in the right sequence, exclusive
+	 * @param runs the runs to add to
+	 * @param monitor the progress monitor, may be <code>null</code>
+	 */
+	void diff(int[] a, int aStart, int aEnd, int[] b, int bStart, int bEnd, CommonRuns runs, IProgressMonitor monitor) {
+		int maxLength= aEnd - aStart + bEnd - bStart + 1;
+		new Differ(a, b, maxLength, runs, monitor).diff(aStart, aEnd, bStart, bEnd);
+	}
+}
@@ -0,0 +1,515 @@
+/*******************************************************************************
+ * Copyright (c) 2014 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ui.internal.texteditor.spelling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.ISafeRunnable;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.BadPartitioningException;
+import org.eclipse.jface.text.ConfigurableLineTracker;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentPartitioner;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+import org.eclipse.jface.text.TypedRegion;
+
+import org.eclipse.ui.texteditor.spelling.ISpellingEngine;
+import org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector;
+import org.eclipse.ui.texteditor.spelling.SpellingContext;
+import org.eclipse.ui.texteditor.spelling.SpellingEngineDescriptor;
+import org.eclipse.ui.texteditor.spelling.SpellingProblem;
+
+
+/**
+ * Checks regions of a document in parallel. The regions are split at word boundaries
+ * into chunks which are checked by a number of jobs, each using its own spelling engine.
+ * The problems found are reported to the collector by the calling thread, ordered by
+ * offset.
+ * <p>
+ * The engines never access the document itself: the calling thread takes a snapshot of
+ * its text and of the partitions of the checked range in each partitioning, and each job
+ * checks its own copy of that snapshot.
+ * </p>
+ *
+ * @since 3.9
+ */
+public final class ParallelSpellingChecker {
+
+	/**
+	 * Collects the problems of a chunk.
+	 */
+	private static class ProblemList implements ISpellingProblemCollector {
+
+		/** The problems. */
+		private final List fProblems= new ArrayList();
+
+		/*
+		 * @see org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector#accept(org.eclipse.ui.texteditor.spelling.SpellingProblem)
+		 */
+		public void accept(SpellingProblem problem) {
+			fProblems.add(problem);
+		}
+
+		/*
+		 * @see org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector#beginCollecting()
+		 */
+		public void beginCollecting() {
+		}
+
+		/*
+		 * @see org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector#endCollecting()
+		 */
+		public void endCollecting() {
+		}
+	}
+
+	/**
+	 * Partitioner returning the partitions of a snapshot. Immutable, hence it can be
+	 * shared by the documents of all jobs.
+	 */
+	private static class SnapshotPartitioner implements IDocumentPartitioner {
+
+		/** The partitions, sorted by offset. */
+		private final ITypedRegion[] fPartitions;
+		/** The legal content types. */
+		private final String[] fLegalContentTypes;
+
+		/**
+		 * Creates a new snapshot partitioner.
+		 *
+		 * @param partitions the partitions, sorted by offset
+		 * @param legalContentTypes the legal content types
+		 */
+		public SnapshotPartitioner(ITypedRegion[] partitions, String[] legalContentTypes) {
+			fPartitions= partitions;
+			fLegalContentTypes= legalContentTypes;
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#connect(org.eclipse.jface.text.IDocument)
+		 */
+		public void connect(IDocument document) {
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#disconnect()
+		 */
+		public void disconnect() {
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public void documentAboutToBeChanged(DocumentEvent event) {
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#documentChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public boolean documentChanged(DocumentEvent event) {
+			return false;
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#getLegalContentTypes()
+		 */
+		public String[] getLegalContentTypes() {
+			return fLegalContentTypes;
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#getContentType(int)
+		 */
+		public String getContentType(int offset) {
+			return getPartition(offset).getType();
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#computePartitioning(int, int)
+		 */
+		public ITypedRegion[] computePartitioning(int offset, int length) {
+			List partitions= new ArrayList();
+			for (int i= find(offset); i < fPartitions.length && fPartitions[i].getOffset() <= offset + length; i++) {
+				ITypedRegion partition= fPartitions[i];
+				if (partition.getOffset() + partition.getLength() > offset || partition.getLength() == 0)
+					partitions.add(partition);
+			}
+			if (partitions.isEmpty())
+				partitions.add(getPartition(offset));
+			return (ITypedRegion[]) partitions.toArray(new ITypedRegion[partitions.size()]);
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentPartitioner#getPartition(int)
+		 */
+		public ITypedRegion getPartition(int offset) {
+			int index= find(offset);
+			if (index < fPartitions.length && fPartitions[index].getOffset() <= offset)
+				return fPartitions[index];
+			if (index > 0 && index == fPartitions.length) {
+				// the end of the last partition
+				ITypedRegion last= fPartitions[index - 1];
+				if (last.getOffset() + last.getLength() == offset)
+					return last;
+			}
+			return new TypedRegion(offset, 0, IDocument.DEFAULT_CONTENT_TYPE);
+		}
+
+		/**
+		 * Returns the index of the first partition which ends after the given offset.
+		 *
+		 * @param offset the offset
+		 * @return the index of the first partition ending after <code>offset</code>
+		 */
+		private int find(int offset) {
+			int low= 0, high= fPartitions.length;
+			while (low < high) {
+				int mid= (low + high) >>> 1;
+				if (fPartitions[mid].getOffset() + fPartitions[mid].getLength() <= offset)
+					low= mid + 1;
+				else
+					high= mid;
+			}
+			return low;
+		}
+	}
+
+	/**
+	 * The copy of the snapshot checked by a job.
+	 */
+	private static class SnapshotDocument extends Document {
+
+		/**
+		 * Creates a new document with the given snapshot.
+		 *
+		 * @param text the text
+		 * @param lineDelimiters the legal line delimiters
+		 * @param partitionings the partitionings
+		 * @param partitioners the partitioners of the partitionings
+		 */
+		public SnapshotDocument(String text, String[] lineDelimiters, String[] partitionings, IDocumentPartitioner[] partitioners) {
+			setLineTracker(new ConfigurableLineTracker(lineDelimiters));
+			set(text);
+			for (int i= 0; i < partitionings.length; i++)
+				setDocumentPartitioner(partitionings[i], partitioners[i]);
+		}
+	}
+
+	/**
+	 * The progress monitor passed to the engines, canceled when the monitor of the
+	 * caller is canceled.
+	 */
+	private static class WorkerMonitor extends NullProgressMonitor {
+
+		/** The monitor of the caller, can be <code>null</code>. */
+		private final IProgressMonitor fParent;
+
+		/**
+		 * Creates a new worker monitor.
+		 *
+		 * @param parent the monitor of the caller, can be <code>null</code>
+		 */
+		public WorkerMonitor(IProgressMonitor parent) {
+			fParent= parent;
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.NullProgressMonitor#isCanceled()
+		 */
+		public boolean isCanceled() {
+			return super.isCanceled() || fParent != null && fParent.isCanceled();
+		}
+	}
+
+	/** The minimal number of characters in a chunk. */
+	private static final int MIN_CHUNK_SIZE= 16 * 1024;
+
+	/** The number of chunks per job, to balance the load of the jobs. */
+	private static final int CHUNKS_PER_JOB= 4;
+
+	/** The interval in milliseconds in which the caller polls for cancellation. */
+	private static final long POLL_INTERVAL= 100;
+
+	/** Orders spelling problems by offset. */
+	private static final Comparator OFFSET_COMPARATOR= new Comparator() {
+		public int compare(Object o1, Object o2) {
+			int offset1= ((SpellingProblem) o1).getOffset();
+			int offset2= ((SpellingProblem) o2).getOffset();
+			return offset1 < offset2 ? -1 : (offset1 == offset2 ? 0 : 1);
+		}
+	};
+
+	/** The document to check. */
+	private final IDocument fDocument;
+	/** The text of the snapshot of the document. */
+	private String fText;
+	/** The legal line delimiters of the document. */
+	private String[] fLineDelimiters;
+	/** The partitionings of the document. */
+	private String[] fPartitionings;
+	/** The partitioners of the snapshot for each partitioning. */
+	private IDocumentPartitioner[] fPartitioners;
+	/** The spelling context. */
+	private final SpellingContext fContext;
+	/** The chunks to check. */
+	private IRegion[] fChunks;
+	/** The problems found in the chunks. */
+	private ProblemList[] fProblems;
+	/** The monitor passed to the engines. */
+	private WorkerMonitor fMonitor;
+	/** The index of the next chunk to check. */
+	private int fNextChunk;
+	/** The number of running jobs. */
+	private int fRunningJobs;
+	/** The lock guarding the chunk index and the number of running jobs. */
+	private final Object fLock= new Object();
+
+
+	/**
+	 * Creates a new parallel spelling checker.
+	 *
+	 * @param document the document to check
+	 * @param context the spelling context
+	 */
+	public ParallelSpellingChecker(IDocument document, SpellingContext context) {
+		fDocument= document;
+		fContext= context;
+	}
+
+	/**
+	 * Checks the given regions in parallel if they are large enough and more than one
+	 * processor is available. Reports all found spelling problems to the collector,
+	 * ordered by offset.
+	 *
+	 * @param descriptor the descriptor of the spelling engine
+	 * @param engine the spelling engine to use in the first job
+	 * @param regions the regions to check
+	 * @param collector the problem collector
+	 * @param monitor the progress monitor, can be <code>null</code>
+	 * @return <code>true</code> if the regions have been checked, <code>false</code>
+	 *         if they are better checked sequentially
+	 * @throws CoreException if a spelling engine could not be created
+	 */
+	public boolean check(SpellingEngineDescriptor descriptor, ISpellingEngine engine, IRegion[] regions, ISpellingProblemCollector collector, IProgressMonitor monitor) throws CoreException {
+		int processors= Runtime.getRuntime().availableProcessors();
+		if (processors < 2)
+			return false;
+
+		long total= 0;
+		for (int i= 0; i < regions.length; i++)
+			total+= regions[i].getLength();
+		int chunkSize= (int) Math.max(MIN_CHUNK_SIZE, total / (processors * CHUNKS_PER_JOB));
+		try {
+			takeSnapshot(regions);
+			fChunks= split(regions, chunkSize);
+		} catch (BadLocationException x) {
+			return false;
+		} catch (BadPartitioningException x) {
+			return false;
+		}
+
+		int jobs= Math.min(processors, fChunks.length);
+		if (jobs < 2)
+			return false;
+
+		ISpellingEngine[] engines= new ISpellingEngine[jobs];
+		engines[0]= engine;
+		for (int i= 1; i < jobs; i++)
+			engines[i]= descriptor.createEngine();
+
+		fProblems= new ProblemList[fChunks.length];
+		fMonitor= new WorkerMonitor(monitor);
+		fNextChunk= 0;
+		fRunningJobs= jobs;
+		for (int i= 0; i < jobs; i++)
+			schedule(engines[i]);
+
+		if (!waitForJobs(monitor))
+			return true;
+
+		List problems= new ArrayList();
+		for (int i= 0; i < fProblems.length; i++) {
+			if (fProblems[i] != null)
+				problems.addAll(fProblems[i].fProblems);
+		}
+		Collections.sort(problems, OFFSET_COMPARATOR);
+		for (int i= 0, size= problems.size(); i < size; i++)
+			collector.accept((SpellingProblem) problems.get(i));
+		return true;
+	}
+
+	/**
+	 * Takes the snapshot of the text of the document and of the partitions of the range
+	 * covered by the given regions.
+	 *
+	 * @param regions the regions to check
+	 * @throws BadLocationException if the regions are not valid in the document
+	 * @throws BadPartitioningException if a partitioning is removed concurrently
+	 */
+	private void takeSnapshot(IRegion[] regions) throws BadLocationException, BadPartitioningException {
+		fText= fDocument.get();
+		fLineDelimiters= fDocument.getLegalLineDelimiters();
+
+		int start= fText.length(), end= 0;
+		for (int i= 0; i < regions.length; i++) {
+			start= Math.min(start, regions[i].getOffset());
+			end= Math.max(end, regions[i].getOffset() + regions[i].getLength());
+		}
+		if (end > fText.length())
+			throw new BadLocationException();
+		start= Math.min(start, end);
+
+		if (fDocument instanceof IDocumentExtension3)
+			fPartitionings= ((IDocumentExtension3) fDocument).getPartitionings();
+		else
+			fPartitionings= new String[] { IDocumentExtension3.DEFAULT_PARTITIONING };
+		fPartitioners= new IDocumentPartitioner[fPartitionings.length];
+		for (int i= 0; i < fPartitionings.length; i++) {
+			ITypedRegion[] partitions= TextUtilities.computePartitioning(fDocument, fPartitionings[i], start, end - start, false);
+			String[] contentTypes;
+			if (fDocument instanceof IDocumentExtension3)
+				contentTypes= ((IDocumentExtension3) fDocument).getLegalContentTypes(fPartitionings[i]);
+			else
+				contentTypes= fDocument.getLegalContentTypes();
+			fPartitioners[i]= new SnapshotPartitioner(partitions, contentTypes);
+		}
+	}
+
+	/**
+	 * Splits the given regions at whitespace into chunks of about the given size.
+	 *
+	 * @param regions the regions to split
+	 * @param chunkSize the minimal size of a chunk
+	 * @return the chunks
+	 */
+	private IRegion[] split(IRegion[] regions, int chunkSize) {
+		List chunks= new ArrayList();
+		for (int i= 0; i < regions.length; i++) {
+			int offset= regions[i].getOffset();
+			int end= offset + regions[i].getLength();
+			while (end - offset > chunkSize) {
+				int split= offset + chunkSize;
+				while (split < end && !Character.isWhitespace(fText.charAt(split)))
+					split++;
+				if (split == end)
+					break;
+				chunks.add(new Region(offset, split - offset));
+				offset= split;
+			}
+			chunks.add(new Region(offset, end - offset));
+		}
+		return (IRegion[]) chunks.toArray(new IRegion[chunks.size()]);
+	}
+
+	/**
+	 * Schedules a job which checks chunks with the given engine until all chunks
+	 * have been checked.
+	 *
+	 * @param engine the spelling engine
+	 */
+	private void schedule(final ISpellingEngine engine) {
+		Job job= new Job(SpellingMessages.ParallelSpellingChecker_job_name) {
+			protected IStatus run(IProgressMonitor jobMonitor) {
+				try {
+					IDocument document= new SnapshotDocument(fText, fLineDelimiters, fPartitionings, fPartitioners);
+					int index;
+					while (!fMonitor.isCanceled() && (index= nextChunk()) != -1)
+						check(engine, document, index);
+				} finally {
+					synchronized (fLock) {
+						fRunningJobs--;
+						fLock.notifyAll();
+					}
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		job.setSystem(true);
+		job.schedule();
+	}
+
+	/**
+	 * Returns the index of the next chunk to check.
+	 *
+	 * @return the index of the next chunk, or <code>-1</code> if all chunks are taken
+	 */
+	private int nextChunk() {
+		synchronized (fLock) {
+			if (fNextChunk == fChunks.length)
+				return -1;
+			return fNextChunk++;
+		}
+	}
+
+	/**
+	 * Checks the chunk with the given index.
+	 *
+	 * @param engine the spelling engine
+	 * @param document the snapshot of the document
+	 * @param index the index of the chunk
+	 */
+	private void check(final ISpellingEngine engine, final IDocument document, int index) {
+		final IRegion[] chunk= new IRegion[] { fChunks[index] };
+		final ProblemList problems= new ProblemList();
+		ISafeRunnable runnable= new ISafeRunnable() {
+			public void run() throws Exception {
+				engine.check(document, chunk, fContext, problems, fMonitor);
+			}
+			public void handleException(Throwable x) {
+			}
+		};
+		SafeRunner.run(runnable);
+		fProblems[index]= problems;
+	}
+
+	/**
+	 * Waits until all jobs are done. Cancels the jobs if the given monitor is canceled.
+	 *
+	 * @param monitor the progress monitor, can be <code>null</code>
+	 * @return <code>true</code> if all chunks have been checked, <code>false</code>
+	 *         if the check has been canceled
+	 */
+	private boolean waitForJobs(IProgressMonitor monitor) {
+		synchronized (fLock) {
+			while (fRunningJobs > 0) {
+				if (monitor != null && monitor.isCanceled()) {
+					fMonitor.setCanceled(true);
+					return false;
+				}
+				try {
+					fLock.wait(POLL_INTERVAL);
+				} catch (InterruptedException x) {
+					fMonitor.setCanceled(true);
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+			return !fMonitor.isCanceled();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -28,6 +28,7 @@ final class SpellingMessages extends NLS {
 
 	public static String EmptySpellingPreferenceBlock_emptyCaption;
 	public static String NoCompletionsProposal_displayString;
+	public static String ParallelSpellingChecker_job_name;
 
 
 	static {
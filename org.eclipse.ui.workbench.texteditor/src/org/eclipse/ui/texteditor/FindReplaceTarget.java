@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2007 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -16,6 +16,7 @@ import org.eclipse.swt.graphics.Point;
 import org.eclipse.jface.text.IFindReplaceTarget;
 import org.eclipse.jface.text.IFindReplaceTargetExtension;
 import org.eclipse.jface.text.IFindReplaceTargetExtension3;
+import org.eclipse.jface.text.IFindReplaceTargetExtension4;
 import org.eclipse.jface.text.IRegion;
 
 
@@ -23,7 +24,7 @@ import org.eclipse.jface.text.IRegion;
  * Internal find/replace target wrapping the editor's source viewer.
  * @since 2.1
  */
-class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension, IFindReplaceTargetExtension2, IFindReplaceTargetExtension3 {
+class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtension, IFindReplaceTargetExtension2, IFindReplaceTargetExtension3, IFindReplaceTargetExtension4 {
 
 	/** The editor */
 	private AbstractTextEditor fEditor;
@@ -147,6 +148,31 @@ class FindReplaceTarget implements IFindReplaceTarget, IFindReplaceTargetExtensi
 			getTarget().replaceSelection(text);
 	}
 
+	/*
+	 * @see org.eclipse.jface.text.IFindReplaceTargetExtension4#replaceAll(String, String, boolean, boolean, boolean)
+	 * @since 3.9
+	 */
+	public int replaceAll(String findString, String replaceString, boolean caseSensitive, boolean wholeWord, boolean regExSearch) {
+		if (getTarget() instanceof IFindReplaceTargetExtension4)
+			return ((IFindReplaceTargetExtension4)getTarget()).replaceAll(findString, replaceString, caseSensitive, wholeWord, regExSearch);
+
+		// fallback
+		int replaceCount= 0;
+		setReplaceAllMode(true);
+		try {
+			int offset= 0;
+			while (findAndSelect(offset, findString, true, caseSensitive, wholeWord, regExSearch) != -1) {
+				replaceSelection(replaceString, regExSearch);
+				replaceCount++;
+				Point selection= getSelection();
+				offset= selection.x + selection.y;
+			}
+		} finally {
+			setReplaceAllMode(false);
+		}
+		return replaceCount;
+	}
+
 	/*
 	 * @see org.eclipse.jface.text.IFindReplaceTargetExtension#beginSession()
 	 */
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2006, 2008 IBM Corporation and others.
+ * Copyright (c) 2006, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,10 +11,13 @@
 package org.eclipse.ui.texteditor.spelling;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -24,16 +27,20 @@ import org.eclipse.core.runtime.content.IContentTypeManager;
 
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.ISynchronizable;
+import org.eclipse.jface.text.ITypedRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.text.reconciler.DirtyRegion;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategy;
 import org.eclipse.jface.text.reconciler.IReconcilingStrategyExtension;
 import org.eclipse.jface.text.source.Annotation;
 import org.eclipse.jface.text.source.IAnnotationModel;
 import org.eclipse.jface.text.source.IAnnotationModelExtension;
+import org.eclipse.jface.text.source.IAnnotationModelExtension2;
 import org.eclipse.jface.text.source.ISourceViewer;
 
 
@@ -59,6 +66,25 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 		/** Lock object for modifying the annotations. */
 		private Object fLockObject;
 
+		/**
+		 * The region whose spelling annotations are replaced, or <code>null</code> to
+		 * replace all spelling annotations.
+		 * @since 3.9
+		 */
+		private IRegion fRegion;
+
+		/**
+		 * The offsets of the problems reported in the last collecting session.
+		 * @since 3.9
+		 */
+		private int[] fProblemOffsets= new int[16];
+
+		/**
+		 * The number of problems reported in the last collecting session.
+		 * @since 3.9
+		 */
+		private int fProblemCount;
+
 		/**
 		 * Initializes this collector with the given annotation model.
 		 *
@@ -78,6 +104,12 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 		 */
 		public void accept(SpellingProblem problem) {
 			fAddAnnotations.put(new SpellingAnnotation(problem), new Position(problem.getOffset(), problem.getLength()));
+			if (fProblemCount == fProblemOffsets.length) {
+				int[] offsets= new int[fProblemCount * 2];
+				System.arraycopy(fProblemOffsets, 0, offsets, 0, fProblemCount);
+				fProblemOffsets= offsets;
+			}
+			fProblemOffsets[fProblemCount++]= problem.getOffset();
 		}
 
 		/*
@@ -85,6 +117,31 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 		 */
 		public void beginCollecting() {
 			fAddAnnotations= new HashMap();
+			fProblemCount= 0;
+		}
+
+		/**
+		 * Sets the region whose spelling annotations are replaced by the next
+		 * collecting session.
+		 *
+		 * @param region the region, or <code>null</code> to replace all spelling annotations
+		 * @since 3.9
+		 */
+		void setRegion(IRegion region) {
+			fRegion= region;
+		}
+
+		/**
+		 * Returns the sorted offsets of the problems reported in the last collecting session.
+		 *
+		 * @return the sorted problem offsets
+		 * @since 3.9
+		 */
+		int[] getProblemOffsets() {
+			int[] offsets= new int[fProblemCount];
+			System.arraycopy(fProblemOffsets, 0, offsets, 0, fProblemCount);
+			Arrays.sort(offsets);
+			return offsets;
 		}
 
 		/*
@@ -95,10 +152,15 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 			List toRemove= new ArrayList();
 
 			synchronized (fLockObject) {
-				Iterator iter= fAnnotationModel.getAnnotationIterator();
+				IRegion region= fRegion;
+				Iterator iter;
+				if (region != null && fAnnotationModel instanceof IAnnotationModelExtension2)
+					iter= ((IAnnotationModelExtension2)fAnnotationModel).getAnnotationIterator(region.getOffset(), region.getLength(), true, true);
+				else
+					iter= fAnnotationModel.getAnnotationIterator();
 				while (iter.hasNext()) {
 					Annotation annotation= (Annotation)iter.next();
-					if (SpellingAnnotation.TYPE.equals(annotation.getType()))
+					if (SpellingAnnotation.TYPE.equals(annotation.getType()) && (region == null || overlaps(fAnnotationModel.getPosition(annotation), region)))
 						toRemove.add(annotation);
 				}
 				Annotation[] annotationsToRemove= (Annotation[])toRemove.toArray(new Annotation[toRemove.size()]);
@@ -116,6 +178,19 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 			}
 
 			fAddAnnotations= null;
+			fRegion= null;
+		}
+
+		/**
+		 * Tells whether the given position overlaps with the given region.
+		 *
+		 * @param position the position, may be <code>null</code>
+		 * @param region the region
+		 * @return <code>true</code> if the position overlaps with the region
+		 * @since 3.9
+		 */
+		private boolean overlaps(Position position, IRegion region) {
+			return position != null && position.overlapsWith(region.getOffset(), region.getLength());
 		}
 	}
 
@@ -145,6 +220,28 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 	 */
 	private IRegion[] fRegions= new IRegion[1];
 
+	/**
+	 * The minimal number of lines kept in the {@link #fCorrectLines} cache.
+	 * @since 3.9
+	 */
+	private static final int MIN_CACHE_SIZE= 1000;
+
+	/**
+	 * The keys of the lines of the document in which no spelling problems have been found,
+	 * see {@link #getLineKey(IDocument, int, int, String)}. Those lines are not checked again
+	 * as long as the spelling service checks them the same way, see
+	 * {@link SpellingService#getPreferencesState()}, and the document is not set again.
+	 * Adding words to a dictionary cannot make a correct line incorrect.
+	 * @since 3.9
+	 */
+	private final Set fCorrectLines= new HashSet();
+
+	/**
+	 * The state of the spelling preferences for which {@link #fCorrectLines} is valid.
+	 * @since 3.9
+	 */
+	private String fCorrectLinesState;
+
 
 	/**
 	 * Creates a new comment reconcile strategy.
@@ -194,10 +291,138 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 		if (getAnnotationModel() == null || fSpellingProblemCollector == null)
 			return;
 
+		if (fSpellingProblemCollector instanceof SpellingProblemCollector) {
+			try {
+				reconcile(region, (SpellingProblemCollector)fSpellingProblemCollector);
+				return;
+			} catch (BadLocationException x) {
+				// concurrent modification - check the whole region
+				fCorrectLines.clear();
+			}
+		}
+
 		fRegions[0]= region;
 		fSpellingService.check(fDocument, fRegions, fSpellingContext, fSpellingProblemCollector, fProgressMonitor);
 	}
 
+	/**
+	 * Checks the lines in the given region which are not known to be correct and replaces
+	 * the spelling annotations in the region with the problems found.
+	 *
+	 * @param region the region to check
+	 * @param collector the collector
+	 * @throws BadLocationException if the document is modified concurrently
+	 * @since 3.9
+	 */
+	private void reconcile(IRegion region, SpellingProblemCollector collector) throws BadLocationException {
+		IDocument document= fDocument;
+		String state= fSpellingService.getPreferencesState();
+		if (!state.equals(fCorrectLinesState) || fCorrectLines.size() > Math.max(MIN_CACHE_SIZE, 2 * document.getNumberOfLines())) {
+			fCorrectLines.clear();
+			fCorrectLinesState= state;
+		}
+
+		// collect the parts of the lines in the region which have to be checked
+		int start= region.getOffset();
+		int end= start + region.getLength();
+		int firstLine= document.getLineOfOffset(start);
+		int lastLine= document.getLineOfOffset(end);
+		List lines= new ArrayList();
+		List keys= new ArrayList();
+		List regions= new ArrayList();
+		int runStart= -1, runEnd= -1;
+		for (int line= firstLine; line <= lastLine; line++) {
+			IRegion info= document.getLineInformation(line);
+			int lineStart= Math.max(start, info.getOffset());
+			int lineEnd= Math.min(end, info.getOffset() + info.getLength());
+			String key= lineEnd > lineStart ? getLineKey(document, lineStart, lineEnd - lineStart, document.get(lineStart, lineEnd - lineStart)) : null;
+			if (key == null || fCorrectLines.contains(key)) {
+				if (runStart != -1)
+					regions.add(new Region(runStart, runEnd - runStart));
+				runStart= -1;
+			} else {
+				lines.add(new Region(lineStart, lineEnd - lineStart));
+				keys.add(key);
+				if (runStart == -1)
+					runStart= lineStart;
+				runEnd= lineEnd;
+			}
+		}
+		if (runStart != -1)
+			regions.add(new Region(runStart, runEnd - runStart));
+
+		boolean isWholeDocument= start == 0 && end == document.getLength();
+		collector.setRegion(isWholeDocument ? null : region);
+		if (regions.isEmpty()) {
+			collector.beginCollecting();
+			collector.endCollecting();
+			return;
+		}
+
+		IRegion[] checked= (IRegion[])regions.toArray(new IRegion[regions.size()]);
+		fSpellingService.check(document, checked, fSpellingContext, collector, fProgressMonitor);
+		if (fProgressMonitor != null && fProgressMonitor.isCanceled())
+			return;
+
+		// remember the lines without problems
+		int[] offsets= collector.getProblemOffsets();
+		int next= 0;
+		for (int i= 0, size= lines.size(); i < size; i++) {
+			IRegion line= (IRegion)lines.get(i);
+			int lineEnd= line.getOffset() + line.getLength();
+			while (next < offsets.length && offsets[next] < line.getOffset())
+				next++;
+			if (next == offsets.length || offsets[next] >= lineEnd)
+				fCorrectLines.add(keys.get(i));
+		}
+	}
+
+	/**
+	 * Returns the key of the given part of a line in the {@link #fCorrectLines} cache. The
+	 * key consists of the text and the partitions of the part of the line in each partitioning
+	 * of the document, since the spelling engines usually only check some partition types.
+	 *
+	 * @param document the document
+	 * @param offset the offset of the part of the line
+	 * @param length the length of the part of the line
+	 * @param text the text of the part of the line
+	 * @return the key of the part of the line
+	 * @throws BadLocationException if the document is modified concurrently
+	 * @since 3.9
+	 */
+	private String getLineKey(IDocument document, int offset, int length, String text) throws BadLocationException {
+		String[] partitionings;
+		if (document instanceof IDocumentExtension3)
+			partitionings= ((IDocumentExtension3)document).getPartitionings();
+		else
+			partitionings= new String[] { IDocumentExtension3.DEFAULT_PARTITIONING };
+
+		StringBuffer key= new StringBuffer(text);
+		for (int i= 0; i < partitionings.length; i++)
+			appendPartitions(key, TextUtilities.computePartitioning(document, partitionings[i], offset, length, false), offset, length);
+		return key.toString();
+	}
+
+	/**
+	 * Appends the types and the bounds of the given partitions, clipped to the given range
+	 * and relative to its start, to the given key.
+	 *
+	 * @param key the key
+	 * @param partitions the partitions
+	 * @param offset the offset of the range
+	 * @param length the length of the range
+	 * @since 3.9
+	 */
+	private void appendPartitions(StringBuffer key, ITypedRegion[] partitions, int offset, int length) {
+		key.append('\0');
+		for (int i= 0; i < partitions.length; i++) {
+			ITypedRegion partition= partitions[i];
+			int start= Math.max(offset, partition.getOffset());
+			int end= Math.min(offset + length, partition.getOffset() + partition.getLength());
+			key.append(partition.getType()).append(':').append(start - offset).append(':').append(end - start).append('\0');
+		}
+	}
+
 	/**
 	 * Returns the content type of the underlying editor input.
 	 *
@@ -222,6 +447,7 @@ public class SpellingReconcileStrategy implements IReconcilingStrategy, IReconci
 	 */
 	public void setDocument(IDocument document) {
 		fDocument= document;
+		fCorrectLines.clear();
 		fSpellingProblemCollector= createSpellingProblemCollector();
 	}
 
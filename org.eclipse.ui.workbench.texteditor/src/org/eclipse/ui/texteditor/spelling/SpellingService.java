@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2014 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -23,6 +23,7 @@ import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Region;
 
 import org.eclipse.ui.internal.texteditor.TextEditorPlugin;
+import org.eclipse.ui.internal.texteditor.spelling.ParallelSpellingChecker;
 import org.eclipse.ui.internal.texteditor.spelling.SpellingEngineRegistry;
 
 /**
@@ -53,6 +54,19 @@ public class SpellingService {
 	 */
 	public static final String PREFERENCE_SPELLING_ENGINE= "spellingEngine"; //$NON-NLS-1$
 
+	/**
+	 * A named preference that controls whether large regions are checked in
+	 * parallel. If enabled, the regions are split at word boundaries and checked
+	 * by several instances of the spelling engine at the same time, hence the
+	 * engine must support being used concurrently by different instances.
+	 * <p>
+	 * Value is of type <code>Boolean</code>.
+	 * </p>
+	 *
+	 * @since 3.9
+	 */
+	public static final String PREFERENCE_SPELLING_PARALLEL= "spellingParallel"; //$NON-NLS-1$
+
 	/** Preferences */
 	private IPreferenceStore fPreferences;
 
@@ -67,6 +81,22 @@ public class SpellingService {
 		fPreferences= preferences;
 	}
 
+	/**
+	 * Returns the state of the preferences which select how documents are checked,
+	 * i.e. whether spelling is enabled and which spelling engine is used. The state
+	 * is read from the preferences on each call. Two states are equal if the same
+	 * checks are performed.
+	 *
+	 * @return the state of the spelling preferences
+	 * @since 3.9
+	 */
+	String getPreferencesState() {
+		boolean enabled= fPreferences.getBoolean(PREFERENCE_SPELLING_ENABLED);
+		if (!enabled)
+			return String.valueOf(enabled);
+		return enabled + ":" + fPreferences.getString(PREFERENCE_SPELLING_ENGINE); //$NON-NLS-1$
+	}
+
 	/**
 	 * Checks the given document. Reports all found spelling problems to the
 	 * collector. The spelling engine is chosen based on the settings
@@ -99,9 +129,11 @@ public class SpellingService {
 				try {
 					final ISpellingEngine engine= createEngine(fPreferences);
 					if (engine != null) {
+						final boolean parallel= fPreferences.getBoolean(PREFERENCE_SPELLING_PARALLEL);
 						ISafeRunnable runnable= new ISafeRunnable() {
 							public void run() throws Exception {
-								engine.check(document, regions, context, collector, monitor);
+								if (!parallel || !new ParallelSpellingChecker(document, context).check(getActiveSpellingEngineDescriptor(fPreferences), engine, regions, collector, monitor))
+									engine.check(document, regions, context, collector, monitor);
 							}
 							public void handleException(Throwable x) {
 							}